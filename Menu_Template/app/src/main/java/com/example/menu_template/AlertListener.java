@@ -0,0 +1,9 @@
+package com.example.menu_template;
+
+/**
+ * Receives the alerts of classes that only hold the application context and therefore can't show a dialog themselves
+ * @see GameSession
+ */
+public interface AlertListener {
+    void onAlert(String title, String message);
+}
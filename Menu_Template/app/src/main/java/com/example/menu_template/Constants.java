@@ -1,8 +0,0 @@
-package com.example.menu_template;
-
-public class Constants {
-    public static final String MPU_TOPIC = "mpu/K05";
-    public static final String TEMP_TOPIC = "temp/K05";
-    public static final String FINISHED_TOPIC = "finished/K05";
-
-}
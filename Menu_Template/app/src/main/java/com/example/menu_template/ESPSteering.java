@@ -1,64 +1,177 @@
 package com.example.menu_template;
-import android.app.AlertDialog;
 import android.content.Context;
-import android.hardware.SensorManager;
-import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
 import android.util.Log;
-import android.view.LayoutInflater;
-import android.view.Menu;
-import android.view.MenuInflater;
-import android.view.MenuItem;
-import android.view.View;
-import android.view.ViewGroup;
-import android.widget.EditText;
 
-import com.example.menu_template.MqttManager;
-import com.example.menu_template.MqttCallbackListener;
-import com.example.menu_template.Constants.*;
-
-import java.util.Arrays;
+import java.io.IOException;
 
 /**
  * This class parses the ESP32's Accelerometer/Gyro-Value-Strings received through the MPU_TOPIC,
  * so that the GameLogic Class can access that data to calculate game-physics etc.
+ * The MQTT connection is only opened by startSensors(), samples are buffered until drained.
+ * While running, the board's clock is synchronized with ping/pong messages (see ClockSync), so samples carrying the
+ * board's timestamp get the time they were read instead of the time they arrived, and the transport latency is measured.
+ * With UDP ingest switched on in the settings (off by default), the board is asked to send its samples as UDP
+ * datagrams straight to the app (see UdpSensorReceiver); MQTT stays in use for everything else and for the samples if
+ * the receiver can't be opened.
  */
-public class ESPSteering{
+public class ESPSteering implements SteeringSource {
+
+    // Rough estimate: MQTT over WiFi plus the board's publish interval
+    private static final long ESTIMATED_LATENCY_MILLIS = 50;
+    private static final int BUFFER_CAPACITY = 256;
+    private static final long PING_INTERVAL_MILLIS = 1000;
+    // Logs every message and sample, which allocates strings on the sample path
+    private static final boolean VERBOSE_LOGGING = false;
 
     private MqttManager mqttManager;
     private Context context;
+    // The latest sample from either transport, guarded by producerLock, so the getters never mix two samples
     private float acc_x;
     private float acc_y;
     private float acc_z;
     private float gyro_x;
     private float gyro_y;
     private float gyro_z;
+    // Only touched by the MQTT callback thread
+    private final float[] parsedValues = new float[SensorMessageParser.VALUE_COUNT];
+    private final SensorSampleBuffer sampleBuffer = new SensorSampleBuffer(BUFFER_CAPACITY);
+    // The buffer takes one producer at a time, samples may come from the MQTT and the UDP thread while switching over
+    private final Object producerLock = new Object();
+    private UdpSensorReceiver udpReceiver;
+    private boolean started;
+
+    private final ClockSync clockSync = new ClockSync();
+    private final EndToEndLatency latency;
+    private HandlerThread pingThread;
 
-    private FirstListener firstListener;
+    private BoardMessageListener boardMessageListener;
+    private final AlertListener alertListener;
 
     public ESPSteering(Context context) {
+        this(context, new EndToEndLatency(), null);
+    }
+
+    /**
+     * @param latency       receives the transport latency of every sample once the clocks are synchronized
+     * @param alertListener shows connection problems (called on the MQTT thread), may be null
+     */
+    public ESPSteering(Context context, EndToEndLatency latency, AlertListener alertListener) {
         this.context = context;
+        this.latency = latency;
+        this.alertListener = alertListener;
         this.mqttManager = new MqttManager("esp_steering");
 
-        firstListener = new FirstListener();
-        mqttManager.setCallbackListener(firstListener);
+        boardMessageListener = new BoardMessageListener();
+        mqttManager.setCallbackListener(boardMessageListener);
     }
 
 
-    public void startSensors() {
+    @Override
+    public synchronized void startSensors() {
+        if (started) {
+            return;
+        }
+        started = true;
+        SettingsDatabase settingsDatabase = SettingsDatabase.getInstance(context);
+        mqttManager.connect(settingsDatabase, "esp_steering");
         mqttManager.subscribeToTopic(Constants.MPU_TOPIC);
+        mqttManager.subscribeToTopic(Constants.PONG_TOPIC);
+        if (settingsDatabase.isUdpIngestEnabled()) {
+            startUdpIngest();
+        } else {
+            // The target is retained, a board still sending over UDP from an earlier game goes back to MQTT
+            mqttManager.publishToTopic("", Constants.UDP_TARGET_TOPIC);
+        }
+
+        pingThread = new HandlerThread("ClockSync");
+        pingThread.start();
+        Handler pingHandler = new Handler(pingThread.getLooper());
+        pingHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mqttManager.publishToTopic(ClockSync.pingMessage(SystemClock.elapsedRealtimeNanos() / 1000), Constants.PING_TOPIC);
+                pingHandler.postDelayed(this, PING_INTERVAL_MILLIS);
+            }
+        });
     }
 
-    public void stopSensors() {
+    @Override
+    public synchronized void stopSensors() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        pingThread.quitSafely();
+        pingThread = null;
+        if (udpReceiver != null) {
+            // Back to MQTT for whoever steers next
+            mqttManager.publishToTopic("", Constants.UDP_TARGET_TOPIC);
+            udpReceiver.stop();
+            Log.d("UdpSensors", "Received " + udpReceiver.getReceived() + ", lost " + udpReceiver.getLost()
+                    + ", late " + udpReceiver.getLate() + ", duplicates " + udpReceiver.getDuplicates()
+                    + ", restarts " + udpReceiver.getRestarts());
+            udpReceiver = null;
+        }
+        mqttManager.unsubscribeFromTopic(Constants.PONG_TOPIC);
         mqttManager.unsubscribeFromTopic(Constants.MPU_TOPIC);
+        mqttManager.disconnect();
+    }
+
+    private void startUdpIngest() {
+        try {
+            udpReceiver = new UdpSensorReceiver(Constants.UDP_SENSOR_PORT, (values, readMicros) -> offerSample(values, readMicros));
+            udpReceiver.start();
+            String address = UdpSensorReceiver.localAddressTowards(mqttManager.MQTT_BROKER_IP,
+                    Integer.parseInt(mqttManager.MQTT_BROKER_PORT)).getHostAddress();
+            mqttManager.publishToTopic(address + ":" + udpReceiver.getLocalPort(), Constants.UDP_TARGET_TOPIC);
+        } catch (IOException | RuntimeException e) {
+            Log.d("UdpSensors", "No UDP ingest, the samples keep coming over MQTT", e);
+            if (udpReceiver != null) {
+                udpReceiver.stop();
+                udpReceiver = null;
+            }
+        }
+    }
+
+    @Override
+    public int drainSamples(SensorSampleListener listener) {
+        return sampleBuffer.drainTo(listener);
+    }
+
+    /**
+     * @return the measured transport latency once the clocks are synchronized, an estimate before
+     */
+    @Override
+    public long getLatencyMillis() {
+        float measured = latency.getTransport().getMean();
+        return Float.isNaN(measured) ? ESTIMATED_LATENCY_MILLIS : Math.max(0, Math.round(measured));
+    }
 
+    public ClockSync getClockSync() {
+        return clockSync;
     }
 
-    private class FirstListener implements MqttCallbackListener {
+    private class BoardMessageListener implements MqttCallbackListener {
         @Override
         public void onMessageReceived(String topic, String message) {
             if (topic.equals(Constants.MPU_TOPIC)) {
-                parseAndAssignValues(message);
-                Log.d(Constants.MPU_TOPIC, message);
+                // At high rates the board sends several samples per message, separated by ';'
+                int start = 0;
+                for (int end = message.indexOf(';'); end >= 0; end = message.indexOf(';', start)) {
+                    parseAndAssignValues(message, start, end);
+                    start = end + 1;
+                }
+                parseAndAssignValues(message, start, message.length());
+                if (VERBOSE_LOGGING) {
+                    Log.d(Constants.MPU_TOPIC, message);
+                }
+            } else if (topic.equals(Constants.PONG_TOPIC)) {
+                if (!clockSync.onPongMessage(message, SystemClock.elapsedRealtimeNanos() / 1000)) {
+                    Log.d("ClockSync", "Ignoring pong: " + message);
+                }
             }
         }
 
@@ -81,57 +194,106 @@ public class ESPSteering{
 
 
 
-    private void parseAndAssignValues(String message) {
-        String[] values = message.replaceAll("[()]", "").split(",");
-        if (values.length == 6) {
-            try {
-                acc_x = Float.parseFloat(values[0]);
-                acc_y = Float.parseFloat(values[1]);
-                acc_z = Float.parseFloat(values[2]);
-                gyro_x = Float.parseFloat(values[3]);
-                gyro_y = Float.parseFloat(values[4]);
-                gyro_z = Float.parseFloat(values[5]);
+    /**
+     * Parses the sample in message[start, end), without allocating, it runs for every sample
+     */
+    private void parseAndAssignValues(String message, int start, int end) {
+        float[] values = parsedValues;
+        if (SensorMessageParser.parse(message, start, end, values)) {
+            offerSample(values, SensorMessageParser.parseTimestampMicros(message, start, end));
 
-                Log.d("ParsedValues", "acc_x: " + acc_x + ", acc_y: " + acc_y + ", acc_z: " + acc_z
-                        + ", gyro_x: " + gyro_x + ", gyro_y: " + gyro_y + ", gyro_z: " + gyro_z);
-            } catch (NumberFormatException e) {
-                Log.e("ParseError", "Error parsing values: " + e.getMessage());
+            if (VERBOSE_LOGGING) {
+                Log.d("ParsedValues", "acc_x: " + values[0] + ", acc_y: " + values[1] + ", acc_z: " + values[2]
+                        + ", gyro_x: " + values[3] + ", gyro_y: " + values[4] + ", gyro_z: " + values[5]);
             }
         } else {
-            Log.d("NumberOfValues", "Invalid number of values: " + values.length);
+            Log.e("ParseError", "Error parsing values: " + message.substring(start, end));
         }
     }
 
 
+    /**
+     * Buffers a sample from either transport
+     *
+     * @param deviceMicros the time it was read on the board's clock, or SensorMessageParser.NO_TIMESTAMP
+     */
+    private void offerSample(float[] values, long deviceMicros) {
+        long arrivalNanos = SystemClock.elapsedRealtimeNanos();
+        synchronized (producerLock) {
+            acc_x = values[0];
+            acc_y = values[1];
+            acc_z = values[2];
+            gyro_x = values[3];
+            gyro_y = values[4];
+            gyro_z = values[5];
+            if (deviceMicros != SensorMessageParser.NO_TIMESTAMP && clockSync.isSynchronized()) {
+                long readNanos = clockSync.toLocalMicros(deviceMicros) * 1000;
+                latency.recordTransport(arrivalNanos / 1_000_000, readNanos / 1_000_000);
+                sampleBuffer.offer(values, readNanos);
+            } else {
+                // Without a timestamp (or before the first pong), the arrival time is the best there is
+                sampleBuffer.offer(values, arrivalNanos);
+            }
+        }
+    }
+
     private void showAlert(String title, String message) {
-        AlertDialog.Builder builder = new AlertDialog.Builder(context);
-        builder.setTitle(title)
-                .setMessage(message)
-                .setPositiveButton("OK", null)
-                .show();
+        if (alertListener != null) {
+            alertListener.onAlert(title, message);
+        } else {
+            Log.d("ESPSteering", title + ": " + message);
+        }
+    }
+
+    /**
+     * Copies the latest sample, all six values from the same message
+     *
+     * @param out receives acc_x, acc_y, acc_z, gyro_x, gyro_y, gyro_z
+     */
+    public void getLatestSample(float[] out) {
+        synchronized (producerLock) {
+            out[0] = acc_x;
+            out[1] = acc_y;
+            out[2] = acc_z;
+            out[3] = gyro_x;
+            out[4] = gyro_y;
+            out[5] = gyro_z;
+        }
     }
 
     public float getAccX() {
-        return acc_x;
+        synchronized (producerLock) {
+            return acc_x;
+        }
     }
 
     public float getAccY() {
-        return acc_y;
+        synchronized (producerLock) {
+            return acc_y;
+        }
     }
 
     public float getAccZ() {
-        return acc_z;
+        synchronized (producerLock) {
+            return acc_z;
+        }
     }
 
     public float getGyroX() {
-        return gyro_x;
+        synchronized (producerLock) {
+            return gyro_x;
+        }
     }
 
     public float getGyroY() {
-        return gyro_y;
+        synchronized (producerLock) {
+            return gyro_y;
+        }
     }
 
     public float getGyroZ() {
-        return gyro_z;
+        synchronized (producerLock) {
+            return gyro_z;
+        }
     }
 }
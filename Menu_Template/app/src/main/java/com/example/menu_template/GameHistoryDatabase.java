@@ -0,0 +1,256 @@
+package com.example.menu_template;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class stores finished and aborted games together with their per-move telemetry.
+ * Finished games also keep their MoveLog next to the seed, the best one is replayed as a ghost on the same labyrinth.
+ * The database runs in WAL mode and stays open, inserts use precompiled statements.
+ * All write methods are meant to be called from the GameHistoryRecorder's writer thread only.
+ *
+ * @see GameHistoryRecorder
+ */
+public class GameHistoryDatabase extends SQLiteOpenHelper {
+    private static final String DATABASE_NAME = "game_history_database";
+    private static final int DATABASE_VERSION = 2;
+
+    private static final String TABLE_GAMES = "games";
+    private static final String COLUMN_ID = "id";
+    public static final String COLUMN_STARTED_AT = "started_at";
+    public static final String COLUMN_LABYRINTH_SIZE = "labyrinth_size";
+    public static final String COLUMN_STEERING_METHOD = "steering_method";
+    public static final String COLUMN_SEED = "seed";
+    public static final String COLUMN_PLAY_TIME = "play_time_ms";
+    public static final String COLUMN_MOVE_COUNT = "move_count";
+    public static final String COLUMN_FINISHED = "finished";
+    public static final String COLUMN_MOVE_LOG = "move_log";
+
+    private static final String TABLE_MOVES = "moves";
+    public static final String COLUMN_GAME_ID = "game_id";
+    public static final String COLUMN_TIMESTAMP = "timestamp_ms";
+    public static final String COLUMN_DIRECTION = "direction";
+    public static final String COLUMN_CELL = "cell";
+
+    private static GameHistoryDatabase instance = null;
+
+    private SQLiteStatement insertGameStatement;
+    private SQLiteStatement insertMoveStatement;
+    private SQLiteStatement finishGameStatement;
+
+    private GameHistoryDatabase(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // Readers (leaderboard) never wait for the writer and the writer never waits for readers
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    public static synchronized GameHistoryDatabase getInstance(Context context) {
+        if (instance == null) {
+            instance = new GameHistoryDatabase(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        db.setForeignKeyConstraintsEnabled(true);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_GAMES + " (" +
+                COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                COLUMN_STARTED_AT + " INTEGER, " +
+                COLUMN_LABYRINTH_SIZE + " INTEGER, " +
+                COLUMN_STEERING_METHOD + " TEXT, " +
+                COLUMN_SEED + " INTEGER, " +
+                COLUMN_PLAY_TIME + " INTEGER, " +
+                COLUMN_MOVE_COUNT + " INTEGER DEFAULT 0, " +
+                COLUMN_FINISHED + " INTEGER DEFAULT 0, " +
+                COLUMN_MOVE_LOG + " BLOB)");
+        db.execSQL("CREATE TABLE " + TABLE_MOVES + " (" +
+                COLUMN_GAME_ID + " INTEGER REFERENCES " + TABLE_GAMES + "(" + COLUMN_ID + ") ON DELETE CASCADE, " +
+                COLUMN_TIMESTAMP + " INTEGER, " +
+                COLUMN_DIRECTION + " INTEGER, " +
+                COLUMN_CELL + " INTEGER)");
+        // Covers the leaderboard query: filter by size, steering method and finished, ordered by play time
+        db.execSQL("CREATE INDEX games_leaderboard ON " + TABLE_GAMES + " (" +
+                COLUMN_LABYRINTH_SIZE + ", " + COLUMN_STEERING_METHOD + ", " + COLUMN_FINISHED + ", " + COLUMN_PLAY_TIME + ")");
+        db.execSQL("CREATE INDEX moves_game ON " + TABLE_MOVES + " (" + COLUMN_GAME_ID + ", " + COLUMN_TIMESTAMP + ")");
+        createSeedIndex(db);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            db.execSQL("ALTER TABLE " + TABLE_GAMES + " ADD COLUMN " + COLUMN_MOVE_LOG + " BLOB");
+            createSeedIndex(db);
+        }
+    }
+
+    private static void createSeedIndex(SQLiteDatabase db) {
+        // Covers getBestMoveLog(): the fastest finished game on a labyrinth
+        db.execSQL("CREATE INDEX games_seed ON " + TABLE_GAMES + " (" +
+                COLUMN_SEED + ", " + COLUMN_LABYRINTH_SIZE + ", " + COLUMN_FINISHED + ", " + COLUMN_PLAY_TIME + ")");
+    }
+
+    /**
+     * @return the id of the new game row
+     */
+    long insertGame(long startedAt, int labyrinthSize, String steeringMethod, long seed) {
+        if (insertGameStatement == null) {
+            insertGameStatement = getWritableDatabase().compileStatement("INSERT INTO " + TABLE_GAMES + " (" +
+                    COLUMN_STARTED_AT + ", " + COLUMN_LABYRINTH_SIZE + ", " + COLUMN_STEERING_METHOD + ", " + COLUMN_SEED +
+                    ") VALUES (?, ?, ?, ?)");
+        }
+        insertGameStatement.bindLong(1, startedAt);
+        insertGameStatement.bindLong(2, labyrinthSize);
+        if (steeringMethod != null) {
+            insertGameStatement.bindString(3, steeringMethod);
+        } else {
+            insertGameStatement.bindNull(3);
+        }
+        insertGameStatement.bindLong(4, seed);
+        return insertGameStatement.executeInsert();
+    }
+
+    /**
+     * Inserts a batch of moves in a single transaction
+     */
+    void insertMoves(long gameId, long[] timestamps, int[] directions, int[] cells, int count) {
+        SQLiteDatabase db = getWritableDatabase();
+        if (insertMoveStatement == null) {
+            insertMoveStatement = db.compileStatement("INSERT INTO " + TABLE_MOVES + " (" +
+                    COLUMN_GAME_ID + ", " + COLUMN_TIMESTAMP + ", " + COLUMN_DIRECTION + ", " + COLUMN_CELL +
+                    ") VALUES (?, ?, ?, ?)");
+        }
+        db.beginTransactionNonExclusive();
+        try {
+            for (int i = 0; i < count; i++) {
+                insertMoveStatement.bindLong(1, gameId);
+                insertMoveStatement.bindLong(2, timestamps[i]);
+                insertMoveStatement.bindLong(3, directions[i]);
+                insertMoveStatement.bindLong(4, cells[i]);
+                insertMoveStatement.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * @param moveLog the encoded MoveLog of the game, or null
+     */
+    void finishGame(long gameId, long playTimeMillis, int moveCount, boolean finished, byte[] moveLog) {
+        if (finishGameStatement == null) {
+            finishGameStatement = getWritableDatabase().compileStatement("UPDATE " + TABLE_GAMES + " SET " +
+                    COLUMN_PLAY_TIME + " = ?, " + COLUMN_MOVE_COUNT + " = ?, " + COLUMN_FINISHED + " = ?, " +
+                    COLUMN_MOVE_LOG + " = ? WHERE " + COLUMN_ID + " = ?");
+        }
+        finishGameStatement.bindLong(1, playTimeMillis);
+        finishGameStatement.bindLong(2, moveCount);
+        finishGameStatement.bindLong(3, finished ? 1 : 0);
+        if (moveLog != null) {
+            finishGameStatement.bindBlob(4, moveLog);
+        } else {
+            finishGameStatement.bindNull(4);
+        }
+        finishGameStatement.bindLong(5, gameId);
+        finishGameStatement.executeUpdateDelete();
+    }
+
+    /**
+     * @return the encoded MoveLog of the fastest finished game on the labyrinth, or null if there is none
+     */
+    public byte[] getBestMoveLog(int labyrinthSize, long seed) {
+        SQLiteDatabase db = getReadableDatabase();
+        String query = "SELECT " + COLUMN_MOVE_LOG + " FROM " + TABLE_GAMES +
+                " WHERE " + COLUMN_SEED + " = ? AND " + COLUMN_LABYRINTH_SIZE + " = ? AND " + COLUMN_FINISHED + " = 1" +
+                " AND " + COLUMN_MOVE_LOG + " IS NOT NULL ORDER BY " + COLUMN_PLAY_TIME + " LIMIT 1";
+        try (Cursor cursor = db.rawQuery(query, new String[]{String.valueOf(seed), String.valueOf(labyrinthSize)})) {
+            return cursor.moveToFirst() ? cursor.getBlob(0) : null;
+        }
+    }
+
+    /**
+     * Returns the fastest finished games for a labyrinth size and steering method
+     *
+     * @param labyrinthSize  the labyrinth size
+     * @param steeringMethod one of the SteeringSource steering methods
+     * @param limit          the maximum number of entries
+     * @return the games, fastest first
+     */
+    public List<GameRecord> getLeaderboard(int labyrinthSize, String steeringMethod, int limit) {
+        SQLiteDatabase db = getReadableDatabase();
+        String query = "SELECT " + COLUMN_ID + ", " + COLUMN_STARTED_AT + ", " + COLUMN_SEED + ", " +
+                COLUMN_PLAY_TIME + ", " + COLUMN_MOVE_COUNT + " FROM " + TABLE_GAMES +
+                " WHERE " + COLUMN_LABYRINTH_SIZE + " = ? AND " + COLUMN_STEERING_METHOD + " = ? AND " + COLUMN_FINISHED + " = 1" +
+                " ORDER BY " + COLUMN_PLAY_TIME + " LIMIT " + limit;
+        List<GameRecord> records = new ArrayList<>();
+        try (Cursor cursor = db.rawQuery(query, new String[]{String.valueOf(labyrinthSize), steeringMethod})) {
+            while (cursor.moveToNext()) {
+                records.add(new GameRecord(cursor.getLong(0), cursor.getLong(1), labyrinthSize, steeringMethod,
+                        cursor.getLong(2), cursor.getLong(3), cursor.getInt(4)));
+            }
+        }
+        return records;
+    }
+
+    /**
+     * One row of the games table
+     */
+    public static class GameRecord {
+        private final long id;
+        private final long startedAt;
+        private final int labyrinthSize;
+        private final String steeringMethod;
+        private final long seed;
+        private final long playTimeMillis;
+        private final int moveCount;
+
+        GameRecord(long id, long startedAt, int labyrinthSize, String steeringMethod, long seed, long playTimeMillis, int moveCount) {
+            this.id = id;
+            this.startedAt = startedAt;
+            this.labyrinthSize = labyrinthSize;
+            this.steeringMethod = steeringMethod;
+            this.seed = seed;
+            this.playTimeMillis = playTimeMillis;
+            this.moveCount = moveCount;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public long getStartedAt() {
+            return startedAt;
+        }
+
+        public int getLabyrinthSize() {
+            return labyrinthSize;
+        }
+
+        public String getSteeringMethod() {
+            return steeringMethod;
+        }
+
+        public long getSeed() {
+            return seed;
+        }
+
+        public long getPlayTimeMillis() {
+            return playTimeMillis;
+        }
+
+        public int getMoveCount() {
+            return moveCount;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.menu_template;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.Arrays;
+
+/**
+ * This class records games into the GameHistoryDatabase on a background writer thread.
+ * The game thread only appends moves to a primitive buffer, the writer thread swaps that buffer out
+ * and inserts it as one transaction, either when a batch is full or shortly after the first buffered move.
+ * Every game gets a number from startGame(), the buffer belongs to the latest game and is only written
+ * once the writer holds that game's row, so the moves of a new game never end up in the previous one.
+ */
+public class GameHistoryRecorder {
+
+    private static final int BATCH_SIZE = 64;
+    private static final long FLUSH_DELAY_MILLIS = 500;
+
+    private static GameHistoryRecorder instance = null;
+
+    private final GameHistoryDatabase database;
+    private final Handler writerHandler;
+    private final Runnable flushRunnable = this::flushMoves;
+
+    // Filled by the game thread, guarded by bufferLock
+    private final Object bufferLock = new Object();
+    private long[] pendingTimestamps = new long[BATCH_SIZE];
+    private int[] pendingDirections = new int[BATCH_SIZE];
+    private int[] pendingCells = new int[BATCH_SIZE];
+    private int pendingCount;
+    private int recordingGame; // The game the pending moves belong to
+
+
+    // Only touched by the writer thread, swapped with the pending buffers on every flush
+    private long[] writingTimestamps = new long[BATCH_SIZE];
+    private int[] writingDirections = new int[BATCH_SIZE];
+    private int[] writingCells = new int[BATCH_SIZE];
+    private long gameId = -1;
+    private int writingGame = -1; // The game gameId belongs to
+    private int moveCount;
+
+    private GameHistoryRecorder(GameHistoryDatabase database) {
+        this.database = database;
+        HandlerThread writerThread = new HandlerThread("GameHistoryWriter", Process.THREAD_PRIORITY_BACKGROUND);
+        writerThread.start();
+        writerHandler = new Handler(writerThread.getLooper());
+    }
+
+    public static synchronized GameHistoryRecorder getInstance(Context context) {
+        if (instance == null) {
+            instance = new GameHistoryRecorder(GameHistoryDatabase.getInstance(context));
+        }
+        return instance;
+    }
+
+    /**
+     * Starts recording a new game, moves recorded afterwards belong to it
+     */
+    public void startGame(int labyrinthSize, String steeringMethod, long seed) {
+        long startedAt = System.currentTimeMillis();
+        int game;
+        synchronized (bufferLock) {
+            // Moves after the last finishGame() belong to no game
+            pendingCount = 0;
+            game = ++recordingGame;
+        }
+        writerHandler.post(() -> {
+            gameId = database.insertGame(startedAt, labyrinthSize, steeringMethod, seed);
+            writingGame = game;
+            moveCount = 0;
+            // The moves buffered before the row existed
+            flushMoves();
+        });
+    }
+
+    /**
+     * Buffers one move, cheap enough to be called from the game tick
+     *
+     * @param timestampMillis the play time of the move
+     * @param direction       the direction of the move
+     * @param cell            the cell the player moved to (row * columns + column)
+     */
+    public void recordMove(long timestampMillis, int direction, int cell) {
+        int count;
+        synchronized (bufferLock) {
+            if (pendingCount == pendingTimestamps.length) {
+                // The writer fell behind, grow instead of blocking the game thread
+                pendingTimestamps = Arrays.copyOf(pendingTimestamps, pendingCount * 2);
+                pendingDirections = Arrays.copyOf(pendingDirections, pendingCount * 2);
+                pendingCells = Arrays.copyOf(pendingCells, pendingCount * 2);
+            }
+            pendingTimestamps[pendingCount] = timestampMillis;
+            pendingDirections[pendingCount] = direction;
+            pendingCells[pendingCount] = cell;
+            count = ++pendingCount;
+        }
+        if (count == 1) {
+            writerHandler.postDelayed(flushRunnable, FLUSH_DELAY_MILLIS);
+        } else if (count == BATCH_SIZE) {
+            writerHandler.removeCallbacks(flushRunnable);
+            writerHandler.post(flushRunnable);
+        }
+    }
+
+    /**
+     * Writes the remaining moves and the result of the current game
+     *
+     * @param playTimeMillis the final play time
+     * @param finished       true if the player reached the finish, false if the game was aborted
+     * @param moveLog        the encoded MoveLog of the game, or null
+     */
+    public void finishGame(long playTimeMillis, boolean finished, byte[] moveLog) {
+        // Taken here, a flush on the writer thread could already see moves of the next game
+        long[] timestamps;
+        int[] directions;
+        int[] cells;
+        int count;
+        int game;
+        synchronized (bufferLock) {
+            count = pendingCount;
+            timestamps = Arrays.copyOf(pendingTimestamps, count);
+            directions = Arrays.copyOf(pendingDirections, count);
+            cells = Arrays.copyOf(pendingCells, count);
+            pendingCount = 0;
+            game = recordingGame;
+        }
+        writerHandler.post(() -> {
+            if (gameId == -1 || writingGame != game) {
+                return;
+            }
+            writeMoves(timestamps, directions, cells, count);
+            database.finishGame(gameId, playTimeMillis, moveCount, finished, moveLog);
+            gameId = -1;
+            writingGame = -1;
+        });
+    }
+
+    private void flushMoves() {
+        int count;
+        synchronized (bufferLock) {
+            if (recordingGame != writingGame) {
+                // The row of their game isn't written yet, startGame() flushes them once it is
+                return;
+            }
+            long[] timestamps = pendingTimestamps;
+            int[] directions = pendingDirections;
+            int[] cells = pendingCells;
+            pendingTimestamps = writingTimestamps;
+            pendingDirections = writingDirections;
+            pendingCells = writingCells;
+            writingTimestamps = timestamps;
+            writingDirections = directions;
+            writingCells = cells;
+            count = pendingCount;
+            pendingCount = 0;
+        }
+        if (gameId != -1) {
+            writeMoves(writingTimestamps, writingDirections, writingCells, count);
+        }
+    }
+
+    private void writeMoves(long[] timestamps, int[] directions, int[] cells, int count) {
+        if (count == 0) {
+            return;
+        }
+        try {
+            database.insertMoves(gameId, timestamps, directions, cells, count);
+            moveCount += count;
+        } catch (RuntimeException e) {
+            Log.e("GameHistory", "Failed to write " + count + " moves", e);
+        }
+    }
+}
@@ -1,15 +1,16 @@
 package com.example.menu_template;
 
-import android.app.AlertDialog;
 import android.content.Context;
 import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.Arrays;
-import java.util.List;
 import java.util.Random;
-import java.util.Stack;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 public class GameLogic {
 
@@ -17,64 +18,150 @@ public class GameLogic {
     private Context context;
     private SettingsDatabase settingsDatabase;
     private SecondListener secondListener;
-    public final ESPSteering espSteering;
-    public final PhoneSteering phoneSteering;
-    public int[][] labyrinth;
-
-    private float temperature;
-    private boolean gameRunning;
-    private int playTime;
+    // Created for the selected steering method on first use, see steeringSourceFor()
+    private SteeringSource steeringSource;
+    private String steeringSourceType;
+    // Only touched by the game thread, everyone else reads the copy in the snapshot
+    private int[][] labyrinth;
+
+    // Rolling windows of the temperature, the first one is the short-term trend
+    public static final long[] TEMPERATURE_WINDOWS_MILLIS = {10_000, 60_000};
+    // Index into TEMPERATURE_WINDOWS_MILLIS of the window shown in the HUD
+    private static final int HUD_TEMPERATURE_WINDOW = 1;
+    // The single handoff of the game state to the render and HUD code, replaced as a whole by the game thread
+    private volatile GameSnapshot snapshot = GameSnapshot.EMPTY;
+
+    private final TemperatureSeries temperatureSeries = new TemperatureSeries(TEMPERATURE_WINDOWS_MILLIS);
+    private final GameClock gameClock = new GameClock();
+    private volatile boolean gameRunning;
+    private final GameHistoryRecorder gameHistoryRecorder;
+    private boolean gameRecorded;
     private int size = 10;
-
-    private static final float MAX_ACCELEROMETER_RANGE = 9.81f; // Maximum range of accelerometer sensor (in m/s^2)
-    private static final float MAX_GYROSCOPE_RANGE = 2000.0f; // Maximum range of gyroscope sensor (in degrees/second)
-    private static final float ALPHA = 0.5f; // Low-pass filter constant
-    private static final float ACCELEROMETER_WEIGHT = 0.7f; // Weight for accelerometer data in combined direction calculation
-    private static final float GYROSCOPE_WEIGHT = 0.3f; // Weight for gyroscope data in combined direction calculation
-    private static final float DEAD_ZONE_THRESHOLD = 0.05f; // Threshold to define the dead zone for sensor data (adjust as needed)
-    private static final float TILT_THRESHOLD = 0.1f; // Threshold for tilt detection (adjust as needed)
-    private static final float LOCK_THRESHOLD = 0.2f; // Threshold to lock/unlock the direction (adjust as needed)
-    private float lastAccX, lastAccY, lastAccZ; // Last accelerometer values
-    private long lastUpdateTime; // Time of the last update
-    private float[] highPassAcc = new float[3]; // High-pass filter output for accelerometer data
-    private float[] gyroOrientation = new float[3];
-    private boolean isDirectionLocked = false;
-    private int lastValidDirection = -1;
-    private int currentDirection = -1;
+    private double targetDifficulty = Double.NaN; // NaN for a labyrinth of any difficulty
+
+    // The run as 2 bits per move, stored with the game and replayed as a ghost on the same labyrinth later
+    private static final int MOVE_LOG_EXPECTED_MOVES = 1024;
+    private final MoveLog moveLog = new MoveLog(MOVE_LOG_EXPECTED_MOVES);
+    private MoveLog.Replay ghost; // The best previous run on this labyrinth, null if there is none
+
+    // Fed by the steering classes on every sensor sample, the game step only takes the moves that are due
+    private final AutoRepeatMapper autoRepeatMapper = new AutoRepeatMapper();
+    // Extrapolates the board's tilt by its measured sensor->app delay before the mapper sees it
+    private final TiltPredictor tiltPredictor = new TiltPredictor(autoRepeatMapper);
+    private long labyrinthSeed;
+
+    // Endless mode: the labyrinth is a fixed window that scrolls while the player moves forward
+    private static final int ENDLESS_CELLS = 10;
+    private static final int ENDLESS_VISIBLE_ROWS = 21;
+    private boolean endless;
+    private EndlessLabyrinth endlessLabyrinth;
+    private long spectatedWindowShifts;
+
+    // Labyrinths from LabyrinthFactory.MAPPED_MIN_SIZE on are read from a file, only a window around the player is drawn
+    private static final int MAPPED_WINDOW_SIZE = 21;
+    private static final int MAPPED_WINDOW_MARGIN = 4; // The window is re-centered when the player gets this close to its edge
+    private MappedLabyrinth mappedLabyrinth;
+    private int mappedWindowRow, mappedWindowColumn;
+    private long mappedWindowShifts;
+    // Overview of the whole mapped labyrinth, the player reveals the cells around them while moving
+    private static final int MINIMAP_SIZE = 64; // Blocks per side, at most
+    private static final int MINIMAP_REVEAL_RADIUS = MAPPED_WINDOW_SIZE / 2;
+    private MinimapPyramid minimapPyramid;
+
+    // Sensor read -> arrival -> move -> pixel, see EndToEndLatency
+    private static final long LATENCY_LOG_INTERVAL_MILLIS = 5000;
+    private final EndToEndLatency latency = new EndToEndLatency();
+    private volatile long undrawnMoveSampleMillis = -1;
+    private long lastLatencyLog;
+
+    // Tells the board how fast to publish, see SensorRateControl
+    private final SensorRateControl sensorRateControl = new SensorRateControl();
+    private long lastMoveMillis;
+    private final SpectatorStream spectatorStream = new SpectatorStream(SpectatorStream.DEFAULT_KEYFRAME_INTERVAL_MILLIS);
 
 
     private Handler handler; // Handler to run code on the main thread
+    private volatile AlertListener alertListener;
 
 
+    /**
+     * Only sets up the object, start() does the slow part
+     */
     public GameLogic(Context context, SettingsDatabase settingsDatabase) {
         this.context = context;
-        handler = new Handler();
+        // Not necessarily created on the main thread, see GameSession
+        handler = new Handler(Looper.getMainLooper());
         this.mqttManager = new MqttManager("game_logic");
 
         secondListener = new SecondListener();
         mqttManager.setCallbackListener(secondListener);
-        mqttManager.connect(settingsDatabase, "game_logic");
 
-        this.espSteering = new ESPSteering(context);
-        this.phoneSteering = new PhoneSteering(context);
-        this.settingsDatabase = SettingsDatabase.getInstance(context);
-
-        this.playTime = 0;
-        this.temperature =0;
-        this.size = Integer.parseInt(settingsDatabase.getSetting(SettingsDatabase.COLUMN_LABYRINTH_SIZE));
+        this.settingsDatabase = settingsDatabase;
+        this.gameHistoryRecorder = GameHistoryRecorder.getInstance(context);
+    }
 
+    /**
+     * Gets the game ready in stages that run in parallel on the executor, each as soon as the ones it needs are done:
+     * settings, broker (connect, subscribe), labyrinth (needs settings), sensors, spectators (needs broker and
+     * labyrinth) and ghost (needs labyrinth). So the startup takes as long as the slowest of them, not their sum.
+     * The stages only touch their own fields and the returned future orders them before anything the caller does
+     * afterwards.
+     *
+     * @return completes when the game can start, or exceptionally if a stage failed
+     */
+    public CompletableFuture<Void> start(String steeringType, Executor executor) {
+        StartupPipeline startup = new StartupPipeline(executor);
+        CompletableFuture<Void> settings = startup.stage("settings", this::loadSettings);
+        CompletableFuture<Void> broker = startup.stage("broker", this::connectBroker);
+        CompletableFuture<Void> labyrinthReady = startup.stage("labyrinth", () -> {
+            generateLabyrinth();
+            publishSnapshot(true);
+            Log.d("Labyrinth", "Labyrinth of size " + size + " with seed " + labyrinthSeed);
+        }, settings);
+        startup.stage("sensors", () -> startSensors(steeringType));
+        startup.stage("spectators", this::publishSpectatorKeyframe, broker, labyrinthReady);
+        startup.stage("ghost", this::loadGhost, labyrinthReady);
+        return startup.finish().whenComplete((ignored, error) -> Log.d("Startup", startup.report()));
+    }
 
-        mqttManager.publishToTopic("0", Constants.FINISHED_TOPIC);
-        mqttManager.subscribeToTopic(Constants.TEMP_TOPIC);
+    private void loadSettings() {
+        String sizeSetting = settingsDatabase.getSetting(SettingsDatabase.COLUMN_LABYRINTH_SIZE);
+        this.endless = SettingsDatabase.LABYRINTH_SIZE_ENDLESS.equalsIgnoreCase(sizeSetting);
+        if (!endless) {
+            this.size = SettingsDatabase.parseLabyrinthSize(sizeSetting);
+            this.targetDifficulty = SettingsDatabase.parseLabyrinthDifficulty(sizeSetting);
+        }
+    }
 
+    /**
+     * Loads the fastest finished run on this labyrinth, if there is one. Endless and mapped labyrinths only draw
+     * a moving window, their runs are not replayed.
+     */
+    private void loadGhost() {
+        if (endless || mappedLabyrinth != null) {
+            return;
+        }
+        byte[] bestRun = GameHistoryDatabase.getInstance(context).getBestMoveLog(size, labyrinthSeed);
+        if (bestRun == null) {
+            return;
+        }
+        int start = LabyrinthRules.findCell(labyrinth, LabyrinthRules.PLAYER);
+        int columns = labyrinth[0].length;
         try {
-            generateLabyrinth();
-            Log.d("Labyrinth", "Labyrinth: " + Arrays.deepToString(this.labyrinth));
-        } catch (Exception e) {
-            Log.d("Labyrinth", "Problem generating Labyrinth in GameLogic.java", e);
+            ghost = new MoveLog.Replay(MoveLog.fromBytes(bestRun), start / columns, start % columns);
+            Log.d("Ghost", "Replaying the best run on this labyrinth");
+        } catch (IllegalArgumentException e) {
+            Log.d("Ghost", "The best run on this labyrinth can't be replayed", e);
         }
     }
 
+    private void connectBroker() {
+        mqttManager.connect(settingsDatabase, "game_logic");
+        mqttManager.publishToTopic("0", Constants.FINISHED_TOPIC);
+        mqttManager.subscribeToTopic(Constants.TEMP_TOPIC);
+        mqttManager.subscribeToTopic(Constants.CONTROL_ACK_TOPIC);
+    }
+
 
 
     private class SecondListener implements MqttCallbackListener {
@@ -83,6 +170,11 @@ public class GameLogic {
             if (topic.equals(Constants.TEMP_TOPIC)) {
                 Log.d(Constants.TEMP_TOPIC, message);
                 parseTemperature(message);
+            } else if (topic.equals(Constants.CONTROL_ACK_TOPIC)) {
+                if (sensorRateControl.onAck(message)) {
+                    Log.d("SensorRate", "Board applied " + sensorRateControl.getAppliedRate() + " samples/s in batches of "
+                            + sensorRateControl.getAppliedBatchSize());
+                }
             }
         }
 
@@ -104,36 +196,63 @@ public class GameLogic {
     }
 
     public void parseTemperature(String message){
-        this.temperature = Float.parseFloat(message);
-        if(gameRunning){
-            playTime+=1;
-        }
+        temperatureSeries.add(SystemClock.elapsedRealtime(), Float.parseFloat(message));
     }
 
     public void setGameRunning(boolean gameRunning){
         this.gameRunning = gameRunning;
+        if (gameRunning) {
+            gameClock.resume();
+        } else {
+            gameClock.pause();
+            updateSensorRate(usesBoard(steeringSourceType) ? SensorRateControl.STATE_PAUSED : SensorRateControl.STATE_MENU);
+        }
     }
 
     public boolean getGameRunning(){
         return gameRunning;
     }
 
-    public int getPlayTime(){
-        return playTime;
+    /**
+     * @return the time the game has been running in milliseconds, measured on a monotonic clock
+     */
+    public long getPlayTime(){
+        return gameClock.getElapsedMillis();
     }
 
+    /**
+     * @return the latest temperature reading or 0 before the first one
+     */
     public float getTemperature(){
-        return temperature;
+        float latest = temperatureSeries.getLatest();
+        return Float.isNaN(latest) ? 0 : latest;
+    }
+
+    public TemperatureSeries getTemperatureSeries(){
+        return temperatureSeries;
     }
 
     public boolean gameStep(String steeringType) {
-        Log.d("gameLoop", "Game Loop started");
-        startSensors(steeringType);
-        Log.d("gameLoop", "Sensors started");
+        if (!gameRecorded) {
+            gameHistoryRecorder.startGame(size, steeringType, labyrinthSeed);
+            moveLog.reset(labyrinthSeed);
+            gameRecorded = true;
+        }
 
         int playerDirection = getPlayerDirection(steeringType);
-        Log.d("playerDirection", String.valueOf(playerDirection));
-        labyrinth = movePlayer(labyrinth, playerDirection);
+        int moveResult = LabyrinthRules.MOVE_INVALID_DIRECTION;
+        if (playerDirection != LabyrinthRules.DIRECTION_NONE) {
+            moveResult = movePlayerInLabyrinth(playerDirection);
+            logMoveResult(moveResult, playerDirection);
+            recordMove(moveResult, playerDirection);
+            recordMoveLatency(moveResult);
+        }
+        publishSpectatorUpdate(moveResult, playerDirection);
+        updateSensorRate(sensorRateState(steeringType));
+        if (ghost != null) {
+            ghost.advanceTo(getPlayTime());
+        }
+        publishSnapshot(moveResult == LabyrinthRules.MOVE_OK || moveResult == LabyrinthRules.MOVE_FINISHED);
 
         if (isLabyrinthEmpty(labyrinth)) {
 
@@ -147,417 +266,404 @@ public class GameLogic {
 
     }
 
-    private float[] getValuesFromESPSensor() {
-        // Replace with your implementation of getting values from ESP steering
-        float accX = espSteering.getAccX();
-        float accY = espSteering.getAccY();
-        float accZ = espSteering.getAccZ();
-        float gyroX = espSteering.getGyroX();
-        float gyroY = espSteering.getGyroY();
-        float gyroZ = espSteering.getGyroZ();
-        Log.d("ESPSensor", "ESPSensorValue: "+ Arrays.toString(new float[]{accX, accY, accZ, gyroX, gyroY, gyroZ}));
-
-        return new float[]{accX, accY, accZ, gyroX, gyroY, gyroZ};
+    /**
+     * Hands the current state to the render and HUD code. Only makes a new snapshot if the labyrinth changed
+     * or the HUD would show something else.
+     */
+    private void publishSnapshot(boolean labyrinthChanged) {
+        GameSnapshot next = snapshot;
+        if (labyrinthChanged) {
+            next = next.withLabyrinth(labyrinth);
+        }
+        next = next.withGhost(ghostCell());
+        if (minimapPyramid != null && (next.getMinimap() == null || next.getMinimap().getVersion() != minimapPyramid.getVersion())) {
+            next = next.withMinimap(minimapPyramid.toMinimap(MINIMAP_SIZE));
+        }
+        RollingWindow hudWindow = temperatureSeries.getWindow(HUD_TEMPERATURE_WINDOW);
+        hudWindow.evictExpired(SystemClock.elapsedRealtime());
+        next = next.withHud(getPlayTime(), getTemperature(), hudWindow.getMin(), hudWindow.getMean(), hudWindow.getMax());
+        if (next != snapshot) {
+            snapshot = next;
+        }
     }
 
-    private float[] getValuesFromPhoneSensor() {
-        // Replace with your implementation of getting values from ESP steering
-        float accX = phoneSteering.getAccX();
-        float accY = phoneSteering.getAccY();
-        float accZ = phoneSteering.getAccZ();
-        float gyroX = phoneSteering.getGyroX();
-        float gyroY = phoneSteering.getGyroY();
-        float gyroZ = phoneSteering.getGyroZ();
-
-        Log.d("PhoneSensor", "PhoneSensorValue: "+ Arrays.toString(new float[]{accX, accY, accZ, gyroX, gyroY, gyroZ}));
-
-        return new float[]{accX, accY, accZ, gyroX, gyroY, gyroZ};
+    /**
+     * @return the index (row * columns + column) of the ghost, -1 if there is none or it is off the labyrinth
+     */
+    private int ghostCell() {
+        if (ghost == null || ghost.isFinished()) {
+            return -1;
+        }
+        int columns = labyrinth[0].length;
+        if (ghost.getRow() < 0 || ghost.getRow() >= labyrinth.length || ghost.getColumn() < 0 || ghost.getColumn() >= columns) {
+            return -1;
+        }
+        return ghost.getRow() * columns + ghost.getColumn();
     }
 
+    /**
+     * @return the latest state of the game, safe to read from any thread
+     */
+    public GameSnapshot getSnapshot() {
+        return snapshot;
+    }
 
-    private int parsePlayerDirection(float[] sensorData) {
-        float accelerometerX = sensorData[0];
-        float accelerometerY = sensorData[1];
-        float accelerometerZ = sensorData[2];
-        float gyroX = sensorData[3];
-        float gyroY = sensorData[4];
-        float gyroZ = sensorData[5];
-
-        // Normalize accelerometer and gyroscope data
-        float normalizedAccX = accelerometerX / MAX_ACCELEROMETER_RANGE;
-        float normalizedAccY = accelerometerY / MAX_ACCELEROMETER_RANGE;
-        float normalizedAccZ = accelerometerZ / MAX_ACCELEROMETER_RANGE;
-
-        float normalizedGyroX = gyroX / MAX_GYROSCOPE_RANGE;
-        float normalizedGyroY = gyroY / MAX_GYROSCOPE_RANGE;
-        float normalizedGyroZ = gyroZ / MAX_GYROSCOPE_RANGE;
-
-        // Apply high-pass filter to accelerometer data
-        highPassAcc[0] = ALPHA * (highPassAcc[0] + normalizedAccX - lastAccX);
-        highPassAcc[1] = ALPHA * (highPassAcc[1] + normalizedAccY - lastAccY);
-        highPassAcc[2] = ALPHA * (highPassAcc[2] + normalizedAccZ - lastAccZ);
-
-        // Calculate time elapsed since the last update
-        long currentTime = System.currentTimeMillis();
-        float deltaTime = (currentTime - lastUpdateTime) / 1000.0f;
-        lastUpdateTime = currentTime;
-
-        // Integrate gyroscope data using time-based integration
-        gyroOrientation[0] += normalizedGyroX * deltaTime;
-        gyroOrientation[1] += normalizedGyroY * deltaTime;
-        gyroOrientation[2] += normalizedGyroZ * deltaTime;
+    /**
+     * @return the next move that is due (one of the LabyrinthRules.DIRECTION_* constants) or DIRECTION_NONE
+     */
+    public int getPlayerDirection(String steeringType){
+        tiltPredictor.setLeadMillis(predictionLeadMillis(steeringType));
+        steeringSourceFor(steeringType).drainSamples(tiltPredictor);
+        return autoRepeatMapper.pollMove();
+    }
 
-        // Apply dead zone to prevent small fluctuations from triggering movements
-        float accelMagnitude = (float) Math.sqrt(highPassAcc[0] * highPassAcc[0] + highPassAcc[1] * highPassAcc[1] + highPassAcc[2] * highPassAcc[2]);
-        float gyroMagnitude = (float) Math.sqrt(gyroOrientation[0] * gyroOrientation[0] + gyroOrientation[1] * gyroOrientation[1] + gyroOrientation[2] * gyroOrientation[2]);
+    /**
+     * @return the mean sensor->app delay of the board's samples, 0 for the phone or before the board's clock is synchronized
+     */
+    private long predictionLeadMillis(String steeringType) {
+        if (!usesBoard(steeringType)) {
+            return 0;
+        }
+        RollingWindow transport = latency.getTransport();
+        transport.evictExpired(SystemClock.elapsedRealtime());
+        float mean = transport.getMean();
+        return Float.isNaN(mean) ? 0 : Math.round(mean);
+    }
 
-        if (accelMagnitude < DEAD_ZONE_THRESHOLD) {
-            highPassAcc[0] = 0.0f;
-            highPassAcc[1] = 0.0f;
-            highPassAcc[2] = 0.0f;
-        }
+    public void startSensors(String steeringType) {
+        steeringSourceFor(steeringType).startSensors();
+        Log.d("gameLoop", steeringType + " sensors started");
+    }
 
-        if (gyroMagnitude < DEAD_ZONE_THRESHOLD) {
-            gyroOrientation[0] = 0.0f;
-            gyroOrientation[1] = 0.0f;
-            gyroOrientation[2] = 0.0f;
+    public void stopSensors(String steeringType) {
+        if (steeringSource != null) {
+            steeringSource.stopSensors();
         }
+        updateSensorRate(SensorRateControl.STATE_MENU);
+    }
 
-        // Combine accelerometer and gyroscope data to determine direction
-        float combinedX = ACCELEROMETER_WEIGHT * highPassAcc[0] + GYROSCOPE_WEIGHT * gyroOrientation[0];
-        float combinedY = ACCELEROMETER_WEIGHT * highPassAcc[1] + GYROSCOPE_WEIGHT * gyroOrientation[1];
-        float combinedZ = ACCELEROMETER_WEIGHT * highPassAcc[2] + GYROSCOPE_WEIGHT * gyroOrientation[2];
-
-        // Adjust the thresholds based on your specific requirements
-        final float tiltThreshold = TILT_THRESHOLD;
-        final float lockThreshold = LOCK_THRESHOLD;
+    private static boolean usesBoard(String steeringType) {
+        return SteeringSource.ESP32.equals(steeringType) || SteeringSource.FUSED.equals(steeringType);
+    }
 
-        // Check if the current direction is locked
-        if (isDirectionLocked) {
-            // Check if the tilt threshold in the opposite direction is crossed
-            if (Math.abs(combinedX) < lockThreshold && Math.abs(combinedY) < lockThreshold) {
-                // Unlock the direction
-                isDirectionLocked = false;
-                // Reset gyroscope and accelerometer orientation
-                resetOrientation();
-            }
-        } else {
-            // Check the combined values to determine the direction
-            if (Math.abs(combinedX) > tiltThreshold && Math.abs(combinedX) > Math.abs(combinedY)) {
-                if (combinedX > 0) {
-                    // Player is tilting the device to the right
-                    currentDirection = 2;
-                    isDirectionLocked = true;
-                } else {
-                    // Player is tilting the device to the left
-                    currentDirection = 3;
-                    isDirectionLocked = true;
-                }
-            } else if (Math.abs(combinedY) > tiltThreshold) {
-                if (combinedY > 0) {
-                    // Player is tilting the device forward
-                    currentDirection = 0;
-                    isDirectionLocked = true;
-                } else {
-                    // Player is tilting the device backward
-                    currentDirection = 1;
-                    isDirectionLocked = true;
-                }
-            }
+    private int sensorRateState(String steeringType) {
+        if (!usesBoard(steeringType)) {
+            return SensorRateControl.STATE_MENU;
         }
-
-        if (currentDirection != -1) {
-            resetOrientation();
-            // Update the last valid direction
-            lastValidDirection = currentDirection;
+        if (!gameRunning) {
+            return SensorRateControl.STATE_PAUSED;
         }
-
-        return lastValidDirection;
+        boolean moving = autoRepeatMapper.getActiveDirection() != LabyrinthRules.DIRECTION_NONE
+                || SystemClock.elapsedRealtime() - lastMoveMillis < SensorRateControl.IDLE_AFTER_MILLIS;
+        return moving ? SensorRateControl.STATE_MOVING : SensorRateControl.STATE_IDLE;
     }
 
-    private void resetOrientation() {
-        highPassAcc[0] = 0.0f;
-        highPassAcc[1] = 0.0f;
-        highPassAcc[2] = 0.0f;
-
-        gyroOrientation[0] = 0.0f;
-        gyroOrientation[1] = 0.0f;
-        gyroOrientation[2] = 0.0f;
-    }
-
-
-
-
-    public int getPlayerDirection(String steeringType){
-        float[] sensor_data = new float[6];
-        switch (steeringType) {
-            case "ESP32":
-                sensor_data = getValuesFromESPSensor();
-                break;
-            case "Phone":
-                sensor_data = getValuesFromPhoneSensor();
-                break;
+    /**
+     * Sends the publish rate for the state to the board, if it does not have it yet. The control topic is
+     * retained (see MqttManager), so the board also gets it after reconnecting.
+     */
+    private void updateSensorRate(int state) {
+        String command = sensorRateControl.update(state, SystemClock.elapsedRealtime());
+        if (command != null) {
+            mqttManager.publishToTopic(command, Constants.CONTROL_TOPIC);
         }
-        return parsePlayerDirection(sensor_data);
     }
 
-    public void startSensors(String steeringType) {
-        switch (steeringType) {
-            case "ESP32":
-                this.espSteering.startSensors();
-                Log.d("gameLoop", "ESPSensor started");
-                break;
-            case "Phone":
-                this.phoneSteering.startSensors();
-                Log.d("gameLoop", "PhoneSensor started");
-                break;
-            default:
-                Log.d("gameLoop", "Steering Type unknown " + steeringType);
+    /**
+     * Returns the source for the steering method, creating it on first use. Switching the method stops the old source.
+     */
+    private SteeringSource steeringSourceFor(String steeringType) {
+        if (steeringSource == null || !steeringType.equals(steeringSourceType)) {
+            if (steeringSource != null) {
+                steeringSource.stopSensors();
+            }
+            steeringSource = createSteeringSource(steeringType);
+            steeringSourceType = steeringType;
         }
+        return steeringSource;
     }
 
-    public void stopSensors(String steeringType) {
+    private SteeringSource createSteeringSource(String steeringType) {
         switch (steeringType) {
-            case "ESP32":
-                this.espSteering.stopSensors();
-                break;
-            case "Phone":
-                this.phoneSteering.stopSensors();
-                break;
+            case SteeringSource.ESP32:
+                return new ESPSteering(context, latency, this::showAlert);
+            case SteeringSource.FUSED:
+                return new FusedSteering(new ESPSteering(context, latency, this::showAlert), new PhoneSteering(context, true));
+            case SteeringSource.PHONE:
+                return new PhoneSteering(context, true);
+            default:
+                Log.d("gameLoop", "Steering Type unknown " + steeringType + ", using the phone");
+                return new PhoneSteering(context, true);
         }
     }
 
-    public int[][] movePlayer(int[][] labyrinth, int playerDirection) {
-        int playerX = -1;
-        int playerY = -1;
-
-        // Find the current position of the player (value 2) in the labyrinth
-        for (int i = 0; i < labyrinth.length; i++) {
-            for (int j = 0; j < labyrinth[i].length; j++) {
-                if (labyrinth[i][j] == 2) {
-                    playerX = i;
-                    playerY = j;
-                    break;
-                }
+    private int movePlayerInLabyrinth(int playerDirection) {
+        if (endless) {
+            return endlessLabyrinth.movePlayer(playerDirection);
+        }
+        if (mappedLabyrinth == null) {
+            return LabyrinthRules.movePlayer(labyrinth, playerDirection);
+        }
+        int moveResult = mappedLabyrinth.movePlayer(playerDirection);
+        if (moveResult == LabyrinthRules.MOVE_OK) {
+            updateMappedWindow();
+            minimapPyramid.movePlayer(mappedLabyrinth.getPlayerRow(), mappedLabyrinth.getPlayerColumn(), MINIMAP_REVEAL_RADIUS);
+        } else if (moveResult == LabyrinthRules.MOVE_FINISHED) {
+            // Same win signal as LabyrinthRules.movePlayer(), the file itself stays as it is
+            for (int[] row : labyrinth) {
+                Arrays.fill(row, LabyrinthRules.EMPTY);
             }
         }
+        return moveResult;
+    }
 
-        // Check if the new position is in the vicinity of the finish (value 3)
-        int finishX = -1;
-        int finishY = -1;
-
-        // Find the position of the finish (value 3) in the labyrinth
-        for (int i = 0; i < labyrinth.length; i++) {
-            for (int j = 0; j < labyrinth[i].length; j++) {
-                if (labyrinth[i][j] == 3) {
-                    finishX = i;
-                    finishY = j;
-                    break;
-                }
-            }
-        }
+    /**
+     * Copies the cells around the player from the mapped file into the drawn window, which only moves
+     * when the player gets close to its edge
+     */
+    private void updateMappedWindow() {
+        int playerRow = mappedLabyrinth.getPlayerRow();
+        int playerColumn = mappedLabyrinth.getPlayerColumn();
+        int windowRow = mappedWindowRow;
+        int windowColumn = mappedWindowColumn;
+        if (playerRow - windowRow < MAPPED_WINDOW_MARGIN || playerRow - windowRow >= MAPPED_WINDOW_SIZE - MAPPED_WINDOW_MARGIN) {
+            windowRow = MappedLabyrinth.centeredWindowStart(playerRow, MAPPED_WINDOW_SIZE, mappedLabyrinth.getRows());
+        }
+        if (playerColumn - windowColumn < MAPPED_WINDOW_MARGIN || playerColumn - windowColumn >= MAPPED_WINDOW_SIZE - MAPPED_WINDOW_MARGIN) {
+            windowColumn = MappedLabyrinth.centeredWindowStart(playerColumn, MAPPED_WINDOW_SIZE, mappedLabyrinth.getColumns());
+        }
+        if (windowRow != mappedWindowRow || windowColumn != mappedWindowColumn) {
+            mappedWindowRow = windowRow;
+            mappedWindowColumn = windowColumn;
+            mappedWindowShifts++;
+        }
+        mappedLabyrinth.copyWindow(mappedWindowRow, mappedWindowColumn, labyrinth);
+    }
 
-        if (playerX == -1 || playerY == -1) {
-            // Player not found in the labyrinth
-            Log.d("movePlayer", "Player not found in the labyrinth");
-            return labyrinth;
+    /**
+     * @return a counter that changes whenever the drawn window shows a different part of the labyrinth
+     */
+    private long windowShifts() {
+        if (endless) {
+            return endlessLabyrinth.getScrolledRows();
         }
+        return mappedWindowShifts;
+    }
 
-        // Determine the new position based on the player's direction
-        int newPlayerX = playerX;
-        int newPlayerY = playerY;
+    public int[][] movePlayer(int[][] labyrinth, int playerDirection) {
+        logMoveResult(LabyrinthRules.movePlayer(labyrinth, playerDirection), playerDirection);
+        return labyrinth;
+    }
 
-        switch (playerDirection) {
-            case 0: // Right direction
-                newPlayerY++;
+    private void logMoveResult(int moveResult, int playerDirection) {
+        switch (moveResult) {
+            case LabyrinthRules.MOVE_PLAYER_NOT_FOUND:
+                Log.d("movePlayer", "Player not found in the labyrinth");
                 break;
-            case 1: // Left direction
-                newPlayerY--;
+            case LabyrinthRules.MOVE_INVALID_DIRECTION:
+                Log.d("movePlayer", "Invalid direction: " + playerDirection);
                 break;
-            case 2: // Forward direction
-                newPlayerX--;
+            case LabyrinthRules.MOVE_OUT_OF_BOUNDS:
+                Log.d("movePlayer", "Player is out of bounds");
                 break;
-            case 3: // Backward direction
-                newPlayerX++;
+            case LabyrinthRules.MOVE_BLOCKED_BY_WALL:
+                Log.d("movePlayer", "Player cannot move to a wall");
+                break;
+            case LabyrinthRules.MOVE_FINISHED:
+                Log.d("movePlayer", "Player is in the vicinity of the finish");
                 break;
-            default:
-                // Invalid direction
-                Log.d("movePlayer", "Invalid direction: " + playerDirection);
-                return labyrinth;
         }
+    }
 
-        // Check if the new position is within the bounds of the labyrinth
-        if (newPlayerX < 0 || newPlayerX >= labyrinth.length || newPlayerY < 0 || newPlayerY >= labyrinth[0].length) {
-            // Player is out of bounds
-            Log.d("movePlayer", "Player is out of bounds");
-            return labyrinth;
+    /**
+     * Sends accepted moves to spectators and repeats the keyframe periodically for late joiners
+     */
+    private void publishSpectatorUpdate(int moveResult, int playerDirection) {
+        if (moveResult == LabyrinthRules.MOVE_FINISHED) {
+            mqttManager.publishToTopic(spectatorStream.finished(), Constants.SPECTATE_TOPIC);
+            return;
         }
-
-        // Check if the new position is a wall (value 1)
-        if (labyrinth[newPlayerX][newPlayerY] == 1) {
-            // Player cannot move to a wall
-            Log.d("movePlayer", "Player cannot move to a wall");
-            return labyrinth;
+        if (moveResult == LabyrinthRules.MOVE_OK) {
+            mqttManager.publishToTopic(spectatorStream.move(playerDirection), Constants.SPECTATE_TOPIC);
         }
-
-        // Calculate the difference between the player's position and the finish's position
-        int deltaX = Math.abs(newPlayerX - finishX);
-        int deltaY = Math.abs(newPlayerY - finishY);
-
-        // Check if the new position is the winning position (value 3)
-        if ((deltaX == 0 && deltaY == 1) || (deltaX == 1 && deltaY == 0)) {
-            // Player is in the vicinity of the finish
-            Log.d("movePlayer", "Player is in the vicinity of the finish");
-            // Set all elements in the labyrinth to 0 (empty space)
-            for (int[] ints : labyrinth) {
-                Arrays.fill(ints, 0);
-            }
-            return labyrinth;
+        boolean scrolled = windowShifts() != spectatedWindowShifts;
+        if (scrolled || spectatorStream.isKeyframeDue(System.currentTimeMillis())) {
+            publishSpectatorKeyframe();
         }
-
-        // Move the player to the new position
-        labyrinth[playerX][playerY] = 0; // Set the current position to 0 (empty space)
-        labyrinth[newPlayerX][newPlayerY] = 2; // Set the new position to 2 (player)
-
-        return labyrinth;
     }
 
-    public boolean isLabyrinthEmpty(int[][] labyrinth) {
-        for (int i = 0; i < labyrinth.length; i++) {
-            for (int j = 0; j < labyrinth[i].length; j++) {
-                if (labyrinth[i][j] != 0) {
-                    return false; // Found a non-zero element, labyrinth is not empty
-                }
-            }
+    private void recordMoveLatency(int moveResult) {
+        if (moveResult != LabyrinthRules.MOVE_OK && moveResult != LabyrinthRules.MOVE_FINISHED) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        lastMoveMillis = now;
+        long sampleMillis = autoRepeatMapper.getPolledMoveSampleMillis();
+        latency.recordMove(now, sampleMillis);
+        undrawnMoveSampleMillis = sampleMillis;
+        if (now - lastLatencyLog >= LATENCY_LOG_INTERVAL_MILLIS) {
+            lastLatencyLog = now;
+            Log.d("Latency", latency.summary(now) + ", predicted " + tiltPredictor.getLeadMillis() + " ms ahead on "
+                    + tiltPredictor.getPredictedSamples() + " samples");
         }
-        return true; // All elements are zeros, labyrinth is empty
     }
 
+    /**
+     * To be called on the UI thread once a drawn labyrinth is on screen, completes the latency of the latest move
+     */
+    public void onLabyrinthDrawn() {
+        long sampleMillis = undrawnMoveSampleMillis;
+        if (sampleMillis >= 0) {
+            undrawnMoveSampleMillis = -1;
+            latency.recordPixel(SystemClock.elapsedRealtime(), sampleMillis);
+        }
+    }
 
+    public EndToEndLatency getLatency() {
+        return latency;
+    }
 
-    private void generateLabyrinth() {
-        this.labyrinth = new int[size][size];
-
-        // Set all cells as walls
-        for (int i = 0; i < size; i++) {
-            for (int j = 0; j < size; j++) {
-                labyrinth[i][j] = 1;
-            }
+    private void recordMove(int moveResult, int playerDirection) {
+        if (moveResult == LabyrinthRules.MOVE_OK) {
+            gameHistoryRecorder.recordMove(getPlayTime(), playerDirection,
+                    playerCell());
+            moveLog.append(playerDirection, getPlayTime());
+        } else if (moveResult == LabyrinthRules.MOVE_FINISHED) {
+            gameHistoryRecorder.recordMove(getPlayTime(), playerDirection, -1);
+            moveLog.append(playerDirection, getPlayTime());
+            byte[] run = moveLog.toBytes();
+            gameHistoryRecorder.finishGame(getPlayTime(), true, run);
+            mqttManager.publishToTopic(run, Constants.RUN_TOPIC);
+            gameRecorded = false;
         }
+    }
 
-        // Choose a random starting point on the top boundary
-        int startX = 0;
-        int startY = getRandomNumber(1, size - 2);
-        labyrinth[startX][startY] = 2; // Mark the starting point as 2
-
-        // Choose a random ending point on the bottom boundary
-        int endX = size - 1;
-        int endY = getRandomNumber(1, size - 2);
-        labyrinth[endX][endY] = 3; // Mark the ending point as 3
-
-        // Create a stack to keep track of visited cells
-        Stack<int[]> stack = new Stack<>();
-        stack.push(new int[]{startX, startY});
-
-        while (!stack.isEmpty()) {
-            int[] currentCell = stack.peek();
-            int currentX = currentCell[0];
-            int currentY = currentCell[1];
-
-            // Get the unvisited neighbors of the current cell
-            List<int[]> unvisitedNeighbors = getUnvisitedNeighbors(currentX, currentY);
-            if (!unvisitedNeighbors.isEmpty()) {
-                // Choose a random unvisited neighbor
-                int[] randomNeighbor = unvisitedNeighbors.get(getRandomNumber(0, unvisitedNeighbors.size() - 1));
-                int neighborX = randomNeighbor[0];
-                int neighborY = randomNeighbor[1];
-
-                // Remove the wall between the current cell and the chosen neighbor
-                int wallX = (currentX + neighborX) / 2;
-                int wallY = (currentY + neighborY) / 2;
-                labyrinth[wallX][wallY] = 0;
-
-                labyrinth[neighborX][neighborY] = 0; // Mark the neighbor as part of the maze
-                stack.push(new int[]{neighborX, neighborY});
-            } else {
-                // All neighbors visited, backtrack
-                stack.pop();
-            }
+    /**
+     * @return the index (row * columns + column) of the player, in the whole labyrinth for mapped labyrinths
+     */
+    private int playerCell() {
+        if (mappedLabyrinth != null) {
+            return mappedLabyrinth.getPlayerRow() * mappedLabyrinth.getColumns() + mappedLabyrinth.getPlayerColumn();
         }
-                // Check if the end point has adjacent 0's, if not, regenerate the labyrinth
-                if (!hasAdjacentZeros(endX, endY)) {
-                    Log.d("Labyrinth", "Labyrinth before regen: " + Arrays.deepToString(this.labyrinth));
-                    generateLabyrinth();
-                }
-            }
+        return LabyrinthRules.findCell(labyrinth, LabyrinthRules.PLAYER);
+    }
 
-    private boolean hasAdjacentZeros(int x, int y) {
-        // Check the four cardinal directions
-        if (x > 0 && labyrinth[x - 1][y] == 0) {
-            return true; // There is a 0 to the north
-        }
-        if (x < size - 1 && labyrinth[x + 1][y] == 0) {
-            return true; // There is a 0 to the south
-        }
-        if (y > 0 && labyrinth[x][y - 1] == 0) {
-            return true; // There is a 0 to the west
-        }
-        if (y < size - 1 && labyrinth[x][y + 1] == 0) {
-            return true; // There is a 0 to the east
+    /**
+     * Records the current game as aborted, e.g. when the player leaves the game screen before reaching the finish
+     */
+    public void abortGame() {
+        if (gameRecorded) {
+            gameHistoryRecorder.finishGame(getPlayTime(), false, null);
+            gameRecorded = false;
         }
+    }
 
-        return false; // No adjacent 0's
+    private void publishSpectatorKeyframe() {
+        // Moves can't express scrolling, so endless and mapped games send a keyframe whenever their window moves.
+        // Their seed is not a generateLabyrinth() seed, so it is not shared.
+        spectatedWindowShifts = windowShifts();
+        boolean seedShared = !endless && mappedLabyrinth == null;
+        mqttManager.publishToTopic(spectatorStream.keyframe(labyrinth, labyrinthSeed, seedShared, System.currentTimeMillis()),
+                Constants.SPECTATE_TOPIC);
     }
 
+    public boolean isLabyrinthEmpty(int[][] labyrinth) {
+        return LabyrinthRules.isLabyrinthEmpty(labyrinth);
+    }
 
-    private List<int[]> getUnvisitedNeighbors(int x, int y) {
-        List<int[]> unvisitedNeighbors = new ArrayList<>();
 
-        // Check the four cardinal directions
-        if (x > 1 && labyrinth[x - 2][y] == 1) {
-            unvisitedNeighbors.add(new int[]{x - 2, y});
-        }
-        if (x < size - 2 && labyrinth[x + 2][y] == 1) {
-            unvisitedNeighbors.add(new int[]{x + 2, y});
-        }
-        if (y > 1 && labyrinth[x][y - 2] == 1) {
-            unvisitedNeighbors.add(new int[]{x, y - 2});
-        }
-        if (y < size - 2 && labyrinth[x][y + 2] == 1) {
-            unvisitedNeighbors.add(new int[]{x, y + 2});
-        }
 
-        return unvisitedNeighbors;
+    private void generateLabyrinth() throws IOException {
+        if (endless) {
+            this.labyrinthSeed = new Random().nextLong();
+            this.endlessLabyrinth = new EndlessLabyrinth(ENDLESS_CELLS, ENDLESS_VISIBLE_ROWS, new Random(labyrinthSeed));
+            this.labyrinth = endlessLabyrinth.getLabyrinth();
+            this.size = labyrinth[0].length;
+            return;
+        }
+        if (size >= LabyrinthFactory.MAPPED_MIN_SIZE) {
+            this.mappedLabyrinth = LabyrinthFactory.getInstance(context).takeMapped(size);
+            this.labyrinthSeed = mappedLabyrinth.getSeed();
+            this.labyrinth = new int[MAPPED_WINDOW_SIZE][MAPPED_WINDOW_SIZE];
+            this.mappedWindowRow = MappedLabyrinth.centeredWindowStart(mappedLabyrinth.getPlayerRow(), MAPPED_WINDOW_SIZE, mappedLabyrinth.getRows());
+            this.mappedWindowColumn = MappedLabyrinth.centeredWindowStart(mappedLabyrinth.getPlayerColumn(), MAPPED_WINDOW_SIZE, mappedLabyrinth.getColumns());
+            updateMappedWindow();
+            long minimapStart = SystemClock.elapsedRealtime();
+            MappedLabyrinth mapped = mappedLabyrinth;
+            this.minimapPyramid = new MinimapPyramid(mapped.getRows(), mapped.getColumns(),
+                    mapped.getFinishRow(), mapped.getFinishColumn(), mapped::isWall);
+            minimapPyramid.movePlayer(mapped.getPlayerRow(), mapped.getPlayerColumn(), MINIMAP_REVEAL_RADIUS);
+            Log.d("Labyrinth", "Minimap with " + minimapPyramid.getLevelCount() + " levels built in "
+                    + (SystemClock.elapsedRealtime() - minimapStart) + " ms");
+            return;
+        }
+        // Usually pre-generated in the background, the seed is kept so spectators (and anyone else) can reproduce it
+        LabyrinthFactory factory = LabyrinthFactory.getInstance(context);
+        LabyrinthPool.PooledLabyrinth pooled = Double.isNaN(targetDifficulty)
+                ? factory.take(size) : factory.takeTargeted(size, targetDifficulty);
+        this.labyrinthSeed = pooled.getSeed();
+        this.labyrinth = pooled.getLabyrinth();
     }
 
-    private int getRandomNumber(int min, int max) {
-        Random random = new Random();
-        return random.nextInt(max - min + 1) + min;
-    }
 
 
+    /**
+     * @param alertListener shows the alerts of the game (e.g. the win or a lost connection), null to only log them
+     */
+    public void setAlertListener(AlertListener alertListener) {
+        this.alertListener = alertListener;
+    }
 
     private void showAlert(String title, String message) {
         handler.post(new Runnable() {
             @Override
             public void run() {
-                AlertDialog.Builder builder = new AlertDialog.Builder(context);
-                builder.setTitle(title)
-                        .setMessage(message)
-                        .setPositiveButton("OK", null)
-                        .show();
+                AlertListener listener = alertListener;
+                if (listener != null) {
+                    listener.onAlert(title, message);
+                } else {
+                    Log.d("GameLogic", title + ": " + message);
+                }
             }
         });
     }
 
-    public ESPSteering getEspSteering() {
-        return espSteering;
+    /**
+     * Throws away the samples buffered while the game was paused, so they don't turn into moves on resume.
+     * Game thread only.
+     */
+    public void discardSamples(String steeringType) {
+        steeringSourceFor(steeringType).drainSamples((values, timestampMillis) -> {
+        });
+    }
+
+    /**
+     * Stops the sensors, records an unfinished game as aborted and closes the connection and the labyrinth file.
+     * The object can't be used afterwards.
+     */
+    public void release() {
+        stopSensors(steeringSourceType);
+        abortGame();
+        mqttManager.disconnect();
+        if (mappedLabyrinth != null) {
+            try {
+                mappedLabyrinth.close();
+            } catch (IOException e) {
+                Log.d("Labyrinth", "Could not close the labyrinth file", e);
+            }
+        }
     }
 
-    public PhoneSteering getPhoneSteering() {
-        return phoneSteering;
+    /**
+     * @return the source of the current steering method, or null before the sensors were started
+     */
+    public SteeringSource getSteeringSource() {
+        return steeringSource;
     }
 
+    /**
+     * @return the labyrinth the game thread works on, other threads should use getSnapshot()
+     */
     public int[][] getLabyrinth() {
         return labyrinth;
     }
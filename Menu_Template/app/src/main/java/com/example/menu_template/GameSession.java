@@ -0,0 +1,206 @@
+package com.example.menu_template;
+
+import android.app.Application;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.lifecycle.AndroidViewModel;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Holds the game of the activity, so it outlives the game screen: the GameLogic with its broker connection and
+ * steering sources and the game loop live here instead of in SecondFragment. Leaving the game screen only pauses
+ * the game, coming back continues it right away. The sensors are stopped after SENSOR_GRACE_MILLIS in the menus,
+ * everything else is released when the activity finishes.
+ * <p>
+ * The game loop runs on its own HandlerThread and GameLogic is only used there (apart from onLabyrinthDrawn()
+ * and its startup stages, which run in parallel on startupExecutor before the first tick).
+ * The main thread never waits for it, all methods only post to it.
+ */
+public class GameSession extends AndroidViewModel {
+
+    private static final long TICK_MILLIS = 40;
+    private static final long SENSOR_GRACE_MILLIS = 60_000;
+
+    /**
+     * The game screen, attached while it is shown
+     */
+    public interface Listener extends AlertListener {
+        /**
+         * Called on the game thread after every step, compare the versions to skip unchanged parts
+         */
+        void onSnapshot(GameSnapshot snapshot);
+    }
+
+    private final HandlerThread gameThread;
+    private final Handler gameHandler;
+    // Alerts show dialogs, so they always go to the UI thread
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // The startup stages block on the network and the disk, each gets its own thread
+    private final ExecutorService startupExecutor = Executors.newCachedThreadPool();
+    private volatile Listener listener;
+
+    // Only changed and used by the game thread, except for onLabyrinthDrawn()
+    private volatile GameLogic gameLogic;
+    // Game thread only
+    private String steeringMethod;
+    private boolean finished;
+    private boolean attached;
+    private CompletableFuture<Void> startup;
+
+    private final Runnable tick = new Runnable() {
+        @Override
+        public void run() {
+            long startedAt = SystemClock.uptimeMillis();
+            boolean won = gameLogic.gameStep(steeringMethod);
+            Listener currentListener = listener;
+            if (currentListener != null) {
+                currentListener.onSnapshot(gameLogic.getSnapshot());
+            }
+            if (won) {
+                gameLogic.setGameRunning(false);
+                finished = true;
+                return;
+            }
+            // Fixed rate, the time of the step itself is not added to the period
+            gameHandler.postAtTime(this, startedAt + TICK_MILLIS);
+        }
+    };
+
+    private final Runnable stopSensors = () -> {
+        if (gameLogic != null) {
+            gameLogic.stopSensors(steeringMethod);
+            Log.d("GameSession", "Sensors stopped after " + SENSOR_GRACE_MILLIS + " ms in the menus");
+        }
+    };
+
+    public GameSession(Application application) {
+        super(application);
+        gameThread = new HandlerThread("GameLoop", Process.THREAD_PRIORITY_DISPLAY);
+        gameThread.start();
+        gameHandler = new Handler(gameThread.getLooper());
+    }
+
+    /**
+     * Shows the game on a game screen: continues the paused game or starts a new one if there is none or it was won
+     *
+     * @param steeringMethod one of the SteeringSource constants
+     * @param listener       receives the game state and alerts until detach()
+     */
+    public void attach(String steeringMethod, Listener listener) {
+        this.listener = listener;
+        gameHandler.post(() -> {
+            gameHandler.removeCallbacks(stopSensors);
+            attached = true;
+            if (gameLogic == null || finished) {
+                newGame(steeringMethod);
+            }
+            this.steeringMethod = steeringMethod;
+            GameLogic startingGameLogic = gameLogic;
+            // Right away if the game is already started, otherwise once its slowest startup stage is done
+            startup.whenComplete((ignored, error) -> gameHandler.post(() -> {
+                if (gameLogic != startingGameLogic || !attached) {
+                    return;
+                }
+                if (error != null) {
+                    // The next attach() tries again with a new game
+                    finished = true;
+                    onAlert("Game Error", "The game could not be started: " + error.getMessage());
+                    return;
+                }
+                resume();
+            }));
+        });
+    }
+
+    private void resume() {
+        gameLogic.startSensors(steeringMethod);
+        gameLogic.discardSamples(steeringMethod);
+        gameLogic.setGameRunning(true);
+        gameHandler.removeCallbacks(tick);
+        gameHandler.post(tick);
+    }
+
+    /**
+     * Pauses the game when the game screen goes away, returns right away
+     */
+    public void detach() {
+        listener = null;
+        gameHandler.post(() -> {
+            attached = false;
+            gameHandler.removeCallbacks(tick);
+            if (gameLogic != null) {
+                gameLogic.setGameRunning(false);
+                gameHandler.postDelayed(stopSensors, SENSOR_GRACE_MILLIS);
+            }
+        });
+    }
+
+    /**
+     * To be called on the UI thread once a drawn labyrinth is on screen
+     */
+    public void onLabyrinthDrawn() {
+        // Not posted, that would add the game thread's delay to the measured latency
+        GameLogic currentGameLogic = gameLogic;
+        if (currentGameLogic != null) {
+            currentGameLogic.onLabyrinthDrawn();
+        }
+    }
+
+    private void newGame(String steeringMethod) {
+        if (gameLogic != null) {
+            releaseAfterStartup();
+        }
+        Application application = getApplication();
+        gameLogic = new GameLogic(application, SettingsDatabase.getInstance(application));
+        gameLogic.setAlertListener(this::onAlert);
+        startup = gameLogic.start(steeringMethod, startupExecutor);
+        finished = false;
+    }
+
+    /**
+     * Releases the current GameLogic once its startup stages are done, a stage may still be using it.
+     * The game thread must not use it afterwards.
+     */
+    private void releaseAfterStartup() {
+        GameLogic oldGameLogic = gameLogic;
+        startup.whenComplete((ignored, error) -> oldGameLogic.release());
+    }
+
+    /**
+     * Called on the game thread (startup errors) or the UI thread (GameLogic alerts), shows the alert on the UI thread
+     */
+    private void onAlert(String title, String message) {
+        mainHandler.post(() -> {
+            Listener currentListener = listener;
+            if (currentListener != null) {
+                currentListener.onAlert(title, message);
+            } else {
+                Log.d("GameSession", title + ": " + message);
+            }
+        });
+    }
+
+    @Override
+    protected void onCleared() {
+        listener = null;
+        mainHandler.removeCallbacksAndMessages(null);
+        gameHandler.removeCallbacksAndMessages(null);
+        gameHandler.post(() -> {
+            if (gameLogic != null) {
+                releaseAfterStartup();
+                gameLogic = null;
+            }
+        });
+        // Runs the release above, then ends the thread
+        gameThread.quitSafely();
+        startupExecutor.shutdown();
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.menu_template;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This class keeps a LabyrinthPool for the labyrinth size from the settings, so GameLogic can start a game
+ * without generating the labyrinth first. Generation and the pool file run on a background thread.
+ * Labyrinths from MAPPED_MIN_SIZE on don't fit the pool, the next one is generated into a MappedLabyrinth file instead.
+ * Labyrinths of a requested difficulty are picked from candidates generated at game start, see takeTargeted().
+ *
+ * @see LabyrinthPool
+ */
+public class LabyrinthFactory {
+
+    private static final int POOL_CAPACITY = 3;
+    private static final String POOL_FILE_NAME = "labyrinth_pool.bin";
+    public static final int MAPPED_MIN_SIZE = 501;
+    private static final String NEXT_MAPPED_FILE_NAME = "labyrinth_next.maze";
+    private static final String CURRENT_MAPPED_FILE_NAME = "labyrinth_current.maze";
+    // Part of the game start, see GameLogic.start()
+    private static final long TARGETED_BUDGET_MILLIS = 150;
+
+    private static LabyrinthFactory instance = null;
+
+    private final LabyrinthPool pool;
+    private final Handler generatorHandler;
+    private final File nextMappedFile;
+    private final File currentMappedFile;
+    private final Object mappedLock = new Object();
+    private final DifficultyTargetedGenerator targetedGenerator =
+            new DifficultyTargetedGenerator(new ForkJoinPool(Runtime.getRuntime().availableProcessors()));
+    private final Random seedSource = new Random();
+
+    private LabyrinthFactory(Context context) {
+        HandlerThread generatorThread = new HandlerThread("LabyrinthGenerator", Process.THREAD_PRIORITY_BACKGROUND);
+        generatorThread.start();
+        generatorHandler = new Handler(generatorThread.getLooper());
+        pool = new LabyrinthPool(POOL_CAPACITY, generatorHandler::post, new File(context.getFilesDir(), POOL_FILE_NAME));
+        pool.restore();
+        nextMappedFile = new File(context.getFilesDir(), NEXT_MAPPED_FILE_NAME);
+        currentMappedFile = new File(context.getFilesDir(), CURRENT_MAPPED_FILE_NAME);
+    }
+
+    public static synchronized LabyrinthFactory getInstance(Context context) {
+        if (instance == null) {
+            instance = new LabyrinthFactory(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Reads the labyrinth size from the settings on the background thread and fills the pool for it
+     */
+    public void prepare(SettingsDatabase settingsDatabase) {
+        generatorHandler.post(() -> {
+            try {
+                String sizeSetting = settingsDatabase.getSetting(SettingsDatabase.COLUMN_LABYRINTH_SIZE);
+                if (!Double.isNaN(SettingsDatabase.parseLabyrinthDifficulty(sizeSetting))) {
+                    // Picked at game start, pooled labyrinths have a random difficulty
+                    return;
+                }
+                prepare(SettingsDatabase.parseLabyrinthSize(sizeSetting));
+            } catch (NumberFormatException | NullPointerException e) {
+                Log.d("Labyrinth", "No valid labyrinth size in the settings yet", e);
+            }
+        });
+    }
+
+    /**
+     * Fills the pool for a new labyrinth size, e.g. right after it was changed in the settings
+     */
+    public void prepare(int size) {
+        if (size >= MAPPED_MIN_SIZE) {
+            generatorHandler.post(() -> prepareMapped(size));
+        } else {
+            pool.setSize(size);
+        }
+    }
+
+    /**
+     * Takes a ready labyrinth, only generates one on the calling thread if none is ready
+     */
+    public LabyrinthPool.PooledLabyrinth take(int size) {
+        if (pool.getReadyCount() == 0) {
+            Log.d("Labyrinth", "Labyrinth pool is empty, generating a labyrinth of size " + size + " now");
+        }
+        return pool.take(size);
+    }
+
+    /**
+     * Generates candidates in parallel for at most TARGETED_BUDGET_MILLIS and returns the one closest to the difficulty,
+     * blocks the calling thread meanwhile
+     *
+     * @param difficulty from 0 (easy) to 1 (hard)
+     */
+    public LabyrinthPool.PooledLabyrinth takeTargeted(int size, double difficulty) {
+        long seed;
+        synchronized (seedSource) {
+            seed = seedSource.nextLong();
+        }
+        DifficultyTargetedGenerator.Result result = targetedGenerator.generate(size, difficulty, seed,
+                DifficultyTargetedGenerator.DEFAULT_CANDIDATES, TARGETED_BUDGET_MILLIS);
+        Log.d("Labyrinth", "Picked " + result.getScore() + " for " + difficulty + " out of "
+                + result.getScoredCandidates() + " candidates in " + result.getElapsedMillis() + " ms");
+        return new LabyrinthPool.PooledLabyrinth(result.getSeed(), result.getLabyrinth());
+    }
+
+    /**
+     * Takes the labyrinth file generated in the background for a size from MAPPED_MIN_SIZE on,
+     * only generates it on the calling thread if it is not ready. The next one is generated right away.
+     */
+    public MappedLabyrinth takeMapped(int size) throws IOException {
+        synchronized (mappedLock) {
+            // Waits here if the background thread is still writing the next file
+            if (!isMappedPrepared(size)) {
+                Log.d("Labyrinth", "No labyrinth file of size " + size + " ready, generating it now");
+                generateMapped(size);
+            }
+            if (!nextMappedFile.renameTo(currentMappedFile)) {
+                throw new IOException("Could not rename " + nextMappedFile);
+            }
+        }
+        generatorHandler.post(() -> prepareMapped(size));
+        return MappedLabyrinth.open(currentMappedFile);
+    }
+
+    private void prepareMapped(int size) {
+        synchronized (mappedLock) {
+            if (isMappedPrepared(size)) {
+                return;
+            }
+            try {
+                generateMapped(size);
+            } catch (IOException e) {
+                Log.d("Labyrinth", "Could not generate a labyrinth file of size " + size, e);
+            }
+        }
+    }
+
+    private boolean isMappedPrepared(int size) {
+        if (!nextMappedFile.exists()) {
+            return false;
+        }
+        try {
+            MappedLabyrinth prepared = MappedLabyrinth.open(nextMappedFile);
+            prepared.close();
+            return prepared.getRows() == mappedLength(size);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void generateMapped(int size) throws IOException {
+        long start = System.currentTimeMillis();
+        File tmpFile = new File(nextMappedFile.getPath() + ".tmp");
+        int cells = (mappedLength(size) - 1) / 2;
+        MappedLabyrinth.generate(tmpFile, cells, cells, new Random().nextLong()).close();
+        if (!tmpFile.renameTo(nextMappedFile)) {
+            throw new IOException("Could not rename " + tmpFile);
+        }
+        Log.d("Labyrinth", "Generated a labyrinth file of size " + size + " in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * @return the size rounded up to an odd number, which the generator needs for its walls
+     */
+    private static int mappedLength(int size) {
+        return size | 1;
+    }
+}
@@ -45,6 +45,9 @@ public class MainActivity extends AppCompatActivity {
         NavController navController = Navigation.findNavController(this, R.id.nav_host_fragment_content_main);
         appBarConfiguration = new AppBarConfiguration.Builder(navController.getGraph()).build();
         NavigationUI.setupActionBarWithNavController(this, navController, appBarConfiguration);
+
+        // Pre-generate labyrinths while the user is still in the menu
+        LabyrinthFactory.getInstance(this).prepare(SettingsDatabase.getInstance(this));
     }
 
 
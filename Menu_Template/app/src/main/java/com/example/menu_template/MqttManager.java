@@ -5,8 +5,18 @@ import android.util.Log;
 import org.eclipse.paho.client.mqttv3.*;
 import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * This class handles MQTT connection and handles MQTT events
+ * Publishing goes through a PublishPipeline and never blocks, the QoS of a message comes from the profile of its topic.
  */
 public class MqttManager {
 
@@ -23,12 +33,27 @@ public class MqttManager {
     public String MQTT_BROKER_METHOD = "tcp";
     private static String MQTT_CLIENT_ID = "mosquitto_id";
     private static final String MPU_TOPIC = "mpu/K05";
-    private MqttClient mqttClient;
+    private static final String PROBE_TOPIC_PREFIX = "probe/";
+    private volatile BrokerFailover<MqttAsyncClient> brokers;
+    // Probes all brokers at once, threads end when idle
+    private final ExecutorService brokerExecutor = Executors.newCachedThreadPool();
     private String clientId;
     private MqttCallbackListener callbackListener;
 
+    // Paho's own window is set to the same size, so it never rejects a message with "too many publishes in progress"
+    private static final int MAX_IN_FLIGHT = 10;
+    private static final int MAX_QUEUED = 64;
+    private final PublishPipeline publishPipeline = new PublishPipeline(this::send, MAX_IN_FLIGHT, MAX_QUEUED);
+
     public MqttManager(String clientId) {
         MQTT_CLIENT_ID = clientId;
+        // Telemetry (sensor values, spectator moves, pings) is sent with QoS 0, the default profile.
+        // A lost finished message would leave the board publishing, a rate command must also reach a board that connects later.
+        publishPipeline.setProfile(Constants.FINISHED_TOPIC, new PublishPipeline.Profile(1, false, false));
+        publishPipeline.setProfile(Constants.CONTROL_TOPIC, new PublishPipeline.Profile(1, true, true));
+        publishPipeline.setProfile(Constants.PING_TOPIC, new PublishPipeline.Profile(0, false, true));
+        publishPipeline.setProfile(Constants.UDP_TARGET_TOPIC, new PublishPipeline.Profile(1, true, true));
+        publishPipeline.setProfile(Constants.RUN_TOPIC, new PublishPipeline.Profile(1, false, false));
     }
 
     /**
@@ -43,52 +68,195 @@ public class MqttManager {
     }
 
     /**
-     * Publishes a message to a topic
+     * Queues a message for its topic, see PublishPipeline
      *
      * @param message the message to publish
+     * @return completes when the message was delivered (written for QoS 0)
      */
-    public void publishToTopic(String message, String topic) {
-        try {
-            MqttMessage mqttMessage = new MqttMessage(message.getBytes());
-            mqttClient.publish(topic, mqttMessage);
-            Log.d("MqttManager", "Published message: " + message + " on topic: " + topic);
-        } catch (MqttException e) {
-            e.printStackTrace();
+    public CompletableFuture<Void> publishToTopic(String message, String topic) {
+        return publishToTopic(message.getBytes(StandardCharsets.UTF_8), topic);
+    }
+
+    /**
+     * Queues a binary message for its topic, see PublishPipeline
+     *
+     * @param payload the raw bytes to publish, e.g. a SpectatorStream message
+     * @param topic   the topic to publish on
+     * @return completes when the message was delivered (written for QoS 0)
+     */
+    public CompletableFuture<Void> publishToTopic(byte[] payload, String topic) {
+        return publishPipeline.publish(topic, payload);
+    }
+
+    public PublishPipeline getPublishPipeline() {
+        return publishPipeline;
+    }
+
+    /**
+     * Hands a message to Paho without waiting, called by the pipeline
+     */
+    private void send(String topic, byte[] payload, int qos, boolean retained, PublishPipeline.Completion completion)
+            throws MqttException {
+        BrokerFailover<MqttAsyncClient> failover = brokers;
+        MqttAsyncClient client = failover == null ? null : failover.getConnection();
+        if (client == null || !client.isConnected()) {
+            throw new MqttException(MqttException.REASON_CODE_CLIENT_NOT_CONNECTED);
+        }
+        MqttMessage mqttMessage = new MqttMessage(payload);
+        mqttMessage.setQos(qos);
+        mqttMessage.setRetained(retained);
+        // Only queues the message, the callback is registered before it can complete.
+        // The synchronous MqttClient (and its MqttTopic) would wait until the message was written.
+        client.publish(topic, mqttMessage, null, new DeliveryListener(completion));
+    }
+
+    /**
+     * Reports a delivery to the pipeline exactly once
+     */
+    private static class DeliveryListener implements IMqttActionListener {
+        private final PublishPipeline.Completion completion;
+        private boolean completed;
+
+        DeliveryListener(PublishPipeline.Completion completion) {
+            this.completion = completion;
+        }
+
+        synchronized void complete(Throwable error) {
+            if (!completed) {
+                completed = true;
+                completion.onComplete(error);
+            }
+        }
+
+        @Override
+        public void onSuccess(IMqttToken asyncActionToken) {
+            complete(null);
+        }
+
+        @Override
+        public void onFailure(IMqttToken asyncActionToken, Throwable exception) {
+            complete(exception);
         }
     }
 
     /**
-     * Subscribes to a topic
+     * Subscribes to a topic, also on the broker a failover switches to
      *
      * @param topic the topic to subscribe
      */
     public void subscribeToTopic(String topic) {
+        BrokerFailover<MqttAsyncClient> failover = brokers;
+        if (failover == null) {
+            Log.d("MqttManager", "Not connected, can't subscribe to topic: " + topic);
+            return;
+        }
         try {
-            mqttClient.subscribe(topic);
+            failover.subscribe(topic);
             Log.d("MqttManager", "Subscribed to topic: " + topic);
-        } catch (MqttException e) {
+        } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
     public void unsubscribeFromTopic(String topic) {
+        BrokerFailover<MqttAsyncClient> failover = brokers;
+        if (failover == null) {
+            return;
+        }
+        failover.unsubscribe(topic);
         try {
-            mqttClient.unsubscribe(topic);
+            MqttAsyncClient client = failover.getConnection();
+            if (client != null) {
+                client.unsubscribe(topic).waitForCompletion();
+            }
             Log.d("MqttManager", "Unsubscribed to topic: " + topic);
         } catch (MqttException e) {
             e.printStackTrace();
         }
     }
+
     /**
      * This method attempts to connect to an MQTT broker
+     * The broker setting may list several brokers separated by commas, the fastest reachable one is used
+     * and the others are tried when the connection is lost, see BrokerFailover.
      */
     public void connect(SettingsDatabase settingsDatabase, String clientId) {
+        this.clientId = clientId;
+
+        MQTT_BROKER_IP = settingsDatabase.getSetting(SettingsDatabase.COLUMN_BROKER_IP);
+        List<String> uris = BrokerFailover.parseBrokerUris(MQTT_BROKER_IP);
+        if (uris.isEmpty()) {
+            if (callbackListener != null) {
+                callbackListener.onConnectionError("No MQTT broker set");
+            }
+            return;
+        }
+        if (brokers != null) {
+            brokers.close();
+        }
+        BrokerFailover<MqttAsyncClient> failover = new BrokerFailover<>(uris, new PahoConnector(), brokerExecutor,
+                BrokerFailover.DEFAULT_PROBE_TIMEOUT_MILLIS);
+        brokers = failover;
         try {
-            this.clientId = clientId;
+            failover.connect();
+            useBroker(failover.getUri());
+            Log.d("MqttManager", "Connected to MQTT broker " + failover.getUri() + ", probes: " + failover.getLastProbes());
+        } catch (IOException e) {
+            e.printStackTrace();
+            Log.d("MqttManager", "Failed to connect to MQTT broker");
+            if (callbackListener != null) {
+                callbackListener.onConnectionError(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Fails over to the fastest reachable broker, the listener only hears about the loss if there is none
+     */
+    private void onConnectionLost(MqttAsyncClient client) {
+        BrokerFailover<MqttAsyncClient> failover = brokers;
+        if (failover == null || failover.getConnection() != client) {
+            return; // A probe connection or one that was replaced already
+        }
+        Log.d("MqttManager", "Lost connection to " + failover.getUri() + ", failing over");
+        long start = System.nanoTime();
+        failover.failover(client).whenComplete((newClient, error) -> {
+            if (error != null) {
+                Log.d("MqttManager", "No MQTT broker reachable: " + failover.getLastProbes());
+                if (callbackListener != null) {
+                    callbackListener.onConnectionLost();
+                }
+            } else {
+                useBroker(failover.getUri());
+                Log.d("MqttManager", "Failed over to " + failover.getUri() + " in "
+                        + (System.nanoTime() - start) / 1_000_000 + " ms, probes: " + failover.getLastProbes());
+            }
+        });
+    }
+
+    /**
+     * Keeps the broker fields in sync with the broker in use, e.g. for the UDP address towards it
+     */
+    private void useBroker(String uri) {
+        int hostStart = uri.indexOf("://") + 3;
+        int portStart = uri.lastIndexOf(':');
+        MQTT_BROKER_METHOD = uri.substring(0, hostStart - 3);
+        MQTT_BROKER_IP = uri.substring(hostStart, portStart);
+        MQTT_BROKER_PORT = uri.substring(portStart + 1);
+    }
 
-            MQTT_BROKER_IP = settingsDatabase.getSetting(SettingsDatabase.COLUMN_BROKER_IP);
-            mqttClient = new MqttClient(MQTT_BROKER_METHOD + "://" + MQTT_BROKER_IP + ":" + MQTT_BROKER_PORT, this.clientId, new MemoryPersistence());
-            mqttClient.setCallback(new MqttCallback() {
+    /**
+     * Connects Paho clients for the BrokerFailover and measures the round trip by publishing to itself
+     */
+    private class PahoConnector implements BrokerFailover.Connector<MqttAsyncClient> {
+        private final AtomicInteger probeNumber = new AtomicInteger();
+
+        @Override
+        public MqttAsyncClient connect(String uri, boolean probe, long timeoutMillis) throws MqttException {
+            // Two candidates may be the same broker, which would drop one of two sessions with the same id
+            String id = probe ? clientId + "_probe_" + probeNumber.incrementAndGet() : clientId;
+            MqttAsyncClient client = new MqttAsyncClient(uri, id, new MemoryPersistence());
+            client.setCallback(new MqttCallback() {
 
                 /**
                  * Handles connection-loss
@@ -97,10 +265,7 @@ public class MqttManager {
                  */
                 @Override
                 public void connectionLost(Throwable cause) {
-                    // Handle connection lost
-                    if (callbackListener != null) {
-                        callbackListener.onConnectionLost();
-                    }
+                    onConnectionLost(client);
                 }
 
                 /**
@@ -117,7 +282,6 @@ public class MqttManager {
                     }
                 }
 
-
                 /**
                  * Handles delivery status information
                  *
@@ -133,21 +297,47 @@ public class MqttManager {
             MqttConnectOptions options = new MqttConnectOptions();
             // Set CleanSessions to true so the broker won't queue any messages for the client while it was disconnected.
             options.setCleanSession(true);
+            options.setMaxInflight(MAX_IN_FLIGHT);
+            options.setConnectionTimeout((int) Math.max(1, (timeoutMillis + 999) / 1000));
+            try {
+                client.connect(options).waitForCompletion(timeoutMillis);
+            } catch (MqttException e) {
+                client.close();
+                throw e;
+            }
+            return client;
+        }
 
-            // Finally attempt to connect to the broker
-            mqttClient.connect(options);
-
-            // Check if connection was successful or not and log that information
-            if (mqttClient.isConnected()) {
-                Log.d("MqttManager", "Connected to MQTT broker");
-            } else {
-                Log.d("MqttManager", "Failed to connect to MQTT broker");
+        @Override
+        public long measureRoundTripNanos(MqttAsyncClient client, long timeoutMillis) throws Exception {
+            String topic = PROBE_TOPIC_PREFIX + client.getClientId();
+            CompletableFuture<Void> echo = new CompletableFuture<>();
+            // Messages on the probe topic go to this listener, not to the callback
+            client.subscribe(topic, 0, (echoTopic, message) -> echo.complete(null)).waitForCompletion(timeoutMillis);
+            try {
+                long start = System.nanoTime();
+                client.publish(topic, new byte[]{0}, 0, false);
+                echo.get(timeoutMillis, TimeUnit.MILLISECONDS);
+                return System.nanoTime() - start;
+            } finally {
+                client.unsubscribe(topic).waitForCompletion(timeoutMillis);
             }
+        }
 
-        } catch (MqttException e) {
-            e.printStackTrace();
-            if (callbackListener != null) {
-                callbackListener.onConnectionError(e.getMessage());
+        @Override
+        public void subscribe(MqttAsyncClient client, String topic) throws MqttException {
+            client.subscribe(topic, 1).waitForCompletion();
+        }
+
+        @Override
+        public void close(MqttAsyncClient client) {
+            try {
+                if (client.isConnected()) {
+                    client.disconnect().waitForCompletion();
+                }
+                client.close();
+            } catch (MqttException e) {
+                e.printStackTrace();
             }
         }
     }
@@ -156,14 +346,23 @@ public class MqttManager {
      * Handles disconnecting from the broker
      */
     public void disconnect() {
+        publishPipeline.clear(new MqttException(MqttException.REASON_CODE_CLIENT_DISCONNECTING));
+        Log.d("MqttManager", "Publishing: " + publishPipeline.getCoalesced() + " coalesced, "
+                + publishPipeline.getRejected() + " rejected, " + publishPipeline.getFailed() + " failed");
+        BrokerFailover<MqttAsyncClient> failover = brokers;
+        if (failover == null) {
+            return;
+        }
+        failover.unsubscribe(MPU_TOPIC);
         try {
-            if (mqttClient != null && mqttClient.isConnected()) {
-                mqttClient.unsubscribe(MPU_TOPIC);
-                mqttClient.disconnect();
+            MqttAsyncClient client = failover.getConnection();
+            if (client != null && client.isConnected()) {
+                client.unsubscribe(MPU_TOPIC).waitForCompletion();
             }
         } catch (MqttException e) {
             e.printStackTrace();
         }
+        failover.close();
     }
 
 
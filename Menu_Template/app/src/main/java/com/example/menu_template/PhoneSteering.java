@@ -6,6 +6,9 @@ import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 import android.Manifest;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
 import android.util.Log;
 import androidx.core.content.ContextCompat;
 
@@ -13,15 +16,39 @@ import androidx.core.content.ContextCompat;
 /**
  * This class utilizes the sensors inside the Smartphone to parse accelerometer/gyro values, so that the GameLogic class can
  * use that data to calculate game-physics etc.
+ * The sensors deliver their events on a dedicated HandlerThread at SAMPLING_PERIOD_US, batched by the hardware for up to
+ * MAX_REPORT_LATENCY_US, and every sample is pushed with its event timestamp into a lock-free SensorSampleBuffer,
+ * which the game loop drains with drainSamples().
+ * If requested and available, the game rotation vector sensor replaces the accelerometer: the gravity direction derived
+ * from it is reported in place of the accelerometer values, which gives the same tilt without the linear acceleration noise.
  */
-public class PhoneSteering implements SensorEventListener {
+public class PhoneSteering implements SensorEventListener, SteeringSource {
+    private static final int SAMPLING_PERIOD_US = 5_000; // 200 Hz
+    private static final int MAX_REPORT_LATENCY_US = 20_000; // Lets the sensor hub deliver up to 4 samples at once
+    private static final int BUFFER_CAPACITY = 256; // More than a second of samples
+    private static final float GRAVITY = SensorManager.GRAVITY_EARTH;
+
     private SensorManager sensorManager;
     private Sensor accelerometer;
     private Sensor gyroscope;
-    private float acc_x, acc_y, acc_z;
-    private float gyro_x, gyro_y, gyro_z;
+    private Sensor rotationVector;
+    private volatile float acc_x, acc_y, acc_z;
+    private volatile float gyro_x, gyro_y, gyro_z;
+
+    private final SensorSampleBuffer sampleBuffer = new SensorSampleBuffer(BUFFER_CAPACITY);
+    // Only touched by the sensor thread
+    private final float[] sample = new float[SensorMessageParser.VALUE_COUNT];
+    private final float[] rotationMatrix = new float[9];
+    private HandlerThread sensorThread;
 
     public PhoneSteering(Context context) {
+        this(context, false);
+    }
+
+    /**
+     * @param useRotationVector take the tilt from the game rotation vector sensor instead of the accelerometer, if there is one
+     */
+    public PhoneSteering(Context context, boolean useRotationVector) {
 
         if (ContextCompat.checkSelfPermission(context, Manifest.permission.ACCESS_FINE_LOCATION)
                 == PackageManager.PERMISSION_GRANTED &&
@@ -36,36 +63,102 @@ public class PhoneSteering implements SensorEventListener {
         sensorManager = (SensorManager) context.getSystemService(Context.SENSOR_SERVICE);
         accelerometer = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
         gyroscope = sensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE);
+        if (useRotationVector) {
+            rotationVector = sensorManager.getDefaultSensor(Sensor.TYPE_GAME_ROTATION_VECTOR);
+            if (rotationVector == null) {
+                Log.d("Sensor_Listener","No rotation vector sensor, using the accelerometer");
+            }
+        }
     }
 
-    public void startSensors() {
-        if (accelerometer != null) {
-            Log.d("Sensor_Listener","Accelerometer listener activated");
-            sensorManager.registerListener(this, accelerometer, SensorManager.SENSOR_DELAY_GAME);
+    /**
+     * Registers the sensors on the sensor thread, does nothing if they are already running
+     */
+    @Override
+    public synchronized void startSensors() {
+        if (sensorThread != null) {
+            return;
+        }
+        sensorThread = new HandlerThread("PhoneSensors", Process.THREAD_PRIORITY_URGENT_DISPLAY);
+        sensorThread.start();
+        Handler sensorHandler = new Handler(sensorThread.getLooper());
+
+        Sensor tiltSensor = rotationVector != null ? rotationVector : accelerometer;
+        if (tiltSensor != null) {
+            Log.d("Sensor_Listener", tiltSensor.getName() + " listener activated");
+            sensorManager.registerListener(this, tiltSensor, SAMPLING_PERIOD_US, MAX_REPORT_LATENCY_US, sensorHandler);
         }
         if (gyroscope != null) {
             Log.d("Sensors_Listener","Gyro listener activated");
-            sensorManager.registerListener(this, gyroscope, SensorManager.SENSOR_DELAY_GAME);
+            sensorManager.registerListener(this, gyroscope, SAMPLING_PERIOD_US, MAX_REPORT_LATENCY_US, sensorHandler);
         }
     }
 
-    public void stopSensors() {
+    @Override
+    public synchronized void stopSensors() {
         sensorManager.unregisterListener(this);
+        if (sensorThread != null) {
+            sensorThread.quitSafely();
+            sensorThread = null;
+        }
     }
 
     @Override
     public void onSensorChanged(SensorEvent event) {
-        if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
-            acc_x = event.values[0];
-            acc_y = event.values[1];
-            acc_z = event.values[2];
-        } else if (event.sensor.getType() == Sensor.TYPE_GYROSCOPE) {
-            gyro_x = event.values[0];
-            gyro_y = event.values[1];
-            gyro_z = event.values[2];
+        switch (event.sensor.getType()) {
+            case Sensor.TYPE_ACCELEROMETER:
+                acc_x = event.values[0];
+                acc_y = event.values[1];
+                acc_z = event.values[2];
+                offerSample(event.timestamp);
+                break;
+            case Sensor.TYPE_GAME_ROTATION_VECTOR:
+                // The last row of the rotation matrix is the gravity direction in device coordinates
+                SensorManager.getRotationMatrixFromVector(rotationMatrix, event.values);
+                acc_x = rotationMatrix[6] * GRAVITY;
+                acc_y = rotationMatrix[7] * GRAVITY;
+                acc_z = rotationMatrix[8] * GRAVITY;
+                offerSample(event.timestamp);
+                break;
+            case Sensor.TYPE_GYROSCOPE:
+                gyro_x = event.values[0];
+                gyro_y = event.values[1];
+                gyro_z = event.values[2];
+                break;
         }
     }
 
+    private void offerSample(long timestampNanos) {
+        sample[0] = acc_x;
+        sample[1] = acc_y;
+        sample[2] = acc_z;
+        sample[3] = gyro_x;
+        sample[4] = gyro_y;
+        sample[5] = gyro_z;
+        // Event timestamps are nanoseconds on the elapsedRealtime() clock
+        sampleBuffer.offer(sample, timestampNanos);
+    }
+
+    @Override
+    public int drainSamples(SensorSampleListener listener) {
+        return sampleBuffer.drainTo(listener);
+    }
+
+    /**
+     * @return one sampling period plus half the batching latency on average
+     */
+    @Override
+    public long getLatencyMillis() {
+        return (SAMPLING_PERIOD_US + MAX_REPORT_LATENCY_US / 2) / 1000;
+    }
+
+    /**
+     * @return the number of samples dropped because the game loop did not drain them in time
+     */
+    public long getDroppedSamples() {
+        return sampleBuffer.getDroppedSamples();
+    }
+
     @Override
     public void onAccuracyChanged(Sensor sensor, int accuracy) {
         // Do nothing
@@ -16,26 +16,38 @@ import android.widget.ImageView;
 import androidx.annotation.NonNull;
 import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
+import androidx.fragment.app.FragmentActivity;
+import androidx.lifecycle.ViewModelProvider;
 
-import com.example.menu_template.GameLogic;
 import com.example.menu_template.SettingsDatabase;
 import com.example.menu_template.SettingsFragment;
 import com.example.menu_template.databinding.FragmentSecondBinding;
 
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class SecondFragment extends Fragment {
 
     private FragmentSecondBinding binding;
-    private GameLogic gameLogic;
+    // Owns the game, so it keeps running (paused) while this screen is gone
+    private GameSession gameSession;
     private String steeringMethod;
     private SettingsDatabase settingsDatabase;
-    private boolean win_condition = false;
 
     private ImageView labyrinthImageView;
     private View fragmentView;
 
-    private Thread gameThread;
+    // Frames are drawn on the game thread into one of two bitmaps instead of a new one each, see drawLabyrinth()
+    private final Canvas canvas = new Canvas();
+    private final AtomicReference<Bitmap> spareBitmap = new AtomicReference<>();
+    private Bitmap shownBitmap; // UI thread only
+    private Paint emptyCellPaint, wallPaint, startPaint, endPaint, ghostPaint; // Game thread only, made on the first frame
+
+    // The minimap of a large labyrinth, one pixel per block, double-buffered like the labyrinth
+    private final AtomicReference<Bitmap> spareMinimapBitmap = new AtomicReference<>();
+    private Bitmap shownMinimapBitmap; // UI thread only
+    private int[] minimapPixels; // Game thread only
+    private int minimapEmptyColor, minimapWallColor, minimapFogColor, minimapPlayerColor, minimapFinishColor;
 
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
@@ -55,72 +67,95 @@ public class SecondFragment extends Fragment {
         } catch (Exception e) {
             Log.d("SteeringMethod", "Issue calling the getSteeringMethod(): " + e);
         }
-        //gameLogic = new GameLogic(requireContext(), settingsDatabase);
-        SecondListener secondListener = new SecondListener(requireContext());
-        FirstListener firstListener = new FirstListener(requireContext());
-        // startGameLoop(steeringMethod);
+        gameSession = new ViewModelProvider(requireActivity()).get(GameSession.class);
+        gameSession.attach(steeringMethod, new SessionListener());
     }
 
-    public void startGameLoop(String steeringMethod) {
-        gameLogic.setGameRunning(true);
-        gameLogic.startSensors(steeringMethod);
-        gameThread = new Thread(() -> {
-            while (!Thread.interrupted()) {
-                float temperature = gameLogic.getTemperature();
-                int play_time = gameLogic.getPlayTime();
-
-                updateTemperatureAndPlayTime(temperature, play_time);
-
-                win_condition = gameLogic.gameStep(steeringMethod);
-                drawLabyrinth(gameLogic.labyrinth);
-                if (win_condition) {
-                    gameLogic.setGameRunning(false);
-                    break;
-                }
-                try {
-                    Thread.sleep(40); // Add a 100ms delay
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                    break;
-                }
+    /**
+     * Draws the snapshots of the game session, a new one is made for every visit of the screen,
+     * so a continued game is drawn right away
+     */
+    private class SessionListener implements GameSession.Listener {
+
+        // Versions of what is on screen, nothing is redrawn or posted while the snapshot has the same ones
+        private long shownHudVersion = -1;
+        private long drawnLabyrinthVersion = -1;
+        private long drawnMinimapVersion = -1;
+
+        @Override
+        public void onSnapshot(GameSnapshot snapshot) {
+            // Called on the game thread, the screen may be going away at the same time
+            FragmentActivity activity = getActivity();
+            if (activity == null) {
+                return;
             }
-        });
-        gameThread.start();
+            if (snapshot.getHudVersion() != shownHudVersion) {
+                shownHudVersion = snapshot.getHudVersion();
+                updateTemperatureAndPlayTime(activity, snapshot);
+            }
+            if (snapshot.getLabyrinthVersion() != drawnLabyrinthVersion) {
+                drawnLabyrinthVersion = snapshot.getLabyrinthVersion();
+                drawLabyrinth(activity, snapshot.getLabyrinth(), snapshot.getGhostCell());
+            }
+            MinimapPyramid.Minimap minimap = snapshot.getMinimap();
+            if (minimap != null && minimap.getVersion() != drawnMinimapVersion) {
+                drawnMinimapVersion = minimap.getVersion();
+                drawMinimap(activity, minimap);
+            }
+        }
+
+        @Override
+        public void onAlert(String title, String message) {
+            if (binding != null) {
+                showAlert(title, message);
+            }
+        }
     }
 
 
-    private void updateTemperatureAndPlayTime(float temperature, int play_time) {
-        requireActivity().runOnUiThread(() -> {
+    private void updateTemperatureAndPlayTime(FragmentActivity activity, GameSnapshot snapshot) {
+        activity.runOnUiThread(() -> {
+            if (binding == null) {
+                return;
+            }
             EditText timeTextField = binding.timeTextField;
             EditText temperatureTextField = binding.temperatureTextField;
 
-            temperatureTextField.setText(String.valueOf(temperature));
-            timeTextField.setText(String.valueOf(play_time));
+            temperatureTextField.setText(String.valueOf(snapshot.getTemperature()));
+            // The play time is kept in milliseconds, show seconds with one decimal
+            timeTextField.setText(String.format(Locale.ROOT, "%.1f", snapshot.getPlayTimeMillis() / 1000.0));
+            if (!Float.isNaN(snapshot.getMeanTemperature())) {
+                binding.temperatureStatsTextView.setText(getString(R.string.temperature_stats_format,
+                        snapshot.getMinTemperature(), snapshot.getMeanTemperature(), snapshot.getMaxTemperature()));
+            }
         });
 
     }
 
 
 
-    public void drawLabyrinth(int[][] labyrinth) {
+    /**
+     * @param ghostCell the index (row * columns + column) of the ghost of a previous run, -1 for none
+     */
+    public void drawLabyrinth(FragmentActivity activity, int[][] labyrinth, int ghostCell) {
         int cellSize = 50;
         int width = labyrinth.length * cellSize;
         int height = labyrinth[0].length * cellSize;
-        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(bitmap);
+        // The bitmap shown before the last one, as long as the size is the same
+        Bitmap bitmap = spareBitmap.getAndSet(null);
+        if (bitmap == null || bitmap.getWidth() != width || bitmap.getHeight() != height) {
+            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+        canvas.setBitmap(bitmap);
         canvas.drawColor(Color.WHITE);
 
-        Paint emptyCellPaint = new Paint();
-        emptyCellPaint.setColor(ContextCompat.getColor(requireContext(), R.color.colorEmptyCell));
-
-        Paint wallPaint = new Paint();
-        wallPaint.setColor(ContextCompat.getColor(requireContext(), R.color.colorWall));
-
-        Paint startPaint = new Paint();
-        startPaint.setColor(ContextCompat.getColor(requireContext(), R.color.colorStart));
-
-        Paint endPaint = new Paint();
-        endPaint.setColor(ContextCompat.getColor(requireContext(), R.color.colorEnd));
+        if (wallPaint == null) {
+            emptyCellPaint = paint(activity, R.color.colorEmptyCell);
+            wallPaint = paint(activity, R.color.colorWall);
+            startPaint = paint(activity, R.color.colorStart);
+            endPaint = paint(activity, R.color.colorEnd);
+            ghostPaint = paint(activity, R.color.colorGhost);
+        }
 
         for (int i = 0; i < labyrinth.length; i++) {
             for (int j = 0; j < labyrinth[i].length; j++) {
@@ -147,12 +182,97 @@ public class SecondFragment extends Fragment {
             }
         }
 
-        requireActivity().runOnUiThread(() -> {
+        if (ghostCell >= 0 && labyrinth.length > 0) {
+            // A translucent square on top, so the live player still shows when both are on the same cell
+            float left = ghostCell / labyrinth[0].length * cellSize;
+            float top = ghostCell % labyrinth[0].length * cellSize;
+            float inset = cellSize / 5f;
+            canvas.drawRect(left + inset, top + inset, left + cellSize - inset, top + cellSize - inset, ghostPaint);
+        }
+
+        canvas.setBitmap(null);
+
+        Bitmap drawnBitmap = bitmap;
+        activity.runOnUiThread(() -> {
+            if (binding == null) {
+                return;
+            }
             labyrinthImageView = fragmentView.findViewById(R.id.labyrinthImageView);
-            labyrinthImageView.setImageBitmap(bitmap);
+            labyrinthImageView.setImageBitmap(drawnBitmap);
+            // Not on screen anymore, the next frame is drawn into it
+            if (shownBitmap != null) {
+                spareBitmap.set(shownBitmap);
+            }
+            shownBitmap = drawnBitmap;
+            gameSession.onLabyrinthDrawn();
         });
     }
 
+    /**
+     * Draws the minimap as one pixel per block, the ImageView scales it up. The minimap has the same size
+     * for any labyrinth, so does the work here.
+     */
+    private void drawMinimap(FragmentActivity activity, MinimapPyramid.Minimap minimap) {
+        // Rows go to the right like in drawLabyrinth()
+        int width = minimap.getRows();
+        int height = minimap.getColumns();
+        Bitmap bitmap = spareMinimapBitmap.getAndSet(null);
+        if (bitmap == null || bitmap.getWidth() != width || bitmap.getHeight() != height) {
+            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+        if (minimapPixels == null || minimapPixels.length != width * height) {
+            minimapPixels = new int[width * height];
+            minimapEmptyColor = ContextCompat.getColor(activity, R.color.colorEmptyCell);
+            minimapWallColor = ContextCompat.getColor(activity, R.color.colorWall);
+            minimapFogColor = ContextCompat.getColor(activity, R.color.colorMinimapFog);
+            minimapPlayerColor = ContextCompat.getColor(activity, R.color.colorMinimapPlayer);
+            minimapFinishColor = ContextCompat.getColor(activity, R.color.colorEnd);
+        }
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                int cells = blend(minimapEmptyColor, minimapWallColor, minimap.getWallDensity(x, y));
+                // Unseen parts stay in the fog, partly seen blocks show through in part
+                minimapPixels[y * width + x] = blend(minimapFogColor, cells, minimap.getRevealedDensity(x, y));
+            }
+        }
+        minimapPixels[minimap.getFinishColumn() * width + minimap.getFinishRow()] = minimapFinishColor;
+        if (minimap.getPlayerRow() >= 0) {
+            minimapPixels[minimap.getPlayerColumn() * width + minimap.getPlayerRow()] = minimapPlayerColor;
+        }
+        bitmap.setPixels(minimapPixels, 0, width, 0, 0, width, height);
+
+        Bitmap drawnBitmap = bitmap;
+        activity.runOnUiThread(() -> {
+            if (binding == null) {
+                return;
+            }
+            ImageView minimapImageView = fragmentView.findViewById(R.id.minimapImageView);
+            minimapImageView.setImageBitmap(drawnBitmap);
+            minimapImageView.setVisibility(View.VISIBLE);
+            if (shownMinimapBitmap != null) {
+                spareMinimapBitmap.set(shownMinimapBitmap);
+            }
+            shownMinimapBitmap = drawnBitmap;
+        });
+    }
+
+    /**
+     * @param amount from 0 (from) to 255 (to)
+     */
+    private static int blend(int from, int to, int amount) {
+        return Color.argb(
+                Color.alpha(from) + (Color.alpha(to) - Color.alpha(from)) * amount / 255,
+                Color.red(from) + (Color.red(to) - Color.red(from)) * amount / 255,
+                Color.green(from) + (Color.green(to) - Color.green(from)) * amount / 255,
+                Color.blue(from) + (Color.blue(to) - Color.blue(from)) * amount / 255);
+    }
+
+    private static Paint paint(FragmentActivity activity, int colorId) {
+        Paint paint = new Paint();
+        paint.setColor(ContextCompat.getColor(activity, colorId));
+        return paint;
+    }
+
     private void showAlert(String title, String message) {
         AlertDialog.Builder builder = new AlertDialog.Builder(getContext());
         builder.setTitle(title)
@@ -164,19 +284,9 @@ public class SecondFragment extends Fragment {
     @Override
     public void onDestroyView() {
         super.onDestroyView();
-        win_condition = true;
+        // Only pauses the game, the session is released with the activity
+        gameSession.detach();
         binding = null;
-
-        if (gameThread != null && gameThread.isAlive()) {
-            gameThread.interrupt();
-            try {
-                gameThread.join();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        }
-
-        gameLogic.stopSensors(steeringMethod);
     }
 }
 
@@ -9,13 +9,19 @@ import android.util.Log;
 
 public class SettingsDatabase extends SQLiteOpenHelper {
     private static final String DATABASE_NAME = "settings_database";
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 2;
 
     private static final String TABLE_NAME = "settings";
     private static final String COLUMN_ID = "id";
     public static final String COLUMN_STEERING_METHOD = "steering_method";
     public static final String COLUMN_BROKER_IP = "broker_ip";
     public static final String COLUMN_LABYRINTH_SIZE = "labyrinth_size";
+    // "true" lets the board send its samples over UDP, see ESPSteering, off (MQTT only) when not set
+    public static final String COLUMN_UDP_INGEST = "udp_ingest";
+    // Entered instead of a number, selects the endless mode
+    public static final String LABYRINTH_SIZE_ENDLESS = "endless";
+    // "21@0.7" asks for a labyrinth of size 21 with a difficulty of 0.7 (from 0 to 1), see DifficultyTargetedGenerator
+    public static final String LABYRINTH_DIFFICULTY_SEPARATOR = "@";
 
 
     private static SettingsDatabase instance = null;
@@ -26,7 +32,7 @@ public class SettingsDatabase extends SQLiteOpenHelper {
         mContext = context;
     }
 
-    public static SettingsDatabase getInstance(Context context) {
+    public static synchronized SettingsDatabase getInstance(Context context) {
         if (instance == null) {
             instance = new SettingsDatabase(context.getApplicationContext());
         }
@@ -39,7 +45,8 @@ public class SettingsDatabase extends SQLiteOpenHelper {
                 COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
                 COLUMN_STEERING_METHOD + " TEXT, " +
                 COLUMN_BROKER_IP + " TEXT, " +
-                COLUMN_LABYRINTH_SIZE + " TEXT)";
+                COLUMN_LABYRINTH_SIZE + " TEXT, " +
+                COLUMN_UDP_INGEST + " TEXT)";
         db.execSQL(createTableQuery);
     }
 
@@ -49,7 +56,16 @@ public class SettingsDatabase extends SQLiteOpenHelper {
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // Handle database upgrades if needed
+        if (oldVersion < 2) {
+            db.execSQL("ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + COLUMN_UDP_INGEST + " TEXT");
+        }
+    }
+
+    /**
+     * @return true if the UDP transport for the board's samples was switched on in the settings
+     */
+    public boolean isUdpIngestEnabled() {
+        return Boolean.parseBoolean(getSetting(COLUMN_UDP_INGEST));
     }
 
     public void saveSetting(String setting, String column) {
@@ -101,6 +117,28 @@ public class SettingsDatabase extends SQLiteOpenHelper {
     }
 
 
+    /**
+     * @param sizeSetting the COLUMN_LABYRINTH_SIZE setting, not LABYRINTH_SIZE_ENDLESS
+     * @return the size without the difficulty
+     */
+    public static int parseLabyrinthSize(String sizeSetting) {
+        int separator = sizeSetting.indexOf(LABYRINTH_DIFFICULTY_SEPARATOR);
+        return Integer.parseInt(separator < 0 ? sizeSetting.trim() : sizeSetting.substring(0, separator).trim());
+    }
+
+    /**
+     * @param sizeSetting the COLUMN_LABYRINTH_SIZE setting
+     * @return the requested difficulty or NaN if there is none
+     */
+    public static double parseLabyrinthDifficulty(String sizeSetting) {
+        int separator = sizeSetting == null ? -1 : sizeSetting.indexOf(LABYRINTH_DIFFICULTY_SEPARATOR);
+        if (separator < 0) {
+            return Double.NaN;
+        }
+        return Double.parseDouble(sizeSetting.substring(separator + 1).trim());
+    }
+
+
     public Context getContext() {
         return mContext;
     }
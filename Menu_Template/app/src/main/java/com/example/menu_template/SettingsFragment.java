@@ -53,12 +53,15 @@ public class SettingsFragment extends Fragment {
             String radioButtonSelection = settingsDatabase.getSetting(SettingsDatabase.COLUMN_STEERING_METHOD);
             sizeSettingEditText.setText(settingsDatabase.getSetting(SettingsDatabase.COLUMN_LABYRINTH_SIZE));
             brokerIPEditText.setText(settingsDatabase.getSetting(SettingsDatabase.COLUMN_BROKER_IP));
+            binding.udpIngestCheckbox.setChecked(settingsDatabase.isUdpIngestEnabled());
 
             int radioButtonId = -1;
-            if (radioButtonSelection.equals("ESP32")) {
+            if (radioButtonSelection.equals(SteeringSource.ESP32)) {
                 radioButtonId = R.id.radio_btn_esp32_steering;
-            } else if (radioButtonSelection.equals("Phone")) {
+            } else if (radioButtonSelection.equals(SteeringSource.PHONE)) {
                 radioButtonId = R.id.radio_btn_phone_steering;
+            } else if (radioButtonSelection.equals(SteeringSource.FUSED)) {
+                radioButtonId = R.id.radio_btn_fused_steering;
             }
             if (radioButtonId != -1) {
                 Log.d("radioButton", "Radio button: " + radioButtonId + "checked");
@@ -84,6 +87,10 @@ public class SettingsFragment extends Fragment {
                 mqttManager.MQTT_BROKER_IP = brokerIP;
                 settingsDatabase.updateLastSetting(brokerIP, SettingsDatabase.COLUMN_BROKER_IP);
                 settingsDatabase.updateLastSetting(labyrinth_size, SettingsDatabase.COLUMN_LABYRINTH_SIZE);
+                settingsDatabase.updateLastSetting(String.valueOf(binding.udpIngestCheckbox.isChecked()),
+                        SettingsDatabase.COLUMN_UDP_INGEST);
+                // Start pre-generating labyrinths of the new size before the next game is started
+                LabyrinthFactory.getInstance(requireContext()).prepare(settingsDatabase);
                 Log.d("MqttManager", "brokerIP: " + mqttManager.MQTT_BROKER_IP);
             }
         });
@@ -144,10 +151,13 @@ public class SettingsFragment extends Fragment {
                 // Check if the selected radio button matches a specific radio button
                 if (selectedRadioButtonId == R.id.radio_btn_esp32_steering) {
                     // ESP32 steering method is selected
-                    SteeringMethod = "ESP32";
+                    SteeringMethod = SteeringSource.ESP32;
                 } else if (selectedRadioButtonId == R.id.radio_btn_phone_steering) {
                     // Phone steering method is selected
-                    SteeringMethod = "Phone";
+                    SteeringMethod = SteeringSource.PHONE;
+                } else if (selectedRadioButtonId == R.id.radio_btn_fused_steering) {
+                    // ESP32 and phone sensors are combined
+                    SteeringMethod = SteeringSource.FUSED;
                 }
 
                 // Save the selected steering method to the database
@@ -0,0 +1,130 @@
+package com.example.menu_template;
+
+/**
+ * This class turns a sustained tilt into repeated moves, like holding down a key.
+ * It runs on the sensor sample stream: the tilt is taken from the (smoothed) gravity on the accelerometer,
+ * a direction is engaged once the tilt passes ENGAGE_TILT and kept until it drops below RELEASE_TILT (hysteresis),
+ * a new direction only counts after it has been held for DEBOUNCE_MILLIS, and while a direction is held
+ * moves are produced at a rate between MIN_MOVES_PER_SECOND and MAX_MOVES_PER_SECOND depending on the tilt.
+ * The game tick only takes the moves that are due with pollMove().
+ * <p>
+ * Every player needs its own instance. onSensorSample() and pollMove() may be called from different threads.
+ */
+public class AutoRepeatMapper implements SensorSampleListener {
+
+    private static final float GRAVITY = 9.81f;
+    private static final float SMOOTHING = 0.3f; // Weight of a new sample in the low-pass filtered tilt
+    public static final float ENGAGE_TILT = 0.25f; // About 15 degrees
+    public static final float RELEASE_TILT = 0.15f; // About 9 degrees
+    private static final float FULL_TILT = 0.7f; // About 45 degrees, moves at the maximum rate from here on
+    public static final float MIN_MOVES_PER_SECOND = 2.0f;
+    public static final float MAX_MOVES_PER_SECOND = 12.0f;
+    public static final long DEBOUNCE_MILLIS = 60;
+    private static final long MAX_SAMPLE_GAP_MILLIS = 100; // Longer gaps (lost samples) don't add up to a burst of moves
+    private static final int MAX_PENDING_MOVES = 2; // Moves are dropped rather than queued up when the game falls behind
+
+    private float tiltX, tiltY;
+    private boolean hasSample;
+    private long lastSampleTime;
+    private int activeDirection = LabyrinthRules.DIRECTION_NONE;
+    private int candidateDirection = LabyrinthRules.DIRECTION_NONE;
+    private long candidateSince;
+    private float moveCredit;
+    private int pendingMoves;
+    private long pendingMoveSampleTime; // The sample that produced the latest pending move
+    private long polledMoveSampleTime;
+
+    @Override
+    public synchronized void onSensorSample(float[] values, long timestampMillis) {
+        float sampleTiltX = values[0] / GRAVITY;
+        float sampleTiltY = values[1] / GRAVITY;
+        if (!hasSample) {
+            tiltX = sampleTiltX;
+            tiltY = sampleTiltY;
+            lastSampleTime = timestampMillis;
+            hasSample = true;
+        } else {
+            tiltX += SMOOTHING * (sampleTiltX - tiltX);
+            tiltY += SMOOTHING * (sampleTiltY - tiltY);
+        }
+        long deltaMillis = Math.max(0, Math.min(timestampMillis - lastSampleTime, MAX_SAMPLE_GAP_MILLIS));
+        lastSampleTime = timestampMillis;
+
+        // Same axes as the old lock/unlock parser: x tilts forward/backward, y tilts right/left
+        int dominantDirection;
+        float magnitude;
+        if (Math.abs(tiltX) >= Math.abs(tiltY)) {
+            magnitude = Math.abs(tiltX);
+            dominantDirection = tiltX > 0 ? LabyrinthRules.DIRECTION_FORWARD : LabyrinthRules.DIRECTION_BACKWARD;
+        } else {
+            magnitude = Math.abs(tiltY);
+            dominantDirection = tiltY > 0 ? LabyrinthRules.DIRECTION_RIGHT : LabyrinthRules.DIRECTION_LEFT;
+        }
+        float threshold = dominantDirection == activeDirection ? RELEASE_TILT : ENGAGE_TILT;
+
+        if (magnitude <= threshold) {
+            // Releasing stops right away, the hysteresis already keeps it from flickering
+            activeDirection = LabyrinthRules.DIRECTION_NONE;
+            candidateDirection = LabyrinthRules.DIRECTION_NONE;
+            moveCredit = 0;
+            pendingMoves = 0;
+            return;
+        }
+
+        if (dominantDirection != activeDirection) {
+            if (dominantDirection != candidateDirection) {
+                candidateDirection = dominantDirection;
+                candidateSince = timestampMillis;
+            }
+            if (timestampMillis - candidateSince < DEBOUNCE_MILLIS) {
+                return;
+            }
+            activeDirection = dominantDirection;
+            candidateDirection = LabyrinthRules.DIRECTION_NONE;
+            pendingMoves = 0;
+            // The first move happens as soon as the direction is accepted
+            moveCredit = 1;
+        } else {
+            candidateDirection = LabyrinthRules.DIRECTION_NONE;
+            float strength = Math.min(1, Math.max(0, (magnitude - ENGAGE_TILT) / (FULL_TILT - ENGAGE_TILT)));
+            float movesPerSecond = MIN_MOVES_PER_SECOND + (MAX_MOVES_PER_SECOND - MIN_MOVES_PER_SECOND) * strength;
+            moveCredit += movesPerSecond * deltaMillis / 1000.0f;
+        }
+
+        while (moveCredit >= 1) {
+            moveCredit -= 1;
+            if (pendingMoves < MAX_PENDING_MOVES) {
+                pendingMoves++;
+                pendingMoveSampleTime = timestampMillis;
+            }
+        }
+    }
+
+    /**
+     * Takes one move that is due
+     *
+     * @return the direction of the move (one of the LabyrinthRules.DIRECTION_* constants) or DIRECTION_NONE
+     */
+    public synchronized int pollMove() {
+        if (pendingMoves == 0) {
+            return LabyrinthRules.DIRECTION_NONE;
+        }
+        pendingMoves--;
+        polledMoveSampleTime = pendingMoveSampleTime;
+        return activeDirection;
+    }
+
+    /**
+     * @return the timestamp of the sample that produced the move returned by the last pollMove(), for latency measurements
+     */
+    public synchronized long getPolledMoveSampleMillis() {
+        return polledMoveSampleTime;
+    }
+
+    /**
+     * @return the direction that is currently held, or DIRECTION_NONE
+     */
+    public synchronized int getActiveDirection() {
+        return activeDirection;
+    }
+}
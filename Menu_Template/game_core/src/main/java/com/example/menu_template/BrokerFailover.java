@@ -0,0 +1,344 @@
+package com.example.menu_template;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Keeps a connection to the fastest reachable broker of a list of candidates.
+ * <p>
+ * Connecting probes all candidates in parallel: each one is connected to and a message is sent through it and
+ * back. The reachable broker with the shortest round trip wins (the connect time breaks ties). The probe
+ * connections use client ids of their own, since two candidates may reach the same broker (e.g. "localhost" and
+ * "127.0.0.1"), which would drop the older of two sessions with the same id. So they are all closed, and the
+ * winner is connected to again with the real id. When the connection is lost, failover() probes all candidates
+ * again, so a game switches to another broker within about twice the probe timeout, and subscribes to all topics
+ * again on the new connection.
+ * The candidates are expected to be bridged, or the board has to fail over the same way.
+ * <p>
+ * The connections themselves are made by a Connector, e.g. Paho clients in the app and LocalBroker clients in
+ * tests. Thread-safe.
+ *
+ * @param <C> the type of a connection
+ */
+public class BrokerFailover<C> {
+
+    public static final long DEFAULT_PROBE_TIMEOUT_MILLIS = 2000;
+    public static final String DEFAULT_SCHEME = "tcp";
+    public static final int DEFAULT_PORT = 1883;
+
+    public interface Connector<C> {
+        /**
+         * @param probe true for a probe connection, which must use a client id no other connection uses
+         * @throws Exception if the broker can't be reached within the timeout
+         */
+        C connect(String uri, boolean probe, long timeoutMillis) throws Exception;
+
+        /**
+         * Sends a small message through the broker and waits for it to come back
+         *
+         * @return the round trip time in nanoseconds
+         */
+        long measureRoundTripNanos(C connection, long timeoutMillis) throws Exception;
+
+        void subscribe(C connection, String topic) throws Exception;
+
+        /**
+         * Disconnects, must not throw
+         */
+        void close(C connection);
+    }
+
+    /**
+     * The result of probing one candidate
+     */
+    public static final class Probe<C> {
+        private final String uri;
+        private final long connectNanos;
+        private final long roundTripNanos;
+        private final String error;
+        private final C connection;
+
+        Probe(String uri, long connectNanos, long roundTripNanos, String error, C connection) {
+            this.uri = uri;
+            this.connectNanos = connectNanos;
+            this.roundTripNanos = roundTripNanos;
+            this.error = error;
+            this.connection = connection;
+        }
+
+        public String getUri() {
+            return uri;
+        }
+
+        public boolean isReachable() {
+            return error == null;
+        }
+
+        public long getConnectNanos() {
+            return connectNanos;
+        }
+
+        public long getRoundTripNanos() {
+            return roundTripNanos;
+        }
+
+        @Override
+        public String toString() {
+            return isReachable()
+                    ? String.format(Locale.ROOT, "%s: connect %.1f ms, round trip %.1f ms", uri, connectNanos / 1e6, roundTripNanos / 1e6)
+                    : uri + ": " + error;
+        }
+    }
+
+    private final List<String> uris;
+    private final Connector<C> connector;
+    private final Executor executor;
+    private final long probeTimeoutMillis;
+    private final Set<String> subscriptions = new CopyOnWriteArraySet<>();
+
+    private final Object lock = new Object();
+    private volatile C connection;
+    private volatile String uri;
+    private volatile List<Probe<C>> lastProbes = Collections.emptyList();
+    private CompletableFuture<C> failover; // Guarded by lock, the failover in progress
+    private boolean closed; // Guarded by lock
+
+    /**
+     * @param uris     the candidates, e.g. from parseBrokerUris()
+     * @param executor runs the probes, needs a thread per candidate to probe them all at once
+     */
+    public BrokerFailover(List<String> uris, Connector<C> connector, Executor executor, long probeTimeoutMillis) {
+        if (uris.isEmpty()) {
+            throw new IllegalArgumentException("No broker to connect to");
+        }
+        this.uris = new ArrayList<>(uris);
+        this.connector = connector;
+        this.executor = executor;
+        this.probeTimeoutMillis = probeTimeoutMillis;
+    }
+
+    /**
+     * Turns the broker setting into URIs: a comma-separated list of "host", "host:port" or "scheme://host:port"
+     */
+    public static List<String> parseBrokerUris(String setting) {
+        List<String> uris = new ArrayList<>();
+        if (setting == null) {
+            return uris;
+        }
+        for (String candidate : setting.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.isEmpty()) {
+                continue;
+            }
+            if (!candidate.contains("://")) {
+                candidate = DEFAULT_SCHEME + "://" + candidate;
+            }
+            if (candidate.indexOf(':', candidate.indexOf("://") + 3) < 0) {
+                candidate = candidate + ":" + DEFAULT_PORT;
+            }
+            uris.add(candidate);
+        }
+        return uris;
+    }
+
+    /**
+     * Probes all candidates and connects to the fastest one, blocks for at most about twice the probe timeout
+     *
+     * @return the connection, also available from getConnection()
+     * @throws IOException if no broker could be reached
+     */
+    public C connect() throws IOException {
+        List<Probe<C>> probes = probeAll();
+        lastProbes = Collections.unmodifiableList(probes);
+        List<Probe<C>> reachable = new ArrayList<>();
+        for (Probe<C> probe : probes) {
+            if (probe.connection != null) {
+                connector.close(probe.connection);
+            }
+            if (probe.isReachable()) {
+                reachable.add(probe);
+            }
+        }
+        reachable.sort((a, b) -> a.roundTripNanos != b.roundTripNanos
+                ? Long.compare(a.roundTripNanos, b.roundTripNanos)
+                : Long.compare(a.connectNanos, b.connectNanos));
+        // The fastest one, or the next if it went away since its probe
+        C chosen = null;
+        String chosenUri = null;
+        List<String> errors = new ArrayList<>();
+        for (Probe<C> probe : reachable) {
+            try {
+                chosen = connector.connect(probe.uri, false, probeTimeoutMillis);
+                chosenUri = probe.uri;
+                break;
+            } catch (Exception e) {
+                errors.add(probe.uri + ": " + e);
+            }
+        }
+        if (chosen == null) {
+            throw new IOException("No broker reachable: " + (reachable.isEmpty() ? probes : errors));
+        }
+        synchronized (lock) {
+            if (closed) {
+                connector.close(chosen);
+                throw new IOException("Closed while connecting");
+            }
+            connection = chosen;
+            uri = chosenUri;
+        }
+        // Set before restoring, so a topic subscribed meanwhile goes to the new connection or is in the set already
+        for (String topic : subscriptions) {
+            try {
+                connector.subscribe(chosen, topic);
+            } catch (Exception e) {
+                throw new IOException("Could not subscribe to " + topic + " on " + chosenUri, e);
+            }
+        }
+        return chosen;
+    }
+
+    private List<Probe<C>> probeAll() {
+        List<CompletableFuture<Probe<C>>> futures = new ArrayList<>();
+        for (String candidate : uris) {
+            futures.add(CompletableFuture.supplyAsync(() -> probe(candidate), executor));
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(probeTimeoutMillis);
+        List<Probe<C>> probes = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+            CompletableFuture<Probe<C>> future = futures.get(i);
+            try {
+                probes.add(future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                probes.add(new Probe<>(uris.get(i), -1, -1, "timed out", null));
+                // Still connecting, the connection is not needed anymore once it is made
+                future.thenAccept(late -> {
+                    if (late.connection != null) {
+                        connector.close(late.connection);
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                probes.add(new Probe<>(uris.get(i), -1, -1, "interrupted", null));
+            } catch (ExecutionException e) {
+                probes.add(new Probe<>(uris.get(i), -1, -1, String.valueOf(e.getCause()), null));
+            }
+        }
+        return probes;
+    }
+
+    private Probe<C> probe(String candidate) {
+        long start = System.nanoTime();
+        C probeConnection = null;
+        try {
+            probeConnection = connector.connect(candidate, true, probeTimeoutMillis);
+            long connectNanos = System.nanoTime() - start;
+            long roundTripNanos = connector.measureRoundTripNanos(probeConnection, probeTimeoutMillis);
+            return new Probe<>(candidate, connectNanos, roundTripNanos, null, probeConnection);
+        } catch (Exception e) {
+            if (probeConnection != null) {
+                connector.close(probeConnection);
+            }
+            return new Probe<>(candidate, -1, -1, e.toString(), null);
+        }
+    }
+
+    /**
+     * Replaces a lost connection with one to the fastest reachable broker, only one failover runs at a time
+     *
+     * @param lost the connection that was lost, nothing is done if it was already replaced
+     * @return completes with the new connection, or exceptionally if no broker could be reached
+     */
+    public CompletableFuture<C> failover(C lost) {
+        synchronized (lock) {
+            if (closed) {
+                CompletableFuture<C> failed = new CompletableFuture<>();
+                failed.completeExceptionally(new IOException("Closed"));
+                return failed;
+            }
+            if (failover != null) {
+                return failover;
+            }
+            if (connection != lost) {
+                return CompletableFuture.completedFuture(connection);
+            }
+            connection = null;
+            CompletableFuture<C> running = CompletableFuture.supplyAsync(() -> {
+                connector.close(lost);
+                try {
+                    return connect();
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, executor);
+            failover = running;
+            running.whenComplete((newConnection, error) -> {
+                synchronized (lock) {
+                    failover = null;
+                }
+            });
+            return running;
+        }
+    }
+
+    /**
+     * Subscribes on the current connection and on every connection after a failover
+     */
+    public void subscribe(String topic) throws Exception {
+        subscriptions.add(topic);
+        C current = connection;
+        if (current != null) {
+            connector.subscribe(current, topic);
+        }
+    }
+
+    /**
+     * Stops subscribing to the topic after a failover, the caller unsubscribes on the current connection
+     */
+    public void unsubscribe(String topic) {
+        subscriptions.remove(topic);
+    }
+
+    /**
+     * @return the current connection, null while failing over or before connecting
+     */
+    public C getConnection() {
+        return connection;
+    }
+
+    /**
+     * @return the URI of the broker of the current connection, or the last one
+     */
+    public String getUri() {
+        return uri;
+    }
+
+    public List<Probe<C>> getLastProbes() {
+        return lastProbes;
+    }
+
+    /**
+     * Closes the current connection, no failover happens anymore
+     */
+    public void close() {
+        C current;
+        synchronized (lock) {
+            closed = true;
+            current = connection;
+            connection = null;
+        }
+        if (current != null) {
+            connector.close(current);
+        }
+    }
+}
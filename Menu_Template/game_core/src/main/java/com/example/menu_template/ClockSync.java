@@ -0,0 +1,109 @@
+package com.example.menu_template;
+
+/**
+ * NTP-style clock synchronization with an ESP32 board over MQTT.
+ * The app publishes its time t1 on the ping topic, the board answers on the pong topic with "t1,t2,t3",
+ * where t2 is the time it received the ping and t3 the time it sent the answer, and the app notes the arrival time t4.
+ * From every exchange follow the round trip time (t4 - t1) - (t3 - t2) and the clock offset ((t2 - t1) + (t3 - t4)) / 2.
+ * The offset of the exchange with the shortest round trip among the last few is used, since it has the least
+ * queueing delay that could be asymmetric.
+ * <p>
+ * All times are in microseconds, the app's on its monotonic clock, the board's on esp_timer_get_time().
+ */
+public class ClockSync {
+
+    private static final int WINDOW = 8;
+
+    private final long[] offsets = new long[WINDOW];
+    private final long[] roundTrips = new long[WINDOW];
+    private int count;
+    private int next;
+    private long latestRoundTrip;
+
+    /**
+     * @param localMicros the current time of the app
+     * @return the payload of a ping
+     */
+    public static String pingMessage(long localMicros) {
+        return Long.toString(localMicros);
+    }
+
+    /**
+     * @param message       the payload received on the pong topic
+     * @param receivedMicros the time of the app when it arrived (t4)
+     * @return false if the message was malformed or impossible
+     */
+    public boolean onPongMessage(String message, long receivedMicros) {
+        int first = message.indexOf(',');
+        int second = message.indexOf(',', first + 1);
+        if (first < 0 || second < 0) {
+            return false;
+        }
+        try {
+            long t1 = Long.parseLong(message.substring(0, first).trim());
+            long t2 = Long.parseLong(message.substring(first + 1, second).trim());
+            long t3 = Long.parseLong(message.substring(second + 1).trim());
+            return onPong(t1, t2, t3, receivedMicros);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return false if the exchange was impossible (negative round trip, e.g. a pong to a ping from before a restart)
+     */
+    public synchronized boolean onPong(long t1, long t2, long t3, long t4) {
+        long roundTrip = (t4 - t1) - (t3 - t2);
+        if (roundTrip < 0 || t4 < t1) {
+            return false;
+        }
+        offsets[next] = ((t2 - t1) + (t3 - t4)) / 2;
+        roundTrips[next] = roundTrip;
+        next = (next + 1) % WINDOW;
+        count = Math.min(count + 1, WINDOW);
+        latestRoundTrip = roundTrip;
+        return true;
+    }
+
+    public synchronized boolean isSynchronized() {
+        return count > 0;
+    }
+
+    /**
+     * @return the board's clock minus the app's clock
+     */
+    public synchronized long getOffsetMicros() {
+        return offsets[bestExchange()];
+    }
+
+    /**
+     * @return the round trip time (app -> broker -> board -> broker -> app) of the latest exchange
+     */
+    public synchronized long getRoundTripMicros() {
+        return latestRoundTrip;
+    }
+
+    /**
+     * @return the shortest round trip time among the recent exchanges
+     */
+    public synchronized long getBestRoundTripMicros() {
+        return roundTrips[bestExchange()];
+    }
+
+    /**
+     * Converts a timestamp of the board to the app's clock, only meaningful once isSynchronized()
+     */
+    public synchronized long toLocalMicros(long deviceMicros) {
+        return deviceMicros - offsets[bestExchange()];
+    }
+
+    private int bestExchange() {
+        int best = 0;
+        for (int i = 1; i < count; i++) {
+            if (roundTrips[i] < roundTrips[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.menu_template;
+
+public class Constants {
+    public static final String MPU_TOPIC = "mpu/K05";
+    public static final String TEMP_TOPIC = "temp/K05";
+    public static final String FINISHED_TOPIC = "finished/K05";
+    public static final String SPECTATE_TOPIC = "spectate/K05";
+    // Clock synchronization with the board, see ClockSync
+    public static final String PING_TOPIC = "ping/K05";
+    public static final String PONG_TOPIC = "pong/K05";
+    // Publish rate commands to the board and its confirmations, see SensorRateControl
+    public static final String CONTROL_TOPIC = "control/K05";
+    public static final String CONTROL_ACK_TOPIC = "control_ack/K05";
+    // "<address>:<port>" the board sends its sensor frames to over UDP (see UdpSensorReceiver), empty to use MQTT again
+    public static final String UDP_TARGET_TOPIC = "udp/K05";
+    public static final int UDP_SENSOR_PORT = 5005;
+    // The MoveLog of every finished run
+    public static final String RUN_TOPIC = "run/K05";
+
+    // Per-device topics are "<prefix><device id>", e.g. "mpu/K05"
+    public static final String MPU_TOPIC_PREFIX = "mpu/";
+    public static final String TEMP_TOPIC_PREFIX = "temp/";
+    public static final String FINISHED_TOPIC_PREFIX = "finished/";
+    public static final String SPECTATE_TOPIC_PREFIX = "spectate/";
+
+}
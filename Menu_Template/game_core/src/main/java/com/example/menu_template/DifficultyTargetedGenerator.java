@@ -0,0 +1,160 @@
+package com.example.menu_template;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates labyrinths of a requested difficulty (see LabyrinthScore), so timed games of one size are comparable.
+ * Many seeded candidates are generated and scored in parallel on a fork-join pool, the one closest to the
+ * requested difficulty wins. Candidates not started when the latency budget is used up are skipped,
+ * the first one is always generated, so there is always a result.
+ * <p>
+ * Every candidate is an ordinary LabyrinthRules.generateLabyrinth() labyrinth with its own seed, so the result
+ * can be shared and reproduced through its seed like any other labyrinth.
+ */
+public class DifficultyTargetedGenerator {
+
+    public static final int DEFAULT_CANDIDATES = 64;
+    private static final int CANDIDATES_PER_TASK = 2; // A task with more candidates is split in two
+    private static final long SEED_STEP = 0x9E3779B97F4A7C15L; // Spreads the candidate seeds over the whole range
+
+    private final ForkJoinPool pool;
+
+    public DifficultyTargetedGenerator(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Generates up to candidates labyrinths and returns the one closest to the target, blocks until it is found
+     *
+     * @param targetDifficulty from 0 (easy) to 1 (hard)
+     * @param seed             the candidate seeds are derived from it, the same seed gives the same candidates
+     * @param budgetMillis     no new candidate is started after this time
+     */
+    public Result generate(int size, double targetDifficulty, long seed, int candidates, long budgetMillis) {
+        long startNanos = System.nanoTime();
+        Search search = new Search(size, targetDifficulty, seed, startNanos + budgetMillis * 1_000_000);
+        Result best = pool.invoke(new CandidateTask(search, 0, candidates));
+        best.scoredCandidates = search.scored.get();
+        best.elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        return best;
+    }
+
+    /**
+     * @return the seed of the candidate, generateLabyrinth(size, new Random(candidateSeed)) gives its labyrinth
+     */
+    public static long candidateSeed(long seed, int candidate) {
+        return seed + candidate * SEED_STEP;
+    }
+
+    private static final class Search {
+        final int size;
+        final double targetDifficulty;
+        final long seed;
+        final long deadlineNanos;
+        final AtomicInteger scored = new AtomicInteger();
+
+        Search(int size, double targetDifficulty, long seed, long deadlineNanos) {
+            this.size = size;
+            this.targetDifficulty = targetDifficulty;
+            this.seed = seed;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+
+    private static final class CandidateTask extends RecursiveTask<Result> {
+        private static final long serialVersionUID = 1L;
+
+        private final Search search;
+        private final int from;
+        private final int to;
+
+        CandidateTask(Search search, int from, int to) {
+            this.search = search;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Result compute() {
+            if (to - from > CANDIDATES_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                CandidateTask second = new CandidateTask(search, middle, to);
+                second.fork();
+                Result first = new CandidateTask(search, from, middle).compute();
+                return better(first, second.join());
+            }
+            Result best = null;
+            for (int candidate = from; candidate < to; candidate++) {
+                if (candidate > 0 && System.nanoTime() > search.deadlineNanos) {
+                    break;
+                }
+                long candidateSeed = candidateSeed(search.seed, candidate);
+                int[][] labyrinth = LabyrinthRules.generateLabyrinth(search.size, new Random(candidateSeed));
+                LabyrinthScore score = LabyrinthScore.of(labyrinth);
+                search.scored.incrementAndGet();
+                best = better(best, new Result(candidate, candidateSeed, labyrinth, score,
+                        Math.abs(score.getDifficulty() - search.targetDifficulty)));
+            }
+            return best;
+        }
+
+        private static Result better(Result a, Result b) {
+            if (a == null || b == null) {
+                return a == null ? b : a;
+            }
+            // The lower candidate wins a tie, so the result does not depend on the order the tasks finish in
+            if (b.distance < a.distance || (b.distance == a.distance && b.candidate < a.candidate)) {
+                return b;
+            }
+            return a;
+        }
+    }
+
+    /**
+     * The chosen candidate
+     */
+    public static final class Result {
+        private final int candidate;
+        private final long seed;
+        private final int[][] labyrinth;
+        private final LabyrinthScore score;
+        private final double distance;
+        private int scoredCandidates;
+        private long elapsedMillis;
+
+        Result(int candidate, long seed, int[][] labyrinth, LabyrinthScore score, double distance) {
+            this.candidate = candidate;
+            this.seed = seed;
+            this.labyrinth = labyrinth;
+            this.score = score;
+            // A candidate without a way to the finish is never chosen over one with a way
+            this.distance = Double.isNaN(distance) ? Double.MAX_VALUE : distance;
+        }
+
+        public long getSeed() {
+            return seed;
+        }
+
+        public int[][] getLabyrinth() {
+            return labyrinth;
+        }
+
+        public LabyrinthScore getScore() {
+            return score;
+        }
+
+        /**
+         * @return the number of candidates generated before the budget was used up
+         */
+        public int getScoredCandidates() {
+            return scoredCandidates;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+    }
+}
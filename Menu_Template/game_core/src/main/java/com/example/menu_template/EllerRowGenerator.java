@@ -0,0 +1,163 @@
+package com.example.menu_template;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Streaming labyrinth generator based on Eller's algorithm. It produces an endless sequence of grid rows
+ * in the same cell format as LabyrinthRules.generateLabyrinth() (walls are cells), while only remembering
+ * which set every cell of the current row belongs to, so its memory is O(width) however long the labyrinth gets.
+ * <p>
+ * Rows alternate between cell rows (cells on odd columns, joined or separated by the even columns) and
+ * passage rows (an odd column is open where a cell continues into the next cell row). The first row is a full wall.
+ * Every generated row is connected to all rows before it, so the labyrinth stays perfect (one path between two cells).
+ */
+public class EllerRowGenerator {
+
+    private final int cells;
+    private final Random random;
+
+    // Set of every cell in the current cell row, ids are kept in [1, cells]
+    private final int[] sets;
+    private final int[] remap;
+    private final int[] parent; // Union-find over the set ids while a cell row is joined
+    private final int[] lastCellOfSet;
+    private final boolean[] setHasPassage;
+    private final boolean[] passages;
+    private boolean started;
+    private boolean cellRowNext = true;
+
+    /**
+     * @param cells  the number of cells per row, a row is 2 * cells + 1 grid cells wide
+     * @param random the source of randomness, seed it to reproduce a labyrinth
+     */
+    public EllerRowGenerator(int cells, Random random) {
+        this.cells = cells;
+        this.random = random;
+        this.sets = new int[cells];
+        this.remap = new int[cells + 1];
+        this.parent = new int[cells + 1];
+        this.lastCellOfSet = new int[cells + 1];
+        this.setHasPassage = new boolean[cells + 1];
+        this.passages = new boolean[cells];
+    }
+
+    /**
+     * @return the width of a generated row in grid cells
+     */
+    public int getWidth() {
+        return 2 * cells + 1;
+    }
+
+    /**
+     * Writes the next row into the given array, which must be getWidth() long
+     */
+    public void nextRow(int[] row) {
+        if (!started) {
+            started = true;
+            Arrays.fill(row, LabyrinthRules.WALL);
+            return;
+        }
+        if (cellRowNext) {
+            nextCellRow(row);
+        } else {
+            nextPassageRow(row);
+        }
+        cellRowNext = !cellRowNext;
+    }
+
+    /**
+     * Writes the last cell row, which joins all remaining sets so the labyrinth can be closed with a full wall row.
+     * Must be called instead of nextRow() when the next row would be a cell row.
+     */
+    public void lastRow(int[] row) {
+        if (!started || !cellRowNext) {
+            throw new IllegalStateException("The last row has to be a cell row");
+        }
+        assignSets();
+        joinCells(row, true);
+        Arrays.fill(passages, false);
+        cellRowNext = false;
+    }
+
+    private void nextCellRow(int[] row) {
+        assignSets();
+        joinCells(row, false);
+
+        // Every set needs at least one passage into the next cell row, otherwise it would be cut off
+        Arrays.fill(setHasPassage, false);
+        for (int c = 0; c < cells; c++) {
+            passages[c] = random.nextBoolean();
+            setHasPassage[sets[c]] |= passages[c];
+            lastCellOfSet[sets[c]] = c;
+        }
+        for (int c = 0; c < cells; c++) {
+            int set = sets[c];
+            if (!setHasPassage[set] && lastCellOfSet[set] == c) {
+                passages[c] = true;
+                setHasPassage[set] = true;
+            }
+        }
+    }
+
+    private void joinCells(int[] row, boolean joinAll) {
+        for (int set = 0; set <= cells; set++) {
+            parent[set] = set;
+        }
+        row[0] = LabyrinthRules.WALL;
+        for (int c = 0; c < cells; c++) {
+            row[2 * c + 1] = LabyrinthRules.EMPTY;
+            row[2 * c + 2] = LabyrinthRules.WALL;
+            if (c + 1 < cells) {
+                int left = find(sets[c]);
+                int right = find(sets[c + 1]);
+                if (left != right && (joinAll || random.nextBoolean())) {
+                    row[2 * c + 2] = LabyrinthRules.EMPTY;
+                    parent[right] = left;
+                }
+            }
+        }
+        for (int c = 0; c < cells; c++) {
+            sets[c] = find(sets[c]);
+        }
+    }
+
+    private int find(int set) {
+        while (parent[set] != set) {
+            parent[set] = parent[parent[set]];
+            set = parent[set];
+        }
+        return set;
+    }
+
+    private void nextPassageRow(int[] row) {
+        Arrays.fill(row, LabyrinthRules.WALL);
+        for (int c = 0; c < cells; c++) {
+            if (passages[c]) {
+                row[2 * c + 1] = LabyrinthRules.EMPTY;
+            } else {
+                // No passage, the cell below starts a set of its own
+                sets[c] = 0;
+            }
+        }
+    }
+
+    private void assignSets() {
+        // Renumber the carried sets to 1..k and give the remaining cells new ids, so ids never exceed cells
+        Arrays.fill(remap, 0);
+        int nextId = 1;
+        for (int c = 0; c < cells; c++) {
+            if (sets[c] != 0) {
+                if (remap[sets[c]] == 0) {
+                    remap[sets[c]] = nextId++;
+                }
+                sets[c] = remap[sets[c]];
+            }
+        }
+        for (int c = 0; c < cells; c++) {
+            if (sets[c] == 0) {
+                sets[c] = nextId++;
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.menu_template;
+
+import java.util.Locale;
+
+/**
+ * Latency of the steering pipeline per sample, measured from the moment the sensor was read:
+ * until the sample arrived in the app (WiFi and broker), until it caused a move, and until that move was on screen.
+ * The difference between the stages separates network delay from our own processing delay.
+ * Every stage is kept in a RollingWindow of WINDOW_MILLIS, all times are milliseconds on the app's monotonic clock.
+ */
+public class EndToEndLatency {
+
+    public static final long WINDOW_MILLIS = 10_000;
+    private static final int CAPACITY = 2048;
+
+    private final RollingWindow transport = new RollingWindow(WINDOW_MILLIS, CAPACITY);
+    private final RollingWindow toMove = new RollingWindow(WINDOW_MILLIS, CAPACITY);
+    private final RollingWindow toPixel = new RollingWindow(WINDOW_MILLIS, CAPACITY);
+
+    /**
+     * @param arrivalMillis the time the sample arrived in the app
+     * @param readMillis    the time the sensor was read, on the app's clock
+     */
+    public void recordTransport(long arrivalMillis, long readMillis) {
+        transport.add(arrivalMillis, arrivalMillis - readMillis);
+    }
+
+    public void recordMove(long moveMillis, long readMillis) {
+        toMove.add(moveMillis, moveMillis - readMillis);
+    }
+
+    public void recordPixel(long drawnMillis, long readMillis) {
+        toPixel.add(drawnMillis, drawnMillis - readMillis);
+    }
+
+    public RollingWindow getTransport() {
+        return transport;
+    }
+
+    public RollingWindow getToMove() {
+        return toMove;
+    }
+
+    public RollingWindow getToPixel() {
+        return toPixel;
+    }
+
+    /**
+     * @return the mean of every stage over the window, e.g. for a log line
+     */
+    public String summary(long nowMillis) {
+        transport.evictExpired(nowMillis);
+        toMove.evictExpired(nowMillis);
+        toPixel.evictExpired(nowMillis);
+        return String.format(Locale.ROOT, "sensor->app %.1f ms, sensor->move %.1f ms, sensor->pixel %.1f ms",
+                transport.getMean(), toMove.getMean(), toPixel.getMean());
+    }
+}
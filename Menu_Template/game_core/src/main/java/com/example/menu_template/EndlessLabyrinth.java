@@ -0,0 +1,76 @@
+package com.example.menu_template;
+
+import java.util.Random;
+
+/**
+ * Labyrinth without an end for the endless mode. Only a fixed window of rows is kept: new rows are streamed in
+ * by an EllerRowGenerator at row 0 (the FORWARD direction), and the rows the player left behind are dropped at the end.
+ * <p>
+ * The window is a plain int[][] in the usual format, so LabyrinthRules.movePlayer() and the renderer work on it
+ * unchanged. Scrolling only moves row references and reuses the dropped row arrays, so memory stays fixed.
+ */
+public class EndlessLabyrinth {
+
+    private final EllerRowGenerator generator;
+    private final int[][] window;
+    private final int scrollThreshold;
+    private long scrolledRows;
+
+    /**
+     * @param cells       the number of cells per row, the labyrinth is 2 * cells + 1 grid cells wide
+     * @param visibleRows the number of grid rows kept in the window
+     * @param random      the source of randomness, seed it to reproduce a labyrinth
+     */
+    public EndlessLabyrinth(int cells, int visibleRows, Random random) {
+        this.generator = new EllerRowGenerator(cells, random);
+        this.window = new int[visibleRows][generator.getWidth()];
+        // Keep the player in the older half of the window, so there is always labyrinth ahead
+        this.scrollThreshold = visibleRows / 2;
+
+        for (int i = 0; i < visibleRows; i++) {
+            scroll();
+        }
+        scrolledRows = 0;
+        // The oldest row is the closing wall, the player starts in the first cell row in front of it
+        window[visibleRows - 2][1] = LabyrinthRules.PLAYER;
+    }
+
+    /**
+     * @return the current window, the same array for the whole game
+     */
+    public int[][] getLabyrinth() {
+        return window;
+    }
+
+    /**
+     * @return the number of rows streamed in since the start, i.e. how far the player got
+     */
+    public long getScrolledRows() {
+        return scrolledRows;
+    }
+
+    /**
+     * Moves the player like LabyrinthRules.movePlayer() and streams in new rows when the player gets close to row 0
+     *
+     * @return one of the LabyrinthRules.MOVE_* results, never MOVE_FINISHED
+     */
+    public int movePlayer(int direction) {
+        int result = LabyrinthRules.movePlayer(window, direction);
+        if (result == LabyrinthRules.MOVE_OK && direction == LabyrinthRules.DIRECTION_FORWARD) {
+            int playerCell = LabyrinthRules.findCell(window, LabyrinthRules.PLAYER);
+            int playerRow = playerCell / generator.getWidth();
+            for (; playerRow < scrollThreshold; playerRow++) {
+                scroll();
+            }
+        }
+        return result;
+    }
+
+    private void scroll() {
+        int[] recycled = window[window.length - 1];
+        System.arraycopy(window, 0, window, 1, window.length - 1);
+        generator.nextRow(recycled);
+        window[0] = recycled;
+        scrolledRows++;
+    }
+}
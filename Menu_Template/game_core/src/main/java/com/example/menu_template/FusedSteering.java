@@ -0,0 +1,141 @@
+package com.example.menu_template;
+
+import java.util.Arrays;
+
+/**
+ * Combines several steering sources (e.g. ESP32 and phone) into one stream of samples.
+ * Every incoming sample produces a fused sample at its timestamp: the weighted mean of the latest sample of every source,
+ * where a source's weight falls with its latency plus the age of its latest sample. A slow or stalled source
+ * therefore fades out instead of dragging the fused tilt along with stale values.
+ * <p>
+ * The samples of all sources are merged by timestamp before they are fused, so the fused timestamps never go back.
+ * A sample older than the last fused one (e.g. of a source with a longer transport delay) is fused at the time of
+ * the last fused sample, with its age counted against it.
+ */
+public class FusedSteering implements SteeringSource {
+
+    private final SteeringSource[] sources;
+    private final SensorSampleListener[] sourceListeners;
+    private final float[][] latestSamples;
+    private final long[] latestTimestamps;
+    private final boolean[] hasSample;
+    private final float[] fusedSample = new float[SensorMessageParser.VALUE_COUNT];
+    // The samples of the current drain per source, grown when a drain brings more, so a steady game loop doesn't allocate
+    private final float[][][] stagedSamples;
+    private final long[][] stagedTimestamps;
+    private final int[] stagedCounts;
+    private final int[] mergePositions;
+    private long lastFusedTimestamp = Long.MIN_VALUE;
+
+    private static final int INITIAL_STAGING_CAPACITY = 64;
+
+    public FusedSteering(SteeringSource... sources) {
+        this.sources = sources;
+        this.sourceListeners = new SensorSampleListener[sources.length];
+        this.latestSamples = new float[sources.length][SensorMessageParser.VALUE_COUNT];
+        this.latestTimestamps = new long[sources.length];
+        this.hasSample = new boolean[sources.length];
+        this.stagedSamples = new float[sources.length][INITIAL_STAGING_CAPACITY][SensorMessageParser.VALUE_COUNT];
+        this.stagedTimestamps = new long[sources.length][INITIAL_STAGING_CAPACITY];
+        this.stagedCounts = new int[sources.length];
+        this.mergePositions = new int[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            int source = i;
+            sourceListeners[i] = (values, timestampMillis) -> stage(source, values, timestampMillis);
+        }
+    }
+
+    @Override
+    public void startSensors() {
+        for (SteeringSource source : sources) {
+            source.startSensors();
+        }
+    }
+
+    @Override
+    public void stopSensors() {
+        for (SteeringSource source : sources) {
+            source.stopSensors();
+        }
+    }
+
+    @Override
+    public int drainSamples(SensorSampleListener listener) {
+        int drained = 0;
+        for (int i = 0; i < sources.length; i++) {
+            stagedCounts[i] = 0;
+            mergePositions[i] = 0;
+            drained += sources[i].drainSamples(sourceListeners[i]);
+        }
+        // Every source delivers in order, so repeatedly taking the oldest head merges them
+        while (true) {
+            int oldest = -1;
+            for (int i = 0; i < sources.length; i++) {
+                if (mergePositions[i] < stagedCounts[i] && (oldest < 0
+                        || stagedTimestamps[i][mergePositions[i]] < stagedTimestamps[oldest][mergePositions[oldest]])) {
+                    oldest = i;
+                }
+            }
+            if (oldest < 0) {
+                return drained;
+            }
+            int position = mergePositions[oldest]++;
+            fuse(oldest, stagedSamples[oldest][position], stagedTimestamps[oldest][position], listener);
+        }
+    }
+
+    /**
+     * @return the latency of the fastest source
+     */
+    @Override
+    public long getLatencyMillis() {
+        long latency = Long.MAX_VALUE;
+        for (SteeringSource source : sources) {
+            latency = Math.min(latency, source.getLatencyMillis());
+        }
+        return latency;
+    }
+
+    private void stage(int source, float[] values, long timestampMillis) {
+        int count = stagedCounts[source];
+        if (count == stagedTimestamps[source].length) {
+            float[][] samples = Arrays.copyOf(stagedSamples[source], count * 2);
+            for (int i = count; i < samples.length; i++) {
+                samples[i] = new float[SensorMessageParser.VALUE_COUNT];
+            }
+            stagedSamples[source] = samples;
+            stagedTimestamps[source] = Arrays.copyOf(stagedTimestamps[source], count * 2);
+        }
+        System.arraycopy(values, 0, stagedSamples[source][count], 0, fusedSample.length);
+        stagedTimestamps[source][count] = timestampMillis;
+        stagedCounts[source] = count + 1;
+    }
+
+    private void fuse(int source, float[] values, long sampleTimestampMillis, SensorSampleListener output) {
+        long timestampMillis = Math.max(sampleTimestampMillis, lastFusedTimestamp);
+        lastFusedTimestamp = timestampMillis;
+        System.arraycopy(values, 0, latestSamples[source], 0, fusedSample.length);
+        latestTimestamps[source] = sampleTimestampMillis;
+        hasSample[source] = true;
+
+        float totalWeight = 0;
+        for (int k = 0; k < fusedSample.length; k++) {
+            fusedSample[k] = 0;
+        }
+        for (int i = 0; i < sources.length; i++) {
+            if (!hasSample[i]) {
+                continue;
+            }
+            long age = Math.max(0, timestampMillis - latestTimestamps[i]);
+            float weight = 1.0f / (1 + sources[i].getLatencyMillis() + age);
+            totalWeight += weight;
+            for (int k = 0; k < fusedSample.length; k++) {
+                fusedSample[k] += weight * latestSamples[i][k];
+            }
+        }
+        for (int k = 0; k < fusedSample.length; k++) {
+            fusedSample[k] /= totalWeight;
+        }
+        output.onSensorSample(fusedSample, timestampMillis);
+    }
+}
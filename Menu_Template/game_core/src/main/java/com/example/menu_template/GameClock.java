@@ -0,0 +1,72 @@
+package com.example.menu_template;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Monotonic game timer with millisecond resolution.
+ * It only counts while the game is running and does not depend on how often any topic publishes.
+ */
+public class GameClock {
+
+    private static final long NANOS_PER_MILLI = 1_000_000L;
+
+    private final LongSupplier nanoTimeSource;
+    private long accumulatedNanos;
+    private long resumedAtNanos;
+    private boolean running;
+
+    public GameClock() {
+        this(System::nanoTime);
+    }
+
+    /**
+     * @param nanoTimeSource a monotonic time source in nanoseconds, e.g. System::nanoTime
+     */
+    public GameClock(LongSupplier nanoTimeSource) {
+        this.nanoTimeSource = nanoTimeSource;
+    }
+
+    /**
+     * Resets the clock to zero and starts it
+     */
+    public synchronized void start() {
+        accumulatedNanos = 0;
+        resumedAtNanos = nanoTimeSource.getAsLong();
+        running = true;
+    }
+
+    /**
+     * Continues counting from the current elapsed time, does nothing if the clock is already running
+     */
+    public synchronized void resume() {
+        if (!running) {
+            resumedAtNanos = nanoTimeSource.getAsLong();
+            running = true;
+        }
+    }
+
+    /**
+     * Stops counting, the elapsed time is kept
+     */
+    public synchronized void pause() {
+        if (running) {
+            accumulatedNanos += nanoTimeSource.getAsLong() - resumedAtNanos;
+            running = false;
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * @return the time the clock has been running in milliseconds
+     */
+    public synchronized long getElapsedMillis() {
+        long elapsed = accumulatedNanos;
+        if (running) {
+            elapsed += nanoTimeSource.getAsLong() - resumedAtNanos;
+        }
+        return elapsed / NANOS_PER_MILLI;
+    }
+}
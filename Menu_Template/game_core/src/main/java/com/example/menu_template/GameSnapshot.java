@@ -0,0 +1,151 @@
+package com.example.menu_template;
+
+/**
+ * Immutable state of a running game, made by the game thread and read by the render and HUD code.
+ * A new snapshot is only made when something visible changed, and it is handed over through a single
+ * volatile reference, so readers never see a half-updated game.
+ * <p>
+ * The labyrinth and the HUD values carry their own version, so a reader can tell which part changed
+ * and skip the work for the other one. The ghost of a previous run is drawn into the labyrinth, so it shares
+ * the labyrinth version. The minimap of a large labyrinth carries the version of its MinimapPyramid.
+ */
+public final class GameSnapshot {
+
+    // The HUD shows the play time in tenths of a second, smaller changes are not worth a new snapshot
+    public static final long PLAY_TIME_RESOLUTION_MILLIS = 100;
+
+    public static final GameSnapshot EMPTY = new GameSnapshot(0, new int[0][0], -1, 0, 0,
+            Float.NaN, Float.NaN, Float.NaN, Float.NaN, null);
+
+    private final long labyrinthVersion;
+    private final int[][] labyrinth;
+    private final int ghostCell;
+    private final long hudVersion;
+    private final long playTimeMillis;
+    private final float temperature;
+    private final float minTemperature;
+    private final float meanTemperature;
+    private final float maxTemperature;
+    private final MinimapPyramid.Minimap minimap;
+
+    private GameSnapshot(long labyrinthVersion, int[][] labyrinth, int ghostCell, long hudVersion, long playTimeMillis,
+                         float temperature, float minTemperature, float meanTemperature, float maxTemperature,
+                         MinimapPyramid.Minimap minimap) {
+        this.labyrinthVersion = labyrinthVersion;
+        this.labyrinth = labyrinth;
+        this.ghostCell = ghostCell;
+        this.hudVersion = hudVersion;
+        this.playTimeMillis = playTimeMillis;
+        this.temperature = temperature;
+        this.minTemperature = minTemperature;
+        this.meanTemperature = meanTemperature;
+        this.maxTemperature = maxTemperature;
+        this.minimap = minimap;
+    }
+
+    /**
+     * @param labyrinth the current labyrinth, which is copied, so the caller may keep changing it
+     * @return a snapshot with the new labyrinth and the next labyrinth version
+     */
+    public GameSnapshot withLabyrinth(int[][] labyrinth) {
+        int[][] copy = new int[labyrinth.length][];
+        for (int i = 0; i < labyrinth.length; i++) {
+            copy[i] = labyrinth[i].clone();
+        }
+        return new GameSnapshot(labyrinthVersion + 1, copy, ghostCell, hudVersion, playTimeMillis,
+                temperature, minTemperature, meanTemperature, maxTemperature, minimap);
+    }
+
+    /**
+     * @param ghostCell the index (row * columns + column) of the ghost in the labyrinth, -1 for none
+     * @return this snapshot if the ghost did not move, otherwise one with the next labyrinth version
+     */
+    public GameSnapshot withGhost(int ghostCell) {
+        if (ghostCell == this.ghostCell) {
+            return this;
+        }
+        return new GameSnapshot(labyrinthVersion + 1, labyrinth, ghostCell, hudVersion, playTimeMillis,
+                temperature, minTemperature, meanTemperature, maxTemperature, minimap);
+    }
+
+    /**
+     * @param minimap the overview of a labyrinth too large for the screen, null for none
+     */
+    public GameSnapshot withMinimap(MinimapPyramid.Minimap minimap) {
+        if (minimap == this.minimap) {
+            return this;
+        }
+        return new GameSnapshot(labyrinthVersion, labyrinth, ghostCell, hudVersion, playTimeMillis,
+                temperature, minTemperature, meanTemperature, maxTemperature, minimap);
+    }
+
+    /**
+     * @return this snapshot if the HUD would show the same, otherwise one with the new values and the next HUD version
+     */
+    public GameSnapshot withHud(long playTimeMillis, float temperature,
+                                float minTemperature, float meanTemperature, float maxTemperature) {
+        if (playTimeMillis / PLAY_TIME_RESOLUTION_MILLIS == this.playTimeMillis / PLAY_TIME_RESOLUTION_MILLIS
+                && sameValue(temperature, this.temperature)
+                && sameValue(minTemperature, this.minTemperature)
+                && sameValue(meanTemperature, this.meanTemperature)
+                && sameValue(maxTemperature, this.maxTemperature)) {
+            return this;
+        }
+        return new GameSnapshot(labyrinthVersion, labyrinth, ghostCell, hudVersion + 1, playTimeMillis,
+                temperature, minTemperature, meanTemperature, maxTemperature, minimap);
+    }
+
+    private static boolean sameValue(float a, float b) {
+        // Also true for two NaNs (no readings yet)
+        return Float.floatToIntBits(a) == Float.floatToIntBits(b);
+    }
+
+    public long getLabyrinthVersion() {
+        return labyrinthVersion;
+    }
+
+    /**
+     * @return the labyrinth, which must not be modified
+     */
+    public int[][] getLabyrinth() {
+        return labyrinth;
+    }
+
+    /**
+     * @return the index (row * columns + column) of the ghost of a previous run, -1 if there is none
+     */
+    public int getGhostCell() {
+        return ghostCell;
+    }
+
+    public long getHudVersion() {
+        return hudVersion;
+    }
+
+    public long getPlayTimeMillis() {
+        return playTimeMillis;
+    }
+
+    public float getTemperature() {
+        return temperature;
+    }
+
+    public float getMinTemperature() {
+        return minTemperature;
+    }
+
+    public float getMeanTemperature() {
+        return meanTemperature;
+    }
+
+    public float getMaxTemperature() {
+        return maxTemperature;
+    }
+
+    /**
+     * @return the overview of the labyrinth, null if it fits the screen
+     */
+    public MinimapPyramid.Minimap getMinimap() {
+        return minimap;
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.menu_template;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compact binary form of a labyrinth: one bit per cell (1 = wall), row by row,
+ * plus the player and finish positions, which are stored separately because they are single cells.
+ */
+public final class LabyrinthCodec {
+
+    public static final int NO_POSITION = 0xFFFF;
+
+    private LabyrinthCodec() {
+    }
+
+    /**
+     * @return the number of bytes packWalls() writes for a labyrinth of the given dimensions
+     */
+    public static int packedWallsLength(int rows, int columns) {
+        return (rows * columns + 7) / 8;
+    }
+
+    /**
+     * Writes one bit per cell (1 = wall) into the buffer
+     */
+    public static void packWalls(int[][] labyrinth, ByteBuffer out) {
+        int current = 0;
+        int bit = 0;
+        for (int[] row : labyrinth) {
+            for (int cell : row) {
+                if (cell == LabyrinthRules.WALL) {
+                    current |= 1 << (7 - bit);
+                }
+                if (++bit == 8) {
+                    out.put((byte) current);
+                    current = 0;
+                    bit = 0;
+                }
+            }
+        }
+        if (bit > 0) {
+            out.put((byte) current);
+        }
+    }
+
+    /**
+     * Reads the bits written by packWalls() into an existing labyrinth, non-wall cells become empty
+     */
+    public static void unpackWalls(ByteBuffer in, int[][] labyrinth) {
+        int current = 0;
+        int bit = 8;
+        for (int[] row : labyrinth) {
+            for (int j = 0; j < row.length; j++) {
+                if (bit == 8) {
+                    current = in.get() & 0xFF;
+                    bit = 0;
+                }
+                row[j] = (current & (1 << (7 - bit))) != 0 ? LabyrinthRules.WALL : LabyrinthRules.EMPTY;
+                bit++;
+            }
+        }
+    }
+
+    /**
+     * Writes the position of the first cell holding the given value as two unsigned shorts (row, column),
+     * or NO_POSITION twice if there is no such cell
+     */
+    public static void putPosition(int[][] labyrinth, int value, ByteBuffer out) {
+        for (int i = 0; i < labyrinth.length; i++) {
+            for (int j = 0; j < labyrinth[i].length; j++) {
+                if (labyrinth[i][j] == value) {
+                    out.putShort((short) i);
+                    out.putShort((short) j);
+                    return;
+                }
+            }
+        }
+        out.putShort((short) NO_POSITION);
+        out.putShort((short) NO_POSITION);
+    }
+
+    /**
+     * Reads a position written by putPosition() and marks it in the labyrinth
+     */
+    public static void getPosition(ByteBuffer in, int value, int[][] labyrinth) {
+        int row = in.getShort() & 0xFFFF;
+        int column = in.getShort() & 0xFFFF;
+        if (row != NO_POSITION && column != NO_POSITION) {
+            labyrinth[row][column] = value;
+        }
+    }
+}
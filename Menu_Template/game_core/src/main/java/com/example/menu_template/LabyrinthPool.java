@@ -0,0 +1,224 @@
+package com.example.menu_template;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+/**
+ * Keeps a few ready-made labyrinths of one size, so a game can start without waiting for generation.
+ * Taken labyrinths are replaced in the background, and the pool is spilled to a file in a compact
+ * format (seed, start/finish and one bit per cell), so it survives restarts of the app.
+ * <p>
+ * File layout (big endian): magic int | version u8 | size int | count int, then per labyrinth:
+ * seed long | player row u16 | player column u16 | finish row u16 | finish column u16 | walls (1 bit per cell)
+ */
+public class LabyrinthPool {
+
+    private static final int MAGIC = 0x4C504F4C; // "LPOL"
+    private static final int VERSION = 1;
+
+    private final int capacity;
+    private final Executor executor;
+    private final File spillFile;
+    private final Random seedSource = new Random();
+
+    // Guarded by this
+    private final ArrayDeque<PooledLabyrinth> ready = new ArrayDeque<>();
+    private int size = -1;
+    private int pendingGenerations;
+    private int generation; // bumped on size changes, so results for the old size are dropped
+    private boolean spillScheduled;
+
+    /**
+     * @param capacity  the number of labyrinths to keep ready
+     * @param executor  the background executor that generates labyrinths and writes the spill file
+     * @param spillFile the file the pool is persisted to, or null to keep it in memory only
+     */
+    public LabyrinthPool(int capacity, Executor executor, File spillFile) {
+        this.capacity = capacity;
+        this.executor = executor;
+        this.spillFile = spillFile;
+    }
+
+    /**
+     * Reads the spill file on the executor, labyrinths of a different size than the current one are ignored
+     */
+    public void restore() {
+        if (spillFile != null) {
+            executor.execute(this::readSpillFile);
+        }
+    }
+
+    /**
+     * Selects the labyrinth size and starts filling the pool in the background
+     *
+     * @param size the labyrinth size configured in the settings
+     */
+    public synchronized void setSize(int size) {
+        if (size != this.size) {
+            this.size = size;
+            ready.clear();
+            pendingGenerations = 0;
+            generation++;
+        }
+        refill();
+    }
+
+    /**
+     * Takes a ready labyrinth, or generates one on the calling thread if the pool is empty
+     *
+     * @param size the requested labyrinth size
+     * @return the labyrinth and the seed it was generated with
+     */
+    public PooledLabyrinth take(int size) {
+        PooledLabyrinth labyrinth;
+        long seed;
+        synchronized (this) {
+            setSize(size);
+            labyrinth = ready.poll();
+            refill();
+            scheduleSpill();
+            seed = seedSource.nextLong();
+        }
+        if (labyrinth == null) {
+            labyrinth = new PooledLabyrinth(seed, LabyrinthRules.generateLabyrinth(size, new Random(seed)));
+        }
+        return labyrinth;
+    }
+
+    /**
+     * @return the number of labyrinths that are ready right now
+     */
+    public synchronized int getReadyCount() {
+        return ready.size();
+    }
+
+    private void refill() {
+        while (ready.size() + pendingGenerations < capacity) {
+            pendingGenerations++;
+            int requestedGeneration = generation;
+            int requestedSize = size;
+            long seed = seedSource.nextLong();
+            executor.execute(() -> generate(requestedGeneration, requestedSize, seed));
+        }
+    }
+
+    private void generate(int requestedGeneration, int requestedSize, long seed) {
+        int[][] labyrinth = LabyrinthRules.generateLabyrinth(requestedSize, new Random(seed));
+        synchronized (this) {
+            if (requestedGeneration != generation) {
+                // The size changed while generating, setSize() already forgot this request
+                return;
+            }
+            pendingGenerations--;
+            if (ready.size() < capacity) {
+                ready.add(new PooledLabyrinth(seed, labyrinth));
+                scheduleSpill();
+            }
+            refill();
+        }
+    }
+
+    private void scheduleSpill() {
+        if (spillFile != null && !spillScheduled) {
+            spillScheduled = true;
+            executor.execute(this::writeSpillFile);
+        }
+    }
+
+    private void writeSpillFile() {
+        PooledLabyrinth[] labyrinths;
+        int currentSize;
+        synchronized (this) {
+            spillScheduled = false;
+            labyrinths = ready.toArray(new PooledLabyrinth[0]);
+            currentSize = size;
+        }
+        File tempFile = new File(spillFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tempFile))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(currentSize);
+            out.writeInt(labyrinths.length);
+            ByteBuffer buffer = ByteBuffer.allocate(4 * 2 + LabyrinthCodec.packedWallsLength(currentSize, currentSize));
+            for (PooledLabyrinth labyrinth : labyrinths) {
+                buffer.clear();
+                LabyrinthCodec.putPosition(labyrinth.getLabyrinth(), LabyrinthRules.PLAYER, buffer);
+                LabyrinthCodec.putPosition(labyrinth.getLabyrinth(), LabyrinthRules.FINISH, buffer);
+                LabyrinthCodec.packWalls(labyrinth.getLabyrinth(), buffer);
+                out.writeLong(labyrinth.getSeed());
+                out.write(buffer.array(), 0, buffer.position());
+            }
+        } catch (IOException e) {
+            tempFile.delete();
+            return;
+        }
+        // Replace the old file in one step, so a crash never leaves a half written pool behind
+        tempFile.renameTo(spillFile);
+    }
+
+    private void readSpillFile() {
+        if (!spillFile.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(spillFile))) {
+            if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) {
+                return;
+            }
+            int fileSize = in.readInt();
+            int count = in.readInt();
+            byte[] bytes = new byte[4 * 2 + LabyrinthCodec.packedWallsLength(fileSize, fileSize)];
+            for (int i = 0; i < count; i++) {
+                long seed = in.readLong();
+                in.readFully(bytes);
+                int[][] labyrinth = new int[fileSize][fileSize];
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                buffer.position(4 * 2);
+                LabyrinthCodec.unpackWalls(buffer, labyrinth);
+                buffer.position(0);
+                LabyrinthCodec.getPosition(buffer, LabyrinthRules.PLAYER, labyrinth);
+                LabyrinthCodec.getPosition(buffer, LabyrinthRules.FINISH, labyrinth);
+
+                synchronized (this) {
+                    if (size != -1 && size != fileSize) {
+                        return;
+                    }
+                    size = fileSize;
+                    if (ready.size() < capacity) {
+                        ready.add(new PooledLabyrinth(seed, labyrinth));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // A damaged file only means the pool has to be generated again
+        }
+    }
+
+    /**
+     * A labyrinth together with the seed it was generated from
+     */
+    public static class PooledLabyrinth {
+        private final long seed;
+        private final int[][] labyrinth;
+
+        public PooledLabyrinth(long seed, int[][] labyrinth) {
+            this.seed = seed;
+            this.labyrinth = labyrinth;
+        }
+
+        public long getSeed() {
+            return seed;
+        }
+
+        public int[][] getLabyrinth() {
+            return labyrinth;
+        }
+    }
+}
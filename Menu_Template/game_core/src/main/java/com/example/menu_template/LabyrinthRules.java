@@ -0,0 +1,245 @@
+package com.example.menu_template;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This class holds the labyrinth rules (generation, movement and the win check) without any Android dependencies,
+ * so that the GameLogic class inside the app and the headless game server play by exactly the same rules.
+ */
+public final class LabyrinthRules {
+
+    public static final int EMPTY = 0;
+    public static final int WALL = 1;
+    public static final int PLAYER = 2;
+    public static final int FINISH = 3;
+
+    public static final int DIRECTION_NONE = -1;
+    public static final int DIRECTION_RIGHT = 0;
+    public static final int DIRECTION_LEFT = 1;
+    public static final int DIRECTION_FORWARD = 2;
+    public static final int DIRECTION_BACKWARD = 3;
+
+    // Results of movePlayer(), so that callers can log or react without the rules knowing about logging
+    public static final int MOVE_OK = 0;
+    public static final int MOVE_FINISHED = 1;
+    public static final int MOVE_BLOCKED_BY_WALL = 2;
+    public static final int MOVE_OUT_OF_BOUNDS = 3;
+    public static final int MOVE_INVALID_DIRECTION = 4;
+    public static final int MOVE_PLAYER_NOT_FOUND = 5;
+
+    private LabyrinthRules() {
+    }
+
+    /**
+     * Generates a square labyrinth with a randomized depth-first search.
+     * The start (value 2) is placed on the top boundary and the finish (value 3) on the bottom boundary.
+     * Labyrinths whose finish has no adjacent empty cell are discarded and generated again.
+     *
+     * @param size   the number of rows and columns
+     * @param random the source of randomness, pass a seeded Random to get a reproducible labyrinth
+     * @return the generated labyrinth
+     */
+    public static int[][] generateLabyrinth(int size, Random random) {
+        while (true) {
+            int[][] labyrinth = new int[size][size];
+
+            // Set all cells as walls
+            for (int i = 0; i < size; i++) {
+                for (int j = 0; j < size; j++) {
+                    labyrinth[i][j] = WALL;
+                }
+            }
+
+            // Choose a random starting point on the top boundary
+            int startX = 0;
+            int startY = getRandomNumber(random, 1, size - 2);
+            labyrinth[startX][startY] = PLAYER;
+
+            // Choose a random ending point on the bottom boundary
+            int endX = size - 1;
+            int endY = getRandomNumber(random, 1, size - 2);
+            labyrinth[endX][endY] = FINISH;
+
+            // Create a stack to keep track of visited cells
+            Deque<int[]> stack = new ArrayDeque<>();
+            stack.push(new int[]{startX, startY});
+
+            while (!stack.isEmpty()) {
+                int[] currentCell = stack.peek();
+                int currentX = currentCell[0];
+                int currentY = currentCell[1];
+
+                // Get the unvisited neighbors of the current cell
+                List<int[]> unvisitedNeighbors = getUnvisitedNeighbors(labyrinth, currentX, currentY);
+                if (!unvisitedNeighbors.isEmpty()) {
+                    // Choose a random unvisited neighbor
+                    int[] randomNeighbor = unvisitedNeighbors.get(getRandomNumber(random, 0, unvisitedNeighbors.size() - 1));
+                    int neighborX = randomNeighbor[0];
+                    int neighborY = randomNeighbor[1];
+
+                    // Remove the wall between the current cell and the chosen neighbor
+                    labyrinth[(currentX + neighborX) / 2][(currentY + neighborY) / 2] = EMPTY;
+
+                    labyrinth[neighborX][neighborY] = EMPTY; // Mark the neighbor as part of the maze
+                    stack.push(randomNeighbor);
+                } else {
+                    // All neighbors visited, backtrack
+                    stack.pop();
+                }
+            }
+
+            // Check if the end point has adjacent 0's, if not, regenerate the labyrinth
+            if (hasAdjacentZeros(labyrinth, endX, endY)) {
+                return labyrinth;
+            }
+        }
+    }
+
+    /**
+     * Moves the player (value 2) one cell into the given direction.
+     * Reaching a cell next to the finish clears the whole labyrinth, which is how a win is signalled.
+     *
+     * @param labyrinth       the labyrinth, which is modified in place
+     * @param playerDirection one of the DIRECTION_* constants
+     * @return one of the MOVE_* constants
+     */
+    public static int movePlayer(int[][] labyrinth, int playerDirection) {
+        int playerX = -1;
+        int playerY = -1;
+        int finishX = -1;
+        int finishY = -1;
+
+        // Find the current position of the player (value 2) and the finish (value 3) in the labyrinth
+        for (int i = 0; i < labyrinth.length; i++) {
+            for (int j = 0; j < labyrinth[i].length; j++) {
+                if (labyrinth[i][j] == PLAYER) {
+                    playerX = i;
+                    playerY = j;
+                } else if (labyrinth[i][j] == FINISH) {
+                    finishX = i;
+                    finishY = j;
+                }
+            }
+        }
+
+        if (playerX == -1 || playerY == -1) {
+            return MOVE_PLAYER_NOT_FOUND;
+        }
+
+        // Determine the new position based on the player's direction
+        int newPlayerX = playerX;
+        int newPlayerY = playerY;
+
+        switch (playerDirection) {
+            case DIRECTION_RIGHT:
+                newPlayerY++;
+                break;
+            case DIRECTION_LEFT:
+                newPlayerY--;
+                break;
+            case DIRECTION_FORWARD:
+                newPlayerX--;
+                break;
+            case DIRECTION_BACKWARD:
+                newPlayerX++;
+                break;
+            default:
+                return MOVE_INVALID_DIRECTION;
+        }
+
+        // Check if the new position is within the bounds of the labyrinth
+        if (newPlayerX < 0 || newPlayerX >= labyrinth.length || newPlayerY < 0 || newPlayerY >= labyrinth[0].length) {
+            return MOVE_OUT_OF_BOUNDS;
+        }
+
+        // Check if the new position is a wall (value 1)
+        if (labyrinth[newPlayerX][newPlayerY] == WALL) {
+            return MOVE_BLOCKED_BY_WALL;
+        }
+
+        // Check if the new position is in the vicinity of the finish (value 3)
+        int deltaX = Math.abs(newPlayerX - finishX);
+        int deltaY = Math.abs(newPlayerY - finishY);
+        if ((deltaX == 0 && deltaY == 1) || (deltaX == 1 && deltaY == 0)) {
+            // Set all elements in the labyrinth to 0 (empty space)
+            for (int[] row : labyrinth) {
+                Arrays.fill(row, EMPTY);
+            }
+            return MOVE_FINISHED;
+        }
+
+        // Move the player to the new position
+        labyrinth[playerX][playerY] = EMPTY;
+        labyrinth[newPlayerX][newPlayerY] = PLAYER;
+        return MOVE_OK;
+    }
+
+    /**
+     * @param labyrinth the labyrinth to check
+     * @return true if every cell is empty, which is the state movePlayer() leaves behind after a win
+     */
+    public static boolean isLabyrinthEmpty(int[][] labyrinth) {
+        for (int[] row : labyrinth) {
+            for (int cell : row) {
+                if (cell != EMPTY) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param labyrinth the labyrinth to search
+     * @param value     the cell value to look for, e.g. PLAYER
+     * @return the index (row * columns + column) of the first cell holding the value or -1 if there is none
+     */
+    public static int findCell(int[][] labyrinth, int value) {
+        for (int i = 0; i < labyrinth.length; i++) {
+            for (int j = 0; j < labyrinth[i].length; j++) {
+                if (labyrinth[i][j] == value) {
+                    return i * labyrinth[i].length + j;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private static boolean hasAdjacentZeros(int[][] labyrinth, int x, int y) {
+        int size = labyrinth.length;
+        return (x > 0 && labyrinth[x - 1][y] == EMPTY)
+                || (x < size - 1 && labyrinth[x + 1][y] == EMPTY)
+                || (y > 0 && labyrinth[x][y - 1] == EMPTY)
+                || (y < size - 1 && labyrinth[x][y + 1] == EMPTY);
+    }
+
+    private static List<int[]> getUnvisitedNeighbors(int[][] labyrinth, int x, int y) {
+        int size = labyrinth.length;
+        List<int[]> unvisitedNeighbors = new ArrayList<>(4);
+
+        // Check the four cardinal directions
+        if (x > 1 && labyrinth[x - 2][y] == WALL) {
+            unvisitedNeighbors.add(new int[]{x - 2, y});
+        }
+        if (x < size - 2 && labyrinth[x + 2][y] == WALL) {
+            unvisitedNeighbors.add(new int[]{x + 2, y});
+        }
+        if (y > 1 && labyrinth[x][y - 2] == WALL) {
+            unvisitedNeighbors.add(new int[]{x, y - 2});
+        }
+        if (y < size - 2 && labyrinth[x][y + 2] == WALL) {
+            unvisitedNeighbors.add(new int[]{x, y + 2});
+        }
+
+        return unvisitedNeighbors;
+    }
+
+    private static int getRandomNumber(Random random, int min, int max) {
+        return random.nextInt(max - min + 1) + min;
+    }
+}
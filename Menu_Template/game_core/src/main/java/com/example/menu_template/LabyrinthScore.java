@@ -0,0 +1,207 @@
+package com.example.menu_template;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * How hard a labyrinth is to solve, measured in one pass over the cells plus one breadth-first search, so in time
+ * linear in the number of cells.
+ * <p>
+ * The solution is the shortest way from the player to a cell next to the finish (which wins, see
+ * LabyrinthRules.movePlayer()). Dead ends are open cells with a single open neighbour, junctions on the solution
+ * are the cells where the player has to pick one of several ways.
+ * The difficulty combines them into a number from 0 to 1 that can be compared between labyrinths of one size.
+ */
+public final class LabyrinthScore {
+
+    // Weights of the parts of the difficulty, they add up to 1
+    private static final double PATH_WEIGHT = 0.4;
+    private static final double TURN_WEIGHT = 0.2;
+    private static final double JUNCTION_WEIGHT = 0.2;
+    private static final double DEAD_END_WEIGHT = 0.2;
+    // At most about every fourth open cell of a perfect labyrinth is a dead end, this maps that to 1
+    private static final double DEAD_END_SCALE = 4;
+
+    private final int openCells;
+    private final int solutionLength;
+    private final int turns;
+    private final int junctions;
+    private final int deadEnds;
+    private final double difficulty;
+
+    private LabyrinthScore(int openCells, int solutionLength, int turns, int junctions, int deadEnds) {
+        this.openCells = openCells;
+        this.solutionLength = solutionLength;
+        this.turns = turns;
+        this.junctions = junctions;
+        this.deadEnds = deadEnds;
+        if (solutionLength < 0) {
+            difficulty = Double.NaN;
+            return;
+        }
+        int steps = Math.max(1, solutionLength);
+        difficulty = PATH_WEIGHT * Math.min(1, (double) solutionLength / openCells)
+                + TURN_WEIGHT * (double) turns / steps
+                + JUNCTION_WEIGHT * (double) junctions / steps
+                + DEAD_END_WEIGHT * Math.min(1, DEAD_END_SCALE * deadEnds / openCells);
+    }
+
+    /**
+     * Scores a labyrinth, the labyrinth is not modified
+     */
+    public static LabyrinthScore of(int[][] labyrinth) {
+        int rows = labyrinth.length;
+        int columns = labyrinth[0].length;
+        int[] previous = new int[rows * columns]; // The cell the search came from, -1 if not reached yet
+        Arrays.fill(previous, -1);
+        int[] queue = new int[rows * columns];
+
+        int openCells = 0;
+        int deadEnds = 0;
+        int start = -1;
+        int finish = -1;
+        for (int x = 0; x < rows; x++) {
+            for (int y = 0; y < columns; y++) {
+                int cell = labyrinth[x][y];
+                if (cell == LabyrinthRules.FINISH) {
+                    finish = x * columns + y;
+                } else if (cell != LabyrinthRules.WALL) {
+                    openCells++;
+                    if (openNeighbours(labyrinth, x, y) == 1) {
+                        deadEnds++;
+                    }
+                    if (cell == LabyrinthRules.PLAYER) {
+                        start = x * columns + y;
+                    }
+                }
+            }
+        }
+        if (start < 0 || finish < 0) {
+            // generateLabyrinth() can carve a way through the finish, such a labyrinth can't be won
+            return new LabyrinthScore(openCells, -1, 0, 0, deadEnds);
+        }
+
+        // Breadth-first search from the player until a cell next to the finish is reached
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        previous[start] = start;
+        int goal = -1;
+        while (head < tail) {
+            int current = queue[head++];
+            int x = current / columns;
+            int y = current % columns;
+            if (isNextTo(current, finish, columns)) {
+                goal = current;
+                break;
+            }
+            for (int direction = 0; direction < 4; direction++) {
+                int nextX = x + stepX(direction);
+                int nextY = y + stepY(direction);
+                if (nextX < 0 || nextX >= rows || nextY < 0 || nextY >= columns) {
+                    continue;
+                }
+                int next = nextX * columns + nextY;
+                int cell = labyrinth[nextX][nextY];
+                if (previous[next] < 0 && cell != LabyrinthRules.WALL && cell != LabyrinthRules.FINISH) {
+                    previous[next] = current;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        if (goal < 0) {
+            return new LabyrinthScore(openCells, -1, 0, 0, deadEnds);
+        }
+
+        // Walk the solution back to the player
+        int solutionLength = 0;
+        int turns = 0;
+        int junctions = 0;
+        int lastStep = 0;
+        for (int current = goal; current != start; current = previous[current]) {
+            int step = current - previous[current];
+            if (lastStep != 0 && step != lastStep) {
+                turns++;
+            }
+            lastStep = step;
+            solutionLength++;
+            int from = previous[current];
+            if (openNeighbours(labyrinth, from / columns, from % columns) >= 3) {
+                junctions++;
+            }
+        }
+        return new LabyrinthScore(openCells, solutionLength, turns, junctions, deadEnds);
+    }
+
+    private static boolean isNextTo(int cell, int other, int columns) {
+        int deltaX = Math.abs(cell / columns - other / columns);
+        int deltaY = Math.abs(cell % columns - other % columns);
+        return deltaX + deltaY == 1;
+    }
+
+    private static int openNeighbours(int[][] labyrinth, int x, int y) {
+        int count = 0;
+        for (int direction = 0; direction < 4; direction++) {
+            int nextX = x + stepX(direction);
+            int nextY = y + stepY(direction);
+            if (nextX >= 0 && nextX < labyrinth.length && nextY >= 0 && nextY < labyrinth[0].length
+                    && labyrinth[nextX][nextY] != LabyrinthRules.WALL) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int stepX(int direction) {
+        return direction == LabyrinthRules.DIRECTION_FORWARD ? -1 : direction == LabyrinthRules.DIRECTION_BACKWARD ? 1 : 0;
+    }
+
+    private static int stepY(int direction) {
+        return direction == LabyrinthRules.DIRECTION_RIGHT ? 1 : direction == LabyrinthRules.DIRECTION_LEFT ? -1 : 0;
+    }
+
+    /**
+     * @return the number of cells that are not walls (and not the finish)
+     */
+    public int getOpenCells() {
+        return openCells;
+    }
+
+    /**
+     * @return the number of moves of the shortest way to the finish, -1 if it can't be reached or there is no player or finish
+     */
+    public int getSolutionLength() {
+        return solutionLength;
+    }
+
+    /**
+     * @return the number of direction changes along the solution
+     */
+    public int getTurns() {
+        return turns;
+    }
+
+    /**
+     * @return the number of cells on the solution where more than one way goes on
+     */
+    public int getJunctions() {
+        return junctions;
+    }
+
+    public int getDeadEnds() {
+        return deadEnds;
+    }
+
+    /**
+     * @return from 0 (easy) to 1 (hard), NaN if the finish can't be reached
+     */
+    public double getDifficulty() {
+        return difficulty;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "difficulty %.3f (solution %d moves, %d turns, %d junctions, %d dead ends)",
+                difficulty, solutionLength, turns, junctions, deadEnds);
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.menu_template;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * In-process stand-in for the mosquitto broker.
+ * Every client gets its own callback thread, just like a Paho client, so messages arrive in publish order
+ * per client while different clients are served concurrently.
+ */
+public class LocalBroker {
+
+    private final List<Client> clients = new CopyOnWriteArrayList<>();
+
+    /**
+     * Creates a client that is connected to this broker right away
+     *
+     * @param clientId the client id, only used to name the callback thread
+     * @return the connected client
+     */
+    public MessageTransport newClient(String clientId) {
+        Client client = new Client(clientId);
+        clients.add(client);
+        return client;
+    }
+
+    /**
+     * Disconnects every client and stops their callback threads
+     */
+    public void shutdown() {
+        for (Client client : clients) {
+            client.disconnect();
+        }
+    }
+
+    private void route(String message, String topic) {
+        for (Client client : clients) {
+            if (client.isSubscribedTo(topic)) {
+                client.deliver(topic, message);
+            }
+        }
+    }
+
+    /**
+     * Checks a topic against a topic filter following the MQTT rules ('+' matches one level, '#' the rest)
+     *
+     * @param filter the topic filter, e.g. "mpu/+"
+     * @param topic  the topic a message was published on, e.g. "mpu/K05"
+     * @return true if the topic matches the filter
+     */
+    public static boolean topicMatches(String filter, String topic) {
+        int f = 0;
+        int t = 0;
+        while (f < filter.length()) {
+            char c = filter.charAt(f);
+            if (c == '#') {
+                return true;
+            }
+            if (c == '+') {
+                // Skip one level in the topic
+                while (t < topic.length() && topic.charAt(t) != '/') {
+                    t++;
+                }
+                f++;
+                continue;
+            }
+            if (t >= topic.length() || topic.charAt(t) != c) {
+                // "a/#" also matches the parent level "a"
+                return t >= topic.length() && filter.startsWith("/#", f);
+            }
+            f++;
+            t++;
+        }
+        return t == topic.length();
+    }
+
+    private class Client implements MessageTransport {
+        private final Set<String> subscriptions = new CopyOnWriteArraySet<>();
+        private final ExecutorService callbackExecutor;
+        private volatile MqttCallbackListener callbackListener;
+        private volatile boolean connected = true;
+
+        Client(String clientId) {
+            // The thread is only started once the first message has to be delivered
+            callbackExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "LocalBroker-" + clientId);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        @Override
+        public void setCallbackListener(MqttCallbackListener listener) {
+            this.callbackListener = listener;
+        }
+
+        @Override
+        public boolean publishToTopic(String message, String topic) {
+            if (connected) {
+                route(message, topic);
+            }
+            return connected;
+        }
+
+        @Override
+        public void subscribeToTopic(String topic) {
+            subscriptions.add(topic);
+        }
+
+        @Override
+        public void unsubscribeFromTopic(String topic) {
+            subscriptions.remove(topic);
+        }
+
+        @Override
+        public void disconnect() {
+            connected = false;
+            subscriptions.clear();
+            clients.remove(this);
+            callbackExecutor.shutdown();
+        }
+
+        boolean isSubscribedTo(String topic) {
+            for (String filter : subscriptions) {
+                if (topicMatches(filter, topic)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void deliver(String topic, String message) {
+            MqttCallbackListener listener = callbackListener;
+            if (listener == null || !connected) {
+                return;
+            }
+            try {
+                callbackExecutor.execute(() -> listener.onMessageReceived(topic, message));
+            } catch (RejectedExecutionException e) {
+                // The client disconnected while the message was being routed
+            }
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package com.example.menu_template;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+/**
+ * Labyrinth stored in a file and read through a memory mapping, for labyrinths too large for an int[][] on the heap.
+ * <p>
+ * The file starts with a HEADER_LENGTH byte header (dimensions, seed, generation algorithm, start and finish),
+ * followed by the walls at one bit per cell (1 = wall). The bits are grouped into tiles of TILE_SIZE x TILE_SIZE
+ * cells, so the cells around the player lie on a few pages of the file and only those are paged in by the OS.
+ * Inside a tile every row is one big-endian long, the first column in the highest bit.
+ * <p>
+ * The player position is only kept in memory, the file itself is never changed by playing. Reading cells from
+ * several threads is fine, movePlayer() must only be called by one thread.
+ */
+public class MappedLabyrinth {
+
+    private static final int MAGIC = 0x4C4D415A; // "LMAZ"
+    private static final int VERSION = 1;
+    public static final int HEADER_LENGTH = 64;
+    private static final int TILE_SHIFT = 6;
+    public static final int TILE_SIZE = 1 << TILE_SHIFT;
+    private static final int TILE_MASK = TILE_SIZE - 1;
+    private static final int TILE_BYTES = TILE_SIZE * TILE_SIZE / 8;
+    private static final int ROW_BYTES = TILE_SIZE / 8;
+
+    public static final int ALGORITHM_DEPTH_FIRST = 0; // LabyrinthRules.generateLabyrinth()
+    public static final int ALGORITHM_ELLER = 1; // EllerRowGenerator, streamed straight into the file
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int rows;
+    private final int columns;
+    private final int tilesPerRow;
+    private final int algorithm;
+    private final long seed;
+    private final int startRow, startColumn;
+    private final int finishRow, finishColumn;
+    private int playerRow, playerColumn;
+
+    private MappedLabyrinth(FileChannel channel, MappedByteBuffer buffer) throws IOException {
+        this.channel = channel;
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(16) != TILE_SHIFT) {
+            throw new IOException("Not a labyrinth file of version " + VERSION);
+        }
+        this.rows = buffer.getInt(8);
+        this.columns = buffer.getInt(12);
+        this.algorithm = buffer.getInt(20);
+        this.seed = buffer.getLong(24);
+        this.startRow = buffer.getInt(32);
+        this.startColumn = buffer.getInt(36);
+        this.finishRow = buffer.getInt(40);
+        this.finishColumn = buffer.getInt(44);
+        this.tilesPerRow = tileCount(columns);
+        if (buffer.capacity() < fileLength(rows, columns)) {
+            throw new IOException("Labyrinth file is truncated");
+        }
+        this.playerRow = startRow;
+        this.playerColumn = startColumn;
+    }
+
+    /**
+     * Opens an existing labyrinth file read-only
+     */
+    public static MappedLabyrinth open(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        FileChannel channel = randomAccessFile.getChannel();
+        try {
+            return new MappedLabyrinth(channel, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException | RuntimeException e) {
+            randomAccessFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Writes an existing labyrinth (as produced by LabyrinthRules.generateLabyrinth()) into a file
+     */
+    public static MappedLabyrinth write(File file, int[][] labyrinth, long seed, int algorithm) throws IOException {
+        int rows = labyrinth.length;
+        int columns = labyrinth[0].length;
+        int start = LabyrinthRules.findCell(labyrinth, LabyrinthRules.PLAYER);
+        int finish = LabyrinthRules.findCell(labyrinth, LabyrinthRules.FINISH);
+        MappedByteBuffer buffer = create(file, rows, columns, algorithm, seed,
+                start / columns, start % columns, finish / columns, finish % columns);
+        int tilesPerRow = tileCount(columns);
+        for (int row = 0; row < rows; row++) {
+            writeRow(buffer, tilesPerRow, row, labyrinth[row]);
+        }
+        buffer.force();
+        return open(file);
+    }
+
+    /**
+     * Generates a labyrinth row by row with Eller's algorithm and streams it into a file, so only one row
+     * is ever on the heap. The player starts in the first cell row, the finish is in the closing wall at the bottom.
+     *
+     * @param cellRows    the number of cell rows, the labyrinth is 2 * cellRows + 1 grid cells high
+     * @param cellColumns the number of cells per row, the labyrinth is 2 * cellColumns + 1 grid cells wide
+     */
+    public static MappedLabyrinth generate(File file, int cellRows, int cellColumns, long seed) throws IOException {
+        Random random = new Random(seed);
+        EllerRowGenerator generator = new EllerRowGenerator(cellColumns, random);
+        int rows = 2 * cellRows + 1;
+        int columns = generator.getWidth();
+        int startColumn = 2 * random.nextInt(cellColumns) + 1;
+        int finishColumn = 2 * random.nextInt(cellColumns) + 1;
+        MappedByteBuffer buffer = create(file, rows, columns, ALGORITHM_ELLER, seed, 1, startColumn, rows - 1, finishColumn);
+
+        int tilesPerRow = tileCount(columns);
+        int[] row = new int[columns];
+        for (int r = 0; r < rows; r++) {
+            if (r == rows - 2) {
+                generator.lastRow(row);
+            } else {
+                // After lastRow() the next row has no passages, which is the closing wall
+                generator.nextRow(row);
+            }
+            writeRow(buffer, tilesPerRow, r, row);
+        }
+        buffer.force();
+        return open(file);
+    }
+
+    /**
+     * @return the size of a labyrinth file with the given dimensions in bytes
+     */
+    public static long fileLength(int rows, int columns) {
+        return HEADER_LENGTH + (long) tileCount(rows) * tileCount(columns) * TILE_BYTES;
+    }
+
+    private static int tileCount(int cells) {
+        return (cells + TILE_MASK) >>> TILE_SHIFT;
+    }
+
+    private static MappedByteBuffer create(File file, int rows, int columns, int algorithm, long seed,
+                                           int startRow, int startColumn, int finishRow, int finishColumn) throws IOException {
+        long length = fileLength(rows, columns);
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Labyrinth of " + rows + "x" + columns + " is too large for one mapping");
+        }
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(0);
+            randomAccessFile.setLength(length);
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, rows);
+            buffer.putInt(12, columns);
+            buffer.putInt(16, TILE_SHIFT);
+            buffer.putInt(20, algorithm);
+            buffer.putLong(24, seed);
+            buffer.putInt(32, startRow);
+            buffer.putInt(36, startColumn);
+            buffer.putInt(40, finishRow);
+            buffer.putInt(44, finishColumn);
+            return buffer;
+        }
+    }
+
+    private static void writeRow(MappedByteBuffer buffer, int tilesPerRow, int row, int[] cells) {
+        int offset = HEADER_LENGTH + (row >>> TILE_SHIFT) * tilesPerRow * TILE_BYTES + (row & TILE_MASK) * ROW_BYTES;
+        for (int tile = 0; tile < tilesPerRow; tile++) {
+            int first = tile << TILE_SHIFT;
+            int end = Math.min(first + TILE_SIZE, cells.length);
+            long bits = 0;
+            for (int column = first; column < end; column++) {
+                if (cells[column] == LabyrinthRules.WALL) {
+                    bits |= 1L << (TILE_MASK - (column - first));
+                }
+            }
+            buffer.putLong(offset + tile * TILE_BYTES, bits);
+        }
+    }
+
+    public boolean isWall(int row, int column) {
+        int offset = HEADER_LENGTH + ((row >>> TILE_SHIFT) * tilesPerRow + (column >>> TILE_SHIFT)) * TILE_BYTES
+                + (row & TILE_MASK) * ROW_BYTES + ((column & TILE_MASK) >>> 3);
+        return (buffer.get(offset) & (0x80 >>> (column & 7))) != 0;
+    }
+
+    /**
+     * @return the cell in the usual format (one of the LabyrinthRules cell constants)
+     */
+    public int getCell(int row, int column) {
+        if (row == playerRow && column == playerColumn) {
+            return LabyrinthRules.PLAYER;
+        }
+        if (row == finishRow && column == finishColumn) {
+            return LabyrinthRules.FINISH;
+        }
+        return isWall(row, column) ? LabyrinthRules.WALL : LabyrinthRules.EMPTY;
+    }
+
+    /**
+     * Moves the player like LabyrinthRules.movePlayer(), but the labyrinth is left as it is after a win
+     *
+     * @return one of the LabyrinthRules.MOVE_* constants
+     */
+    public int movePlayer(int direction) {
+        int newRow = playerRow;
+        int newColumn = playerColumn;
+        switch (direction) {
+            case LabyrinthRules.DIRECTION_RIGHT:
+                newColumn++;
+                break;
+            case LabyrinthRules.DIRECTION_LEFT:
+                newColumn--;
+                break;
+            case LabyrinthRules.DIRECTION_FORWARD:
+                newRow--;
+                break;
+            case LabyrinthRules.DIRECTION_BACKWARD:
+                newRow++;
+                break;
+            default:
+                return LabyrinthRules.MOVE_INVALID_DIRECTION;
+        }
+        if (newRow < 0 || newRow >= rows || newColumn < 0 || newColumn >= columns) {
+            return LabyrinthRules.MOVE_OUT_OF_BOUNDS;
+        }
+        if (isWall(newRow, newColumn)) {
+            return LabyrinthRules.MOVE_BLOCKED_BY_WALL;
+        }
+        if (Math.abs(newRow - finishRow) + Math.abs(newColumn - finishColumn) == 1) {
+            return LabyrinthRules.MOVE_FINISHED;
+        }
+        playerRow = newRow;
+        playerColumn = newColumn;
+        return LabyrinthRules.MOVE_OK;
+    }
+
+    /**
+     * Copies a section into an int[][] in the usual format, e.g. the part of the labyrinth that is drawn.
+     * Cells outside of the labyrinth become walls.
+     */
+    public void copyWindow(int firstRow, int firstColumn, int[][] window) {
+        for (int i = 0; i < window.length; i++) {
+            int row = firstRow + i;
+            int[] windowRow = window[i];
+            for (int j = 0; j < windowRow.length; j++) {
+                int column = firstColumn + j;
+                windowRow[j] = row < 0 || row >= rows || column < 0 || column >= columns
+                        ? LabyrinthRules.WALL : getCell(row, column);
+            }
+        }
+    }
+
+    /**
+     * @return the first row or column of a window of the given length that keeps the player centered,
+     * without leaving the labyrinth where possible
+     */
+    public static int centeredWindowStart(int player, int windowLength, int labyrinthLength) {
+        int start = player - windowLength / 2;
+        return Math.max(0, Math.min(start, labyrinthLength - windowLength));
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getAlgorithm() {
+        return algorithm;
+    }
+
+    public int getPlayerRow() {
+        return playerRow;
+    }
+
+    public int getPlayerColumn() {
+        return playerColumn;
+    }
+
+    public int getStartRow() {
+        return startRow;
+    }
+
+    public int getStartColumn() {
+        return startColumn;
+    }
+
+    public int getFinishRow() {
+        return finishRow;
+    }
+
+    public int getFinishColumn() {
+        return finishColumn;
+    }
+
+    /**
+     * Closes the file, the mapping itself is released once the buffer is garbage collected
+     */
+    public void close() throws IOException {
+        channel.close();
+    }
+}
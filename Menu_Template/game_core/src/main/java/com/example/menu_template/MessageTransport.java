@@ -0,0 +1,27 @@
+package com.example.menu_template;
+
+/**
+ * Minimal publish/subscribe interface shared by the real MQTT client and the in-process LocalBroker,
+ * so that code built on top of it can be run and tested without a mosquitto instance.
+ * Incoming messages and connection events are delivered to the MqttCallbackListener.
+ *
+ * @see LocalBroker
+ */
+public interface MessageTransport {
+
+    void setCallbackListener(MqttCallbackListener listener);
+
+    /**
+     * @return false if the message could not be handed to the broker, e.g. while disconnected
+     */
+    boolean publishToTopic(String message, String topic);
+
+    /**
+     * @param topic the topic or topic filter, the MQTT wildcards '+' and '#' are supported
+     */
+    void subscribeToTopic(String topic);
+
+    void unsubscribeFromTopic(String topic);
+
+    void disconnect();
+}
@@ -0,0 +1,273 @@
+package com.example.menu_template;
+
+import java.util.Arrays;
+
+/**
+ * Overview of a labyrinth too large for the screen: a pyramid of downsampled levels, each block holding the share
+ * of walls and the share of cells the player has already seen, from 0 to 255.
+ * <p>
+ * The lowest stored level has blocks of BASE_BLOCK x BASE_BLOCK cells, every level above halves the rows and
+ * columns, up to a single block. The walls are read once when the pyramid is built. Revealing cells only
+ * recomputes the block above them on every level, so a move costs the same for any size of labyrinth, and so
+ * does a Minimap: it is a copy of the first level that fits the requested size.
+ * <p>
+ * Not thread-safe, it is updated on the game thread; the Minimap copies can go to any thread.
+ */
+public class MinimapPyramid {
+
+    private static final int BASE_SHIFT = 3;
+    public static final int BASE_BLOCK = 1 << BASE_SHIFT;
+    private static final int FULL = 255;
+
+    public interface WallSource {
+        boolean isWall(int row, int column);
+    }
+
+    private final int rows;
+    private final int columns;
+    private final int finishRow, finishColumn;
+    private final WallSource walls;
+    // Index 0 is the level with BASE_BLOCK cells per block, blocks outside of the labyrinth count as walls
+    private final int[] levelRows;
+    private final int[] levelColumns;
+    private final byte[][] wallDensity;
+    private final byte[][] revealedDensity;
+    private final long[] revealed; // One bit per cell, row by row
+    private int playerRow = -1, playerColumn = -1;
+    private long version;
+
+    /**
+     * Builds the pyramid, reads every cell once
+     */
+    public MinimapPyramid(int rows, int columns, int finishRow, int finishColumn, WallSource walls) {
+        this.rows = rows;
+        this.columns = columns;
+        this.finishRow = finishRow;
+        this.finishColumn = finishColumn;
+        this.walls = walls;
+        this.revealed = new long[(int) (((long) rows * columns + 63) / 64)];
+
+        int levels = 1;
+        while (Math.max(blocks(rows, levels - 1), blocks(columns, levels - 1)) > 1) {
+            levels++;
+        }
+        levelRows = new int[levels];
+        levelColumns = new int[levels];
+        wallDensity = new byte[levels][];
+        revealedDensity = new byte[levels][];
+        for (int level = 0; level < levels; level++) {
+            levelRows[level] = blocks(rows, level);
+            levelColumns[level] = blocks(columns, level);
+            wallDensity[level] = new byte[levelRows[level] * levelColumns[level]];
+            revealedDensity[level] = new byte[levelRows[level] * levelColumns[level]];
+        }
+
+        for (int row = 0; row < levelRows[0]; row++) {
+            for (int column = 0; column < levelColumns[0]; column++) {
+                wallDensity[0][row * levelColumns[0] + column] = (byte) countBaseBlock(row, column, true);
+            }
+        }
+        for (int level = 1; level < levels; level++) {
+            for (int row = 0; row < levelRows[level]; row++) {
+                for (int column = 0; column < levelColumns[level]; column++) {
+                    wallDensity[level][row * levelColumns[level] + column] = (byte) average(wallDensity, level, row, column, FULL);
+                }
+            }
+        }
+    }
+
+    private static int blocks(int cells, int level) {
+        int shift = BASE_SHIFT + level;
+        return (int) (((long) cells + (1L << shift) - 1) >> shift);
+    }
+
+    /**
+     * @param countWalls true for the share of walls, false for the share of revealed cells
+     */
+    private int countBaseBlock(int blockRow, int blockColumn, boolean countWalls) {
+        int count = 0;
+        for (int row = blockRow << BASE_SHIFT; row < (blockRow + 1) << BASE_SHIFT; row++) {
+            for (int column = blockColumn << BASE_SHIFT; column < (blockColumn + 1) << BASE_SHIFT; column++) {
+                boolean inside = row < rows && column < columns;
+                if (countWalls ? !inside || walls.isWall(row, column) : inside && isRevealed(row, column)) {
+                    count++;
+                }
+            }
+        }
+        return (count * FULL + BASE_BLOCK * BASE_BLOCK / 2) / (BASE_BLOCK * BASE_BLOCK);
+    }
+
+    /**
+     * @param outside the value of a child block outside of the labyrinth
+     * @return the mean of the four blocks of the level below
+     */
+    private int average(byte[][] density, int level, int row, int column, int outside) {
+        int sum = 0;
+        for (int i = 0; i < 2; i++) {
+            for (int j = 0; j < 2; j++) {
+                int childRow = 2 * row + i;
+                int childColumn = 2 * column + j;
+                sum += childRow < levelRows[level - 1] && childColumn < levelColumns[level - 1]
+                        ? density[level - 1][childRow * levelColumns[level - 1] + childColumn] & 0xFF : outside;
+            }
+        }
+        return (sum + 2) >> 2;
+    }
+
+    private boolean isRevealed(int row, int column) {
+        long index = (long) row * columns + column;
+        return (revealed[(int) (index >>> 6)] & (1L << index)) != 0;
+    }
+
+    /**
+     * Marks the cells up to radius rows and columns away from the player as seen
+     *
+     * @return true if the minimap changed
+     */
+    public boolean movePlayer(int row, int column, int radius) {
+        boolean changed = row != playerRow || column != playerColumn;
+        playerRow = row;
+        playerColumn = column;
+        for (int r = Math.max(0, row - radius); r <= Math.min(rows - 1, row + radius); r++) {
+            for (int c = Math.max(0, column - radius); c <= Math.min(columns - 1, column + radius); c++) {
+                changed |= reveal(r, c);
+            }
+        }
+        if (changed) {
+            version++;
+        }
+        return changed;
+    }
+
+    /**
+     * @return true if the cell was not revealed before
+     */
+    private boolean reveal(int row, int column) {
+        if (isRevealed(row, column)) {
+            return false;
+        }
+        long index = (long) row * columns + column;
+        revealed[(int) (index >>> 6)] |= 1L << index;
+
+        int blockRow = row >> BASE_SHIFT;
+        int blockColumn = column >> BASE_SHIFT;
+        revealedDensity[0][blockRow * levelColumns[0] + blockColumn] = (byte) countBaseBlock(blockRow, blockColumn, false);
+        for (int level = 1; level < levelRows.length; level++) {
+            blockRow >>= 1;
+            blockColumn >>= 1;
+            revealedDensity[level][blockRow * levelColumns[level] + blockColumn] =
+                    (byte) average(revealedDensity, level, blockRow, blockColumn, 0);
+        }
+        return true;
+    }
+
+    /**
+     * @return the lowest level with at most maxSize rows and columns, the top level if none is that small
+     */
+    public int levelFor(int maxSize) {
+        for (int level = 0; level < levelRows.length; level++) {
+            if (levelRows[level] <= maxSize && levelColumns[level] <= maxSize) {
+                return level;
+            }
+        }
+        return levelRows.length - 1;
+    }
+
+    public int getLevelCount() {
+        return levelRows.length;
+    }
+
+    /**
+     * @return a counter that changes whenever the player moved or cells were revealed
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Copies the lowest level with at most maxSize rows and columns
+     */
+    public Minimap toMinimap(int maxSize) {
+        int level = levelFor(maxSize);
+        int shift = BASE_SHIFT + level;
+        return new Minimap(levelRows[level], levelColumns[level], version,
+                Arrays.copyOf(wallDensity[level], wallDensity[level].length),
+                Arrays.copyOf(revealedDensity[level], revealedDensity[level].length),
+                playerRow < 0 ? -1 : playerRow >> shift, playerColumn < 0 ? -1 : playerColumn >> shift,
+                finishRow >> shift, finishColumn >> shift);
+    }
+
+    /**
+     * One level of the pyramid, immutable
+     */
+    public static final class Minimap {
+        private final int rows;
+        private final int columns;
+        private final long version;
+        private final byte[] walls;
+        private final byte[] revealed;
+        private final int playerRow, playerColumn;
+        private final int finishRow, finishColumn;
+
+        Minimap(int rows, int columns, long version, byte[] walls, byte[] revealed,
+                int playerRow, int playerColumn, int finishRow, int finishColumn) {
+            this.rows = rows;
+            this.columns = columns;
+            this.version = version;
+            this.walls = walls;
+            this.revealed = revealed;
+            this.playerRow = playerRow;
+            this.playerColumn = playerColumn;
+            this.finishRow = finishRow;
+            this.finishColumn = finishColumn;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        public int getColumns() {
+            return columns;
+        }
+
+        /**
+         * @return the version of the pyramid it was copied from
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * @return the share of walls in the block, from 0 to 255
+         */
+        public int getWallDensity(int row, int column) {
+            return walls[row * columns + column] & 0xFF;
+        }
+
+        /**
+         * @return the share of cells in the block the player has seen, from 0 to 255
+         */
+        public int getRevealedDensity(int row, int column) {
+            return revealed[row * columns + column] & 0xFF;
+        }
+
+        /**
+         * @return the block of the player, -1 before the first move
+         */
+        public int getPlayerRow() {
+            return playerRow;
+        }
+
+        public int getPlayerColumn() {
+            return playerColumn;
+        }
+
+        public int getFinishRow() {
+            return finishRow;
+        }
+
+        public int getFinishColumn() {
+            return finishColumn;
+        }
+    }
+}
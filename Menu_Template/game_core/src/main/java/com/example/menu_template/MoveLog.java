@@ -0,0 +1,245 @@
+package com.example.menu_template;
+
+import java.util.Arrays;
+
+/**
+ * Compact record of a run: the moves as 2 bits each (a LabyrinthRules.DIRECTION_* constant) and the play time
+ * between them as varints in steps of TIME_RESOLUTION_MILLIS, together with the seed of the labyrinth.
+ * A run of 1000 moves takes about 1.5 kB, small enough to keep thousands and to publish one as a single message.
+ * <p>
+ * Appending does not allocate once the log has grown to the length of a typical run, reset() keeps the buffers.
+ * <p>
+ * Encoded layout: version u8 | seed int64 (big endian) | move count varint | directions, 4 per byte, first move in
+ * the lowest bits | time deltas varint. Varints are unsigned, 7 bits per byte, lowest first.
+ */
+public final class MoveLog {
+
+    public static final int VERSION = 1;
+    public static final long TIME_RESOLUTION_MILLIS = 10;
+
+    private long seed;
+    private byte[] directions;
+    private byte[] deltas;
+    private int moveCount;
+    private int deltasLength;
+    private long lastTimeUnits;
+
+    /**
+     * @param expectedMoves the buffers are sized for this many moves, more only cost a copy
+     */
+    public MoveLog(int expectedMoves) {
+        directions = new byte[Math.max(1, (expectedMoves + 3) / 4)];
+        deltas = new byte[Math.max(1, expectedMoves * 2)];
+    }
+
+    /**
+     * Forgets all moves and starts the log of a run on the labyrinth with the seed
+     */
+    public void reset(long seed) {
+        this.seed = seed;
+        moveCount = 0;
+        deltasLength = 0;
+        lastTimeUnits = 0;
+        Arrays.fill(directions, (byte) 0);
+    }
+
+    /**
+     * @param direction      one of the LabyrinthRules.DIRECTION_* constants except DIRECTION_NONE
+     * @param playTimeMillis the play time of the move, not before the one of the previous move
+     */
+    public void append(int direction, long playTimeMillis) {
+        if (direction < 0 || direction > 3) {
+            throw new IllegalArgumentException("Not a direction: " + direction);
+        }
+        if (moveCount / 4 == directions.length) {
+            directions = Arrays.copyOf(directions, directions.length * 2);
+        }
+        if (deltasLength + 10 > deltas.length) {
+            deltas = Arrays.copyOf(deltas, deltas.length * 2 + 10);
+        }
+        directions[moveCount / 4] |= direction << (2 * (moveCount % 4));
+        // Quantized times instead of quantized deltas, so rounding does not add up over the run
+        long timeUnits = playTimeMillis / TIME_RESOLUTION_MILLIS;
+        deltasLength = putVarint(deltas, deltasLength, Math.max(0, timeUnits - lastTimeUnits));
+        lastTimeUnits = Math.max(lastTimeUnits, timeUnits);
+        moveCount++;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getMoveCount() {
+        return moveCount;
+    }
+
+    /**
+     * @return the number of bytes toBytes() returns
+     */
+    public int encodedLength() {
+        return 1 + 8 + varintLength(moveCount) + (moveCount + 3) / 4 + deltasLength;
+    }
+
+    public byte[] toBytes() {
+        byte[] bytes = new byte[encodedLength()];
+        bytes[0] = VERSION;
+        for (int i = 0; i < 8; i++) {
+            bytes[1 + i] = (byte) (seed >>> (56 - 8 * i));
+        }
+        int position = putVarint(bytes, 9, moveCount);
+        int directionsLength = (moveCount + 3) / 4;
+        System.arraycopy(directions, 0, bytes, position, directionsLength);
+        System.arraycopy(deltas, 0, bytes, position + directionsLength, deltasLength);
+        return bytes;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the bytes are not a log of this version
+     */
+    public static MoveLog fromBytes(byte[] bytes) {
+        if (bytes.length < 10 || bytes[0] != VERSION) {
+            throw new IllegalArgumentException("Not a move log of version " + VERSION);
+        }
+        long seed = 0;
+        for (int i = 0; i < 8; i++) {
+            seed = (seed << 8) | (bytes[1 + i] & 0xFF);
+        }
+        long[] read = new long[1];
+        int position = getVarint(bytes, 9, read);
+        // In longs, a corrupt count near Integer.MAX_VALUE must not wrap around
+        if (position < 0 || read[0] < 0 || read[0] > 4L * (bytes.length - position)) {
+            throw new IllegalArgumentException("Move log is truncated");
+        }
+        int moveCount = (int) read[0];
+        int directionsLength = (moveCount + 3) / 4;
+        MoveLog log = new MoveLog(0);
+        log.seed = seed;
+        log.moveCount = moveCount;
+        log.directions = Arrays.copyOfRange(bytes, position, position + Math.max(1, directionsLength));
+        log.deltas = Arrays.copyOfRange(bytes, position + directionsLength, bytes.length);
+        log.deltasLength = log.deltas.length;
+        return log;
+    }
+
+    private static int putVarint(byte[] out, int position, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[position++] = (byte) value;
+        return position;
+    }
+
+    /**
+     * @return the position after the varint, -1 if it runs past the end
+     */
+    private static int getVarint(byte[] in, int position, long[] value) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position >= in.length) {
+                return -1;
+            }
+            byte b = in[position++];
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                value[0] = result;
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    private static int varintLength(long value) {
+        int length = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * Plays a log back as a ghost player, moving it from its start cell as the play time goes on.
+     * Does not allocate, so it can be advanced on every game tick.
+     */
+    public static final class Replay {
+        private final MoveLog log;
+        private int row;
+        private int column;
+        private int nextMove;
+        private int deltaPosition;
+        private long nextMoveUnits;
+
+        /**
+         * @param startRow    the row of the player when the logged run started
+         * @param startColumn the column of the player when the logged run started
+         */
+        public Replay(MoveLog log, int startRow, int startColumn) {
+            this.log = log;
+            this.row = startRow;
+            this.column = startColumn;
+            readNextDelta();
+        }
+
+        /**
+         * Makes all moves that are due at the play time
+         *
+         * @return true if the ghost moved
+         */
+        public boolean advanceTo(long playTimeMillis) {
+            long timeUnits = playTimeMillis / TIME_RESOLUTION_MILLIS;
+            boolean moved = false;
+            while (nextMove < log.moveCount && nextMoveUnits <= timeUnits) {
+                int direction = (log.directions[nextMove / 4] >> (2 * (nextMove % 4))) & 0x3;
+                switch (direction) {
+                    case LabyrinthRules.DIRECTION_RIGHT:
+                        column++;
+                        break;
+                    case LabyrinthRules.DIRECTION_LEFT:
+                        column--;
+                        break;
+                    case LabyrinthRules.DIRECTION_FORWARD:
+                        row--;
+                        break;
+                    default:
+                        row++;
+                        break;
+                }
+                nextMove++;
+                readNextDelta();
+                moved = true;
+            }
+            return moved;
+        }
+
+        private void readNextDelta() {
+            if (nextMove >= log.moveCount) {
+                return;
+            }
+            long delta = 0;
+            for (int shift = 0; deltaPosition < log.deltasLength; shift += 7) {
+                byte b = log.deltas[deltaPosition++];
+                delta |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    break;
+                }
+            }
+            nextMoveUnits += delta;
+        }
+
+        public int getRow() {
+            return row;
+        }
+
+        public int getColumn() {
+            return column;
+        }
+
+        /**
+         * @return true once the ghost made all logged moves
+         */
+        public boolean isFinished() {
+            return nextMove >= log.moveCount;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.example.menu_template;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Outbound queue in front of an MQTT client, so publishing never blocks the caller.
+ * <p>
+ * Every topic has a Profile (QoS, retained, coalescing), topics without one use the default profile.
+ * At most maxInFlight messages are handed to the Sender and not yet completed, the rest waits in order.
+ * For coalescing topics (the latest value is all that matters, e.g. a rate command) a message still waiting
+ * is replaced by a newer one for the same topic, and both publishers get the same future.
+ * When maxQueued messages are waiting, new ones are rejected with a failed future instead of piling up.
+ */
+public class PublishPipeline {
+
+    /**
+     * Hands a message to the network without waiting for it
+     */
+    public interface Sender {
+        /**
+         * @param completion must be called exactly once, when the message was delivered (QoS 1 and 2)
+         *                   or written (QoS 0), or failed
+         * @throws Exception if the message could not be handed over at all
+         */
+        void send(String topic, byte[] payload, int qos, boolean retained, Completion completion) throws Exception;
+    }
+
+    public interface Completion {
+        /**
+         * @param error null if the message went out
+         */
+        void onComplete(Throwable error);
+    }
+
+    public static final class Profile {
+        private final int qos;
+        private final boolean retained;
+        private final boolean coalesce;
+
+        public Profile(int qos, boolean retained, boolean coalesce) {
+            this.qos = qos;
+            this.retained = retained;
+            this.coalesce = coalesce;
+        }
+
+        public int getQos() {
+            return qos;
+        }
+
+        public boolean isRetained() {
+            return retained;
+        }
+
+        public boolean isCoalesce() {
+            return coalesce;
+        }
+    }
+
+    public static final Profile TELEMETRY = new Profile(0, false, false);
+
+    private static final class Entry {
+        final String topic;
+        final Profile profile;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        byte[] payload;
+
+        Entry(String topic, byte[] payload, Profile profile) {
+            this.topic = topic;
+            this.payload = payload;
+            this.profile = profile;
+        }
+    }
+
+    private final Sender sender;
+    private final int maxInFlight;
+    private final int maxQueued;
+    private final Map<String, Profile> profiles = new HashMap<>();
+    private volatile Profile defaultProfile = TELEMETRY;
+
+    private final Object lock = new Object();
+    private final ArrayDeque<Entry> queue = new ArrayDeque<>();
+    private final Map<String, Entry> queuedByTopic = new HashMap<>(); // Waiting entries of coalescing topics
+    private int inFlight;
+    private boolean dispatching; // Only one thread hands messages to the sender, so they go out in queue order
+    private long coalesced;
+    private long rejected;
+    private long failed;
+
+    /**
+     * @param maxInFlight the number of messages handed to the sender and not yet completed, at most
+     * @param maxQueued   the number of messages waiting for the in-flight window, at most
+     */
+    public PublishPipeline(Sender sender, int maxInFlight, int maxQueued) {
+        this.sender = sender;
+        this.maxInFlight = maxInFlight;
+        this.maxQueued = maxQueued;
+    }
+
+    public void setProfile(String topic, Profile profile) {
+        synchronized (profiles) {
+            profiles.put(topic, profile);
+        }
+    }
+
+    public void setDefaultProfile(Profile profile) {
+        defaultProfile = profile;
+    }
+
+    public Profile getProfile(String topic) {
+        synchronized (profiles) {
+            Profile profile = profiles.get(topic);
+            return profile != null ? profile : defaultProfile;
+        }
+    }
+
+    /**
+     * Queues a message with the profile of its topic, never blocks
+     *
+     * @return completes when the message went out, or exceptionally if it was rejected or failed
+     */
+    public CompletableFuture<Void> publish(String topic, byte[] payload) {
+        Profile profile = getProfile(topic);
+        Entry entry;
+        synchronized (lock) {
+            if (profile.isCoalesce()) {
+                Entry waiting = queuedByTopic.get(topic);
+                if (waiting != null) {
+                    waiting.payload = payload;
+                    coalesced++;
+                    return waiting.future;
+                }
+            }
+            entry = new Entry(topic, payload, profile);
+            if (queue.size() >= maxQueued) {
+                rejected++;
+                entry.future.completeExceptionally(new IllegalStateException("Publish queue is full"));
+                return entry.future;
+            }
+            queue.add(entry);
+            if (profile.isCoalesce()) {
+                queuedByTopic.put(topic, entry);
+            }
+        }
+        dispatch();
+        return entry.future;
+    }
+
+    private void dispatch() {
+        while (true) {
+            Entry next;
+            synchronized (lock) {
+                if (dispatching || inFlight >= maxInFlight || queue.isEmpty()) {
+                    return;
+                }
+                next = queue.poll();
+                if (queuedByTopic.get(next.topic) == next) {
+                    queuedByTopic.remove(next.topic);
+                }
+                inFlight++;
+                dispatching = true;
+            }
+            try {
+                Entry sent = next;
+                sender.send(sent.topic, sent.payload, sent.profile.getQos(), sent.profile.isRetained(),
+                        error -> complete(sent, error));
+            } catch (Exception e) {
+                complete(next, e);
+            } finally {
+                synchronized (lock) {
+                    dispatching = false;
+                }
+            }
+        }
+    }
+
+    private void complete(Entry entry, Throwable error) {
+        synchronized (lock) {
+            inFlight--;
+            if (error != null) {
+                failed++;
+            }
+        }
+        if (error == null) {
+            entry.future.complete(null);
+        } else {
+            entry.future.completeExceptionally(error);
+        }
+        // A completion from the network thread frees a slot in the window
+        dispatch();
+    }
+
+    /**
+     * Fails all waiting messages, e.g. when the connection is closed. Messages in flight complete on their own.
+     */
+    public void clear(Throwable reason) {
+        ArrayDeque<Entry> dropped;
+        synchronized (lock) {
+            dropped = new ArrayDeque<>(queue);
+            queue.clear();
+            queuedByTopic.clear();
+        }
+        for (Entry entry : dropped) {
+            entry.future.completeExceptionally(reason);
+        }
+    }
+
+    public int getInFlight() {
+        synchronized (lock) {
+            return inFlight;
+        }
+    }
+
+    public int getQueued() {
+        synchronized (lock) {
+            return queue.size();
+        }
+    }
+
+    /**
+     * @return the number of messages replaced by a newer one for the same topic before they went out
+     */
+    public long getCoalesced() {
+        synchronized (lock) {
+            return coalesced;
+        }
+    }
+
+    /**
+     * @return the number of messages rejected because the queue was full
+     */
+    public long getRejected() {
+        synchronized (lock) {
+            return rejected;
+        }
+    }
+
+    public long getFailed() {
+        synchronized (lock) {
+            return failed;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.menu_template;
+
+/**
+ * Rolling minimum, maximum and mean over the samples of the last windowMillis milliseconds.
+ * Samples live in preallocated primitive ring buffers and min/max are tracked with monotonic queues,
+ * so adding a sample is amortized O(1), every query is O(1) and nothing is allocated after construction.
+ */
+public class RollingWindow {
+
+    private final long windowMillis;
+    private final int capacity;
+    private final float[] values;
+    private final long[] times;
+
+    // Sequence numbers of the samples, the buffers are indexed with sequence % capacity
+    private long head; // oldest sample in the window
+    private long tail; // next sample
+
+    // Monotonic queues of sequence numbers: increasing values for the minimum, decreasing values for the maximum
+    private final long[] minQueue;
+    private long minHead, minTail;
+    private final long[] maxQueue;
+    private long maxHead, maxTail;
+
+    private double sum;
+
+    /**
+     * @param windowMillis the length of the window in milliseconds
+     * @param capacity     the maximum number of samples kept, older samples are dropped even if they are still in the window
+     */
+    public RollingWindow(long windowMillis, int capacity) {
+        this.windowMillis = windowMillis;
+        this.capacity = capacity;
+        this.values = new float[capacity];
+        this.times = new long[capacity];
+        this.minQueue = new long[capacity];
+        this.maxQueue = new long[capacity];
+    }
+
+    /**
+     * @param timeMillis the time of the sample on a monotonic clock, samples have to be added in time order
+     * @param value      the sample
+     */
+    public synchronized void add(long timeMillis, float value) {
+        evictExpired(timeMillis);
+        if (tail - head == capacity) {
+            evictOldest();
+        }
+
+        int index = (int) (tail % capacity);
+        values[index] = value;
+        times[index] = timeMillis;
+        sum += value;
+
+        while (minTail > minHead && values[(int) (minQueue[(int) ((minTail - 1) % capacity)] % capacity)] >= value) {
+            minTail--;
+        }
+        minQueue[(int) (minTail++ % capacity)] = tail;
+
+        while (maxTail > maxHead && values[(int) (maxQueue[(int) ((maxTail - 1) % capacity)] % capacity)] <= value) {
+            maxTail--;
+        }
+        maxQueue[(int) (maxTail++ % capacity)] = tail;
+
+        tail++;
+    }
+
+    /**
+     * Drops the samples that are older than the window
+     *
+     * @param nowMillis the current time on the clock used for add()
+     */
+    public synchronized void evictExpired(long nowMillis) {
+        while (tail > head && times[(int) (head % capacity)] <= nowMillis - windowMillis) {
+            evictOldest();
+        }
+    }
+
+    private void evictOldest() {
+        sum -= values[(int) (head % capacity)];
+        if (minTail > minHead && minQueue[(int) (minHead % capacity)] == head) {
+            minHead++;
+        }
+        if (maxTail > maxHead && maxQueue[(int) (maxHead % capacity)] == head) {
+            maxHead++;
+        }
+        head++;
+        if (head == tail) {
+            // Reset the running sum, so rounding errors do not pile up over a long game
+            sum = 0;
+        }
+    }
+
+    public synchronized int size() {
+        return (int) (tail - head);
+    }
+
+    /**
+     * @return the smallest sample in the window or NaN if the window is empty
+     */
+    public synchronized float getMin() {
+        return minTail == minHead ? Float.NaN : values[(int) (minQueue[(int) (minHead % capacity)] % capacity)];
+    }
+
+    /**
+     * @return the largest sample in the window or NaN if the window is empty
+     */
+    public synchronized float getMax() {
+        return maxTail == maxHead ? Float.NaN : values[(int) (maxQueue[(int) (maxHead % capacity)] % capacity)];
+    }
+
+    /**
+     * @return the mean of the samples in the window or NaN if the window is empty
+     */
+    public synchronized float getMean() {
+        return tail == head ? Float.NaN : (float) (sum / (tail - head));
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+}
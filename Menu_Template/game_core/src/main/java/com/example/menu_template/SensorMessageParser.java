@@ -0,0 +1,188 @@
+package com.example.menu_template;
+
+/**
+ * This class parses the Accelerometer/Gyro-Value-Strings the ESP32 publishes on the MPU topics,
+ * e.g. "(0.12,-9.81,0.40,0.01,0.00,-0.02)". Newer firmware appends the time the sensor was read
+ * in microseconds on the board's clock as a seventh value, e.g. "(0.12,-9.81,0.40,0.01,0.00,-0.02,81234567)".
+ * <p>
+ * Every sample goes through here, so the numbers are read in place without substrings or other allocations
+ * (see AllocationBudgetTest). Plain decimals like the firmware sends are parsed directly, anything else
+ * (exponents, very long mantissas) falls back to Float.parseFloat().
+ */
+public final class SensorMessageParser {
+
+    public static final int VALUE_COUNT = 6;
+    public static final long NO_TIMESTAMP = -1;
+
+    // Decimal digits that still fit exactly into the mantissa of a double
+    private static final int MAX_FAST_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15};
+
+    private SensorMessageParser() {
+    }
+
+    /**
+     * @param message the payload received on an MPU topic
+     * @param out     receives acc_x, acc_y, acc_z, gyro_x, gyro_y, gyro_z, left untouched if the message is invalid
+     * @return true if the message contained six valid values (and optionally a timestamp)
+     */
+    public static boolean parse(String message, float[] out) {
+        return parse(message, 0, message.length(), out);
+    }
+
+    /**
+     * Parses one sample out of message[start, end), e.g. one of several in a batched message
+     *
+     * @see #parse(String, float[])
+     */
+    public static boolean parse(String message, int start, int end, float[] out) {
+        int values = countValues(message, start, end);
+        if (values != VALUE_COUNT && values != VALUE_COUNT + 1) {
+            return false;
+        }
+        // Parsed twice, the first pass only checks, so out stays untouched if a value is invalid
+        for (int pass = 0; pass < 2; pass++) {
+            int valueStart = start;
+            for (int i = 0; i < VALUE_COUNT; i++) {
+                int valueEnd = indexOf(message, ',', valueStart, end);
+                if (valueEnd < 0) {
+                    valueEnd = end;
+                }
+                float value = parseFloat(message, valueStart, valueEnd);
+                if (Float.isNaN(value)) {
+                    return false;
+                }
+                if (pass == 1) {
+                    out[i] = value;
+                }
+                valueStart = valueEnd + 1;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param message the payload received on an MPU topic
+     * @return the board's timestamp of the sample in microseconds, or NO_TIMESTAMP if the message has none
+     */
+    public static long parseTimestampMicros(String message) {
+        return parseTimestampMicros(message, 0, message.length());
+    }
+
+    /**
+     * @see #parseTimestampMicros(String)
+     */
+    public static long parseTimestampMicros(String message, int start, int end) {
+        int commas = 0;
+        int lastComma = -1;
+        for (int i = start; i < end; i++) {
+            if (message.charAt(i) == ',') {
+                commas++;
+                lastComma = i;
+            }
+        }
+        if (commas != VALUE_COUNT) {
+            return NO_TIMESTAMP;
+        }
+        long timestamp = 0;
+        int digits = 0;
+        for (int i = lastComma + 1; i < end; i++) {
+            char c = message.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (digits++ == 18) {
+                    return NO_TIMESTAMP; // Would overflow
+                }
+                timestamp = timestamp * 10 + (c - '0');
+            } else if (!isIgnored(c)) {
+                return NO_TIMESTAMP;
+            }
+        }
+        return digits == 0 ? NO_TIMESTAMP : timestamp;
+    }
+
+    private static int countValues(String message, int start, int end) {
+        int values = 1;
+        for (int i = start; i < end; i++) {
+            if (message.charAt(i) == ',') {
+                values++;
+            }
+        }
+        return values;
+    }
+
+    private static int indexOf(String message, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (message.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parentheses and whitespace around the values
+     */
+    private static boolean isIgnored(char c) {
+        return c == '(' || c == ')' || c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+
+    /**
+     * @return the value of message[start, end) without the surrounding parentheses and whitespace, NaN if it is
+     * not a number (a NaN sent by the board is just as unusable)
+     */
+    private static float parseFloat(String message, int start, int end) {
+        while (start < end && isIgnored(message.charAt(start))) {
+            start++;
+        }
+        while (end > start && isIgnored(message.charAt(end - 1))) {
+            end--;
+        }
+        int i = start;
+        boolean negative = false;
+        if (i < end && (message.charAt(i) == '-' || message.charAt(i) == '+')) {
+            negative = message.charAt(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int significantDigits = 0;
+        int fractionDigits = 0;
+        boolean point = false;
+        boolean digit = false;
+        for (; i < end; i++) {
+            char c = message.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digit = true;
+                if ((mantissa != 0 || c != '0') && ++significantDigits > MAX_FAST_DIGITS) {
+                    return parseFloatSlowly(message, start, end);
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (point) {
+                    fractionDigits++;
+                }
+            } else if (c == '.' && !point) {
+                point = true;
+            } else {
+                // An exponent, NaN, Infinity or garbage
+                return parseFloatSlowly(message, start, end);
+            }
+        }
+        if (!digit) {
+            return Float.NaN;
+        }
+        if (fractionDigits >= POWERS_OF_TEN.length) {
+            return parseFloatSlowly(message, start, end);
+        }
+        // Both are exact in a double, so the quotient is correctly rounded before it is narrowed to a float
+        double value = mantissa / POWERS_OF_TEN[fractionDigits];
+        return (float) (negative ? -value : value);
+    }
+
+    private static float parseFloatSlowly(String message, int start, int end) {
+        try {
+            return Float.parseFloat(message.substring(start, end));
+        } catch (NumberFormatException e) {
+            return Float.NaN;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.menu_template;
+
+import java.util.Locale;
+
+/**
+ * Decides how fast a board should publish its sensor values, depending on the game state, and keeps track of
+ * what the board confirmed. The command "&lt;samples per second&gt;,&lt;samples per message&gt;" is published (retained)
+ * on the control topic, and the board answers with the values it actually applied on the control ack topic.
+ * A command that is not confirmed within RETRY_MILLIS is sent again.
+ */
+public class SensorRateControl {
+
+    public static final int STATE_MENU = 0; // Not in a game or not steering with the board, the board stays silent
+    public static final int STATE_PAUSED = 1;
+    public static final int STATE_IDLE = 2; // In a game, but not tilted for IDLE_AFTER_MILLIS
+    public static final int STATE_MOVING = 3;
+
+    // Samples per second and samples per message for each state
+    private static final int[] RATES = {0, 2, 25, 100};
+    private static final int[] BATCH_SIZES = {1, 1, 1, 2};
+
+    public static final long IDLE_AFTER_MILLIS = 2000;
+    public static final long RETRY_MILLIS = 1000;
+
+    private int requestedRate = -1;
+    private int requestedBatchSize = -1;
+    private long requestedAt;
+    private volatile int appliedRate = -1;
+    private volatile int appliedBatchSize = -1;
+    private volatile boolean confirmed;
+
+    /**
+     * @param state   one of the STATE_* constants
+     * @param nowMillis the current time on a monotonic clock
+     * @return the command to publish, or null if the board already has (or was just sent) these settings
+     */
+    public synchronized String update(int state, long nowMillis) {
+        int rate = RATES[state];
+        int batchSize = BATCH_SIZES[state];
+        if (rate == requestedRate && batchSize == requestedBatchSize
+                && (confirmed || nowMillis - requestedAt < RETRY_MILLIS)) {
+            return null;
+        }
+        requestedRate = rate;
+        requestedBatchSize = batchSize;
+        requestedAt = nowMillis;
+        confirmed = false;
+        return command(rate, batchSize);
+    }
+
+    /**
+     * Confirms the outstanding command if the ack answers it. An ack of an earlier command (e.g. one that arrives
+     * after a switch to another state) is ignored, so the current command is still retried.
+     *
+     * @param message the payload received on the control ack topic
+     * @return false if the message was malformed
+     */
+    public boolean onAck(String message) {
+        int comma = message.indexOf(',');
+        if (comma < 0) {
+            return false;
+        }
+        try {
+            int rate = Integer.parseInt(message.substring(0, comma).trim());
+            int batchSize = Integer.parseInt(message.substring(comma + 1).trim());
+            synchronized (this) {
+                // The board may clamp the values to what it can do, that still answers the request.
+                // It never raises them, and it only stays silent if it was asked to.
+                if (rate > requestedRate || batchSize > requestedBatchSize || (rate == 0) != (requestedRate == 0)) {
+                    return true;
+                }
+                appliedRate = rate;
+                appliedBatchSize = batchSize;
+                confirmed = true;
+            }
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    public static String command(int rate, int batchSize) {
+        return String.format(Locale.ROOT, "%d,%d", rate, batchSize);
+    }
+
+    public boolean isConfirmed() {
+        return confirmed;
+    }
+
+    /**
+     * @return the samples per second the board confirmed, or -1 before the first confirmation
+     */
+    public int getAppliedRate() {
+        return appliedRate;
+    }
+
+    /**
+     * @return the samples per message the board confirmed, or -1 before the first confirmation
+     */
+    public int getAppliedBatchSize() {
+        return appliedBatchSize;
+    }
+
+    public synchronized int getRequestedRate() {
+        return requestedRate;
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.menu_template;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free ring buffer of timestamped sensor samples for exactly one producer thread (the sensor callback)
+ * and one consumer thread (the game loop). The producer never waits: when the buffer is full, the new sample
+ * is dropped and counted. Samples are stored in primitive arrays, so neither side allocates.
+ */
+public class SensorSampleBuffer {
+
+    private final int capacity;
+    private final int mask;
+    private final float[] values;
+    private final long[] timestampsNanos;
+
+    // Next slot to read, only advanced by the consumer
+    private final AtomicLong head = new AtomicLong();
+    // Next slot to write, only advanced by the producer; advancing it publishes the slot to the consumer
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong droppedSamples = new AtomicLong();
+
+    // Only touched by the consumer
+    private final float[] drainedSample = new float[SensorMessageParser.VALUE_COUNT];
+
+    /**
+     * @param capacity the number of samples the buffer holds, rounded up to a power of two
+     */
+    public SensorSampleBuffer(int capacity) {
+        this.capacity = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.mask = this.capacity - 1;
+        this.values = new float[this.capacity * SensorMessageParser.VALUE_COUNT];
+        this.timestampsNanos = new long[this.capacity];
+    }
+
+    /**
+     * Adds a sample, producer thread only
+     *
+     * @param sample         accX, accY, accZ, gyroX, gyroY, gyroZ
+     * @param timestampNanos the time of the sample on a monotonic clock in nanoseconds
+     * @return false if the buffer was full and the sample was dropped
+     */
+    public boolean offer(float[] sample, long timestampNanos) {
+        long currentTail = tail.get();
+        if (currentTail - head.get() == capacity) {
+            droppedSamples.incrementAndGet();
+            return false;
+        }
+        int slot = (int) (currentTail & mask);
+        System.arraycopy(sample, 0, values, slot * SensorMessageParser.VALUE_COUNT, SensorMessageParser.VALUE_COUNT);
+        timestampsNanos[slot] = timestampNanos;
+        tail.lazySet(currentTail + 1);
+        return true;
+    }
+
+    /**
+     * Hands all buffered samples to the listener in the order they were added, consumer thread only
+     *
+     * @return the number of samples drained
+     */
+    public int drainTo(SensorSampleListener listener) {
+        long currentHead = head.get();
+        long currentTail = tail.get();
+        int drained = 0;
+        for (; currentHead < currentTail; currentHead++, drained++) {
+            int slot = (int) (currentHead & mask);
+            System.arraycopy(values, slot * SensorMessageParser.VALUE_COUNT, drainedSample, 0, SensorMessageParser.VALUE_COUNT);
+            listener.onSensorSample(drainedSample, timestampsNanos[slot] / 1_000_000);
+        }
+        // Only now the producer may reuse the slots
+        head.lazySet(currentHead);
+        return drained;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of samples dropped because the consumer fell behind
+     */
+    public long getDroppedSamples() {
+        return droppedSamples.get();
+    }
+}
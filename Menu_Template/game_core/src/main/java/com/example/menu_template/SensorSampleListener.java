@@ -0,0 +1,16 @@
+package com.example.menu_template;
+
+/**
+ * Receives every sensor sample as soon as it arrives, instead of polling the latest values once per game tick.
+ */
+public interface SensorSampleListener {
+
+    /**
+     * Called on the thread that delivers the sample. The array is reused for the next sample,
+     * so it must not be kept after returning.
+     *
+     * @param values          accX, accY, accZ, gyroX, gyroY, gyroZ
+     * @param timestampMillis the time of the sample on a monotonic clock in milliseconds
+     */
+    void onSensorSample(float[] values, long timestampMillis);
+}
@@ -0,0 +1,97 @@
+package com.example.menu_template;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes a running game for spectators: one keyframe with the complete labyrinth (walls bit-packed, plus the seed
+ * when it is known), followed by small move messages. Every message carries a sequence number, so a spectator can
+ * detect lost messages, and keyframes are repeated periodically so late joiners can catch up.
+ * <p>
+ * Message layout (big endian):
+ * <pre>
+ * keyframe: 'K' | seq int | rows u16 | columns u16 | flags u8 (bit 0: seed present) | seed long
+ *           | player row u16 | player column u16 | finish row u16 | finish column u16 | walls (1 bit per cell)
+ * move:     'M' | seq int | direction u8
+ * finished: 'F' | seq int
+ * </pre>
+ *
+ * @see SpectatorView
+ */
+public class SpectatorStream {
+
+    public static final byte TYPE_KEYFRAME = 'K';
+    public static final byte TYPE_MOVE = 'M';
+    public static final byte TYPE_FINISHED = 'F';
+
+    public static final int KEYFRAME_HEADER_LENGTH = 1 + 4 + 2 + 2 + 1 + 8 + 4 * 2;
+    public static final int MOVE_LENGTH = 1 + 4 + 1;
+    public static final int FINISHED_LENGTH = 1 + 4;
+    public static final int FLAG_SEED_PRESENT = 1;
+
+    public static final long DEFAULT_KEYFRAME_INTERVAL_MILLIS = 5000;
+
+    private final long keyframeIntervalMillis;
+    private int sequence;
+    private long lastKeyframeTime;
+
+    /**
+     * @param keyframeIntervalMillis how often isKeyframeDue() asks for a new keyframe
+     */
+    public SpectatorStream(long keyframeIntervalMillis) {
+        this.keyframeIntervalMillis = keyframeIntervalMillis;
+    }
+
+    /**
+     * @param labyrinth   the current labyrinth
+     * @param seed        the seed the labyrinth was generated with
+     * @param seedKnown   false if the labyrinth was not generated from a seed
+     * @param currentTime the current time in milliseconds, used for scheduling the next keyframe
+     * @return the keyframe message
+     */
+    public byte[] keyframe(int[][] labyrinth, long seed, boolean seedKnown, long currentTime) {
+        int rows = labyrinth.length;
+        int columns = rows == 0 ? 0 : labyrinth[0].length;
+        ByteBuffer out = ByteBuffer.allocate(KEYFRAME_HEADER_LENGTH + LabyrinthCodec.packedWallsLength(rows, columns));
+        out.put(TYPE_KEYFRAME);
+        out.putInt(++sequence);
+        out.putShort((short) rows);
+        out.putShort((short) columns);
+        out.put((byte) (seedKnown ? FLAG_SEED_PRESENT : 0));
+        out.putLong(seedKnown ? seed : 0);
+        LabyrinthCodec.putPosition(labyrinth, LabyrinthRules.PLAYER, out);
+        LabyrinthCodec.putPosition(labyrinth, LabyrinthRules.FINISH, out);
+        LabyrinthCodec.packWalls(labyrinth, out);
+        lastKeyframeTime = currentTime;
+        return out.array();
+    }
+
+    /**
+     * @param direction the direction of a move that LabyrinthRules.movePlayer() accepted
+     * @return the move message
+     */
+    public byte[] move(int direction) {
+        return ByteBuffer.allocate(MOVE_LENGTH)
+                .put(TYPE_MOVE)
+                .putInt(++sequence)
+                .put((byte) direction)
+                .array();
+    }
+
+    /**
+     * @return the message telling spectators that the player reached the finish
+     */
+    public byte[] finished() {
+        return ByteBuffer.allocate(FINISHED_LENGTH)
+                .put(TYPE_FINISHED)
+                .putInt(++sequence)
+                .array();
+    }
+
+    /**
+     * @param currentTime the current time in milliseconds
+     * @return true if the last keyframe is older than the keyframe interval
+     */
+    public boolean isKeyframeDue(long currentTime) {
+        return currentTime - lastKeyframeTime >= keyframeIntervalMillis;
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.menu_template;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Rebuilds a game from the messages of a SpectatorStream.
+ * Until the first keyframe arrives, and again after a lost message, moves are ignored until the next keyframe.
+ * Messages older than the last one applied are dropped.
+ *
+ * @see SpectatorStream
+ */
+public class SpectatorView {
+
+    private int[][] labyrinth;
+    private int lastSequence;
+    private boolean synced;
+    private boolean finished;
+    private boolean seedKnown;
+    private long seed;
+    private int lostMessages;
+
+    /**
+     * @param message a message received on the spectator topic
+     * @return true if the labyrinth changed
+     */
+    public boolean apply(byte[] message) {
+        ByteBuffer in = ByteBuffer.wrap(message);
+        byte type = in.get();
+        int sequence = in.getInt();
+
+        if (type == SpectatorStream.TYPE_KEYFRAME) {
+            readKeyframe(in);
+            lastSequence = sequence;
+            synced = true;
+            return true;
+        }
+        if (!synced) {
+            return false;
+        }
+        if (sequence - lastSequence <= 0) {
+            // Reordered or sent twice, the keyframe or move it came after already covers it
+            return false;
+        }
+        if (sequence != lastSequence + 1) {
+            // A message got lost, wait for the next keyframe
+            lostMessages += sequence - lastSequence - 1;
+            synced = false;
+            return false;
+        }
+        lastSequence = sequence;
+
+        if (type == SpectatorStream.TYPE_MOVE) {
+            return LabyrinthRules.movePlayer(labyrinth, in.get()) == LabyrinthRules.MOVE_OK;
+        } else if (type == SpectatorStream.TYPE_FINISHED) {
+            finished = true;
+            return true;
+        }
+        return false;
+    }
+
+    private void readKeyframe(ByteBuffer in) {
+        int rows = in.getShort() & 0xFFFF;
+        int columns = in.getShort() & 0xFFFF;
+        seedKnown = (in.get() & SpectatorStream.FLAG_SEED_PRESENT) != 0;
+        seed = in.getLong();
+        if (labyrinth == null || labyrinth.length != rows || (rows > 0 && labyrinth[0].length != columns)) {
+            labyrinth = new int[rows][columns];
+        }
+        int playerPosition = in.position();
+        in.position(playerPosition + 8);
+        LabyrinthCodec.unpackWalls(in, labyrinth);
+        in.position(playerPosition);
+        LabyrinthCodec.getPosition(in, LabyrinthRules.PLAYER, labyrinth);
+        LabyrinthCodec.getPosition(in, LabyrinthRules.FINISH, labyrinth);
+        finished = false;
+    }
+
+    /**
+     * @return the rebuilt labyrinth or null before the first keyframe
+     */
+    public int[][] getLabyrinth() {
+        return labyrinth;
+    }
+
+    public boolean isSynced() {
+        return synced;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public boolean isSeedKnown() {
+        return seedKnown;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return the number of messages detected as lost through gaps in the sequence numbers
+     */
+    public int getLostMessages() {
+        return lostMessages;
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.menu_template;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs startup stages in parallel, each one as soon as the stages it depends on are done, and times them.
+ * With enough threads in the executor the whole startup takes as long as the slowest chain of dependent stages
+ * instead of the sum of all stages. A failing stage fails the stages depending on it and finish().
+ */
+public class StartupPipeline {
+
+    public interface Task {
+        void run() throws Exception;
+    }
+
+    private static final class Stage {
+        final String name;
+        volatile long startNanos = -1;
+        volatile long endNanos = -1;
+        volatile boolean failed;
+
+        Stage(String name) {
+            this.name = name;
+        }
+    }
+
+    private final Executor executor;
+    private final long createdNanos = System.nanoTime();
+    private final List<Stage> stages = new ArrayList<>();
+    private final List<CompletableFuture<Void>> futures = new ArrayList<>();
+    private volatile long finishedNanos = -1;
+
+    public StartupPipeline(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Adds a stage, all stages have to be added before finish()
+     *
+     * @param dependencies the stages that have to be done first
+     * @return completes when the stage is done
+     */
+    public CompletableFuture<Void> stage(String name, Task task, CompletableFuture<?>... dependencies) {
+        Stage stage = new Stage(name);
+        CompletableFuture<Void> future = CompletableFuture.allOf(dependencies).thenRunAsync(() -> {
+            stage.startNanos = System.nanoTime();
+            try {
+                task.run();
+            } catch (Exception e) {
+                stage.failed = true;
+                throw new CompletionException(e);
+            } finally {
+                stage.endNanos = System.nanoTime();
+            }
+        }, executor);
+        stages.add(stage);
+        futures.add(future);
+        return future;
+    }
+
+    /**
+     * @return completes when all stages are done, or exceptionally with the first failure
+     */
+    public CompletableFuture<Void> finish() {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .whenComplete((ignored, error) -> finishedNanos = System.nanoTime());
+    }
+
+    /**
+     * @return the time from creating the pipeline until all stages were done, -1 before that
+     */
+    public long getElapsedMillis() {
+        long finished = finishedNanos;
+        return finished < 0 ? -1 : (finished - createdNanos) / 1_000_000;
+    }
+
+    /**
+     * @return how long the stage ran, -1 if it did not (yet) run
+     */
+    public long getStageMillis(String name) {
+        for (Stage stage : stages) {
+            if (stage.name.equals(name)) {
+                return stage.endNanos < 0 ? -1 : (stage.endNanos - stage.startNanos) / 1_000_000;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return e.g. "Startup 212 ms (stages add up to 390 ms): settings 0+4 ms, broker 1+208 ms, ..." where the
+     * first number is when the stage started
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        long sum = 0;
+        for (Stage stage : stages) {
+            report.append(report.length() == 0 ? "" : ", ").append(stage.name).append(' ');
+            if (stage.endNanos < 0) {
+                report.append("did not run");
+                continue;
+            }
+            long duration = (stage.endNanos - stage.startNanos) / 1_000_000;
+            sum += duration;
+            report.append((stage.startNanos - createdNanos) / 1_000_000).append('+').append(duration).append(" ms");
+            if (stage.failed) {
+                report.append(" failed");
+            }
+        }
+        return String.format(Locale.ROOT, "Startup %d ms (stages add up to %d ms): ", getElapsedMillis(), sum) + report;
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.menu_template;
+
+/**
+ * A source of steering samples, e.g. the ESP32 board or the phone's own sensors.
+ * Sources are created only for the selected steering method, so unused ones hold no connection, thread or sensor.
+ */
+public interface SteeringSource {
+
+    // Steering methods as stored in the settings
+    String ESP32 = "ESP32";
+    String PHONE = "Phone";
+    String FUSED = "Fused";
+
+    /**
+     * Starts delivering samples, does nothing if the source is already running
+     */
+    void startSensors();
+
+    /**
+     * Stops delivering samples and releases connections, threads and sensors until the next startSensors()
+     */
+    void stopSensors();
+
+    /**
+     * Hands all samples received since the last call to the listener, only to be called from the game loop thread
+     *
+     * @return the number of samples
+     */
+    int drainSamples(SensorSampleListener listener);
+
+    /**
+     * @return the estimated time between a movement of the device and its sample being available, in milliseconds
+     */
+    long getLatencyMillis();
+}
@@ -0,0 +1,54 @@
+package com.example.menu_template;
+
+/**
+ * The temperature readings of one game: the latest value plus rolling statistics over one or more windows.
+ * Adding a reading does not allocate, so it can run for every temperature message.
+ */
+public class TemperatureSeries {
+
+    // The ESP32 publishes its temperature once per second, leave some room for bursts
+    private static final int SAMPLES_PER_SECOND = 4;
+
+    private final RollingWindow[] windows;
+    private volatile float latest = Float.NaN;
+
+    /**
+     * @param windowMillis the lengths of the rolling windows, e.g. 10_000 and 60_000
+     */
+    public TemperatureSeries(long... windowMillis) {
+        windows = new RollingWindow[windowMillis.length];
+        for (int i = 0; i < windowMillis.length; i++) {
+            int capacity = (int) Math.max(1, windowMillis[i] / 1000 * SAMPLES_PER_SECOND);
+            windows[i] = new RollingWindow(windowMillis[i], capacity);
+        }
+    }
+
+    /**
+     * @param timeMillis the time of the reading on a monotonic clock
+     * @param value      the temperature in degrees Celsius
+     */
+    public void add(long timeMillis, float value) {
+        latest = value;
+        for (RollingWindow window : windows) {
+            window.add(timeMillis, value);
+        }
+    }
+
+    /**
+     * @return the latest reading or NaN before the first one
+     */
+    public float getLatest() {
+        return latest;
+    }
+
+    public int getWindowCount() {
+        return windows.length;
+    }
+
+    /**
+     * @param index the index of the window in the order passed to the constructor
+     */
+    public RollingWindow getWindow(int index) {
+        return windows[index];
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.menu_template;
+
+/**
+ * Predicts the tilt a little into the future, to make up for the time the board's samples spend on WiFi and
+ * the broker. It sits in front of the AutoRepeatMapper: an alpha-beta tracker per tilt axis (acc_x, acc_y)
+ * estimates the tilt and how fast it changes, and the tilt is extrapolated by the lead, usually the measured
+ * sensor->app delay. The other values of a sample are passed on unchanged, and so are the timestamps,
+ * so debouncing and the move rate still work on real time.
+ * <p>
+ * The prediction is gated, so it can make a move come earlier but not make one up:
+ * it is scaled down as the tracker's residuals grow (noise, shaking), it only starts once the tilt has moved
+ * the same way for MIN_TREND_MILLIS, it never adds more than MAX_EXTRAPOLATION, and it never pushes the tilt
+ * through zero (which would be the opposite direction).
+ * <p>
+ * Not thread-safe, samples and setLeadMillis() come from the game thread. Does not allocate.
+ */
+public class TiltPredictor implements SensorSampleListener {
+
+    private static final int AXES = 2; // acc_x and acc_y, the ones the AutoRepeatMapper reads
+    private static final float ALPHA = 0.5f; // Weight of a new sample in the tilt estimate
+    private static final float BETA = 0.1f; // Weight of a new sample in the rate estimate
+    private static final float NOISE_SMOOTHING = 0.1f; // Weight of a new residual in the noise estimate
+    public static final long MAX_LEAD_MILLIS = 100;
+    public static final long MIN_TREND_MILLIS = 30;
+    // In m/s^2 like the samples, about 0.08 g, less than the gap between the mapper's release and engage tilt
+    public static final float MAX_EXTRAPOLATION = 0.8f;
+    // Residuals of this size (about 0.05 g) mean the tracker can't follow, no prediction from there on
+    private static final float NOISE_LIMIT = 0.5f;
+    private static final long MAX_SAMPLE_GAP_MILLIS = 100; // After a longer gap the tracker starts over
+    private static final int WARM_UP_SAMPLES = 3;
+
+    private final SensorSampleListener output;
+    private final float[] predictedSample = new float[SensorMessageParser.VALUE_COUNT];
+    private final float[] tilt = new float[AXES];
+    private final float[] rate = new float[AXES]; // Per millisecond
+    private final float[] noise = new float[AXES];
+    private final float[] bias = new float[AXES]; // Smoothed signed residual, against the rate when the tilt slows down
+    private final long[] trendSince = new long[AXES];
+    private final int[] trendSign = new int[AXES];
+    private int samples;
+    private long lastSampleTime;
+    private long leadMillis;
+    private long predictedSamples;
+
+    /**
+     * @param output receives the samples with the predicted tilt, usually the AutoRepeatMapper
+     */
+    public TiltPredictor(SensorSampleListener output) {
+        this.output = output;
+    }
+
+    /**
+     * @param leadMillis how far to look ahead, e.g. the mean sensor->app delay, capped at MAX_LEAD_MILLIS; 0 turns
+     *                   the prediction off
+     */
+    public void setLeadMillis(long leadMillis) {
+        this.leadMillis = Math.max(0, Math.min(leadMillis, MAX_LEAD_MILLIS));
+    }
+
+    public long getLeadMillis() {
+        return leadMillis;
+    }
+
+    /**
+     * @return the number of samples whose tilt was changed by the prediction, the others were passed on as they came
+     */
+    public long getPredictedSamples() {
+        return predictedSamples;
+    }
+
+    @Override
+    public void onSensorSample(float[] values, long timestampMillis) {
+        long deltaMillis = timestampMillis - lastSampleTime;
+        if (samples == 0 || deltaMillis > MAX_SAMPLE_GAP_MILLIS || deltaMillis < 0) {
+            for (int axis = 0; axis < AXES; axis++) {
+                tilt[axis] = values[axis];
+                rate[axis] = 0;
+                noise[axis] = 0;
+                bias[axis] = 0;
+                trendSign[axis] = 0;
+            }
+            samples = 0;
+        } else if (deltaMillis > 0) {
+            for (int axis = 0; axis < AXES; axis++) {
+                track(axis, values[axis], deltaMillis, timestampMillis);
+            }
+        }
+        samples++;
+        lastSampleTime = timestampMillis;
+
+        System.arraycopy(values, 0, predictedSample, 0, predictedSample.length);
+        boolean predicted = false;
+        if (leadMillis > 0 && samples > WARM_UP_SAMPLES) {
+            for (int axis = 0; axis < AXES; axis++) {
+                float value = predict(axis, values[axis], timestampMillis);
+                predicted |= value != values[axis];
+                predictedSample[axis] = value;
+            }
+        }
+        if (predicted) {
+            predictedSamples++;
+        }
+        output.onSensorSample(predictedSample, timestampMillis);
+    }
+
+    private void track(int axis, float measured, long deltaMillis, long timestampMillis) {
+        float expected = tilt[axis] + rate[axis] * deltaMillis;
+        float residual = measured - expected;
+        tilt[axis] = expected + ALPHA * residual;
+        rate[axis] += BETA * residual / deltaMillis;
+        noise[axis] += NOISE_SMOOTHING * (Math.abs(residual) - noise[axis]);
+        bias[axis] += NOISE_SMOOTHING * (residual - bias[axis]);
+
+        int sign = (int) Math.signum(rate[axis]);
+        if (sign != trendSign[axis]) {
+            trendSign[axis] = sign;
+            trendSince[axis] = timestampMillis;
+        }
+    }
+
+    /**
+     * @return the measured value moved by the gated extrapolation
+     */
+    private float predict(int axis, float measured, long timestampMillis) {
+        if (trendSign[axis] == 0 || timestampMillis - trendSince[axis] < MIN_TREND_MILLIS) {
+            return measured;
+        }
+        float confidence = 1 - noise[axis] / NOISE_LIMIT;
+        if (confidence <= 0 || bias[axis] * rate[axis] < 0) {
+            return measured;
+        }
+        float change = confidence * rate[axis] * leadMillis;
+        change = Math.max(-MAX_EXTRAPOLATION, Math.min(change, MAX_EXTRAPOLATION));
+        float value = measured + change;
+        if (value * measured < 0) {
+            return 0;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.menu_template;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * Receives sensor frames sent by the board as UDP datagrams, which skips the broker and its TCP hops.
+ * <p>
+ * A frame is FRAME_LENGTH bytes, big-endian: the type byte FRAME_TYPE, the version byte FRAME_VERSION,
+ * an unsigned 32 bit sequence number, the time the sensor was read in microseconds on the board's clock (int64)
+ * and accX, accY, accZ, gyroX, gyroY, gyroZ as float32.
+ * <p>
+ * The sequence numbers show lost, late and duplicated frames. Late and duplicated frames are counted and dropped,
+ * so the samples handed on always move forward in time. The board starts counting at 0 again when it reboots, so a
+ * sequence number further back than the history is taken as a restart and counts from there. Frames are read into one direct buffer on the receiver
+ * thread, receiving does not allocate.
+ */
+public class UdpSensorReceiver {
+
+    public static final byte FRAME_TYPE = 'S';
+    public static final byte FRAME_VERSION = 1;
+    public static final int FRAME_LENGTH = 2 + 4 + 8 + 4 * SensorMessageParser.VALUE_COUNT;
+    private static final int HISTORY = 64; // Sequence numbers further back than this mean the board restarted
+
+    public interface Listener {
+        /**
+         * Called on the receiver thread for every frame that is newer than all before it
+         *
+         * @param values     accX, accY, accZ, gyroX, gyroY, gyroZ, only valid during the call
+         * @param readMicros the time the sensor was read on the board's clock
+         */
+        void onSensorFrame(float[] values, long readMicros);
+    }
+
+    private final DatagramChannel channel;
+    private final Listener listener;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(FRAME_LENGTH + 1);
+    private final float[] values = new float[SensorMessageParser.VALUE_COUNT];
+    private Thread thread;
+
+    // Receiver thread only, except for the counters
+    private boolean hasSequence;
+    private int highestSequence;
+    private long seenHistory; // Bit i is set if highestSequence - i was received
+    private volatile long received;
+    private volatile long lost;
+    private volatile long late;
+    private volatile long duplicates;
+    private volatile long malformed;
+    private volatile long restarts;
+
+    /**
+     * @param port the UDP port to listen on, 0 for any free port
+     */
+    public UdpSensorReceiver(int port, Listener listener) throws IOException {
+        this.listener = listener;
+        this.channel = DatagramChannel.open();
+        try {
+            channel.socket().bind(new InetSocketAddress(port));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public void start() {
+        thread = new Thread(this::receiveLoop, "UdpSensors");
+        thread.setPriority(Thread.MAX_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Closes the channel, which also ends the receiver thread. Does not wait for it.
+     */
+    public void stop() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Closed anyway
+        }
+    }
+
+    private void receiveLoop() {
+        try {
+            while (true) {
+                buffer.clear();
+                channel.receive(buffer);
+                buffer.flip();
+                onDatagram(buffer);
+            }
+        } catch (ClosedChannelException e) {
+            // stop() was called
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void onDatagram(ByteBuffer frame) {
+        if (frame.remaining() != FRAME_LENGTH || frame.get(0) != FRAME_TYPE || frame.get(1) != FRAME_VERSION) {
+            malformed++;
+            return;
+        }
+        int sequence = frame.getInt(2);
+        if (!acceptSequence(sequence)) {
+            return;
+        }
+        long readMicros = frame.getLong(6);
+        for (int i = 0; i < SensorMessageParser.VALUE_COUNT; i++) {
+            values[i] = frame.getFloat(14 + 4 * i);
+        }
+        received++;
+        listener.onSensorFrame(values, readMicros);
+    }
+
+    private boolean acceptSequence(int sequence) {
+        if (!hasSequence) {
+            hasSequence = true;
+            highestSequence = sequence;
+            seenHistory = 1;
+            return true;
+        }
+        // Signed difference, so the sequence number may wrap around
+        int ahead = sequence - highestSequence;
+        if (ahead <= -HISTORY) {
+            // Too far back to be late, the board rebooted and counts from 0 again
+            restarts++;
+            highestSequence = sequence;
+            seenHistory = 1;
+            return true;
+        }
+        if (ahead > 0) {
+            lost += ahead - 1;
+            seenHistory = ahead >= HISTORY ? 1 : (seenHistory << ahead) | 1;
+            highestSequence = sequence;
+            return true;
+        }
+        int behind = -ahead;
+        if ((seenHistory & (1L << behind)) == 0) {
+            // Counted as lost when the gap appeared, it only came late
+            seenHistory |= 1L << behind;
+            lost--;
+            late++;
+        } else {
+            duplicates++;
+        }
+        return false;
+    }
+
+    public int getLocalPort() {
+        return channel.socket().getLocalPort();
+    }
+
+    /**
+     * @return the frames handed to the listener
+     */
+    public long getReceived() {
+        return received;
+    }
+
+    /**
+     * @return the frames that never arrived (a gap in the sequence numbers that was not filled later)
+     */
+    public long getLost() {
+        return lost;
+    }
+
+    /**
+     * @return the frames that arrived after a newer one and were dropped
+     */
+    public long getLate() {
+        return late;
+    }
+
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    public long getMalformed() {
+        return malformed;
+    }
+
+    /**
+     * @return how often the sequence numbers started over, e.g. because the board rebooted
+     */
+    public long getRestarts() {
+        return restarts;
+    }
+
+    /**
+     * Writes a frame, e.g. for a sender on the loopback interface
+     */
+    public static void encodeFrame(ByteBuffer out, int sequence, long readMicros, float[] values) {
+        out.put(FRAME_TYPE);
+        out.put(FRAME_VERSION);
+        out.putInt(sequence);
+        out.putLong(readMicros);
+        for (int i = 0; i < SensorMessageParser.VALUE_COUNT; i++) {
+            out.putFloat(values[i]);
+        }
+    }
+
+    /**
+     * @return the address of the local interface that packets to the host leave from, e.g. the WiFi address
+     * the board has to send to. Nothing is sent.
+     */
+    public static InetAddress localAddressTowards(String host, int port) throws IOException {
+        try (DatagramSocket socket = new DatagramSocket()) {
+            socket.connect(new InetSocketAddress(host, port));
+            return socket.getLocalAddress();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.menu_template;
+
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the paths every sensor sample and every game tick take many times and fails when they allocate more
+ * than their budget per iteration, so allocations don't creep back in unnoticed.
+ * <p>
+ * The iteration counts stay below the point where the JIT's escape analysis would remove allocations that
+ * the Android runtime would still make.
+ */
+public class AllocationBudgetTest {
+
+    private static final int WARMUP_ITERATIONS = 200;
+    private static final int ITERATIONS = 3000;
+    // Less than a byte per iteration: the reads of the allocation counter itself, nothing on the path
+    private static final double NO_ALLOCATION = 1.0;
+
+    private static com.sun.management.ThreadMXBean threads;
+
+    @BeforeClass
+    public static void checkSupport() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    private interface Iteration {
+        void run(int i);
+    }
+
+    private static void assertBudget(String path, double bytesPerIteration, Iteration iteration) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            iteration.run(i);
+        }
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < ITERATIONS; i++) {
+            iteration.run(i);
+        }
+        double allocated = (double) (threads.getThreadAllocatedBytes(thread) - before) / ITERATIONS;
+        assertTrue(path + " allocated " + allocated + " bytes per iteration, the budget is " + bytesPerIteration,
+                allocated < bytesPerIteration);
+    }
+
+    @Test
+    public void parsingASampleDoesNotAllocate() {
+        String batch = "(0.12,-9.81,0.40,0.01,0.00,-0.02,81234567);(0.13,-9.80,0.41,0.02,0.01,-0.03,81244567)";
+        int split = batch.indexOf(';');
+        float[] values = new float[SensorMessageParser.VALUE_COUNT];
+        long[] sink = new long[1];
+        assertBudget("SensorMessageParser", NO_ALLOCATION, i -> {
+            int start = (i & 1) == 0 ? 0 : split + 1;
+            int end = (i & 1) == 0 ? split : batch.length();
+            if (SensorMessageParser.parse(batch, start, end, values)) {
+                sink[0] += SensorMessageParser.parseTimestampMicros(batch, start, end);
+            }
+        });
+        assertTrue(sink[0] > 0);
+    }
+
+    @Test
+    public void sampleToMoveDoesNotAllocate() {
+        SensorSampleBuffer buffer = new SensorSampleBuffer(64);
+        AutoRepeatMapper mapper = new AutoRepeatMapper();
+        TiltPredictor predictor = new TiltPredictor(mapper);
+        predictor.setLeadMillis(50);
+        float[] tilted = {3f, 0f, 9f, 0f, 0f, 0f};
+        int[] moves = new int[1];
+        assertBudget("SensorSampleBuffer, TiltPredictor and AutoRepeatMapper", NO_ALLOCATION, i -> {
+            tilted[0] = 3f + (i & 7) * 0.1f;
+            buffer.offer(tilted, i * 10_000_000L);
+            buffer.drainTo(predictor);
+            if (mapper.pollMove() != LabyrinthRules.DIRECTION_NONE) {
+                moves[0]++;
+            }
+        });
+        assertTrue(moves[0] > 0);
+    }
+
+    @Test
+    public void movingThePlayerDoesNotAllocate() {
+        int[][] labyrinth = LabyrinthRules.generateLabyrinth(21, new java.util.Random(3));
+        // A corridor of its own, so the player walks back and forth without ever reaching the finish
+        int[][] corridor = new int[21][21];
+        for (int[] row : corridor) {
+            java.util.Arrays.fill(row, LabyrinthRules.WALL);
+        }
+        for (int y = 1; y < 20; y++) {
+            corridor[10][y] = LabyrinthRules.EMPTY;
+        }
+        corridor[10][1] = LabyrinthRules.PLAYER;
+        corridor[20][10] = LabyrinthRules.FINISH;
+        int[] results = new int[1];
+        assertBudget("LabyrinthRules.movePlayer", NO_ALLOCATION, i -> {
+            int direction = (i / 18) % 2 == 0 ? LabyrinthRules.DIRECTION_RIGHT : LabyrinthRules.DIRECTION_LEFT;
+            results[0] += LabyrinthRules.movePlayer(corridor, direction);
+            results[0] += LabyrinthRules.movePlayer(labyrinth, LabyrinthRules.DIRECTION_NONE);
+        });
+        assertTrue(results[0] > 0);
+    }
+
+    @Test
+    public void recordingAndReplayingRunsDoesNotAllocate() {
+        MoveLog log = new MoveLog(ITERATIONS + WARMUP_ITERATIONS);
+        MoveLog replayed = new MoveLog(4);
+        for (int i = 0; i < 100_000; i++) {
+            replayed.append(i % 4, i * 40L);
+        }
+        MoveLog.Replay ghost = new MoveLog.Replay(replayed, 0, 0);
+        assertBudget("MoveLog", NO_ALLOCATION, i -> {
+            log.append(i % 4, i * 40L);
+            ghost.advanceTo(i * 40L);
+        });
+    }
+
+    @Test
+    public void unchangedHudKeepsTheSnapshot() {
+        GameSnapshot[] snapshot = {GameSnapshot.EMPTY.withHud(0, 21f, 20f, 21f, 22f)};
+        assertBudget("GameSnapshot.withHud", NO_ALLOCATION, i -> {
+            // The play time only changes the snapshot every PLAY_TIME_RESOLUTION_MILLIS
+            snapshot[0] = snapshot[0].withHud(i % GameSnapshot.PLAY_TIME_RESOLUTION_MILLIS, 21f, 20f, 21f, 22f)
+                    .withGhost(-1);
+        });
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.menu_template;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AutoRepeatMapperTest {
+
+    private static final long SAMPLE_PERIOD_MILLIS = 10;
+
+    @Test
+    public void strongerTiltMovesFaster() {
+        int gentle = countMoves(new AutoRepeatMapper(), 0.3f, 0, 2000);
+        int strong = countMoves(new AutoRepeatMapper(), 0.8f, 0, 2000);
+        assertTrue("gentle " + gentle, gentle >= 4 && gentle < 8);
+        assertTrue("strong " + strong, strong >= 22 && strong <= 26);
+    }
+
+    @Test
+    public void keepsTheDirectionUntilTheTiltDropsBelowTheReleaseThreshold() {
+        AutoRepeatMapper mapper = new AutoRepeatMapper();
+        long time = feed(mapper, 0.3f, 0, 0, 500);
+        assertEquals(LabyrinthRules.DIRECTION_FORWARD, mapper.getActiveDirection());
+
+        // Between release and engage: still held
+        time = feed(mapper, 0.2f, 0, time, 500);
+        assertEquals(LabyrinthRules.DIRECTION_FORWARD, mapper.getActiveDirection());
+
+        time = feed(mapper, 0.05f, 0, time, 500);
+        assertEquals(LabyrinthRules.DIRECTION_NONE, mapper.getActiveDirection());
+        assertEquals(LabyrinthRules.DIRECTION_NONE, mapper.pollMove());
+
+        // Not enough to engage again
+        feed(mapper, 0.2f, 0, time, 500);
+        assertEquals(LabyrinthRules.DIRECTION_NONE, mapper.getActiveDirection());
+    }
+
+    @Test
+    public void ignoresShortTwitches() {
+        AutoRepeatMapper mapper = new AutoRepeatMapper();
+        long time = feed(mapper, 0, 0, 0, 100);
+        // Two samples of strong tilt are shorter than the debounce time
+        time = feed(mapper, 0, -1.5f, time, 2 * SAMPLE_PERIOD_MILLIS);
+        feed(mapper, 0, 0, time, 100);
+        assertEquals(LabyrinthRules.DIRECTION_NONE, mapper.pollMove());
+    }
+
+    private static int countMoves(AutoRepeatMapper mapper, float tiltX, float tiltY, long durationMillis) {
+        float[] sample = {tiltX * 9.81f, tiltY * 9.81f, 9.81f, 0, 0, 0};
+        int moves = 0;
+        for (long time = 0; time < durationMillis; time += SAMPLE_PERIOD_MILLIS) {
+            mapper.onSensorSample(sample, time);
+            // Poll faster than the mapper produces moves, so none are dropped
+            if (mapper.pollMove() != LabyrinthRules.DIRECTION_NONE) {
+                moves++;
+            }
+        }
+        return moves;
+    }
+
+    private static long feed(AutoRepeatMapper mapper, float tiltX, float tiltY, long startMillis, long durationMillis) {
+        float[] sample = {tiltX * 9.81f, tiltY * 9.81f, 9.81f, 0, 0, 0};
+        long time = startMillis;
+        for (; time < startMillis + durationMillis; time += SAMPLE_PERIOD_MILLIS) {
+            mapper.onSensorSample(sample, time);
+        }
+        return time;
+    }
+}
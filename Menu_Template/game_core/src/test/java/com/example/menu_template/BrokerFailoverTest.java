@@ -0,0 +1,236 @@
+package com.example.menu_template;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BrokerFailoverTest {
+
+    private static final long PROBE_TIMEOUT_MILLIS = 300;
+
+    /**
+     * A LocalBroker behind a simulated network, the latency is added to connecting and to every round trip.
+     * Like mosquitto, it drops the older session when a client id connects twice.
+     */
+    private static class StandIn {
+        final LocalBroker broker = new LocalBroker();
+        final Map<String, Connection> sessions = new HashMap<>();
+        volatile long latencyMillis;
+        volatile boolean down;
+
+        StandIn(long latencyMillis) {
+            this.latencyMillis = latencyMillis;
+        }
+    }
+
+    private static class Connection {
+        final StandIn standIn;
+        final boolean probe;
+        final MessageTransport client;
+        final BlockingQueue<String> echoes = new LinkedBlockingQueue<>();
+        final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        volatile boolean closed;
+
+        Connection(StandIn standIn, boolean probe) {
+            this.standIn = standIn;
+            this.probe = probe;
+            client = standIn.broker.newClient("failover");
+            client.setCallbackListener(new MqttCallbackListener() {
+                @Override
+                public void onMessageReceived(String topic, String message) {
+                    (topic.startsWith("probe/") ? echoes : received).add(topic + " " + message);
+                }
+
+                @Override
+                public void onConnectionLost() {
+                }
+
+                @Override
+                public void onConnectionError(String message) {
+                }
+            });
+        }
+    }
+
+    private final Map<String, StandIn> standIns = new HashMap<>();
+    private final List<Connection> connections = new CopyOnWriteArrayList<>();
+    private final AtomicInteger probeNumber = new AtomicInteger();
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "probe");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final BrokerFailover.Connector<Connection> connector = new BrokerFailover.Connector<Connection>() {
+        @Override
+        public Connection connect(String uri, boolean probe, long timeoutMillis) throws Exception {
+            StandIn standIn = standIns.get(uri);
+            if (standIn.down) {
+                throw new IOException("Connection refused");
+            }
+            Thread.sleep(standIn.latencyMillis);
+            Connection connection = new Connection(standIn, probe);
+            String clientId = probe ? "failover_probe_" + probeNumber.incrementAndGet() : "failover";
+            synchronized (standIn.sessions) {
+                Connection taken = standIn.sessions.put(clientId, connection);
+                if (taken != null) {
+                    taken.client.disconnect();
+                }
+            }
+            connections.add(connection);
+            return connection;
+        }
+
+        @Override
+        public long measureRoundTripNanos(Connection connection, long timeoutMillis) throws Exception {
+            connection.client.subscribeToTopic("probe/test");
+            long start = System.nanoTime();
+            Thread.sleep(connection.standIn.latencyMillis);
+            connection.client.publishToTopic("echo", "probe/test");
+            if (connection.echoes.poll(timeoutMillis, TimeUnit.MILLISECONDS) == null) {
+                throw new IOException("No echo");
+            }
+            connection.client.unsubscribeFromTopic("probe/test");
+            return System.nanoTime() - start;
+        }
+
+        @Override
+        public void subscribe(Connection connection, String topic) {
+            connection.client.subscribeToTopic(topic);
+        }
+
+        @Override
+        public void close(Connection connection) {
+            connection.closed = true;
+            connection.client.disconnect();
+        }
+    };
+
+    private BrokerFailover<Connection> failover(String... uris) {
+        return new BrokerFailover<>(Arrays.asList(uris), connector, executor, PROBE_TIMEOUT_MILLIS);
+    }
+
+    @After
+    public void shutdown() {
+        for (StandIn standIn : standIns.values()) {
+            standIn.broker.shutdown();
+        }
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void connectsToTheFastestReachableBroker() throws Exception {
+        standIns.put("tcp://a:1883", new StandIn(0));
+        standIns.put("tcp://b:1883", new StandIn(40));
+        standIns.put("tcp://c:1883", new StandIn(5));
+        standIns.get("tcp://a:1883").down = true;
+        BrokerFailover<Connection> failover = failover("tcp://a:1883", "tcp://b:1883", "tcp://c:1883");
+
+        Connection connection = failover.connect();
+        assertEquals("tcp://c:1883", failover.getUri());
+        assertSame(standIns.get("tcp://c:1883"), connection.standIn);
+        List<BrokerFailover.Probe<Connection>> probes = failover.getLastProbes();
+        assertFalse(probes.get(0).isReachable());
+        assertTrue(probes.get(1).getRoundTripNanos() > probes.get(2).getRoundTripNanos());
+        // The probe connections were closed, only the one with the real id to c is left
+        assertEquals(3, connections.size());
+        for (Connection made : connections) {
+            assertEquals(made != connection, made.closed);
+            assertEquals(made != connection, made.probe);
+        }
+        failover.close();
+        assertTrue(connection.closed);
+    }
+
+    @Test
+    public void failsOverWithinTheProbeTimeoutAndRestoresSubscriptions() throws Exception {
+        standIns.put("tcp://a:1883", new StandIn(5));
+        standIns.put("tcp://b:1883", new StandIn(20));
+        standIns.put("tcp://c:1883", new StandIn(0));
+        BrokerFailover<Connection> failover = failover("tcp://a:1883", "tcp://b:1883", "tcp://c:1883");
+        Connection first = failover.connect();
+        failover.subscribe("mpu/+");
+        assertEquals("tcp://c:1883", failover.getUri());
+
+        // c goes down and a hangs, so b has to take over
+        standIns.get("tcp://c:1883").down = true;
+        standIns.get("tcp://a:1883").latencyMillis = 10_000;
+        long start = System.nanoTime();
+        CompletableFuture<Connection> running = failover.failover(first);
+        assertSame(running, failover.failover(first)); // Only one failover at a time
+        Connection second = running.get(5, TimeUnit.SECONDS);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        assertTrue("Took " + elapsedMillis + " ms", elapsedMillis < PROBE_TIMEOUT_MILLIS + 200);
+        assertEquals("tcp://b:1883", failover.getUri());
+        assertTrue(first.closed);
+        assertFalse(failover.getLastProbes().get(0).isReachable());
+
+        // The subscription made before the failover still delivers
+        MessageTransport board = standIns.get("tcp://b:1883").broker.newClient("board");
+        board.publishToTopic("1,2,3", "mpu/K05");
+        assertEquals("mpu/K05 1,2,3", second.received.poll(1, TimeUnit.SECONDS));
+
+        // A late report of the old loss does not switch again
+        assertSame(second, failover.failover(first).get());
+        failover.close();
+    }
+
+    @Test
+    public void reportsWhenNoBrokerIsReachable() throws Exception {
+        standIns.put("tcp://a:1883", new StandIn(0));
+        standIns.put("tcp://b:1883", new StandIn(10_000));
+        standIns.get("tcp://a:1883").down = true;
+        BrokerFailover<Connection> failover = failover("tcp://a:1883", "tcp://b:1883");
+        long start = System.nanoTime();
+        try {
+            failover.connect();
+            fail("Connected without a reachable broker");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("timed out"));
+        }
+        assertTrue((System.nanoTime() - start) / 1_000_000 < PROBE_TIMEOUT_MILLIS + 200);
+    }
+
+    @Test
+    public void probesOfTheSameBrokerDoNotDropEachOther() throws Exception {
+        StandIn localhost = new StandIn(0);
+        standIns.put("tcp://localhost:1883", localhost);
+        standIns.put("tcp://127.0.0.1:1883", localhost);
+        BrokerFailover<Connection> failover = failover("tcp://localhost:1883", "tcp://127.0.0.1:1883");
+        Connection connection = failover.connect();
+        assertTrue(failover.getLastProbes().get(0).isReachable());
+        assertTrue(failover.getLastProbes().get(1).isReachable());
+        failover.subscribe("mpu/+");
+
+        // Still connected: the message reaches it
+        localhost.broker.newClient("board").publishToTopic("1,2,3", "mpu/K05");
+        assertEquals("mpu/K05 1,2,3", connection.received.poll(1, TimeUnit.SECONDS));
+        failover.close();
+    }
+
+    @Test
+    public void parsesTheBrokerSetting() {
+        assertEquals(Arrays.asList("tcp://192.168.0.89:1883", "tcp://10.0.0.2:1884", "ssl://broker:8883", "tcp://host:1883"),
+                BrokerFailover.parseBrokerUris(" 192.168.0.89, 10.0.0.2:1884,ssl://broker:8883,,tcp://host"));
+        assertTrue(BrokerFailover.parseBrokerUris(null).isEmpty());
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.menu_template;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ClockSyncTest {
+
+    @Test
+    public void estimatesTheOffsetFromTheFastestExchange() {
+        ClockSync clockSync = new ClockSync();
+        long offset = 5_000_000_000L; // The board booted long before the app
+        Random random = new Random(7);
+
+        long local = 1_000_000;
+        for (int i = 0; i < 8; i++) {
+            // Asymmetric queueing delays, one exchange gets through almost without queueing
+            long up = i == 5 ? 2_000 : 2_000 + random.nextInt(40_000);
+            long down = i == 5 ? 2_000 : 2_000 + random.nextInt(40_000);
+            long t1 = local;
+            long t2 = t1 + up + offset;
+            long t3 = t2 + 300;
+            long t4 = t3 - offset + down;
+            assertTrue(clockSync.onPongMessage(t1 + "," + t2 + "," + t3, t4));
+            local += 1_000_000;
+        }
+
+        assertTrue(clockSync.isSynchronized());
+        assertEquals(4_000, clockSync.getBestRoundTripMicros());
+        assertEquals(offset, clockSync.getOffsetMicros());
+        assertEquals(123_456, clockSync.toLocalMicros(123_456 + offset));
+    }
+
+    @Test
+    public void rejectsImpossibleExchanges() {
+        ClockSync clockSync = new ClockSync();
+        assertFalse(clockSync.onPongMessage("garbage", 10));
+        assertFalse(clockSync.onPong(100, 0, 500, 200));
+        assertFalse(clockSync.isSynchronized());
+    }
+
+    @Test
+    public void readsTheSampleTimestamp() {
+        assertEquals(81234567L, SensorMessageParser.parseTimestampMicros("(0.12,-9.81,0.40,0.01,0.00,-0.02,81234567)"));
+        assertEquals(SensorMessageParser.NO_TIMESTAMP, SensorMessageParser.parseTimestampMicros("(0.12,-9.81,0.40,0.01,0.00,-0.02)"));
+        float[] values = new float[SensorMessageParser.VALUE_COUNT];
+        assertTrue(SensorMessageParser.parse("(0.12,-9.81,0.40,0.01,0.00,-0.02,81234567)", values));
+        assertEquals(-9.81f, values[1], 0.0f);
+    }
+}
@@ -0,0 +1,326 @@
+package com.example.menu_template;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Stress tests of the data handed between threads: sensor samples from the MQTT/UDP threads to the game loop,
+ * snapshots from the game thread to the UI, temperature readings from the MQTT thread to the HUD and messages
+ * from the game to the network.
+ * <p>
+ * Each test starts its actors at the same moment and lets them run against each other for a while, with random
+ * yields in between, so many interleavings are tried. An actor that sees a torn sample, a lost update or an
+ * inconsistent snapshot fails the test. A pass is no proof, but a regression shows up within a few runs.
+ */
+public class ConcurrencyStressTest {
+
+    private static final long RUN_MILLIS = 300;
+
+    private interface Actor {
+        /**
+         * @return false when the actor is done, it is called again until then or until the time is up
+         */
+        boolean step() throws Exception;
+    }
+
+    /**
+     * Runs the actors on their own threads, all released at once, and rethrows the first failure
+     */
+    private static void runActors(long millis, Actor... actors) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        List<Thread> threads = new ArrayList<>();
+        for (Actor actor : actors) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    while (failure.get() == null && System.nanoTime() < deadline && actor.step()) {
+                        perturb();
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join(millis + 10_000);
+            assertFalse("Actor did not stop", thread.isAlive());
+        }
+        Throwable t = failure.get();
+        if (t instanceof Exception) {
+            throw (Exception) t;
+        } else if (t != null) {
+            throw (Error) t;
+        }
+    }
+
+    /**
+     * Gives up the processor now and then, so the actors are interrupted at different points every round
+     */
+    private static void perturb() {
+        if (ThreadLocalRandom.current().nextInt(16) == 0) {
+            Thread.yield();
+        }
+    }
+
+    @Test
+    public void samplesFromTwoTransportsAreNeitherTornNorLost() throws Exception {
+        // Like ESPSteering: the MQTT and the UDP thread offer through one lock, which also guards the latest sample
+        SensorSampleBuffer buffer = new SensorSampleBuffer(64);
+        Object producerLock = new Object();
+        float[] latest = new float[SensorMessageParser.VALUE_COUNT];
+        AtomicLong offered = new AtomicLong();
+
+        Actor[] actors = new Actor[4];
+        for (int p = 0; p < 2; p++) {
+            // Every value of a sample carries the producer and its number, so a mix of two samples shows up
+            float base = (p + 1) * 1_000_000f;
+            float[] sample = new float[SensorMessageParser.VALUE_COUNT];
+            int[] next = {0};
+            actors[p] = () -> {
+                float value = base + next[0]++;
+                Arrays.fill(sample, value);
+                synchronized (producerLock) {
+                    System.arraycopy(sample, 0, latest, 0, sample.length);
+                    buffer.offer(sample, (long) value * 1_000_000L);
+                }
+                offered.incrementAndGet();
+                return next[0] < 500_000;
+            };
+        }
+        long[] lastSeen = {-1, -1};
+        AtomicLong drained = new AtomicLong();
+        SensorSampleListener checker = (values, timestampMillis) -> {
+            for (float value : values) {
+                assertEquals("Torn sample", (float) timestampMillis, value, 0.0f);
+            }
+            int producer = (int) (timestampMillis / 1_000_000) - 1;
+            assertTrue("Samples out of order", timestampMillis > lastSeen[producer]);
+            lastSeen[producer] = timestampMillis;
+        };
+        actors[2] = () -> {
+            drained.addAndGet(buffer.drainTo(checker));
+            return true;
+        };
+        float[] copy = new float[SensorMessageParser.VALUE_COUNT];
+        actors[3] = () -> {
+            synchronized (producerLock) {
+                System.arraycopy(latest, 0, copy, 0, copy.length);
+            }
+            for (float value : copy) {
+                assertEquals("Torn latest sample", copy[0], value, 0.0f);
+            }
+            return true;
+        };
+        runActors(RUN_MILLIS, actors);
+
+        drained.addAndGet(buffer.drainTo(checker));
+        assertEquals("Samples lost", offered.get(), drained.get() + buffer.getDroppedSamples());
+    }
+
+    @Test
+    public void snapshotReadersNeverSeeAHalfUpdatedGame() throws Exception {
+        // Like GameLogic: the game thread keeps changing its labyrinth and publishes copies through a volatile reference
+        AtomicReference<GameSnapshot> published = new AtomicReference<>(GameSnapshot.EMPTY);
+        int[][] labyrinth = new int[5][5];
+        int[] round = {0};
+        Actor writer = () -> {
+            int k = ++round[0];
+            for (int[] row : labyrinth) {
+                for (int y = 0; y < row.length; y++) {
+                    row[y] = k;
+                    perturb();
+                }
+            }
+            published.set(published.get().withLabyrinth(labyrinth)
+                    .withHud(k * GameSnapshot.PLAY_TIME_RESOLUTION_MILLIS, k, k, k, k));
+            return true;
+        };
+        Actor[] actors = {writer, snapshotReader(published), snapshotReader(published)};
+        runActors(RUN_MILLIS, actors);
+        assertTrue(round[0] > 0);
+    }
+
+    private static Actor snapshotReader(AtomicReference<GameSnapshot> published) {
+        long[] lastVersion = {0};
+        return () -> {
+            GameSnapshot snapshot = published.get();
+            if (snapshot == GameSnapshot.EMPTY) {
+                return true;
+            }
+            int[][] labyrinth = snapshot.getLabyrinth();
+            int k = labyrinth[0][0];
+            for (int[] row : labyrinth) {
+                for (int cell : row) {
+                    assertEquals("Labyrinth changed after it was published", k, cell);
+                }
+            }
+            assertEquals("HUD of another round", k, snapshot.getTemperature(), 0.0f);
+            assertEquals(k * GameSnapshot.PLAY_TIME_RESOLUTION_MILLIS, snapshot.getPlayTimeMillis());
+            assertEquals(snapshot.getLabyrinthVersion(), snapshot.getHudVersion());
+            assertTrue("Went back to an older snapshot", snapshot.getLabyrinthVersion() >= lastVersion[0]);
+            lastVersion[0] = snapshot.getLabyrinthVersion();
+            return true;
+        };
+    }
+
+    @Test
+    public void temperatureReadersSeeConsistentStatistics() throws Exception {
+        TemperatureSeries series = new TemperatureSeries(2_000, 10_000);
+        long[] time = {0};
+        Actor writer = () -> {
+            // Rising readings, so every statistic is bounded by the latest reading
+            time[0]++;
+            series.add(time[0], time[0]);
+            return true;
+        };
+        Actor reader = () -> {
+            for (int i = 0; i < series.getWindowCount(); i++) {
+                RollingWindow window = series.getWindow(i);
+                float min = window.getMin();
+                float mean = window.getMean();
+                float max = window.getMax();
+                float latest = series.getLatest();
+                if (Float.isNaN(min) || Float.isNaN(mean) || Float.isNaN(max)) {
+                    continue;
+                }
+                assertTrue(min + " <= " + max, min <= max);
+                assertTrue("Mean " + mean + " is newer than " + latest, mean <= latest);
+                assertTrue("Max " + max + " is newer than " + latest, max <= latest);
+                assertTrue(window.size() <= window.getWindowMillis() / 1000 * 4);
+            }
+            return true;
+        };
+        runActors(RUN_MILLIS, writer, reader, reader);
+    }
+
+    @Test
+    public void rollingWindowLosesNoUpdates() throws Exception {
+        int threads = 4;
+        int perThread = 20_000;
+        RollingWindow window = new RollingWindow(Long.MAX_VALUE / 2, threads * perThread);
+        Actor[] actors = new Actor[threads + 1];
+        for (int t = 0; t < threads; t++) {
+            int[] added = {0};
+            actors[t] = () -> {
+                window.add(0, 1);
+                return ++added[0] < perThread;
+            };
+        }
+        actors[threads] = () -> {
+            float mean = window.getMean();
+            assertTrue("Mean " + mean, Float.isNaN(mean) || mean == 1f);
+            return true;
+        };
+        // Fixed amounts of work, so the time limit is only a safety net
+        runActors(60_000, actors);
+
+        assertEquals(threads * perThread, window.size());
+        assertEquals(1f, window.getMax(), 0.0f);
+    }
+
+    @Test
+    public void gameClockNeverRunsBackwards() throws Exception {
+        GameClock clock = new GameClock();
+        clock.start();
+        Actor toggler = () -> {
+            if (clock.isRunning()) {
+                clock.pause();
+            } else {
+                clock.resume();
+            }
+            return true;
+        };
+        long[] last = {0, 0};
+        Actor[] actors = new Actor[3];
+        actors[0] = toggler;
+        for (int r = 0; r < 2; r++) {
+            int reader = r;
+            actors[1 + r] = () -> {
+                long elapsed = clock.getElapsedMillis();
+                assertTrue(elapsed + " after " + last[reader], elapsed >= last[reader]);
+                last[reader] = elapsed;
+                return true;
+            };
+        }
+        runActors(RUN_MILLIS, actors);
+    }
+
+    @Test
+    public void publishPipelineKeepsItsWindowUnderConcurrentPublishers() throws Exception {
+        int maxInFlight = 4;
+        ExecutorService network = Executors.newFixedThreadPool(3);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxSeen = new AtomicInteger();
+        AtomicLong sent = new AtomicLong();
+        PublishPipeline pipeline = new PublishPipeline((topic, payload, qos, retained, completion) -> {
+            maxSeen.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            sent.incrementAndGet();
+            // Completed later on a network thread, like Paho's delivery callbacks
+            network.execute(() -> {
+                inFlight.decrementAndGet();
+                completion.onComplete(null);
+            });
+        }, maxInFlight, 64);
+
+        List<List<CompletableFuture<Void>>> futures = new ArrayList<>();
+        Actor[] actors = new Actor[3];
+        for (int p = 0; p < actors.length; p++) {
+            List<CompletableFuture<Void>> own = new ArrayList<>();
+            futures.add(own);
+            String topic = "stress/" + p;
+            actors[p] = () -> {
+                own.add(pipeline.publish(topic, new byte[1]));
+                return own.size() < 20_000;
+            };
+        }
+        runActors(RUN_MILLIS, actors);
+
+        long published = 0;
+        long completed = 0;
+        for (List<CompletableFuture<Void>> own : futures) {
+            for (CompletableFuture<Void> future : own) {
+                published++;
+                try {
+                    future.get(10, TimeUnit.SECONDS);
+                    completed++;
+                } catch (ExecutionException e) {
+                    assertTrue(e.getCause() instanceof IllegalStateException); // Rejected, the queue was full
+                } catch (TimeoutException e) {
+                    fail("A message was never completed");
+                }
+            }
+        }
+        network.shutdown();
+
+        assertTrue("In flight " + maxSeen.get(), maxSeen.get() <= maxInFlight);
+        assertEquals(sent.get(), completed);
+        assertEquals(published, completed + pipeline.getRejected());
+        assertEquals(0, pipeline.getInFlight());
+        assertEquals(0, pipeline.getQueued());
+        assertEquals(0, pipeline.getFailed());
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.menu_template;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DifficultyTargetedGeneratorTest {
+
+    private static final int W = LabyrinthRules.WALL;
+    private static final int P = LabyrinthRules.PLAYER;
+    private static final int F = LabyrinthRules.FINISH;
+
+    @Test
+    public void scoresTheShortestWayToTheFinish() {
+        int[][] labyrinth = {
+                {W, P, W, W, W},
+                {W, 0, 0, 0, W},
+                {W, 0, W, 0, W},
+                {W, 0, W, 0, W},
+                {W, W, W, F, W},
+        };
+        LabyrinthScore score = LabyrinthScore.of(labyrinth);
+        // Down, right twice and down twice, onto the cell above the finish
+        assertEquals(5, score.getSolutionLength());
+        assertEquals(2, score.getTurns());
+        assertEquals(2, score.getDeadEnds()); // The start and the left corridor
+        assertEquals(1, score.getJunctions());
+        assertEquals(8, score.getOpenCells());
+        assertTrue(score.getDifficulty() > 0 && score.getDifficulty() < 1);
+    }
+
+    @Test
+    public void picksTheCandidateClosestToTheTarget() {
+        DifficultyTargetedGenerator generator = new DifficultyTargetedGenerator(new ForkJoinPool(4));
+        int candidates = 16;
+        for (double target : new double[]{0, 0.5, 1}) {
+            DifficultyTargetedGenerator.Result result = generator.generate(21, target, 42, candidates, 60_000);
+            assertEquals(candidates, result.getScoredCandidates());
+            double chosenDistance = Math.abs(result.getScore().getDifficulty() - target);
+            for (int candidate = 0; candidate < candidates; candidate++) {
+                long seed = DifficultyTargetedGenerator.candidateSeed(42, candidate);
+                LabyrinthScore score = LabyrinthScore.of(LabyrinthRules.generateLabyrinth(21, new Random(seed)));
+                // Candidates without a way to the finish are NaN and never chosen
+                assertTrue(Double.isNaN(score.getDifficulty()) || chosenDistance <= Math.abs(score.getDifficulty() - target));
+            }
+            // Reproducible from its seed, like every other labyrinth
+            assertArrayEquals(result.getLabyrinth(), LabyrinthRules.generateLabyrinth(21, new Random(result.getSeed())));
+            assertEquals(result.getSeed(), generator.generate(21, target, 42, candidates, 60_000).getSeed());
+        }
+    }
+
+    @Test
+    public void alwaysReturnsACandidateWithinTheBudget() {
+        DifficultyTargetedGenerator generator = new DifficultyTargetedGenerator(new ForkJoinPool(2));
+        DifficultyTargetedGenerator.Result result = generator.generate(101, 0.5, 7, 1000, 0);
+        assertTrue(result.getScoredCandidates() >= 1);
+        assertTrue(result.getScoredCandidates() < 1000);
+        assertArrayEquals(result.getLabyrinth(), LabyrinthRules.generateLabyrinth(101, new Random(result.getSeed())));
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.menu_template;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EllerRowGeneratorTest {
+
+    @Test
+    public void generatesAPerfectLabyrinth() {
+        EllerRowGenerator generator = new EllerRowGenerator(12, new Random(3));
+        int[][] grid = new int[401][generator.getWidth()];
+        for (int[] row : grid) {
+            generator.nextRow(row);
+        }
+        // The last row is a passage row, close it like the end of a finite labyrinth
+        Arrays.fill(grid[grid.length - 1], LabyrinthRules.WALL);
+
+        int openCells = 0;
+        int openEdges = 0;
+        for (int i = 0; i < grid.length; i++) {
+            for (int j = 0; j < grid[i].length; j++) {
+                if (grid[i][j] != LabyrinthRules.WALL) {
+                    openCells++;
+                    if (i + 1 < grid.length && grid[i + 1][j] != LabyrinthRules.WALL) {
+                        openEdges++;
+                    }
+                    if (j + 1 < grid[i].length && grid[i][j + 1] != LabyrinthRules.WALL) {
+                        openEdges++;
+                    }
+                }
+            }
+        }
+        // Sets that were not joined yet are only connected by rows still to come, so every part has to reach
+        // the last cell row. Without cycles, every part is a tree with one edge less than it has cells.
+        boolean[][] visited = new boolean[grid.length][grid[0].length];
+        int parts = 0;
+        int reached = 0;
+        for (int j = 1; j < grid[0].length; j += 2) {
+            if (!visited[grid.length - 2][j]) {
+                parts++;
+                reached += visit(grid, visited, grid.length - 2, j);
+            }
+        }
+        assertEquals(openCells, reached);
+        assertEquals(openCells - parts, openEdges);
+    }
+
+    @Test
+    public void endlessLabyrinthKeepsAFixedWindow() {
+        EndlessLabyrinth endless = new EndlessLabyrinth(8, 21, new Random(5));
+        int[][] window = endless.getLabyrinth();
+        Random random = new Random(6);
+
+        for (int i = 0; i < 20_000; i++) {
+            // Prefer moving forward, so the player actually gets somewhere
+            int direction = random.nextInt(5) < 2 ? LabyrinthRules.DIRECTION_FORWARD : random.nextInt(4);
+            int result = endless.movePlayer(direction);
+            assertTrue(result != LabyrinthRules.MOVE_FINISHED && result != LabyrinthRules.MOVE_PLAYER_NOT_FOUND);
+            assertTrue(LabyrinthRules.findCell(window, LabyrinthRules.PLAYER) / window[0].length >= 21 / 2);
+        }
+        assertEquals(21, window.length);
+        assertTrue(endless.getScrolledRows() > 0);
+    }
+
+    private static int visit(int[][] grid, boolean[][] visited, int row, int column) {
+        ArrayDeque<int[]> queue = new ArrayDeque<>();
+        queue.add(new int[]{row, column});
+        visited[row][column] = true;
+        int count = 0;
+        int[][] steps = {{1, 0}, {-1, 0}, {0, 1}, {0, -1}};
+        while (!queue.isEmpty()) {
+            int[] cell = queue.poll();
+            count++;
+            for (int[] step : steps) {
+                int i = cell[0] + step[0];
+                int j = cell[1] + step[1];
+                if (i >= 0 && i < grid.length && j >= 0 && j < grid[i].length
+                        && !visited[i][j] && grid[i][j] != LabyrinthRules.WALL) {
+                    visited[i][j] = true;
+                    queue.add(new int[]{i, j});
+                }
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.menu_template;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FusedSteeringTest {
+
+    /**
+     * Hands out queued samples with accX set to the given value
+     */
+    private static class QueuedSource implements SteeringSource {
+        private final long latencyMillis;
+        private final List<long[]> queued = new ArrayList<>(); // timestamp, accX
+
+        QueuedSource(long latencyMillis) {
+            this.latencyMillis = latencyMillis;
+        }
+
+        void add(long timestampMillis, long accX) {
+            queued.add(new long[]{timestampMillis, accX});
+        }
+
+        @Override
+        public void startSensors() {
+        }
+
+        @Override
+        public void stopSensors() {
+        }
+
+        @Override
+        public int drainSamples(SensorSampleListener listener) {
+            float[] values = new float[SensorMessageParser.VALUE_COUNT];
+            for (long[] sample : queued) {
+                values[0] = sample[1];
+                listener.onSensorSample(values, sample[0]);
+            }
+            int drained = queued.size();
+            queued.clear();
+            return drained;
+        }
+
+        @Override
+        public long getLatencyMillis() {
+            return latencyMillis;
+        }
+    }
+
+    private static List<float[]> drain(FusedSteering fused) {
+        List<float[]> output = new ArrayList<>(); // timestamp, accX
+        fused.drainSamples((values, timestampMillis) -> output.add(new float[]{timestampMillis, values[0]}));
+        return output;
+    }
+
+    @Test
+    public void mergesInterleavedSourcesByTimestamp() {
+        QueuedSource board = new QueuedSource(0);
+        QueuedSource phone = new QueuedSource(0);
+        FusedSteering fused = new FusedSteering(board, phone);
+        for (int t = 0; t <= 30; t += 10) {
+            board.add(t, 1);
+        }
+        for (int t = 5; t <= 25; t += 10) {
+            phone.add(t, 3);
+        }
+
+        List<float[]> output = drain(fused);
+        assertEquals(7, output.size());
+        float[] timestamps = new float[output.size()];
+        for (int i = 0; i < output.size(); i++) {
+            timestamps[i] = output.get(i)[0];
+        }
+        assertArrayEquals(new float[]{0, 5, 10, 15, 20, 25, 30}, timestamps, 0);
+
+        // Only the board so far
+        assertEquals(1f, output.get(0)[1], 1e-5f);
+        // The board's sample is 5 ms old: weight 1/6 against the phone's 1
+        assertEquals((1f / 6 + 3) / (1f / 6 + 1), output.get(1)[1], 1e-5f);
+        assertEquals((1 + 3f / 6) / (1 + 1f / 6), output.get(2)[1], 1e-5f);
+    }
+
+    @Test
+    public void staleSourceFadesOutAndTimestampsNeverGoBack() {
+        QueuedSource board = new QueuedSource(10);
+        QueuedSource phone = new QueuedSource(0);
+        FusedSteering fused = new FusedSteering(board, phone);
+        board.add(0, 1);
+        for (int t = 10; t <= 200; t += 10) {
+            phone.add(t, 3);
+        }
+        List<float[]> output = drain(fused);
+        // The board stopped at 0 ms, its weight is 1 / (1 + 10 + 200) at the end
+        float last = output.get(output.size() - 1)[1];
+        assertEquals((1f / 211 + 3) / (1f / 211 + 1), last, 1e-5f);
+        assertTrue(output.get(1)[1] < last);
+
+        // A late board sample from before the last fused one is fused at that time, its age counted against it
+        board.add(150, 1);
+        phone.add(210, 3);
+        output = drain(fused);
+        assertEquals(200f, output.get(0)[0], 0);
+        assertEquals((1f / 61 + 3) / (1f / 61 + 1), output.get(0)[1], 1e-5f);
+        assertEquals(210f, output.get(1)[0], 0);
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.menu_template;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class GameSnapshotTest {
+
+    @Test
+    public void labyrinthIsCopiedAndVersioned() {
+        int[][] labyrinth = {{1, 1, 1}, {1, 2, 3}, {1, 1, 1}};
+        GameSnapshot first = GameSnapshot.EMPTY.withLabyrinth(labyrinth);
+        labyrinth[1][1] = LabyrinthRules.EMPTY;
+        assertEquals(LabyrinthRules.PLAYER, first.getLabyrinth()[1][1]);
+
+        GameSnapshot second = first.withLabyrinth(labyrinth);
+        assertEquals(first.getLabyrinthVersion() + 1, second.getLabyrinthVersion());
+        assertEquals(first.getHudVersion(), second.getHudVersion());
+        assertEquals(LabyrinthRules.EMPTY, second.getLabyrinth()[1][1]);
+    }
+
+    @Test
+    public void unchangedHudKeepsTheSnapshot() {
+        GameSnapshot snapshot = GameSnapshot.EMPTY.withHud(1_000, 21.5f, Float.NaN, Float.NaN, Float.NaN);
+        assertNotSame(GameSnapshot.EMPTY, snapshot);
+
+        // Within the same tenth of a second and without a new reading, nothing to redraw
+        assertSame(snapshot, snapshot.withHud(1_099, 21.5f, Float.NaN, Float.NaN, Float.NaN));
+
+        GameSnapshot later = snapshot.withHud(1_100, 21.5f, Float.NaN, Float.NaN, Float.NaN);
+        assertEquals(snapshot.getHudVersion() + 1, later.getHudVersion());
+        assertEquals(snapshot.getLabyrinthVersion(), later.getLabyrinthVersion());
+        assertNotSame(later, later.withHud(1_100, 21.5f, 20f, 21f, 22f));
+    }
+
+    @Test
+    public void movingGhostRedrawsTheLabyrinth() {
+        GameSnapshot snapshot = GameSnapshot.EMPTY.withLabyrinth(new int[][]{{2, 0, 3}});
+        assertEquals(-1, snapshot.getGhostCell());
+        assertSame(snapshot, snapshot.withGhost(-1));
+
+        GameSnapshot moved = snapshot.withGhost(1);
+        assertEquals(snapshot.getLabyrinthVersion() + 1, moved.getLabyrinthVersion());
+        assertSame(snapshot.getLabyrinth(), moved.getLabyrinth());
+        assertEquals(1, moved.withLabyrinth(moved.getLabyrinth()).getGhostCell());
+    }
+}
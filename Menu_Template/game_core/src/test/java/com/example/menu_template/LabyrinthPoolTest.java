@@ -0,0 +1,52 @@
+package com.example.menu_template;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class LabyrinthPoolTest {
+
+    // Runs tasks on the calling thread, so the pool is filled before the call returns
+    private static final Executor DIRECT = Runnable::run;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void takenLabyrinthsAreReproducibleFromTheirSeed() {
+        LabyrinthPool pool = new LabyrinthPool(3, DIRECT, null);
+        pool.setSize(15);
+        assertEquals(3, pool.getReadyCount());
+
+        for (int i = 0; i < 5; i++) {
+            LabyrinthPool.PooledLabyrinth taken = pool.take(15);
+            assertArrayEquals(LabyrinthRules.generateLabyrinth(15, new Random(taken.getSeed())), taken.getLabyrinth());
+            assertEquals(3, pool.getReadyCount());
+        }
+    }
+
+    @Test
+    public void restoresSpilledPoolOfTheSameSize() {
+        File spillFile = new File(folder.getRoot(), "pool.bin");
+        LabyrinthPool pool = new LabyrinthPool(2, DIRECT, spillFile);
+        pool.setSize(21);
+
+        LabyrinthPool restored = new LabyrinthPool(2, DIRECT, spillFile);
+        restored.restore();
+        assertEquals(2, restored.getReadyCount());
+        LabyrinthPool.PooledLabyrinth taken = restored.take(21);
+        assertArrayEquals(LabyrinthRules.generateLabyrinth(21, new Random(taken.getSeed())), taken.getLabyrinth());
+
+        LabyrinthPool otherSize = new LabyrinthPool(2, DIRECT, spillFile);
+        otherSize.setSize(11);
+        otherSize.restore();
+        assertEquals(11, otherSize.take(11).getLabyrinth().length);
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.menu_template;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MappedLabyrinthTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsBackAWrittenLabyrinth() throws Exception {
+        // Larger than one tile in both directions, with partial tiles at the edges
+        int[][] labyrinth = LabyrinthRules.generateLabyrinth(151, new Random(3));
+        File file = new File(folder.getRoot(), "written.maze");
+        MappedLabyrinth mapped = MappedLabyrinth.write(file, labyrinth, 3, MappedLabyrinth.ALGORITHM_DEPTH_FIRST);
+
+        assertEquals(MappedLabyrinth.fileLength(151, 151), file.length());
+        MappedLabyrinth reopened = MappedLabyrinth.open(file);
+        assertEquals(3, reopened.getSeed());
+        int[][] window = new int[151][151];
+        reopened.copyWindow(0, 0, window);
+        for (int i = 0; i < 151; i++) {
+            for (int j = 0; j < 151; j++) {
+                assertEquals(labyrinth[i][j], window[i][j]);
+            }
+        }
+        mapped.close();
+        reopened.close();
+    }
+
+    @Test
+    public void generatedLabyrinthIsPerfectAndSolvable() throws Exception {
+        int cellRows = 70;
+        int cellColumns = 40;
+        MappedLabyrinth mapped = MappedLabyrinth.generate(new File(folder.getRoot(), "generated.maze"), cellRows, cellColumns, 11);
+        int rows = mapped.getRows();
+        int columns = mapped.getColumns();
+
+        // A perfect labyrinth is a tree: every open cell is reachable and there is one passage less than cells
+        int cells = 0;
+        int passages = 0;
+        for (int i = 1; i < rows - 1; i += 2) {
+            for (int j = 1; j < columns - 1; j += 2) {
+                cells++;
+                passages += mapped.isWall(i, j + 1) ? 0 : 1;
+                passages += mapped.isWall(i + 1, j) ? 0 : 1;
+            }
+        }
+        assertEquals(cellRows * cellColumns, cells);
+        assertEquals(cells - 1, passages);
+
+        // Walk the shortest path to the finish with movePlayer()
+        int[] directions = new int[rows * columns];
+        boolean[] seen = new boolean[rows * columns];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        int start = mapped.getStartRow() * columns + mapped.getStartColumn();
+        queue.add(start);
+        seen[start] = true;
+        int[][] steps = {{0, 1}, {0, -1}, {-1, 0}, {1, 0}};
+        int goal = -1;
+        while (!queue.isEmpty() && goal < 0) {
+            int cell = queue.poll();
+            for (int direction = 0; direction < 4; direction++) {
+                int row = cell / columns + steps[direction][0];
+                int column = cell % columns + steps[direction][1];
+                int next = row * columns + column;
+                if (row > 0 && row < rows && column > 0 && column < columns && !seen[next] && !mapped.isWall(row, column)) {
+                    seen[next] = true;
+                    directions[next] = direction;
+                    if (Math.abs(row - mapped.getFinishRow()) + Math.abs(column - mapped.getFinishColumn()) == 1) {
+                        goal = next;
+                    }
+                    queue.add(next);
+                }
+            }
+        }
+        assertTrue(goal >= 0);
+        ArrayDeque<Integer> path = new ArrayDeque<>();
+        for (int cell = goal; cell != start; ) {
+            int direction = directions[cell];
+            path.push(direction);
+            cell = (cell / columns - steps[direction][0]) * columns + cell % columns - steps[direction][1];
+        }
+        int result = LabyrinthRules.MOVE_INVALID_DIRECTION;
+        while (!path.isEmpty()) {
+            result = mapped.movePlayer(path.pop());
+            assertTrue(path.isEmpty() || result == LabyrinthRules.MOVE_OK);
+        }
+        assertEquals(LabyrinthRules.MOVE_FINISHED, result);
+        mapped.close();
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.menu_template;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MinimapPyramidTest {
+
+    private static MinimapPyramid pyramid(int[][] labyrinth) {
+        return new MinimapPyramid(labyrinth.length, labyrinth[0].length, labyrinth.length - 1, labyrinth[0].length - 1,
+                (row, column) -> labyrinth[row][column] == LabyrinthRules.WALL);
+    }
+
+    @Test
+    public void wallDensityIsTheShareOfWallsPerBlock() {
+        // 20 x 20 cells: 3 x 3 blocks of 8 x 8, the last row and column of blocks half outside (outside counts as wall)
+        int[][] labyrinth = new int[20][20];
+        for (int column = 0; column < 20; column++) {
+            labyrinth[0][column] = LabyrinthRules.WALL;
+        }
+        MinimapPyramid pyramid = pyramid(labyrinth);
+        MinimapPyramid.Minimap base = pyramid.toMinimap(3);
+        assertEquals(3, base.getRows());
+        assertEquals(32, base.getWallDensity(0, 0)); // 8 of 64 cells
+        assertEquals(0, base.getWallDensity(1, 1));
+        assertEquals(128, base.getWallDensity(1, 2)); // Only 4 of 8 columns inside
+        assertEquals(1, pyramid.toMinimap(1).getRows());
+        assertEquals(0, base.getRevealedDensity(0, 0));
+    }
+
+    @Test
+    public void revealingIsIncrementalAndIndependentOfTheOrder() {
+        int[][] labyrinth = LabyrinthRules.generateLabyrinth(101, new Random(5));
+        MinimapPyramid forward = pyramid(labyrinth);
+        MinimapPyramid backward = pyramid(labyrinth);
+        int moves = 200;
+        int[][] positions = new int[moves][2];
+        Random random = new Random(9);
+        for (int i = 0; i < moves; i++) {
+            positions[i][0] = random.nextInt(101);
+            positions[i][1] = random.nextInt(101);
+        }
+        for (int i = 0; i < moves; i++) {
+            forward.movePlayer(positions[i][0], positions[i][1], 3);
+            backward.movePlayer(positions[moves - 1 - i][0], positions[moves - 1 - i][1], 3);
+        }
+        // Same cells revealed, so every level has to be the same
+        for (int size = 1; size <= 16; size *= 2) {
+            MinimapPyramid.Minimap a = forward.toMinimap(size);
+            MinimapPyramid.Minimap b = backward.toMinimap(size);
+            for (int row = 0; row < a.getRows(); row++) {
+                for (int column = 0; column < a.getColumns(); column++) {
+                    assertEquals(a.getRevealedDensity(row, column), b.getRevealedDensity(row, column));
+                }
+            }
+        }
+        assertTrue(forward.toMinimap(1).getRevealedDensity(0, 0) > 0);
+
+        long version = forward.getVersion();
+        assertFalse(forward.movePlayer(positions[moves - 1][0], positions[moves - 1][1], 3));
+        assertEquals(version, forward.getVersion());
+    }
+
+    @Test
+    public void minimapSizeDoesNotGrowWithTheLabyrinth() {
+        int size = 2001;
+        MinimapPyramid pyramid = new MinimapPyramid(size, size, size - 2, size - 2, (row, column) -> (row & 1) == 0);
+        MinimapPyramid.Minimap minimap = pyramid.toMinimap(64);
+        assertTrue(minimap.getRows() <= 64 && minimap.getRows() > 32);
+        assertEquals(minimap.getRows(), minimap.getColumns());
+        assertEquals(128, minimap.getWallDensity(10, 10)); // Every other row is a wall
+
+        pyramid.movePlayer(1000, 1000, 10);
+        minimap = pyramid.toMinimap(64);
+        assertEquals(1000 >> (3 + pyramid.levelFor(64)), minimap.getPlayerRow());
+        assertTrue(minimap.getRevealedDensity(minimap.getPlayerRow(), minimap.getPlayerColumn()) > 0);
+        assertEquals(0, minimap.getRevealedDensity(0, 0));
+    }
+}
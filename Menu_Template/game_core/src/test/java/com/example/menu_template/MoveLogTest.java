@@ -0,0 +1,84 @@
+package com.example.menu_template;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MoveLogTest {
+
+    @Test
+    public void replaysTheRunAtItsPlayTimes() {
+        MoveLog log = new MoveLog(4);
+        log.reset(99);
+        log.append(LabyrinthRules.DIRECTION_BACKWARD, 200);
+        log.append(LabyrinthRules.DIRECTION_RIGHT, 450);
+        log.append(LabyrinthRules.DIRECTION_RIGHT, 3_000);
+        log.append(LabyrinthRules.DIRECTION_FORWARD, 3_040);
+        log.append(LabyrinthRules.DIRECTION_LEFT, 3_080); // Grows the direction buffer
+
+        MoveLog decoded = MoveLog.fromBytes(log.toBytes());
+        assertEquals(99, decoded.getSeed());
+        assertEquals(5, decoded.getMoveCount());
+
+        MoveLog.Replay ghost = new MoveLog.Replay(decoded, 0, 3);
+        assertFalse(ghost.advanceTo(190));
+        assertTrue(ghost.advanceTo(200));
+        assertEquals(1, ghost.getRow());
+        assertEquals(3, ghost.getColumn());
+        ghost.advanceTo(2_999);
+        assertEquals(4, ghost.getColumn());
+        ghost.advanceTo(10_000);
+        assertTrue(ghost.isFinished());
+        // Backward, right, right, forward, left
+        assertEquals(0, ghost.getRow());
+        assertEquals(4, ghost.getColumn());
+    }
+
+    @Test
+    public void keepsLongRunsSmall() {
+        MoveLog log = new MoveLog(16);
+        Random random = new Random(1);
+        long playTime = 0;
+        for (int i = 0; i < 1000; i++) {
+            playTime += 120 + random.nextInt(400);
+            log.append(random.nextInt(4), playTime);
+        }
+        byte[] bytes = log.toBytes();
+        assertEquals(log.encodedLength(), bytes.length);
+        assertTrue(bytes.length + " bytes", bytes.length < 1800);
+
+        MoveLog decoded = MoveLog.fromBytes(bytes);
+        MoveLog.Replay ghost = new MoveLog.Replay(decoded, 0, 0);
+        ghost.advanceTo(playTime - MoveLog.TIME_RESOLUTION_MILLIS);
+        assertFalse(ghost.isFinished());
+        ghost.advanceTo(playTime);
+        assertTrue(ghost.isFinished());
+
+        // reset() reuses the buffers for the next run
+        log.reset(5);
+        assertEquals(0, log.getMoveCount());
+        assertEquals(1 + 8 + 1, log.toBytes().length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOtherVersions() {
+        byte[] bytes = new MoveLog(1).toBytes();
+        bytes[0] = 2;
+        MoveLog.fromBytes(bytes);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAMoveCountThatWouldOverflow() {
+        byte[] header = new MoveLog(1).toBytes();
+        byte[] bytes = Arrays.copyOf(header, header.length + 4);
+        // Integer.MAX_VALUE moves as a varint, (count + 3) / 4 would wrap around to a negative length
+        byte[] count = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07};
+        System.arraycopy(count, 0, bytes, 9, count.length);
+        MoveLog.fromBytes(bytes);
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.menu_template;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PublishPipelineTest {
+
+    // Records what was handed over, completions are triggered by the test
+    private static class RecordingSender implements PublishPipeline.Sender {
+        final List<String> topics = new ArrayList<>();
+        final List<byte[]> payloads = new ArrayList<>();
+        final List<Integer> qos = new ArrayList<>();
+        final List<PublishPipeline.Completion> completions = new ArrayList<>();
+
+        @Override
+        public void send(String topic, byte[] payload, int qos, boolean retained, PublishPipeline.Completion completion) {
+            topics.add(topic);
+            payloads.add(payload);
+            this.qos.add(qos);
+            completions.add(completion);
+        }
+    }
+
+    @Test
+    public void keepsTheInFlightWindowAndOrder() {
+        RecordingSender sender = new RecordingSender();
+        PublishPipeline pipeline = new PublishPipeline(sender, 2, 10);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(pipeline.publish("spectate/K05", new byte[]{(byte) i}));
+        }
+        assertEquals(2, sender.topics.size());
+        assertEquals(2, pipeline.getInFlight());
+        assertEquals(3, pipeline.getQueued());
+
+        sender.completions.get(0).onComplete(null);
+        assertTrue(futures.get(0).isDone());
+        assertFalse(futures.get(0).isCompletedExceptionally());
+        assertEquals(3, sender.topics.size());
+
+        RuntimeException failure = new RuntimeException("lost");
+        sender.completions.get(1).onComplete(failure);
+        assertTrue(futures.get(1).isCompletedExceptionally());
+        assertEquals(1, pipeline.getFailed());
+        for (int i = 0; i < sender.payloads.size(); i++) {
+            assertArrayEquals(new byte[]{(byte) i}, sender.payloads.get(i));
+        }
+    }
+
+    @Test
+    public void coalescesWaitingMessagesOfTheSameTopic() {
+        RecordingSender sender = new RecordingSender();
+        PublishPipeline pipeline = new PublishPipeline(sender, 1, 10);
+        pipeline.setProfile("control/K05", new PublishPipeline.Profile(1, true, true));
+
+        pipeline.publish("spectate/K05", new byte[]{0}); // Fills the window
+        CompletableFuture<Void> first = pipeline.publish("control/K05", new byte[]{1});
+        CompletableFuture<Void> second = pipeline.publish("control/K05", new byte[]{2});
+        assertSame(first, second);
+        assertEquals(1, pipeline.getQueued());
+        assertEquals(1, pipeline.getCoalesced());
+
+        sender.completions.get(0).onComplete(null);
+        assertEquals("control/K05", sender.topics.get(1));
+        assertArrayEquals(new byte[]{2}, sender.payloads.get(1));
+        assertEquals(1, (int) sender.qos.get(1));
+        assertEquals(0, (int) sender.qos.get(0));
+
+        // Once it went out, the next command is a message of its own
+        assertFalse(pipeline.publish("control/K05", new byte[]{3}) == first);
+    }
+
+    @Test
+    public void rejectsWhenTheQueueIsFullAndFailsWhenTheSenderThrows() {
+        PublishPipeline stuck = new PublishPipeline(new RecordingSender(), 1, 1);
+        stuck.publish("a", new byte[0]);
+        stuck.publish("a", new byte[0]);
+        assertTrue(stuck.publish("a", new byte[0]).isCompletedExceptionally());
+        assertEquals(1, stuck.getRejected());
+
+        PublishPipeline disconnected = new PublishPipeline((topic, payload, qos, retained, completion) -> {
+            throw new IllegalStateException("Not connected");
+        }, 1, 1);
+        assertTrue(disconnected.publish("a", new byte[0]).isCompletedExceptionally());
+        assertEquals(0, disconnected.getInFlight());
+    }
+}
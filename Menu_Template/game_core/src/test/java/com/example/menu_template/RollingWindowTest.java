@@ -0,0 +1,53 @@
+package com.example.menu_template;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RollingWindowTest {
+
+    @Test
+    public void matchesBruteForceOverTimeWindow() {
+        RollingWindow window = new RollingWindow(10_000, 64);
+        Random random = new Random(1);
+        float[] values = new float[1000];
+        long[] times = new long[1000];
+        long time = 0;
+
+        for (int i = 0; i < values.length; i++) {
+            time += 200 + random.nextInt(1600);
+            values[i] = 20 + random.nextFloat() * 10;
+            times[i] = time;
+            window.add(time, values[i]);
+
+            float min = Float.MAX_VALUE;
+            float max = -Float.MAX_VALUE;
+            double sum = 0;
+            int count = 0;
+            for (int j = i; j >= 0 && times[j] > time - 10_000 && count < 64; j--) {
+                min = Math.min(min, values[j]);
+                max = Math.max(max, values[j]);
+                sum += values[j];
+                count++;
+            }
+            assertEquals(count, window.size());
+            assertEquals(min, window.getMin(), 0.0f);
+            assertEquals(max, window.getMax(), 0.0f);
+            assertEquals(sum / count, window.getMean(), 1e-3);
+        }
+    }
+
+    @Test
+    public void emptiesWhenTheWindowPasses() {
+        RollingWindow window = new RollingWindow(1000, 8);
+        window.add(0, 21.5f);
+        window.evictExpired(999);
+        assertEquals(1, window.size());
+        window.evictExpired(1000);
+        assertEquals(0, window.size());
+        assertTrue(Float.isNaN(window.getMean()));
+    }
+}
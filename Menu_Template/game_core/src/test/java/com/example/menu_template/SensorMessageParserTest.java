@@ -0,0 +1,52 @@
+package com.example.menu_template;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SensorMessageParserTest {
+
+    @Test
+    public void readsTheSameValuesAsFloatParseFloat() {
+        Random random = new Random(5);
+        float[] values = new float[SensorMessageParser.VALUE_COUNT];
+        for (int n = 0; n < 10_000; n++) {
+            String[] texts = new String[SensorMessageParser.VALUE_COUNT];
+            for (int i = 0; i < texts.length; i++) {
+                texts[i] = String.format(Locale.ROOT, "%." + random.nextInt(7) + "f", (random.nextFloat() - 0.5f) * 40);
+            }
+            assertTrue(SensorMessageParser.parse("(" + String.join(",", texts) + ")", values));
+            for (int i = 0; i < texts.length; i++) {
+                float expected = Float.parseFloat(texts[i]);
+                assertEquals(texts[i], expected, values[i], Math.ulp(expected));
+            }
+        }
+    }
+
+    @Test
+    public void parsesOneSampleOfABatch() {
+        String batch = "(1,2,3,4,5,6,100);( 1.5e1 , -0.25,+3,.5,5.,-0 ,200)";
+        float[] values = new float[SensorMessageParser.VALUE_COUNT];
+        int start = batch.indexOf(';') + 1;
+        assertTrue(SensorMessageParser.parse(batch, start, batch.length(), values));
+        assertArrayEquals(new float[]{15f, -0.25f, 3f, 0.5f, 5f, -0f}, values, 0f);
+        assertEquals(200, SensorMessageParser.parseTimestampMicros(batch, start, batch.length()));
+        assertEquals(100, SensorMessageParser.parseTimestampMicros(batch, 0, start - 1));
+    }
+
+    @Test
+    public void leavesTheValuesAloneForInvalidMessages() {
+        float[] values = {7, 7, 7, 7, 7, 7};
+        assertFalse(SensorMessageParser.parse("(1,2,3,4,5,x)", values));
+        assertFalse(SensorMessageParser.parse("(1,2,3,4,5)", values));
+        assertFalse(SensorMessageParser.parse("(1,2,3,4,,6)", values));
+        assertFalse(SensorMessageParser.parse("(1,2,3,4,5,-)", values));
+        assertArrayEquals(new float[]{7, 7, 7, 7, 7, 7}, values, 0f);
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.menu_template;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SensorRateControlTest {
+
+    @Test
+    public void sendsACommandOnlyWhenTheStateChanges() {
+        SensorRateControl control = new SensorRateControl();
+        String moving = control.update(SensorRateControl.STATE_MOVING, 0);
+        assertEquals("100,2", moving);
+        assertNull(control.update(SensorRateControl.STATE_MOVING, 10));
+        assertTrue(control.onAck(moving));
+        assertNull(control.update(SensorRateControl.STATE_MOVING, 5_000));
+
+        assertEquals("25,1", control.update(SensorRateControl.STATE_IDLE, 5_010));
+        assertEquals("0,1", control.update(SensorRateControl.STATE_MENU, 5_020));
+        assertFalse(control.isConfirmed());
+    }
+
+    @Test
+    public void resendsUnconfirmedCommands() {
+        SensorRateControl control = new SensorRateControl();
+        assertEquals("2,1", control.update(SensorRateControl.STATE_PAUSED, 0));
+        assertNull(control.update(SensorRateControl.STATE_PAUSED, SensorRateControl.RETRY_MILLIS - 1));
+        assertEquals("2,1", control.update(SensorRateControl.STATE_PAUSED, SensorRateControl.RETRY_MILLIS));
+    }
+
+    @Test
+    public void takesTheAppliedValuesFromTheAck() {
+        SensorRateControl control = new SensorRateControl();
+        control.update(SensorRateControl.STATE_MOVING, 0);
+        assertFalse(control.onAck("garbage"));
+        assertEquals(-1, control.getAppliedRate());
+        // A board that can't keep up clamps the rate
+        assertTrue(control.onAck("50,2"));
+        assertTrue(control.isConfirmed());
+        assertEquals(50, control.getAppliedRate());
+        assertEquals(2, control.getAppliedBatchSize());
+    }
+
+    @Test
+    public void lateAckOfAnEarlierCommandDoesNotConfirm() {
+        SensorRateControl control = new SensorRateControl();
+        assertTrue(control.onAck(control.update(SensorRateControl.STATE_MOVING, 0)));
+        assertEquals("25,1", control.update(SensorRateControl.STATE_IDLE, 3_000));
+        // The ack of the moving command arrives after the switch
+        assertTrue(control.onAck("100,2"));
+        assertFalse(control.isConfirmed());
+        assertEquals("25,1", control.update(SensorRateControl.STATE_IDLE, 3_000 + SensorRateControl.RETRY_MILLIS));
+
+        assertTrue(control.onAck("25,1"));
+        assertTrue(control.isConfirmed());
+        assertEquals(25, control.getAppliedRate());
+        assertEquals("0,1", control.update(SensorRateControl.STATE_MENU, 10_000));
+        assertTrue(control.onAck("25,1"));
+        assertFalse(control.isConfirmed());
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.menu_template;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SensorSampleBufferTest {
+
+    @Test
+    public void dropsNewSamplesWhenFull() {
+        SensorSampleBuffer buffer = new SensorSampleBuffer(4);
+        float[] sample = new float[SensorMessageParser.VALUE_COUNT];
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(sample, i * 1_000_000L));
+        }
+        assertFalse(buffer.offer(sample, 4_000_000L));
+        assertEquals(1, buffer.getDroppedSamples());
+
+        long[] expected = {0};
+        assertEquals(4, buffer.drainTo((values, timestampMillis) -> assertEquals(expected[0]++, timestampMillis)));
+        assertTrue(buffer.offer(sample, 5_000_000L));
+    }
+
+    @Test
+    public void consumerSeesWholeSamplesInOrder() throws Exception {
+        SensorSampleBuffer buffer = new SensorSampleBuffer(64);
+        int samples = 200_000;
+        Thread producer = new Thread(() -> {
+            float[] sample = new float[SensorMessageParser.VALUE_COUNT];
+            for (int i = 0; i < samples; ) {
+                // Every value of a sample carries its number, so a torn sample shows up as a mix of numbers
+                Arrays.fill(sample, i);
+                if (buffer.offer(sample, i * 1_000_000L)) {
+                    i++;
+                } else {
+                    Thread.yield();
+                }
+            }
+        });
+        producer.start();
+
+        long[] next = {0};
+        SensorSampleListener checker = (values, timestampMillis) -> {
+            assertEquals(next[0], timestampMillis);
+            for (float value : values) {
+                assertEquals((float) next[0], value, 0.0f);
+            }
+            next[0]++;
+        };
+        while (next[0] < samples) {
+            if (buffer.drainTo(checker) == 0) {
+                Thread.yield();
+            }
+        }
+        producer.join();
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.menu_template;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SpectatorStreamTest {
+
+    @Test
+    public void spectatorFollowsKeyframeAndMoves() {
+        int[][] labyrinth = LabyrinthRules.generateLabyrinth(15, new Random(7));
+        SpectatorStream stream = new SpectatorStream(SpectatorStream.DEFAULT_KEYFRAME_INTERVAL_MILLIS);
+        SpectatorView view = new SpectatorView();
+
+        byte[] keyframe = stream.keyframe(labyrinth, 7, true, 0);
+        assertEquals(SpectatorStream.KEYFRAME_HEADER_LENGTH + LabyrinthCodec.packedWallsLength(15, 15), keyframe.length);
+        assertTrue(view.apply(keyframe));
+        assertTrue(view.isSeedKnown());
+        assertEquals(7, view.getSeed());
+        assertLabyrinthEquals(labyrinth, view.getLabyrinth());
+
+        // The start lies on the top boundary, so walking backward (down) is the only way into the labyrinth
+        assertEquals(LabyrinthRules.MOVE_OK, LabyrinthRules.movePlayer(labyrinth, LabyrinthRules.DIRECTION_BACKWARD));
+        byte[] move = stream.move(LabyrinthRules.DIRECTION_BACKWARD);
+        assertEquals(SpectatorStream.MOVE_LENGTH, move.length);
+        assertTrue(view.apply(move));
+        assertLabyrinthEquals(labyrinth, view.getLabyrinth());
+    }
+
+    @Test
+    public void lostMoveWaitsForNextKeyframe() {
+        int[][] labyrinth = LabyrinthRules.generateLabyrinth(11, new Random(3));
+        SpectatorStream stream = new SpectatorStream(1000);
+        SpectatorView view = new SpectatorView();
+
+        view.apply(stream.keyframe(labyrinth, 3, true, 0));
+        LabyrinthRules.movePlayer(labyrinth, LabyrinthRules.DIRECTION_BACKWARD);
+        stream.move(LabyrinthRules.DIRECTION_BACKWARD); // lost on the way
+        assertFalse(view.apply(stream.finished()));
+        assertFalse(view.isSynced());
+        assertEquals(1, view.getLostMessages());
+
+        assertFalse(stream.isKeyframeDue(999));
+        assertTrue(stream.isKeyframeDue(1000));
+        assertTrue(view.apply(stream.keyframe(labyrinth, 3, true, 1000)));
+        assertTrue(view.isSynced());
+        assertLabyrinthEquals(labyrinth, view.getLabyrinth());
+    }
+
+    @Test
+    public void reorderedMoveIsDropped() {
+        int[][] labyrinth = LabyrinthRules.generateLabyrinth(11, new Random(5));
+        SpectatorStream stream = new SpectatorStream(1000);
+        SpectatorView view = new SpectatorView();
+
+        view.apply(stream.keyframe(labyrinth, 5, true, 0));
+        LabyrinthRules.movePlayer(labyrinth, LabyrinthRules.DIRECTION_BACKWARD);
+        byte[] move = stream.move(LabyrinthRules.DIRECTION_BACKWARD);
+        byte[] keyframe = stream.keyframe(labyrinth, 5, true, 1000);
+        // The keyframe overtakes the move, which must not be applied a second time
+        assertTrue(view.apply(keyframe));
+        assertFalse(view.apply(move));
+        assertTrue(view.isSynced());
+        assertEquals(0, view.getLostMessages());
+        assertLabyrinthEquals(labyrinth, view.getLabyrinth());
+
+        LabyrinthRules.movePlayer(labyrinth, LabyrinthRules.DIRECTION_FORWARD);
+        assertTrue(view.apply(stream.move(LabyrinthRules.DIRECTION_FORWARD)));
+        assertLabyrinthEquals(labyrinth, view.getLabyrinth());
+    }
+
+    private static void assertLabyrinthEquals(int[][] expected, int[][] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertArrayEquals(expected[i], actual[i]);
+        }
+    }
+}
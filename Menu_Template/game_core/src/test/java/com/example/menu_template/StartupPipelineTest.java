@@ -0,0 +1,66 @@
+package com.example.menu_template;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StartupPipelineTest {
+
+    @Test
+    public void takesAsLongAsTheSlowestChain() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        StartupPipeline startup = new StartupPipeline(executor);
+        AtomicLong settingsDone = new AtomicLong();
+        AtomicLong labyrinthStarted = new AtomicLong();
+
+        CompletableFuture<Void> settings = startup.stage("settings", () -> {
+            Thread.sleep(50);
+            settingsDone.set(System.nanoTime());
+        });
+        startup.stage("broker", () -> Thread.sleep(200));
+        startup.stage("labyrinth", () -> {
+            labyrinthStarted.set(System.nanoTime());
+            Thread.sleep(100);
+        }, settings);
+        startup.stage("sensors", () -> Thread.sleep(150));
+        startup.finish().get();
+        executor.shutdown();
+
+        assertTrue(labyrinthStarted.get() >= settingsDone.get());
+        // The slowest chain is the broker (200 ms), the stages add up to 500 ms
+        assertTrue(startup.report(), startup.getElapsedMillis() >= 200);
+        assertTrue(startup.report(), startup.getElapsedMillis() < 400);
+        assertTrue(startup.getStageMillis("labyrinth") >= 100);
+    }
+
+    @Test
+    public void failureSkipsDependentStages() throws Exception {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        StartupPipeline startup = new StartupPipeline(executor);
+        AtomicBoolean ran = new AtomicBoolean();
+        CompletableFuture<Void> labyrinth = startup.stage("labyrinth", () -> {
+            throw new IllegalStateException("no size");
+        });
+        startup.stage("announce", () -> ran.set(true), labyrinth);
+        try {
+            startup.finish().get();
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals("no size", e.getCause().getMessage());
+        }
+        executor.shutdown();
+        assertFalse(ran.get());
+        assertEquals(-1, startup.getStageMillis("announce"));
+        assertTrue(startup.report(), startup.report().contains(" ms failed, announce did not run"));
+    }
+}
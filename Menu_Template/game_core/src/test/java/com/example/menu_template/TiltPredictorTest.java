@@ -0,0 +1,121 @@
+package com.example.menu_template;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays tilt traces through the AutoRepeatMapper with and without the TiltPredictor in front of it and compares
+ * when the moves come. The traces are gestures sampled every SAMPLE_MILLIS with sensor noise, one per seed.
+ */
+public class TiltPredictorTest {
+
+    private static final long SAMPLE_MILLIS = 10;
+    private static final long LEAD_MILLIS = 50; // A typical sensor->app delay over WiFi and the broker
+    private static final float NOISE = 0.1f; // m/s^2, about what the board's accelerometer shows at rest
+    private static final int SEEDS = 20;
+
+    @Test
+    public void movesComeEarlierOnADeliberateTilt() {
+        long totalGain = 0;
+        for (int seed = 0; seed < SEEDS; seed++) {
+            // Rest, tilt to about 0.5 g within 200 ms, hold, back to rest
+            float[] trace = trace(seed, 300, 0f, 200, 5f, 600, 5f, 200, 0f, 400, 0f);
+            List<Long> plain = moves(trace, 0);
+            List<Long> predicted = moves(trace, LEAD_MILLIS);
+            assertTrue(!plain.isEmpty() && !predicted.isEmpty());
+            long gain = plain.get(0) - predicted.get(0);
+            assertTrue("First move later with prediction (seed " + seed + ")", gain >= 0);
+            // Earlier moves, but not extra ones
+            assertTrue(plain.size() + " vs " + predicted.size(), Math.abs(plain.size() - predicted.size()) <= 1);
+            totalGain += gain;
+        }
+        long meanGain = totalGain / SEEDS;
+        assertTrue("First move only " + meanGain + " ms earlier", meanGain >= 20);
+    }
+
+    @Test
+    public void tremorBelowTheEngageTiltMakesNoMoves() {
+        for (int seed = 0; seed < SEEDS; seed++) {
+            // A hand shaking at 6 Hz around a small tilt, it never reaches the engage tilt
+            Random random = new Random(seed);
+            float[] trace = new float[200];
+            for (int i = 0; i < trace.length; i++) {
+                double t = i * SAMPLE_MILLIS / 1000.0;
+                trace[i] = (float) (1.2 + 0.8 * Math.sin(2 * Math.PI * 6 * t) + NOISE * random.nextGaussian());
+            }
+            assertEquals(0, moves(trace, 0).size());
+            assertEquals("Prediction made up a move (seed " + seed + ")", 0, moves(trace, LEAD_MILLIS).size());
+        }
+    }
+
+    @Test
+    public void leanStoppingShortOfTheEngageTiltMakesNoMoves() {
+        for (int seed = 0; seed < SEEDS; seed++) {
+            // A quick lean to just below the engage tilt (0.25 g, about 2.45 m/s^2)
+            float[] trace = trace(seed, 200, 0f, 150, 2.2f, 800, 2.2f);
+            assertEquals(0, moves(trace, 0).size());
+            assertEquals("Prediction made up a move (seed " + seed + ")", 0, moves(trace, LEAD_MILLIS).size());
+        }
+    }
+
+    @Test
+    public void withoutLeadSamplesPassUnchanged() {
+        List<float[]> seen = new ArrayList<>();
+        TiltPredictor predictor = new TiltPredictor((values, timestampMillis) -> seen.add(values.clone()));
+        float[] sample = {1, 2, 9.81f, 0.1f, 0.2f, 0.3f};
+        for (int i = 0; i < 10; i++) {
+            sample[0] += 0.5f;
+            predictor.onSensorSample(sample, i * SAMPLE_MILLIS);
+            assertEquals(sample[0], seen.get(i)[0], 0.0f);
+        }
+        assertEquals(0, predictor.getPredictedSamples());
+    }
+
+    /**
+     * @param segments pairs of a duration in milliseconds and the acc_x to reach linearly at its end
+     */
+    private static float[] trace(int seed, Object... segments) {
+        Random random = new Random(seed);
+        List<Float> values = new ArrayList<>();
+        float current = 0;
+        for (int s = 0; s < segments.length; s += 2) {
+            int steps = (Integer) segments[s] / (int) SAMPLE_MILLIS;
+            float target = (Float) segments[s + 1];
+            for (int i = 1; i <= steps; i++) {
+                values.add(current + (target - current) * i / steps);
+            }
+            current = target;
+        }
+        float[] trace = new float[values.size()];
+        for (int i = 0; i < trace.length; i++) {
+            trace[i] = values.get(i) + (float) (NOISE * random.nextGaussian());
+        }
+        return trace;
+    }
+
+    /**
+     * @return the timestamps of the samples that produced moves
+     */
+    private static List<Long> moves(float[] trace, long leadMillis) {
+        AutoRepeatMapper mapper = new AutoRepeatMapper();
+        TiltPredictor predictor = new TiltPredictor(mapper);
+        predictor.setLeadMillis(leadMillis);
+        List<Long> moves = new ArrayList<>();
+        float[] sample = new float[SensorMessageParser.VALUE_COUNT];
+        for (int i = 0; i < trace.length; i++) {
+            sample[0] = trace[i];
+            sample[2] = 9.81f;
+            predictor.onSensorSample(sample, i * SAMPLE_MILLIS);
+            while (mapper.pollMove() != LabyrinthRules.DIRECTION_NONE) {
+                moves.add(mapper.getPolledMoveSampleMillis());
+            }
+        }
+        return moves;
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.menu_template;
+
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+
+public class UdpSensorReceiverTest {
+
+    @Test
+    public void countsLossAndReorderingOverLoopback() throws Exception {
+        List<Long> delivered = new CopyOnWriteArrayList<>();
+        List<Float> accX = new CopyOnWriteArrayList<>();
+        UdpSensorReceiver receiver = new UdpSensorReceiver(0, (values, readMicros) -> {
+            accX.add(values[0]);
+            delivered.add(readMicros);
+        });
+        receiver.start();
+
+        // 2 and 5 arrive late, 6 is sent twice, 8 never arrives
+        int[] sequences = {0, 1, 3, 2, 4, 6, 5, 6, 7, 9};
+        InetSocketAddress target = new InetSocketAddress("127.0.0.1", receiver.getLocalPort());
+        try (DatagramChannel sender = DatagramChannel.open()) {
+            ByteBuffer frame = ByteBuffer.allocate(UdpSensorReceiver.FRAME_LENGTH);
+            for (int sequence : sequences) {
+                frame.clear();
+                UdpSensorReceiver.encodeFrame(frame, sequence, 1000L * sequence,
+                        new float[]{sequence, -9.81f, 0, 0, 0, 0});
+                frame.flip();
+                sender.send(frame, target);
+                // Loopback doesn't reorder by itself, keep the order the test sends in
+                Thread.sleep(2);
+            }
+            sender.send(ByteBuffer.wrap(new byte[]{1, 2, 3}), target);
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (receiver.getMalformed() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        receiver.stop();
+
+        assertEquals(7, receiver.getReceived());
+        assertEquals(2, receiver.getLate());
+        assertEquals(1, receiver.getDuplicates());
+        assertEquals(1, receiver.getLost());
+        assertEquals(1, receiver.getMalformed());
+        for (int i = 1; i < delivered.size(); i++) {
+            // Only newer samples are handed on
+            assertEquals(true, delivered.get(i) > delivered.get(i - 1));
+        }
+        assertEquals(9f, accX.get(accX.size() - 1), 0);
+    }
+
+    @Test
+    public void startsOverWhenTheBoardReboots() throws Exception {
+        List<Float> accX = new CopyOnWriteArrayList<>();
+        UdpSensorReceiver receiver = new UdpSensorReceiver(0, (values, readMicros) -> accX.add(values[0]));
+        receiver.start();
+
+        // The board ran for a while, rebooted and counts from 0 again, its clock too
+        int[] sequences = {5000, 5001, 0, 1, 2, 3};
+        InetSocketAddress target = new InetSocketAddress("127.0.0.1", receiver.getLocalPort());
+        try (DatagramChannel sender = DatagramChannel.open()) {
+            ByteBuffer frame = ByteBuffer.allocate(UdpSensorReceiver.FRAME_LENGTH);
+            for (int sequence : sequences) {
+                frame.clear();
+                UdpSensorReceiver.encodeFrame(frame, sequence, 1000L * sequence,
+                        new float[]{sequence, -9.81f, 0, 0, 0, 0});
+                frame.flip();
+                sender.send(frame, target);
+                Thread.sleep(2);
+            }
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (accX.size() < sequences.length && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        receiver.stop();
+
+        assertEquals(sequences.length, receiver.getReceived());
+        assertEquals(1, receiver.getRestarts());
+        assertEquals(0, receiver.getDuplicates());
+        assertEquals(0, receiver.getLost());
+        assertEquals(3f, accX.get(accX.size() - 1), 0);
+    }
+}
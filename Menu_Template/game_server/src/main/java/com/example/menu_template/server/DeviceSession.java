@@ -0,0 +1,181 @@
+package com.example.menu_template.server;
+
+import com.example.menu_template.AutoRepeatMapper;
+import com.example.menu_template.GameClock;
+import com.example.menu_template.LabyrinthRules;
+import com.example.menu_template.SensorMessageParser;
+import com.example.menu_template.TemperatureSeries;
+
+import java.util.Random;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * One game played by one ESP32 board.
+ * Sensor and temperature messages are written by the transport's callback thread,
+ * the game itself is only advanced by tick(), which the scheduler never runs concurrently for the same session.
+ */
+public class DeviceSession {
+
+    public static final long TEMPERATURE_WINDOW_MILLIS = 60_000;
+
+    private final String deviceId;
+    private final int[][] labyrinth;
+    private final AutoRepeatMapper autoRepeatMapper = new AutoRepeatMapper();
+    private final TickStats tickStats = new TickStats();
+    private final TickStats tickLateness = new TickStats();
+
+    // Only touched by the callback thread, every sample goes straight into the mapper
+    private final float[] parseBuffer = new float[SensorMessageParser.VALUE_COUNT];
+
+    private final TemperatureSeries temperatureSeries = new TemperatureSeries(TEMPERATURE_WINDOW_MILLIS);
+    private final GameClock gameClock = new GameClock();
+    private volatile boolean finished;
+    private volatile ScheduledFuture<?> tickFuture;
+
+    // Only touched by tick() once the schedule is set, a fixed rate schedule runs tick n at first + n * period
+    private long firstTickNanos;
+    private long tickPeriodNanos;
+    private long scheduledTicks;
+
+    public DeviceSession(String deviceId, int labyrinthSize, Random random) {
+        this.deviceId = deviceId;
+        this.labyrinth = LabyrinthRules.generateLabyrinth(labyrinthSize, random);
+        gameClock.start();
+    }
+
+    /**
+     * @param message the payload received on "mpu/<device id>", one sample or several separated by ';'
+     * @return false if a sample could not be parsed, the valid ones are used anyway
+     */
+    public boolean onSensorMessage(String message) {
+        long now = System.nanoTime() / 1_000_000;
+        boolean valid = true;
+        int start = 0;
+        for (int end = message.indexOf(';'); end >= 0; end = message.indexOf(';', start)) {
+            valid &= onSample(message, start, end, now);
+            start = end + 1;
+        }
+        return onSample(message, start, message.length(), now) && valid;
+    }
+
+    private boolean onSample(String message, int start, int end, long now) {
+        if (!SensorMessageParser.parse(message, start, end, parseBuffer)) {
+            return false;
+        }
+        autoRepeatMapper.onSensorSample(parseBuffer, now);
+        return true;
+    }
+
+    /**
+     * @param message the payload received on "temp/<device id>"
+     */
+    public void onTemperatureMessage(String message) {
+        try {
+            temperatureSeries.add(System.nanoTime() / 1_000_000, Float.parseFloat(message));
+        } catch (NumberFormatException e) {
+            // Ignore malformed readings
+        }
+    }
+
+    /**
+     * Advances the game by one step, i.e. makes the move that is due, if any
+     *
+     * @return true if the player reached the finish with this tick
+     */
+    public boolean tick() {
+        if (finished) {
+            return false;
+        }
+        long start = System.nanoTime();
+        if (tickPeriodNanos > 0) {
+            tickLateness.record(Math.max(0, start - (firstTickNanos + scheduledTicks * tickPeriodNanos)));
+            scheduledTicks++;
+        }
+
+        int playerDirection = autoRepeatMapper.pollMove();
+        boolean won = false;
+        if (playerDirection != LabyrinthRules.DIRECTION_NONE) {
+            synchronized (labyrinth) {
+                won = LabyrinthRules.movePlayer(labyrinth, playerDirection) == LabyrinthRules.MOVE_FINISHED;
+            }
+        }
+        if (won) {
+            gameClock.pause();
+            finished = true;
+        }
+
+        tickStats.record(System.nanoTime() - start);
+        return won;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    /**
+     * @return how long the ticks took
+     */
+    public TickStats getTickStats() {
+        return tickStats;
+    }
+
+    /**
+     * @return how late the ticks started against their schedule, i.e. how long they waited for a scheduler thread
+     */
+    public TickStats getTickLateness() {
+        return tickLateness;
+    }
+
+    /**
+     * @return the latest temperature reading or NaN before the first one
+     */
+    public float getTemperature() {
+        return temperatureSeries.getLatest();
+    }
+
+    public TemperatureSeries getTemperatureSeries() {
+        return temperatureSeries;
+    }
+
+    /**
+     * @return the time since the session started in milliseconds, frozen once the player finished
+     */
+    public long getPlayTimeMillis() {
+        return gameClock.getElapsedMillis();
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * @return a copy of the labyrinth, safe to read while the session keeps ticking
+     */
+    public int[][] getLabyrinth() {
+        synchronized (labyrinth) {
+            int[][] copy = new int[labyrinth.length][];
+            for (int i = 0; i < labyrinth.length; i++) {
+                copy[i] = labyrinth[i].clone();
+            }
+            return copy;
+        }
+    }
+
+    ScheduledFuture<?> getTickFuture() {
+        return tickFuture;
+    }
+
+    void setTickFuture(ScheduledFuture<?> tickFuture) {
+        this.tickFuture = tickFuture;
+    }
+
+    /**
+     * To be called before the first tick, so the lateness of every tick can be measured
+     *
+     * @param firstTickNanos the time the first tick is scheduled for, on the System.nanoTime() clock
+     */
+    void setTickSchedule(long firstTickNanos, long tickPeriodNanos) {
+        this.firstTickNanos = firstTickNanos;
+        this.tickPeriodNanos = tickPeriodNanos;
+    }
+}
@@ -0,0 +1,252 @@
+package com.example.menu_template.server;
+
+import com.example.menu_template.Constants;
+import com.example.menu_template.MessageTransport;
+import com.example.menu_template.MqttCallbackListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Headless game host that runs one labyrinth game per ESP32 board, so a whole lab can play without phones.
+ * <p>
+ * The server subscribes to "mpu/+" and "temp/+", creates a DeviceSession for every device id it sees
+ * and advances all sessions on a small scheduler pool (one periodic task per session, so a session is
+ * never ticked by two threads at once). When a player reaches the finish, "1" is published on
+ * "finished/&lt;device id&gt;", which stops the board's publishing just like the app does.
+ * Tick latency is collected per session and reported periodically.
+ */
+public class GameServer implements MqttCallbackListener {
+
+    private static final Logger LOGGER = Logger.getLogger("GameServer");
+
+    public static final int DEFAULT_LABYRINTH_SIZE = 10;
+    public static final long DEFAULT_TICK_PERIOD_MILLIS = 10; // 100 Hz
+    public static final long DEFAULT_REPORT_PERIOD_SECONDS = 10;
+    private static final int SLOWEST_SESSIONS_REPORTED = 5;
+
+    private final MessageTransport transport;
+    private final int labyrinthSize;
+    private final long tickPeriodMillis;
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, DeviceSession> sessions = new ConcurrentHashMap<>();
+    private final Random random = new Random();
+    private ScheduledFuture<?> reportFuture;
+
+    /**
+     * @param transport        the connection to the broker (or a LocalBroker client for testing)
+     * @param labyrinthSize    the size of every session's labyrinth
+     * @param tickPeriodMillis the time between two game steps of one session
+     * @param threads          the number of scheduler threads shared by all sessions
+     */
+    public GameServer(MessageTransport transport, int labyrinthSize, long tickPeriodMillis, int threads) {
+        this.transport = transport;
+        this.labyrinthSize = labyrinthSize;
+        this.tickPeriodMillis = tickPeriodMillis;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.scheduler = Executors.newScheduledThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "GameServer-tick-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Subscribes to the device topics and starts the periodic latency report
+     *
+     * @param reportPeriodSeconds the time between two reports, 0 disables reporting
+     */
+    public void start(long reportPeriodSeconds) {
+        transport.setCallbackListener(this);
+        transport.subscribeToTopic(Constants.MPU_TOPIC_PREFIX + "+");
+        transport.subscribeToTopic(Constants.TEMP_TOPIC_PREFIX + "+");
+        if (reportPeriodSeconds > 0) {
+            reportFuture = scheduler.scheduleAtFixedRate(this::logReport,
+                    reportPeriodSeconds, reportPeriodSeconds, TimeUnit.SECONDS);
+        }
+        LOGGER.info("Game server started, labyrinth size " + labyrinthSize + ", tick period " + tickPeriodMillis + " ms");
+    }
+
+    /**
+     * Sends the start signal ("0" on "finished/&lt;device id&gt;"), which makes the board start publishing its sensor values
+     *
+     * @param deviceId the device id, e.g. "K05"
+     */
+    public void armDevice(String deviceId) {
+        transport.publishToTopic("0", Constants.FINISHED_TOPIC_PREFIX + deviceId);
+    }
+
+    /**
+     * Stops all sessions and disconnects from the broker
+     */
+    public void stop() {
+        transport.unsubscribeFromTopic(Constants.MPU_TOPIC_PREFIX + "+");
+        transport.unsubscribeFromTopic(Constants.TEMP_TOPIC_PREFIX + "+");
+        if (reportFuture != null) {
+            reportFuture.cancel(false);
+        }
+        scheduler.shutdownNow();
+        transport.disconnect();
+    }
+
+    @Override
+    public void onMessageReceived(String topic, String message) {
+        if (topic.startsWith(Constants.MPU_TOPIC_PREFIX)) {
+            DeviceSession session = sessionFor(topic.substring(Constants.MPU_TOPIC_PREFIX.length()));
+            if (!session.onSensorMessage(message)) {
+                LOGGER.fine("Invalid sensor message on " + topic + ": " + message);
+            }
+        } else if (topic.startsWith(Constants.TEMP_TOPIC_PREFIX)) {
+            sessionFor(topic.substring(Constants.TEMP_TOPIC_PREFIX.length())).onTemperatureMessage(message);
+        }
+    }
+
+    @Override
+    public void onConnectionLost() {
+        LOGGER.warning("Connection to the broker lost, sessions keep their state until it is restored");
+    }
+
+    @Override
+    public void onConnectionError(String message) {
+        LOGGER.warning("Connection error: " + message);
+    }
+
+    private DeviceSession sessionFor(String deviceId) {
+        DeviceSession session = sessions.get(deviceId);
+        if (session != null) {
+            return session;
+        }
+        return sessions.computeIfAbsent(deviceId, id -> {
+            DeviceSession newSession;
+            synchronized (random) {
+                newSession = new DeviceSession(id, labyrinthSize, new Random(random.nextLong()));
+            }
+            newSession.setTickSchedule(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(tickPeriodMillis),
+                    TimeUnit.MILLISECONDS.toNanos(tickPeriodMillis));
+            newSession.setTickFuture(scheduler.scheduleAtFixedRate(() -> tick(newSession),
+                    tickPeriodMillis, tickPeriodMillis, TimeUnit.MILLISECONDS));
+            LOGGER.fine("New session for device " + id);
+            return newSession;
+        });
+    }
+
+    private void tick(DeviceSession session) {
+        try {
+            if (session.tick()) {
+                LOGGER.info("Device " + session.getDeviceId() + " finished the labyrinth in " + session.getPlayTimeMillis() + " ms");
+                transport.publishToTopic("1", Constants.FINISHED_TOPIC_PREFIX + session.getDeviceId());
+                ScheduledFuture<?> tickFuture = session.getTickFuture();
+                if (tickFuture != null) {
+                    tickFuture.cancel(false);
+                }
+            }
+        } catch (RuntimeException e) {
+            // An exception would silently cancel the periodic task, so log it and keep the session alive
+            LOGGER.log(Level.WARNING, "Tick of device " + session.getDeviceId() + " failed", e);
+        }
+    }
+
+    /**
+     * @return the session of the given device or null if the device has not sent anything yet
+     */
+    public DeviceSession getSession(String deviceId) {
+        return sessions.get(deviceId);
+    }
+
+    public Map<String, DeviceSession> getSessions() {
+        return Collections.unmodifiableMap(sessions);
+    }
+
+    /**
+     * Collects the tick latency of every session since the previous report: how late the ticks started
+     * (which grows first when the scheduler threads can't keep up) and how long they took
+     *
+     * @return one line per session, slowest (by p99 of lateness plus duration) first
+     */
+    public List<String> collectReport() {
+        List<DeviceSession> sessionList = new ArrayList<>(sessions.values());
+        List<TickStats> stats = new ArrayList<>(sessionList.size());
+        List<TickStats> lateness = new ArrayList<>(sessionList.size());
+        List<Long> p99s = new ArrayList<>(sessionList.size());
+        for (DeviceSession session : sessionList) {
+            TickStats run = session.getTickStats().snapshotAndReset();
+            TickStats late = session.getTickLateness().snapshotAndReset();
+            stats.add(run);
+            lateness.add(late);
+            p99s.add(run.getPercentileNanos(0.99) + late.getPercentileNanos(0.99));
+        }
+
+        List<Integer> order = new ArrayList<>(sessionList.size());
+        for (int i = 0; i < sessionList.size(); i++) {
+            order.add(i);
+        }
+        order.sort((a, b) -> Long.compare(p99s.get(b), p99s.get(a)));
+
+        List<String> lines = new ArrayList<>(sessionList.size());
+        for (int i : order) {
+            lines.add(sessionList.get(i).getDeviceId() + ": late " + lateness.get(i) + ", run " + stats.get(i));
+        }
+        return lines;
+    }
+
+    private void logReport() {
+        List<String> lines = collectReport();
+        LOGGER.info(sessions.size() + " sessions, slowest first:");
+        for (int i = 0; i < lines.size(); i++) {
+            LOGGER.log(i < SLOWEST_SESSIONS_REPORTED ? Level.INFO : Level.FINE, "  " + lines.get(i));
+        }
+    }
+
+    /**
+     * Usage: GameServer [broker uri] [--size N] [--tick-ms N] [--report-s N] [--threads N] [--arm ID,ID,...]
+     */
+    public static void main(String[] args) throws Exception {
+        String brokerUri = "tcp://127.0.0.1:1883";
+        int size = DEFAULT_LABYRINTH_SIZE;
+        long tickMillis = DEFAULT_TICK_PERIOD_MILLIS;
+        long reportSeconds = DEFAULT_REPORT_PERIOD_SECONDS;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String[] armedDevices = new String[0];
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--size":
+                    size = Integer.parseInt(args[++i]);
+                    break;
+                case "--tick-ms":
+                    tickMillis = Long.parseLong(args[++i]);
+                    break;
+                case "--report-s":
+                    reportSeconds = Long.parseLong(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--arm":
+                    armedDevices = args[++i].split(",");
+                    break;
+                default:
+                    brokerUri = args[i];
+            }
+        }
+
+        GameServer server = new GameServer(new PahoTransport(brokerUri, "game_server"), size, tickMillis, threads);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        server.start(reportSeconds);
+        for (String deviceId : armedDevices) {
+            server.armDevice(deviceId);
+        }
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.menu_template.server;
+
+import com.example.menu_template.Constants;
+import com.example.menu_template.MessageTransport;
+import com.example.menu_template.MqttCallbackListener;
+import com.example.menu_template.SensorMessageParser;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Wraps the transport of a receiver (e.g. the GameServer) and measures its ingest path: the sensor messages and
+ * samples delivered, the callback lag (from the time stamped into the sample by the LoadGenerator to the
+ * callback) and the CPU time of the callback threads, which includes all the work the receiver does in them.
+ * <p>
+ * The lag is only measured for samples with a timestamp, and only makes sense when sender and receiver share
+ * a clock, i.e. run in the same process or on the same machine.
+ */
+public class IngestProbe implements MessageTransport {
+
+    private final MessageTransport transport;
+    private final AtomicLong receivedMessages = new AtomicLong();
+    private final AtomicLong receivedSamples = new AtomicLong();
+    private final TickStats callbackLag = new TickStats();
+    private final Set<Long> callbackThreads = ConcurrentHashMap.newKeySet();
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    public IngestProbe(MessageTransport transport) {
+        this.transport = transport;
+    }
+
+    @Override
+    public void setCallbackListener(MqttCallbackListener listener) {
+        transport.setCallbackListener(new MqttCallbackListener() {
+            @Override
+            public void onMessageReceived(String topic, String message) {
+                if (topic.startsWith(Constants.MPU_TOPIC_PREFIX)) {
+                    measure(message);
+                }
+                listener.onMessageReceived(topic, message);
+            }
+
+            @Override
+            public void onConnectionLost() {
+                listener.onConnectionLost();
+            }
+
+            @Override
+            public void onConnectionError(String message) {
+                listener.onConnectionError(message);
+            }
+        });
+    }
+
+    private void measure(String message) {
+        long nowMicros = System.nanoTime() / 1000;
+        callbackThreads.add(Thread.currentThread().getId());
+        receivedMessages.incrementAndGet();
+        int samples = 1;
+        int lastStart = 0;
+        for (int i = message.indexOf(';'); i >= 0; i = message.indexOf(';', i + 1)) {
+            samples++;
+            lastStart = i + 1;
+        }
+        receivedSamples.addAndGet(samples);
+        // The newest sample of a batch, the older ones were held back by the board on purpose
+        long sentMicros = SensorMessageParser.parseTimestampMicros(message, lastStart, message.length());
+        if (sentMicros != SensorMessageParser.NO_TIMESTAMP) {
+            callbackLag.record(Math.max(0, nowMicros - sentMicros) * 1000);
+        }
+    }
+
+    public long getReceivedMessages() {
+        return receivedMessages.get();
+    }
+
+    public long getReceivedSamples() {
+        return receivedSamples.get();
+    }
+
+    /**
+     * @return the lag of the samples since the previous call, see TickStats.snapshotAndReset()
+     */
+    public TickStats takeCallbackLag() {
+        return callbackLag.snapshotAndReset();
+    }
+
+    /**
+     * @return the CPU time all callback threads used so far, -1 if the JVM can't measure it
+     */
+    public long getCallbackCpuNanos() {
+        if (!threads.isThreadCpuTimeSupported()) {
+            return -1;
+        }
+        long total = 0;
+        for (long id : callbackThreads) {
+            long cpu = threads.getThreadCpuTime(id);
+            if (cpu > 0) {
+                total += cpu; // Threads that ended are gone from the count
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Waits until the given number of samples arrived, e.g. after the LoadGenerator was stopped
+     *
+     * @return false if they did not all arrive in time
+     */
+    public boolean awaitSamples(long samples, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000;
+        while (receivedSamples.get() < samples) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean publishToTopic(String message, String topic) {
+        return transport.publishToTopic(message, topic);
+    }
+
+    @Override
+    public void subscribeToTopic(String topic) {
+        transport.subscribeToTopic(topic);
+    }
+
+    @Override
+    public void unsubscribeFromTopic(String topic) {
+        transport.unsubscribeFromTopic(topic);
+    }
+
+    @Override
+    public void disconnect() {
+        transport.disconnect();
+    }
+}
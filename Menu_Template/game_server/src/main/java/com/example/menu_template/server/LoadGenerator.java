@@ -0,0 +1,346 @@
+package com.example.menu_template.server;
+
+import com.example.menu_template.Constants;
+import com.example.menu_template.LocalBroker;
+import com.example.menu_template.MessageTransport;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Simulates many ESP32 boards to find out where the ingest path saturates before a lab session does.
+ * <p>
+ * Every virtual board has its own connection and publishes a tilting motion with sensor noise on "mpu/&lt;id&gt;"
+ * at the configured rate and payload format, plus a temperature on "temp/&lt;id&gt;" every second, like the firmware.
+ * The boards are spread over a small scheduler pool; how far the pool falls behind its schedule is reported,
+ * so an overloaded generator is not mistaken for a slow receiver.
+ * <p>
+ * main() runs it against a broker or in-process against a LocalBroker, with the GameServer behind an IngestProbe
+ * as the receiver, and reports the offered and delivered rate, drops, callback lag and receiver CPU every second.
+ * With --no-receiver the phone app (or anything else subscribed on the broker) is the receiver instead.
+ */
+public class LoadGenerator {
+
+    private static final Logger LOGGER = Logger.getLogger("LoadGenerator");
+
+    public static final long TEMPERATURE_PERIOD_MILLIS = 1000;
+    private static final float GRAVITY = 9.81f;
+
+    public enum PayloadFormat {
+        PLAIN, // "(ax,ay,az,gx,gy,gz)", like the old firmware
+        TIMESTAMPED, // With the time of the sample in microseconds as a seventh value
+        BATCHED // Several timestamped samples per message, separated by ';'
+    }
+
+    /**
+     * Connects one virtual board, e.g. LocalBroker::newClient
+     */
+    public interface TransportFactory {
+        MessageTransport connect(String clientId) throws Exception;
+    }
+
+    private final List<VirtualBoard> boards = new ArrayList<>();
+    private final double samplesPerSecond;
+    private final PayloadFormat format;
+    private final int batchSize;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicLong sentMessages = new AtomicLong();
+    private final AtomicLong sentSamples = new AtomicLong();
+    // Publishes the transport rejected, these never reached the broker and are no drops of the receiver
+    private final AtomicLong failedMessages = new AtomicLong();
+    private final AtomicLong failedSamples = new AtomicLong();
+    private final AtomicLong maxBehindNanos = new AtomicLong();
+
+    /**
+     * @param deviceIds        one virtual board per id, e.g. "L000"
+     * @param samplesPerSecond the sample rate of every board
+     * @param batchSize        the samples per message for BATCHED, ignored otherwise
+     * @param threads          the number of publishing threads shared by all boards
+     */
+    public LoadGenerator(TransportFactory transports, List<String> deviceIds, double samplesPerSecond,
+                         PayloadFormat format, int batchSize, int threads) throws Exception {
+        this.samplesPerSecond = samplesPerSecond;
+        this.format = format;
+        this.batchSize = format == PayloadFormat.BATCHED ? Math.max(1, batchSize) : 1;
+        Random random = new Random(1);
+        for (String deviceId : deviceIds) {
+            boards.add(new VirtualBoard(deviceId, transports.connect("load_" + deviceId), new Random(random.nextLong())));
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        scheduler = Executors.newScheduledThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "LoadGenerator-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts publishing, the boards start at evenly spread offsets so their messages don't all come at once
+     */
+    public void start() {
+        long messagePeriodNanos = (long) (1e9 * batchSize / samplesPerSecond);
+        for (int i = 0; i < boards.size(); i++) {
+            VirtualBoard board = boards.get(i);
+            long offsetNanos = messagePeriodNanos * i / boards.size();
+            board.nextMessageNanos = System.nanoTime() + offsetNanos;
+            scheduler.scheduleAtFixedRate(() -> board.publishSensors(messagePeriodNanos),
+                    offsetNanos, messagePeriodNanos, TimeUnit.NANOSECONDS);
+            scheduler.scheduleAtFixedRate(board::publishTemperature,
+                    offsetNanos, TEMPERATURE_PERIOD_MILLIS * 1_000_000, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Stops publishing and disconnects the boards
+     */
+    public void stop() throws InterruptedException {
+        scheduler.shutdownNow();
+        scheduler.awaitTermination(1, TimeUnit.SECONDS);
+        for (VirtualBoard board : boards) {
+            board.transport.disconnect();
+        }
+    }
+
+    public int getBoardCount() {
+        return boards.size();
+    }
+
+    public long getSentMessages() {
+        return sentMessages.get();
+    }
+
+    public long getSentSamples() {
+        return sentSamples.get();
+    }
+
+    public long getFailedMessages() {
+        return failedMessages.get();
+    }
+
+    public long getFailedSamples() {
+        return failedSamples.get();
+    }
+
+    /**
+     * @return how late a message was published at most since the previous call, in nanoseconds
+     */
+    public long takeMaxBehindNanos() {
+        return maxBehindNanos.getAndSet(0);
+    }
+
+    private class VirtualBoard {
+        final String deviceId;
+        final MessageTransport transport;
+        final Random random;
+        final double phase;
+        final StringBuilder payload = new StringBuilder(64);
+        long nextMessageNanos; // Only touched by the task of this board, never run concurrently
+
+        VirtualBoard(String deviceId, MessageTransport transport, Random random) {
+            this.deviceId = deviceId;
+            this.transport = transport;
+            this.random = random;
+            this.phase = random.nextDouble() * 2 * Math.PI;
+        }
+
+        void publishSensors(long messagePeriodNanos) {
+            long now = System.nanoTime();
+            maxBehindNanos.accumulateAndGet(now - nextMessageNanos, Math::max);
+            nextMessageNanos += messagePeriodNanos;
+
+            long sampleMicros = (long) (1e6 / samplesPerSecond);
+            payload.setLength(0);
+            for (int i = 0; i < batchSize; i++) {
+                if (i > 0) {
+                    payload.append(';');
+                }
+                // The newest sample last, the older ones of a batch were read earlier
+                appendSample(now / 1000 - (batchSize - 1 - i) * sampleMicros);
+            }
+            if (transport.publishToTopic(payload.toString(), Constants.MPU_TOPIC_PREFIX + deviceId)) {
+                sentMessages.incrementAndGet();
+                sentSamples.addAndGet(batchSize);
+            } else {
+                failedMessages.incrementAndGet();
+                failedSamples.addAndGet(batchSize);
+            }
+        }
+
+        /**
+         * A slow tilt in both directions, about +-0.3 g, with accelerometer and gyro noise
+         */
+        private void appendSample(long timeMicros) {
+            double t = timeMicros / 1e6;
+            float accX = (float) (3 * Math.sin(2 * Math.PI * 0.3 * t + phase) + 0.1 * random.nextGaussian());
+            float accY = (float) (3 * Math.cos(2 * Math.PI * 0.2 * t + phase) + 0.1 * random.nextGaussian());
+            float accZ = (float) Math.sqrt(Math.max(0, GRAVITY * GRAVITY - accX * accX - accY * accY));
+            payload.append('(');
+            appendValue(accX).append(',');
+            appendValue(accY).append(',');
+            appendValue(accZ).append(',');
+            appendValue((float) (0.05 * random.nextGaussian())).append(',');
+            appendValue((float) (0.05 * random.nextGaussian())).append(',');
+            appendValue((float) (0.05 * random.nextGaussian()));
+            if (format != PayloadFormat.PLAIN) {
+                payload.append(',').append(timeMicros);
+            }
+            payload.append(')');
+        }
+
+        /**
+         * Appends the value with two decimals like the firmware, without String.format()
+         */
+        private StringBuilder appendValue(float value) {
+            long hundredths = Math.round(value * 100.0);
+            if (hundredths < 0) {
+                payload.append('-');
+                hundredths = -hundredths;
+            }
+            payload.append(hundredths / 100).append('.');
+            long fraction = hundredths % 100;
+            if (fraction < 10) {
+                payload.append('0');
+            }
+            return payload.append(fraction);
+        }
+
+        void publishTemperature() {
+            float temperature = (float) (24 + 0.5 * Math.sin(System.nanoTime() / 6e10 + phase) + 0.05 * random.nextGaussian());
+            transport.publishToTopic(String.format(Locale.ROOT, "%.2f", temperature), Constants.TEMP_TOPIC_PREFIX + deviceId);
+        }
+    }
+
+    /**
+     * @param failedSamples the samples of the interval the generator could not publish, not part of the sent ones
+     * @return a line with the rates and latencies of an interval of the given length
+     */
+    static String formatReport(int boards, long sentSamples, long failedSamples, long receivedSamples, long totalSent,
+                               long totalReceived, TickStats lag, long cpuNanos, long intervalNanos, long behindNanos) {
+        double seconds = intervalNanos / 1e9;
+        // In flight samples count as dropped until they arrive, so the total is more telling than one interval
+        double dropped = totalSent == 0 ? 0 : Math.max(0, 100.0 * (totalSent - totalReceived) / totalSent);
+        String lagText = lag.getCount() == 0 ? "n/a" : String.format(Locale.ROOT, "mean %.1f ms, p99 <= %.1f ms, max %.1f ms",
+                lag.getMeanNanos() / 1e6, lag.getPercentileNanos(0.99) / 1e6, lag.getMaxNanos() / 1e6);
+        String cpuText = cpuNanos < 0 ? "n/a" : String.format(Locale.ROOT, "%.0f%% of a core", 100.0 * cpuNanos / intervalNanos);
+        return String.format(Locale.ROOT, "%d boards: offered %.0f samples/s, failed to publish %.0f samples/s, "
+                        + "delivered %.0f samples/s, dropped %.2f%%, callback lag %s, receiver CPU %s, generator behind <= %.1f ms",
+                boards, sentSamples / seconds, failedSamples / seconds, receivedSamples / seconds, dropped, lagText, cpuText,
+                behindNanos / 1e6);
+    }
+
+    /**
+     * Usage: LoadGenerator [broker uri | --local] [--boards N] [--ids ID,ID,...] [--rate HZ]
+     * [--format plain|timestamped|batched] [--batch N] [--threads N] [--seconds N] [--no-receiver]
+     */
+    public static void main(String[] args) throws Exception {
+        String brokerUri = null;
+        int boardCount = 50;
+        List<String> deviceIds = null;
+        double rate = 100;
+        PayloadFormat format = PayloadFormat.TIMESTAMPED;
+        int batchSize = 4;
+        int threads = 2;
+        long seconds = 30;
+        boolean receiver = true;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--local":
+                    brokerUri = null;
+                    break;
+                case "--boards":
+                    boardCount = Integer.parseInt(args[++i]);
+                    break;
+                case "--ids":
+                    deviceIds = new ArrayList<>();
+                    for (String id : args[++i].split(",")) {
+                        deviceIds.add(id);
+                    }
+                    break;
+                case "--rate":
+                    rate = Double.parseDouble(args[++i]);
+                    break;
+                case "--format":
+                    format = PayloadFormat.valueOf(args[++i].toUpperCase(Locale.ROOT));
+                    break;
+                case "--batch":
+                    batchSize = Integer.parseInt(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--seconds":
+                    seconds = Long.parseLong(args[++i]);
+                    break;
+                case "--no-receiver":
+                    receiver = false;
+                    break;
+                default:
+                    brokerUri = args[i];
+            }
+        }
+        if (deviceIds == null) {
+            deviceIds = new ArrayList<>();
+            for (int i = 0; i < boardCount; i++) {
+                deviceIds.add(String.format(Locale.ROOT, "L%03d", i));
+            }
+        }
+
+        LocalBroker broker = brokerUri == null ? new LocalBroker() : null;
+        String uri = brokerUri;
+        TransportFactory transports = broker != null ? broker::newClient : clientId -> new PahoTransport(uri, clientId);
+
+        IngestProbe probe = null;
+        GameServer server = null;
+        if (receiver) {
+            probe = new IngestProbe(transports.connect("load_receiver"));
+            server = new GameServer(probe, GameServer.DEFAULT_LABYRINTH_SIZE, GameServer.DEFAULT_TICK_PERIOD_MILLIS,
+                    Runtime.getRuntime().availableProcessors());
+            server.start(0);
+        }
+        LoadGenerator generator = new LoadGenerator(transports, deviceIds, rate, format, batchSize, threads);
+        LOGGER.info("Simulating " + deviceIds.size() + " boards at " + rate + " samples/s, " + format
+                + (format == PayloadFormat.BATCHED ? " by " + batchSize : "") + ", against "
+                + (broker != null ? "the in-process broker" : brokerUri));
+        generator.start();
+
+        long lastNanos = System.nanoTime();
+        long lastSent = 0, lastFailed = 0, lastReceived = 0, lastCpu = 0;
+        for (long second = 0; second < seconds; second++) {
+            Thread.sleep(1000);
+            long now = System.nanoTime();
+            long sent = generator.getSentSamples();
+            long failed = generator.getFailedSamples();
+            long received = probe != null ? probe.getReceivedSamples() : 0;
+            long cpu = probe != null ? probe.getCallbackCpuNanos() : -1;
+            LOGGER.info(formatReport(generator.getBoardCount(), sent - lastSent, failed - lastFailed, received - lastReceived,
+                    sent, received, probe != null ? probe.takeCallbackLag() : new TickStats(), cpu < 0 ? -1 : cpu - lastCpu,
+                    now - lastNanos, generator.takeMaxBehindNanos()));
+            lastNanos = now;
+            lastSent = sent;
+            lastFailed = failed;
+            lastReceived = received;
+            lastCpu = cpu;
+        }
+
+        generator.stop();
+        if (probe != null) {
+            boolean drained = probe.awaitSamples(generator.getSentSamples(), 5000);
+            LOGGER.info("Sent " + generator.getSentSamples() + " samples (" + generator.getFailedSamples()
+                    + " failed to publish), received " + probe.getReceivedSamples()
+                    + (drained ? "" : " (not all arrived within 5 s)"));
+            server.stop();
+        }
+        if (broker != null) {
+            broker.shutdown();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.menu_template.server;
+
+import com.example.menu_template.MessageTransport;
+import com.example.menu_template.MqttCallbackListener;
+
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * MessageTransport backed by a Paho client, used by the game server to talk to a real mosquitto broker.
+ * The client reconnects on its own and restores its subscriptions afterwards.
+ */
+public class PahoTransport implements MessageTransport {
+
+    private static final Logger LOGGER = Logger.getLogger("PahoTransport");
+    // At high rates every publish may fail (e.g. too many publishes in progress), so failures are logged at most this often
+    private static final long FAILURE_LOG_PERIOD_NANOS = 1_000_000_000L;
+
+    private final MqttClient mqttClient;
+    private final Set<String> subscriptions = new CopyOnWriteArraySet<>();
+    private volatile MqttCallbackListener callbackListener;
+    private final AtomicLong failedPublishes = new AtomicLong();
+    private final AtomicLong failureLoggedNanos = new AtomicLong(System.nanoTime() - FAILURE_LOG_PERIOD_NANOS);
+
+    public PahoTransport(String brokerUri, String clientId) throws MqttException {
+        mqttClient = new MqttClient(brokerUri, clientId, new MemoryPersistence());
+        mqttClient.setCallback(new MqttCallbackExtended() {
+            @Override
+            public void connectComplete(boolean reconnect, String serverURI) {
+                if (reconnect) {
+                    // Clean sessions lose their subscriptions on the broker
+                    for (String topic : subscriptions) {
+                        subscribe(topic);
+                    }
+                }
+            }
+
+            @Override
+            public void connectionLost(Throwable cause) {
+                MqttCallbackListener listener = callbackListener;
+                if (listener != null) {
+                    listener.onConnectionLost();
+                }
+            }
+
+            @Override
+            public void messageArrived(String topic, MqttMessage message) {
+                MqttCallbackListener listener = callbackListener;
+                if (listener != null) {
+                    listener.onMessageReceived(topic, new String(message.getPayload(), StandardCharsets.UTF_8));
+                }
+            }
+
+            @Override
+            public void deliveryComplete(IMqttDeliveryToken token) {
+                // Nothing to do, results are published with QoS 0
+            }
+        });
+
+        MqttConnectOptions options = new MqttConnectOptions();
+        options.setCleanSession(true);
+        options.setAutomaticReconnect(true);
+        mqttClient.connect(options);
+        LOGGER.info("Connected to MQTT broker " + brokerUri);
+    }
+
+    @Override
+    public void setCallbackListener(MqttCallbackListener listener) {
+        this.callbackListener = listener;
+    }
+
+    @Override
+    public boolean publishToTopic(String message, String topic) {
+        try {
+            mqttClient.publish(topic, message.getBytes(StandardCharsets.UTF_8), 0, false);
+            return true;
+        } catch (MqttException e) {
+            long failed = failedPublishes.incrementAndGet();
+            long now = System.nanoTime();
+            long logged = failureLoggedNanos.get();
+            if (now - logged >= FAILURE_LOG_PERIOD_NANOS && failureLoggedNanos.compareAndSet(logged, now)) {
+                LOGGER.log(Level.WARNING, "Failed to publish on topic " + topic + ", " + failed + " failed so far", e);
+            }
+            return false;
+        }
+    }
+
+    /**
+     * @return the number of messages that could not be published
+     */
+    public long getFailedPublishes() {
+        return failedPublishes.get();
+    }
+
+    @Override
+    public void subscribeToTopic(String topic) {
+        subscriptions.add(topic);
+        subscribe(topic);
+    }
+
+    @Override
+    public void unsubscribeFromTopic(String topic) {
+        subscriptions.remove(topic);
+        try {
+            mqttClient.unsubscribe(topic);
+        } catch (MqttException e) {
+            LOGGER.log(Level.WARNING, "Failed to unsubscribe from topic " + topic, e);
+        }
+    }
+
+    @Override
+    public void disconnect() {
+        try {
+            if (mqttClient.isConnected()) {
+                mqttClient.disconnect();
+            }
+            mqttClient.close();
+        } catch (MqttException e) {
+            LOGGER.log(Level.WARNING, "Failed to disconnect", e);
+        }
+    }
+
+    private void subscribe(String topic) {
+        try {
+            mqttClient.subscribe(topic, 0);
+        } catch (MqttException e) {
+            LOGGER.log(Level.WARNING, "Failed to subscribe to topic " + topic, e);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.menu_template.server;
+
+import java.util.Arrays;
+
+/**
+ * Tick latency statistics of one device session, either how long its ticks took or how late they started.
+ * Latencies are collected in power-of-two buckets, so recording a tick never allocates.
+ */
+public class TickStats {
+
+    private static final int BUCKET_COUNT = 64;
+
+    private final long[] buckets = new long[BUCKET_COUNT];
+    private long count;
+    private long totalNanos;
+    private long maxNanos;
+    private long lifetimeCount;
+
+    /**
+     * @param nanos the time one tick took
+     */
+    public synchronized void record(long nanos) {
+        buckets[BUCKET_COUNT - 1 - Long.numberOfLeadingZeros(Math.max(nanos, 1))]++;
+        count++;
+        totalNanos += nanos;
+        maxNanos = Math.max(maxNanos, nanos);
+        lifetimeCount++;
+    }
+
+    /**
+     * Copies the statistics collected since the last call and starts a new interval
+     *
+     * @return the statistics of the interval that just ended
+     */
+    public synchronized TickStats snapshotAndReset() {
+        TickStats snapshot = new TickStats();
+        System.arraycopy(buckets, 0, snapshot.buckets, 0, BUCKET_COUNT);
+        snapshot.count = count;
+        snapshot.totalNanos = totalNanos;
+        snapshot.maxNanos = maxNanos;
+        snapshot.lifetimeCount = lifetimeCount;
+
+        Arrays.fill(buckets, 0);
+        count = 0;
+        totalNanos = 0;
+        maxNanos = 0;
+        return snapshot;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getLifetimeCount() {
+        return lifetimeCount;
+    }
+
+    public synchronized long getMeanNanos() {
+        return count == 0 ? 0 : totalNanos / count;
+    }
+
+    public synchronized long getMaxNanos() {
+        return maxNanos;
+    }
+
+    /**
+     * @param percentile e.g. 0.99
+     * @return an upper bound for the given percentile, exact to a factor of two
+     */
+    public synchronized long getPercentileNanos(double percentile) {
+        long threshold = (long) Math.ceil(count * percentile);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets[i];
+            if (seen >= threshold && seen > 0) {
+                return Math.min(maxNanos, i >= 62 ? Long.MAX_VALUE : (1L << (i + 1)) - 1);
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("ticks=%d mean=%.1fus p99<=%.1fus max=%.1fus",
+                count, getMeanNanos() / 1000.0, getPercentileNanos(0.99) / 1000.0, maxNanos / 1000.0);
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.menu_template.server;
+
+import com.example.menu_template.Constants;
+import com.example.menu_template.LocalBroker;
+import com.example.menu_template.MessageTransport;
+import com.example.menu_template.MqttCallbackListener;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class GameServerTest {
+
+    private static final int DEVICE_COUNT = 300;
+    private static final long SAMPLE_PERIOD_MILLIS = 10; // 100 Hz per device
+
+    private LocalBroker broker;
+    private GameServer server;
+    private ScheduledExecutorService devices;
+
+    @Before
+    public void setUp() {
+        broker = new LocalBroker();
+        server = new GameServer(broker.newClient("game_server"), GameServer.DEFAULT_LABYRINTH_SIZE,
+                GameServer.DEFAULT_TICK_PERIOD_MILLIS, Runtime.getRuntime().availableProcessors());
+        server.start(0);
+        devices = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        devices.shutdownNow();
+        server.stop();
+        broker.shutdown();
+    }
+
+    /**
+     * Publishes a sample for every device at 100 Hz and a temperature once, for the given time
+     */
+    private void runDevices(long millis) throws InterruptedException {
+        List<MessageTransport> clients = new ArrayList<>();
+        for (int i = 0; i < DEVICE_COUNT; i++) {
+            clients.add(broker.newClient("device_" + i));
+        }
+        Random random = new Random(42);
+        devices.scheduleAtFixedRate(() -> {
+            for (int i = 0; i < DEVICE_COUNT; i++) {
+                clients.get(i).publishToTopic(String.format(Locale.ROOT, "(%.2f,%.2f,9.81,%.2f,%.2f,0.00)",
+                                random.nextFloat() * 4 - 2, random.nextFloat() * 4 - 2,
+                                random.nextFloat() - 0.5f, random.nextFloat() - 0.5f),
+                        Constants.MPU_TOPIC_PREFIX + "D" + i);
+            }
+        }, 0, SAMPLE_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < DEVICE_COUNT; i++) {
+            clients.get(i).publishToTopic("23.5", Constants.TEMP_TOPIC_PREFIX + "D" + i);
+        }
+        Thread.sleep(millis);
+    }
+
+    @Test
+    public void servesHundredsOfDevices() throws Exception {
+        runDevices(2000);
+
+        assertEquals(DEVICE_COUNT, server.getSessions().size());
+        for (DeviceSession session : server.getSessions().values()) {
+            // Only a sanity bound, how close to 100 Hz this gets depends on the machine, see meetsTheTickSchedule()
+            long ticks = session.getTickStats().getLifetimeCount();
+            assertTrue(session.getDeviceId() + " ticked only " + ticks + " times", session.isFinished() || ticks >= 20);
+            // Still ticking, the lateness is recorded first
+            assertTrue(session.getTickLateness().getLifetimeCount() >= ticks);
+        }
+        DeviceSession session = server.getSession("D0");
+        assertNotNull(session);
+        assertEquals(23.5f, session.getTemperature(), 0.0f);
+
+        List<String> report = server.collectReport();
+        assertEquals(DEVICE_COUNT, report.size());
+        assertTrue(report.get(0), report.get(0).contains("late ticks="));
+    }
+
+    /**
+     * The tick schedule of hundreds of devices, needs a machine with a few idle cores: only run with -PloadTests
+     */
+    @Test
+    public void meetsTheTickScheduleUnderLoad() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("loadTests"));
+        runDevices(2000);
+
+        for (DeviceSession session : server.getSessions().values()) {
+            // A finished session stops ticking early, every other one must have kept up with 100 Hz
+            long ticks = session.getTickStats().getLifetimeCount();
+            assertTrue(session.getDeviceId() + " ticked only " + ticks + " times", session.isFinished() || ticks >= 180);
+            TickStats lateness = session.getTickLateness();
+            assertTrue(session.getDeviceId() + " late: " + lateness,
+                    lateness.getPercentileNanos(0.9) < TimeUnit.MILLISECONDS.toNanos(GameServer.DEFAULT_TICK_PERIOD_MILLIS));
+        }
+    }
+
+    @Test
+    public void reportsTheFinishOnTheDeviceTopic() throws Exception {
+        List<String> finishedMessages = new ArrayList<>();
+        MessageTransport observer = broker.newClient("observer");
+        observer.setCallbackListener(new MqttCallbackListener() {
+            @Override
+            public void onMessageReceived(String topic, String message) {
+                synchronized (finishedMessages) {
+                    finishedMessages.add(topic + "=" + message);
+                }
+            }
+
+            @Override
+            public void onConnectionLost() {
+            }
+
+            @Override
+            public void onConnectionError(String message) {
+            }
+        });
+        observer.subscribeToTopic(Constants.FINISHED_TOPIC_PREFIX + "+");
+
+        server.armDevice("K05");
+        Thread.sleep(100);
+
+        synchronized (finishedMessages) {
+            assertEquals(1, finishedMessages.size());
+            assertEquals(Constants.FINISHED_TOPIC_PREFIX + "K05=0", finishedMessages.get(0));
+        }
+    }
+}
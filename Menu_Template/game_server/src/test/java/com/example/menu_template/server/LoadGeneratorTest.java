@@ -0,0 +1,52 @@
+package com.example.menu_template.server;
+
+import com.example.menu_template.LocalBroker;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class LoadGeneratorTest {
+
+    @Test
+    public void everyBatchedSampleReachesTheServer() throws Exception {
+        LocalBroker broker = new LocalBroker();
+        IngestProbe probe = new IngestProbe(broker.newClient("game_server"));
+        GameServer server = new GameServer(probe, GameServer.DEFAULT_LABYRINTH_SIZE, GameServer.DEFAULT_TICK_PERIOD_MILLIS, 2);
+        server.start(0);
+
+        List<String> deviceIds = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            deviceIds.add("L" + i);
+        }
+        LoadGenerator generator = new LoadGenerator(broker::newClient, deviceIds, 200,
+                LoadGenerator.PayloadFormat.BATCHED, 4, 2);
+        generator.start();
+        Thread.sleep(500);
+        generator.stop();
+
+        assertTrue(generator.getSentSamples() > 0);
+        assertEquals(4 * generator.getSentMessages(), generator.getSentSamples());
+        assertEquals(0, generator.getFailedSamples());
+        assertTrue("Samples lost in process", probe.awaitSamples(generator.getSentSamples(), 5000));
+        assertEquals(generator.getSentSamples(), probe.getReceivedSamples());
+        TickStats lag = probe.takeCallbackLag();
+        assertEquals(probe.getReceivedMessages(), lag.getCount());
+        for (String deviceId : deviceIds) {
+            // The server parsed the batches, a session only exists once a sample (or temperature) came in
+            assertNotNull(server.getSession(deviceId));
+        }
+
+        String report = LoadGenerator.formatReport(20, 1000, 50, 900, 1000, 900, lag, probe.getCallbackCpuNanos(),
+                1_000_000_000L, generator.takeMaxBehindNanos());
+        // Samples that failed to publish are reported apart, not as drops
+        assertTrue(report, report.contains("failed to publish 50 samples/s") && report.contains("dropped 10.00%"));
+        server.stop();
+        broker.shutdown();
+    }
+}
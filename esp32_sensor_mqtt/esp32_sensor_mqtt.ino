@@ -3,9 +3,11 @@
 #include <Wire.h>
 #include <WiFi.h>
 #include <PubSubClient.h>
+#include <WiFiUdp.h>
 
 WiFiClient espClient;
 PubSubClient mqttClient(espClient);
+WiFiUDP udp;
 Adafruit_MPU6050 mpu;
 
 int led_red = 26;
@@ -25,6 +27,59 @@ const int mqttPort = 1883;
 const char* mpuTopic = "mpu/K05";
 const char* tempTopic = "temp/K05";
 const char* finishedTopic = "finished/K05";
+// Clock synchronization with the app: the app sends its time t1 on pingTopic,
+// we answer "t1,t2,t3" on pongTopic (t2 = ping received, t3 = pong sent, both esp_timer_get_time() in microseconds)
+const char* pingTopic = "ping/K05";
+const char* pongTopic = "pong/K05";
+// The app sets the publish rate on controlTopic with "<samples per second>,<samples per message>",
+// we answer with the values we actually use on controlAckTopic
+const char* controlTopic = "control/K05";
+const char* controlAckTopic = "control_ack/K05";
+// The app announces "<address>:<port>" here to get the samples as UDP frames instead of MQTT messages,
+// an empty message switches back to MQTT. See UdpSensorReceiver in the app for the frame format.
+const char* udpTopic = "udp/K05";
+
+// Set to 1 to print every sample on the serial console (slows the loop down)
+#define VERBOSE 0
+#define MAX_RATE 200
+#define MAX_BATCH 8
+#define SAMPLE_LENGTH 80
+
+volatile int sampleRate = 10;   // Samples per second, until the app tells us otherwise
+volatile int batchSize = 1;     // Samples per message
+unsigned long nextSampleMicros = 0;
+char batch[MAX_BATCH * SAMPLE_LENGTH];
+int batchCount = 0;
+
+#define FRAME_LENGTH 38
+bool udpEnabled = false;
+IPAddress udpAddress;
+uint16_t udpPort = 0;
+uint32_t udpSequence = 0;
+
+void putBigEndian(uint8_t* out, uint64_t value, int bytes) {
+  for (int i = bytes - 1; i >= 0; i--) {
+    out[i] = value & 0xFF;
+    value >>= 8;
+  }
+}
+
+void sendFrame(sensors_event_t* a, sensors_event_t* g, int64_t readMicros) {
+  uint8_t frame[FRAME_LENGTH];
+  float values[6] = {a->acceleration.x, a->acceleration.y, a->acceleration.z, g->gyro.x, g->gyro.y, g->gyro.z};
+  frame[0] = 'S';
+  frame[1] = 1;
+  putBigEndian(frame + 2, udpSequence++, 4);
+  putBigEndian(frame + 6, (uint64_t) readMicros, 8);
+  for (int i = 0; i < 6; i++) {
+    uint32_t bits;
+    memcpy(&bits, &values[i], 4);
+    putBigEndian(frame + 14 + 4 * i, bits, 4);
+  }
+  udp.beginPacket(udpAddress, udpPort);
+  udp.write(frame, FRAME_LENGTH);
+  udp.endPacket();
+}
 
 hw_timer_t* timer = NULL;
 portMUX_TYPE timerMux = portMUX_INITIALIZER_UNLOCKED;
@@ -51,12 +106,49 @@ void blink() {
 
 
 void onMqttMessageReceived(char* topic, byte* payload, unsigned int length) {
+  int64_t receivedMicros = esp_timer_get_time();
+
   // Handle MQTT message received
   // Convert payload to a string
   char message[length + 1];
   memcpy(message, payload, length);
   message[length] = '\0';
 
+  if (strcmp(topic, pingTopic) == 0) {
+    // Answer right away, every delay here ends up in the round trip time
+    char pong[72];
+    snprintf(pong, sizeof(pong), "%s,%lld,%lld", message, (long long) receivedMicros, (long long) esp_timer_get_time());
+    mqttClient.publish(pongTopic, pong);
+    return;
+  }
+
+  if (strcmp(topic, udpTopic) == 0) {
+    char* colon = strrchr(message, ':');
+    udpEnabled = false;
+    if (colon != NULL) {
+      *colon = '\0';
+      udpPort = atoi(colon + 1);
+      udpEnabled = udpPort > 0 && udpAddress.fromString(message);
+    }
+    Serial.print("UDP frames: ");
+    Serial.println(udpEnabled ? "on" : "off");
+    return;
+  }
+
+  if (strcmp(topic, controlTopic) == 0) {
+    int rate, size;
+    if (sscanf(message, "%d,%d", &rate, &size) == 2) {
+      sampleRate = constrain(rate, 0, MAX_RATE);
+      batchSize = constrain(size, 1, MAX_BATCH);
+      batchCount = 0;
+      nextSampleMicros = micros();
+    }
+    char ack[24];
+    snprintf(ack, sizeof(ack), "%d,%d", sampleRate, batchSize);
+    mqttClient.publish(controlAckTopic, ack);
+    return;
+  }
+
     //strcmp = String Compare which compares C-style strings (char arrays) (==0 means, the Strings are equal)
    if(strcmp(topic, "finished/K05") == 0) {
     if(strcmp(message, "0") == 0) {
@@ -96,12 +188,17 @@ void connectToWifi() {
 void setupMqtt() {
   mqttClient.setServer(mqttBroker, mqttPort);
   mqttClient.setCallback(onMqttMessageReceived);
+  // Batches of samples don't fit into the default 256 byte buffer
+  mqttClient.setBufferSize(1024);
 
   Serial.print("Connecting to MQTT broker...");
   while (!mqttClient.connected()) {
     if (mqttClient.connect("ESP32Client")) {
       Serial.println("connected!");
       mqttClient.subscribe(finishedTopic);
+      mqttClient.subscribe(pingTopic);
+      mqttClient.subscribe(controlTopic);
+      mqttClient.subscribe(udpTopic);
     } else {
       Serial.print("failed, retrying in 5 seconds...");
       delay(5000);
@@ -154,7 +251,7 @@ void setup() {
 
 
 void loop() {
-  Serial.println(pub_flag);
+  mqttClient.loop();
 
   static unsigned long previousTempMillis = 0;
   static char tempValue[8]; // Buffer to store temperature value
@@ -163,58 +260,62 @@ void loop() {
   unsigned long currentMillis = previousMillis;
   portEXIT_CRITICAL(&timerMux);
 
+  // Only read the sensor when the next sample is due, the app sets the rate depending on the game state
+  int rate = sampleRate;
+  if (!pub_flag || rate <= 0 || (long) (micros() - nextSampleMicros) < 0) {
+    delay(1);
+    return;
+  }
+  nextSampleMicros += 1000000UL / rate;
+  if ((long) (micros() - nextSampleMicros) > 1000000L / rate) {
+    // Fell behind (e.g. while reconnecting), don't try to catch up with a burst
+    nextSampleMicros = micros();
+  }
+
   sensors_event_t a, g, temp;
   mpu.getEvent(&a, &g, &temp);
-
-  // Store sensor values in a list
-  String sensorValues = "("+ 
-                        String(a.acceleration.x) + "," +
-                        String(a.acceleration.y) + "," +
-                        String(a.acceleration.z) + "," +
-                        String(g.gyro.x) + "," +
-                        String(g.gyro.y) + "," +
-                        String(g.gyro.z) + ")";
-
-  Serial.print("Sensor Values Tuple: ");
-  Serial.println(sensorValues);
-  
-  Serial.print("Acceleration X: ");
-  Serial.print(a.acceleration.x);
-  Serial.print(", Y: ");
-  Serial.print(a.acceleration.y);
-  Serial.print(", Z: ");
-  Serial.print(a.acceleration.z);
-  Serial.println(" m/s^2");
-
-  Serial.print("Rotation X: ");
-  Serial.print(g.gyro.x);
-  Serial.print(", Y: ");
-  Serial.print(g.gyro.y);
-  Serial.print(", Z: ");
-  Serial.print(g.gyro.z);
-  Serial.println(" rad/s");
-
-  if (pub_flag) {
-    // Publish the list of sensor values
-    mqttClient.publish(mpuTopic, sensorValues.c_str());
-
-    if (currentMillis - previousTempMillis >= interval) {
-      previousTempMillis = currentMillis;
-
-      // Publish temperature value
-      snprintf(tempValue, sizeof(tempValue), "%f", temp.temperature);
-      mqttClient.publish(tempTopic, tempValue);
+  int64_t readMicros = esp_timer_get_time();
+
+  if (udpEnabled) {
+    // Straight to the app, one sample per datagram, no broker in between
+    sendFrame(&a, &g, readMicros);
+  } else {
+    // Store sensor values in a list, followed by the time they were read, so the app can tell how old they are.
+    // Several samples are sent in one message separated by ';'
+    char* sensorValues = batch + strlen(batch);
+    if (batchCount == 0) {
+      sensorValues = batch;
+    } else {
+      *sensorValues++ = ';';
+    }
+    snprintf(sensorValues, SAMPLE_LENGTH, "(%.2f,%.2f,%.2f,%.2f,%.2f,%.2f,%lld)",
+             a.acceleration.x, a.acceleration.y, a.acceleration.z,
+             g.gyro.x, g.gyro.y, g.gyro.z, (long long) readMicros);
+    batchCount++;
+
+#if VERBOSE
+    Serial.print("Sensor Values Tuple: ");
+    Serial.println(sensorValues);
+    Serial.print("Temperature: ");
+    Serial.print(temp.temperature);
+    Serial.println(" degC");
+#endif
+
+    if (batchCount >= batchSize) {
+      // Publish the list of sensor values
+      mqttClient.publish(mpuTopic, batch);
+      batchCount = 0;
+      batch[0] = '\0';
     }
   }
 
-  Serial.print("Temperature: ");
-  Serial.print(temp.temperature);
-  Serial.println(" degC");
-
-  Serial.println("");
-  delay(100);
+  if (currentMillis - previousTempMillis >= interval) {
+    previousTempMillis = currentMillis;
 
-  mqttClient.loop();
+    // Publish temperature value
+    snprintf(tempValue, sizeof(tempValue), "%f", temp.temperature);
+    mqttClient.publish(tempTopic, tempValue);
+  }
 }
 
 